@@ -0,0 +1,123 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.queue.JournalPlanQueue;
+import com.icefrog.async.export.component.queue.MemoryPlanQueue;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Control;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 计划队列在生产者(接入请求)与消费者(消费线程)竞争下的入队/出队吞吐.
+ * 生产者与消费者各4个线程, 分别以offer与take语义访问{@link ApiCacheQueue}:
+ * 队列满时生产者自旋重试, 队列空时消费者阻塞等待. 为使迭代结束时阻塞的线程能够退出, 消费者以短超时的poll循环代替take
+ *
+ * @author icefrog
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ApiCacheQueueBenchmark {
+
+    /***
+     * 队列存储实现. memory: 内存有界队列. journal: 基于内存映射文件的持久化队列
+     */
+    @Param({"memory", "journal"})
+    private String queue;
+
+    /***
+     * 队列容量. journal队列的容量由段大小与段数量决定
+     */
+    @Param({"1024"})
+    private int capacity;
+
+    private File dir;
+
+    private ExportApiReqDto plan;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if("journal".equals(queue)) {
+            dir = Files.createTempDirectory("export-benchmark-journal").toFile();
+            ApiCacheQueue.install(new JournalPlanQueue(dir, 4 * 1024 * 1024, 4, false));
+        } else {
+            ApiCacheQueue.install(new MemoryPlanQueue(capacity));
+        }
+
+        plan = new ExportApiReqDto();
+        plan.setPlanId("2c9f8a3e6d1b4f0a9e7c5b3a1d2e4f60");
+        plan.setRequestParams("{\"startDate\":\"2019-10-01\",\"endDate\":\"2019-10-31\",\"status\":1}");
+        plan.setI18n("zh_CN");
+        plan.setBeanId("benchmarkExport");
+        plan.setUserId(10001L);
+        plan.setFileFormat("xlsx");
+        plan.setEnqueuedAt(System.currentTimeMillis());
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        // 迭代之间清空队列, 各迭代从空队列开始
+        while (ApiCacheQueue.poll(0, TimeUnit.MILLISECONDS) != null) {
+            // drain
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ApiCacheQueue.install(new MemoryPlanQueue(capacity));
+        if(dir != null) {
+            FileUtil.del(dir);
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public boolean offer(Control control) {
+        while (!control.stopMeasurement) {
+            if(ApiCacheQueue.offer(plan)) {
+                return true;
+            }
+            Thread.yield();
+        }
+        return false;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public ExportApiReqDto take(Control control) throws InterruptedException {
+        while (!control.stopMeasurement) {
+            ExportApiReqDto taken = ApiCacheQueue.poll(10, TimeUnit.MILLISECONDS);
+            if(taken != null) {
+                return taken;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,173 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.component.mapping.ColumnConf;
+import com.icefrog.async.export.component.mapping.RowPlanCache;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * 基准测试数据. 所有数据由固定种子生成, 同一参数在不同机器、不同次运行中完全一致
+ *
+ * @author icefrog
+ */
+public final class BenchmarkData {
+
+    /***
+     * 随机种子
+     */
+    public static final long SEED = 20191024L;
+
+    /***
+     * 字典值的最大取值数量
+     */
+    public static final int MAX_DICT_VALUES = 65536;
+
+    /***
+     * 单元格数据的去重行数. 大数据量写入时循环引用, 避免数据本身占满堆内存而干扰写入耗时
+     */
+    private static final int CELL_POOL_SIZE = 4096;
+
+    private BenchmarkData() {
+    }
+
+    /***
+     * @param index 字典值下标
+     * @return 字典值
+     */
+    public static String dictValue(int index) {
+        return "v" + index;
+    }
+
+    /***
+     * 生成宽表结果集
+     *
+     * @param count 行数
+     * @param dictValues 字典列的取值数量(去重后), 不超过{@link #MAX_DICT_VALUES}
+     * @return 结果集
+     */
+    public static List<BaseResultSet> rows(int count, int dictValues) {
+
+        Random random = new Random(SEED);
+        List<BaseResultSet> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BenchmarkRow row = new BenchmarkRow();
+            for (int column = 0; column < BenchmarkRow.COLUMNS; column++) {
+                set(row, column, random, dictValues);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /***
+     * 前columns列的column配置
+     *
+     * @param columns 列数量, 不超过{@link BenchmarkRow#COLUMNS}
+     * @return column配置
+     */
+    public static ColumnConf columnConf(int columns) {
+        StringBuilder json = new StringBuilder("{");
+        for (int column = 0; column < columns; column++) {
+            if(column > 0) {
+                json.append(',');
+            }
+            json.append('"').append(property(column)).append("\":\"列").append(column).append('"');
+        }
+        return ColumnConf.parse("benchmarkExport", json.append('}').toString());
+    }
+
+    /***
+     * 已解析的单元格数据. 内部仅持有{@link #CELL_POOL_SIZE}行, 按下标循环返回
+     *
+     * @param count 行数
+     * @param columns 列数量
+     * @return 只读的行数据
+     */
+    public static List<List<String>> cells(int count, int columns) {
+
+        Random random = new Random(SEED);
+        int poolSize = Math.min(count, CELL_POOL_SIZE);
+        List<List<String>> pool = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            List<String> row = new ArrayList<>(columns);
+            for (int column = 0; column < columns; column++) {
+                row.add(Long.toString(Math.abs(random.nextLong()), 36));
+            }
+            pool.add(row);
+        }
+
+        return new AbstractList<List<String>>() {
+            @Override
+            public List<String> get(int index) {
+                return pool.get(index % poolSize);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /***
+     * 创建仅包含解析相关组件的Spring上下文: 字典替换实现、解析计划缓存与字典值缓存, 配置取默认值
+     *
+     * @return 已刷新的上下文. 使用完毕后应关闭
+     */
+    public static AnnotationConfigApplicationContext context() {
+        return new AnnotationConfigApplicationContext(SyntheticDictionary.class, RowPlanCache.class, DictionaryCache.class);
+    }
+
+    static String property(int column) {
+        return String.format("c%02d", column);
+    }
+
+    private static void set(BenchmarkRow row, int column, Random random, int dictValues) {
+        // 约5%的单元格为null, 覆盖nullChar替换
+        boolean empty = random.nextInt(20) == 0;
+        Object value;
+        switch (column % 5) {
+            case 0:
+                value = "name-" + random.nextInt(100000);
+                break;
+            case 1:
+                value = random.nextLong();
+                break;
+            case 2:
+                value = random.nextInt();
+                break;
+            case 3:
+                value = BigDecimal.valueOf(random.nextInt(10000000), 2);
+                break;
+            default:
+                // 字典列不为null
+                ReflectUtil.setFieldValue(row, property(column), dictValue(random.nextInt(dictValues)));
+                return;
+        }
+        ReflectUtil.setFieldValue(row, property(column), empty ? null : value);
+    }
+}
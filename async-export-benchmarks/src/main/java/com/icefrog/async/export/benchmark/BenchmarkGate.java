@@ -0,0 +1,109 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/***
+ * 性能门禁. 比较两次JMH运行的JSON结果(-rf json), 任一基准的得分劣化超过阈值时以退出码1结束.
+ * 吞吐模式(thrpt)得分越高越好, 其他模式(avgt/sample/ss)得分越低越好. 仅比较两次结果中都存在的基准与参数组合
+ * <pre>
+ * java -cp target/benchmarks.jar com.icefrog.async.export.benchmark.BenchmarkGate baseline.json current.json [threshold]
+ * </pre>
+ * threshold为允许的劣化比例, 默认0.10
+ *
+ * @author icefrog
+ */
+public final class BenchmarkGate {
+
+    private static final double DEFAULT_THRESHOLD = 0.10D;
+
+    private BenchmarkGate() {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if(args.length < 2) {
+            System.err.println("usage: BenchmarkGate <baseline.json> <current.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        Map<String, JSONObject> baseline = load(args[0]);
+        Map<String, JSONObject> current = load(args[1]);
+
+        int regressions = 0;
+        System.out.printf("%-100s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+            JSONObject before = baseline.get(entry.getKey());
+            if(before == null) {
+                continue;
+            }
+            JSONObject after = entry.getValue();
+            double baseScore = before.getJSONObject("primaryMetric").getDoubleValue("score");
+            double score = after.getJSONObject("primaryMetric").getDoubleValue("score");
+            boolean higherIsBetter = "thrpt".equals(after.getString("mode"));
+
+            // 劣化比例: 正数表示变差
+            double change = baseScore == 0 ? 0 : (score - baseScore) / baseScore;
+            double regression = higherIsBetter ? -change : change;
+            boolean failed = regression > threshold;
+            if(failed) {
+                regressions++;
+            }
+            System.out.printf("%-100s %14.3f %14.3f %+8.1f%% %s%s%n", entry.getKey(), baseScore, score, change * 100,
+                    after.getJSONObject("primaryMetric").getString("scoreUnit"), failed ? "  REGRESSION" : "");
+        }
+
+        if(regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed more than %.1f%%%n", regressions, threshold * 100);
+            System.exit(1);
+        }
+    }
+
+    /***
+     * @return key: 基准方法与参数组合. value: 单个基准结果
+     */
+    private static Map<String, JSONObject> load(String path) throws IOException {
+        String content = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        JSONArray results = JSON.parseArray(content);
+        Map<String, JSONObject> data = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            StringBuilder key = new StringBuilder(result.getString("benchmark"));
+            JSONObject params = result.getJSONObject("params");
+            if(params != null) {
+                // 参数按名称排序, 与JMH输出顺序无关
+                for (Map.Entry<String, Object> param : new TreeMap<>(params).entrySet()) {
+                    key.append(':').append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            data.put(key.toString(), result);
+        }
+        return data;
+    }
+}
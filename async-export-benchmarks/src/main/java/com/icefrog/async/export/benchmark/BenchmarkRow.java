@@ -0,0 +1,150 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import com.icefrog.async.export.integration.annotation.DictionaryScan;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.math.BigDecimal;
+
+/***
+ * 基准测试使用的宽表结果集. 共{@link #COLUMNS}列, 按下标循环为String、Long、Integer、BigDecimal与字典列,
+ * 即每5列中含1个字典列. 属性名为c00~c49, 便于按列数截取column配置
+ *
+ * @author icefrog
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class BenchmarkRow extends BaseResultSet {
+
+    /***
+     * 列数量
+     */
+    public static final int COLUMNS = 50;
+
+    private String c00;
+
+    private Long c01;
+
+    private Integer c02;
+
+    private BigDecimal c03;
+
+    @DictionaryScan(code = "STATUS")
+    private String c04;
+
+    private String c05;
+
+    private Long c06;
+
+    private Integer c07;
+
+    private BigDecimal c08;
+
+    @DictionaryScan(code = "TYPE")
+    private String c09;
+
+    private String c10;
+
+    private Long c11;
+
+    private Integer c12;
+
+    private BigDecimal c13;
+
+    @DictionaryScan(code = "REGION")
+    private String c14;
+
+    private String c15;
+
+    private Long c16;
+
+    private Integer c17;
+
+    private BigDecimal c18;
+
+    @DictionaryScan(code = "STATUS")
+    private String c19;
+
+    private String c20;
+
+    private Long c21;
+
+    private Integer c22;
+
+    private BigDecimal c23;
+
+    @DictionaryScan(code = "TYPE")
+    private String c24;
+
+    private String c25;
+
+    private Long c26;
+
+    private Integer c27;
+
+    private BigDecimal c28;
+
+    @DictionaryScan(code = "REGION")
+    private String c29;
+
+    private String c30;
+
+    private Long c31;
+
+    private Integer c32;
+
+    private BigDecimal c33;
+
+    @DictionaryScan(code = "STATUS")
+    private String c34;
+
+    private String c35;
+
+    private Long c36;
+
+    private Integer c37;
+
+    private BigDecimal c38;
+
+    @DictionaryScan(code = "TYPE")
+    private String c39;
+
+    private String c40;
+
+    private Long c41;
+
+    private Integer c42;
+
+    private BigDecimal c43;
+
+    @DictionaryScan(code = "REGION")
+    private String c44;
+
+    private String c45;
+
+    private Long c46;
+
+    private Integer c47;
+
+    private BigDecimal c48;
+
+    @DictionaryScan(code = "STATUS")
+    private String c49;
+}
@@ -0,0 +1,119 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.handler.dictionary.IDictionaryReplace;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 单批次字典列替换的开销. 每次操作替换batchSize个单元格, 对比:
+ * <ul>
+ *   <li>replacePerCell: 逐单元格调用{@link IDictionaryReplace#replace(String, String)}</li>
+ *   <li>replaceBatch: 批次内去重后调用一次{@link IDictionaryReplace#replaceBatch}</li>
+ *   <li>dictionaryCache: 批次内去重后经{@link DictionaryCache}替换(缓存已预热)</li>
+ * </ul>
+ * lookupTokens模拟单次字典查询的开销, 0表示纯内存查找
+ *
+ * @author icefrog
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class DictionaryReplaceBenchmark {
+
+    private static final String CODE = "STATUS";
+
+    /***
+     * 单批次单元格数量
+     */
+    @Param({"1000"})
+    private int batchSize;
+
+    /***
+     * 字典的去重取值数量
+     */
+    @Param({"16", "4096"})
+    private int dictValues;
+
+    /***
+     * 单次字典查询消耗的CPU
+     */
+    @Param({"0", "500"})
+    private long lookupTokens;
+
+    private AnnotationConfigApplicationContext context;
+
+    private IDictionaryReplace dictionaryReplace;
+
+    private DictionaryCache dictionaryCache;
+
+    private List<String> cells;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticDictionary.setLookupTokens(lookupTokens);
+        context = BenchmarkData.context();
+        dictionaryReplace = context.getBean(IDictionaryReplace.class);
+        dictionaryCache = context.getBean(DictionaryCache.class);
+
+        Random random = new Random(BenchmarkData.SEED);
+        cells = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            cells.add(BenchmarkData.dictValue(random.nextInt(dictValues)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void replacePerCell(Blackhole blackhole) {
+        for (String cell : cells) {
+            blackhole.consume(dictionaryReplace.replace(CODE, cell));
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> replaceBatch() {
+        return dictionaryReplace.replaceBatch(CODE, distinct());
+    }
+
+    @Benchmark
+    public Map<String, String> dictionaryCache() {
+        return dictionaryCache.translate(CODE, distinct());
+    }
+
+    private Set<String> distinct() {
+        return new HashSet<>(cells);
+    }
+}
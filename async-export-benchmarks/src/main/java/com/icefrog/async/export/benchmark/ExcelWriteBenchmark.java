@@ -0,0 +1,111 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.icefrog.async.export.component.mapping.ColumnConf;
+import com.icefrog.async.export.util.ExcelUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 写出xlsx文件的耗时. 每次操作写出一个完整文件, 对比:
+ * <ul>
+ *   <li>dynamicHeadWrite: {@link ExcelUtil#dynamicHeadWrite}一次性写出全部数据</li>
+ *   <li>sessionAppend: {@link ExcelUtil#openDynamicHeadWriter}按appendSize分批追加</li>
+ * </ul>
+ * 单次耗时为秒级, 以SingleShotTime计量. 数据不含解析开销, 文件写入临时目录, 每次操作后删除
+ *
+ * @author icefrog
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ExcelWriteBenchmark {
+
+    /***
+     * 数据行数
+     */
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    /***
+     * 导出列数量
+     */
+    @Param({"5", "20"})
+    private int columns;
+
+    /***
+     * 分批追加的批次行数
+     */
+    @Param({"5000"})
+    private int appendSize;
+
+    private File dir;
+
+    private File file;
+
+    private List<List<String>> head;
+
+    private List<List<String>> data;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("export-benchmark").toFile();
+        file = new File(dir, "benchmark.xlsx");
+        ColumnConf columnConf = BenchmarkData.columnConf(columns);
+        head = columnConf.toExcelHead();
+        data = BenchmarkData.cells(rows, columns);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFile() {
+        FileUtil.del(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.del(dir);
+    }
+
+    @Benchmark
+    public long dynamicHeadWrite() {
+        ExcelUtil.dynamicHeadWrite(file.getAbsolutePath(), "sheet1", head, data);
+        return file.length();
+    }
+
+    @Benchmark
+    public long sessionAppend() {
+        ExcelUtil.ExcelWriteSession session = ExcelUtil.openDynamicHeadWriter(file.getAbsolutePath(), "sheet1", head);
+        try {
+            for (int from = 0; from < rows; from += appendSize) {
+                session.append(data.subList(from, Math.min(rows, from + appendSize)));
+            }
+        } finally {
+            session.close();
+        }
+        return file.length();
+    }
+}
@@ -0,0 +1,135 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.component.mapping.BatchRowMapper;
+import com.icefrog.async.export.component.mapping.ColumnConf;
+import com.icefrog.async.export.component.mapping.RowBatch;
+import com.icefrog.async.export.component.mapping.RowPlanCache;
+import com.icefrog.async.export.handler.dictionary.IDictionaryReplace;
+import com.icefrog.async.export.integration.annotation.DictionaryScan;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 单批次结果集解析(行 -> 单元格)的吞吐. 对比:
+ * <ul>
+ *   <li>reflection: 消费线程最初的实现, 逐单元格反射取值、扫描注解并调用字典替换</li>
+ *   <li>batchRowMapper: 当前实现, 按类型与column配置缓存编译后的解析计划, 输出复用的列式批次, 字典列按批次去重后经缓存替换</li>
+ * </ul>
+ * 每次操作解析batchSize行, 结果以ops/s计, 行吞吐 = score * batchSize
+ *
+ * @author icefrog
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RowMappingBenchmark {
+
+    /***
+     * 导出列数量
+     */
+    @Param({"5", "20", "50"})
+    private int columns;
+
+    /***
+     * 单批次行数. 与流式拉取的默认批次大小一致
+     */
+    @Param({"1000"})
+    private int batchSize;
+
+    /***
+     * 字典列的去重取值数量
+     */
+    @Param({"64"})
+    private int dictValues;
+
+    private AnnotationConfigApplicationContext context;
+
+    private IDictionaryReplace dictionaryReplace;
+
+    private ColumnConf columnConf;
+
+    private List<BaseResultSet> batch;
+
+    private BatchRowMapper batchRowMapper;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticDictionary.setLookupTokens(0);
+        context = BenchmarkData.context();
+        dictionaryReplace = context.getBean(IDictionaryReplace.class);
+        columnConf = BenchmarkData.columnConf(columns);
+        batch = BenchmarkData.rows(batchSize, dictValues);
+        batchRowMapper = new BatchRowMapper(columnConf, context.getBean(RowPlanCache.class),
+                context.getBean(DictionaryCache.class), "");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Map<String, String>> reflection() throws IllegalAccessException {
+
+        List<Map<String, String>> resultSet = new ArrayList<>(batch.size());
+        for (BaseResultSet baseResultSet : batch) {
+            Map<String, String> item = new LinkedHashMap<>();
+            for (String property : columnConf.getProperties()) {
+                Field field = ReflectUtil.getField(baseResultSet.getClass(), property);
+                ReflectUtil.setAccessible(field);
+
+                Object propertyVal = field.get(baseResultSet) == null ? "" : field.get(baseResultSet);
+
+                DictionaryScan annotation = field.getAnnotation(DictionaryScan.class);
+                if(annotation != null && annotation.scan()) {
+                    String code = annotation.code();
+                    if(StringUtils.isNotBlank(code)) {
+                        propertyVal = dictionaryReplace.replace(code, String.valueOf(propertyVal));
+                    }
+                }
+                item.put(property, String.valueOf(propertyVal));
+            }
+            resultSet.add(item);
+        }
+        return resultSet;
+    }
+
+    @Benchmark
+    public void batchRowMapper(Blackhole blackhole) {
+        List<List<String>> rows = batchRowMapper.map(batch);
+        blackhole.consume(rows);
+        // 与写入完成后一致, 释放后批次由下一次解析复用
+        RowBatch.release(rows);
+    }
+}
@@ -0,0 +1,59 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.benchmark;
+
+import com.icefrog.async.export.handler.dictionary.IDictionaryReplace;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * 基准测试使用的字典替换实现. 字典值为{@link BenchmarkData#dictValue(int)}, 替换结果为"code:label-下标".
+ * 每次替换额外消耗{@link #setLookupTokens(long)}指定的CPU, 用于模拟查询redis/db等外部字典的开销
+ *
+ * @author icefrog
+ */
+public class SyntheticDictionary implements IDictionaryReplace {
+
+    /***
+     * 每次替换消耗的CPU(Blackhole.consumeCPU的token数量). 0表示纯内存查找
+     */
+    private static volatile long lookupTokens;
+
+    private final Map<String, String> labels = new HashMap<>();
+
+    public SyntheticDictionary() {
+        for (int i = 0; i < BenchmarkData.MAX_DICT_VALUES; i++) {
+            labels.put(BenchmarkData.dictValue(i), "label-" + i);
+        }
+    }
+
+    public static void setLookupTokens(long tokens) {
+        lookupTokens = tokens;
+    }
+
+    @Override
+    public String replace(String code, String beforeValue) {
+        long tokens = lookupTokens;
+        if(tokens > 0) {
+            Blackhole.consumeCPU(tokens);
+        }
+        String label = labels.get(beforeValue);
+        return label == null ? beforeValue : code + ":" + label;
+    }
+}
@@ -19,6 +19,7 @@ package com.icefrog.async.export;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /***
  * Spring boot application
@@ -26,6 +27,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * @author icefrog
  */
 @SpringBootApplication
+@EnableScheduling
 @MapperScan("com.icefrog.async.export.dal.mapper")
 public class AsyncExportApplication {
 
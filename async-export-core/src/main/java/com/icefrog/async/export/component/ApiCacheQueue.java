@@ -16,28 +16,38 @@
 
 package com.icefrog.async.export.component;
 
+import com.icefrog.async.export.component.queue.MemoryPlanQueue;
+import com.icefrog.async.export.component.queue.PlanQueue;
 import com.icefrog.async.export.dto.ExportApiReqDto;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
+import java.io.IOException;
 import java.util.Collection;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /***
  * Api cache queue. 缓存前端导出计划信息到内存缓存中。 该内存缓存与数据库同步.
+ * 实际存储由{@link PlanQueue}实现, 默认为容量200的内存队列, 可通过{@link #install(PlanQueue)}替换为持久化队列
  *
+ * @see com.icefrog.async.export.component.queue.PlanQueueConfigurer
  * @author icefrog
  */
 public class ApiCacheQueue {
 
     /***
-     * INSTANCE_QUEUE of LinkedBlockingQueue. Default size:200
+     * 默认内存队列容量
+     */
+    private static final int DEFAULT_CAPACITY = 200;
+
+    /***
+     * INSTANCE_QUEUE of PlanQueue. Default: MemoryPlanQueue(200)
      *
-     * @see BlockingQueue
-     * @see LinkedBlockingQueue
+     * @see MemoryPlanQueue
      */
-    private static BlockingQueue<ExportApiReqDto> INSTANCE_QUEUE = new LinkedBlockingQueue<>(200);
+    private static volatile PlanQueue INSTANCE_QUEUE = new MemoryPlanQueue(DEFAULT_CAPACITY);
 
     /***
      * 非阻塞式入队, 区别于阻塞put。 当队列满, 则返回false（表示丢弃）. 否则返回true
@@ -57,12 +67,36 @@ public class ApiCacheQueue {
         return INSTANCE_QUEUE.take();
     }
 
+    /***
+     * 限时阻塞获取. 当队列为空时最多等待指定时间。 便于消费线程感知停机信号
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return ExportApiReqDto. 超时未获取到结果则返回null
+     * @throws InterruptedException
+     */
+    @Nullable
+    public static ExportApiReqDto poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return INSTANCE_QUEUE.poll(timeout, unit);
+    }
+
+    /***
+     * 当前队列中等待消费的计划数量
+     * @return 队列深度
+     */
+    public static int size() {
+        return INSTANCE_QUEUE.size();
+    }
+
     /***
      * 重新构建内存队列为空。 并指定初始化大小。
      * @param initSize 如果为null，则默认200. 否则初始化大小为指定
      */
     public synchronized static void reconstruction(@Nullable Integer initSize) {
-        INSTANCE_QUEUE = new LinkedBlockingQueue<>(initSize == null ? 200 : initSize);
+        if(INSTANCE_QUEUE instanceof MemoryPlanQueue) {
+            INSTANCE_QUEUE = new MemoryPlanQueue(initSize == null ? DEFAULT_CAPACITY : initSize);
+        } else {
+            INSTANCE_QUEUE.reset(Collections.emptyList());
+        }
     }
 
     /***
@@ -70,6 +104,35 @@ public class ApiCacheQueue {
      * @param initCollection 需要初始化的列表内容
      */
     public synchronized static void reconstruction(@NonNull Collection<ExportApiReqDto> initCollection) {
-        INSTANCE_QUEUE = new LinkedBlockingQueue<>(initCollection);
+        INSTANCE_QUEUE.reset(initCollection);
+    }
+
+    /***
+     * 启动恢复队列. 持久化队列保留重启前未消费的计划, 不会重复写入其中已存在的计划
+     * @param reclaimed 数据库中收回的计划
+     * @return 恢复后队列中的计划
+     * @see PlanQueue#restore(Collection)
+     */
+    public synchronized static List<ExportApiReqDto> restore(@NonNull Collection<ExportApiReqDto> reclaimed) {
+        return INSTANCE_QUEUE.restore(reclaimed);
+    }
+
+    /***
+     * 替换队列存储实现. 应在应用启动阶段、队列开始使用前调用
+     * @param planQueue 队列存储实现
+     * @throws IOException 关闭原队列时可能的IO异常
+     */
+    public synchronized static void install(@NonNull PlanQueue planQueue) throws IOException {
+        PlanQueue previous = INSTANCE_QUEUE;
+        INSTANCE_QUEUE = planQueue;
+        previous.close();
+    }
+
+    /***
+     * 关闭当前队列存储实现, 释放其占用的资源
+     * @throws IOException IOException
+     */
+    public synchronized static void close() throws IOException {
+        INSTANCE_QUEUE.close();
     }
 }
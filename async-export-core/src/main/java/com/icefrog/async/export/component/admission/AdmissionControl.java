@@ -0,0 +1,170 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.admission;
+
+import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.cluster.PlanClaimer;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.scheduler.FairShareScheduler;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * 导出请求准入控制. 根据队列深度与队列中的预估工作量(行数)决定接受、延迟或拒绝新的导出计划
+ * <pre>
+ * 队列深度 < deferQueueDepth 且 预估工作量 < maxQueuedRows     -> ACCEPTED 入库(待执行)并入队
+ * 否则, 延迟计划数量 < maxDeferred                            -> DEFERRED 入库(延迟执行), 由PlanClaimer在队列空闲后认领入队
+ * 否则                                                      -> REJECTED 不入库, 客户端在retryAfterSeconds秒后重试
+ * </pre>
+ *
+ * @see PlanClaimer
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    @Resource
+    private WorkloadEstimator workloadEstimator;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private FairShareScheduler fairShareScheduler;
+
+    /***
+     * 队列深度达到该值后新的计划将被延迟
+     */
+    @Value("${export.admission.deferQueueDepth:150}")
+    private int deferQueueDepth;
+
+    /***
+     * 队列中预估行数合计达到该值后新的计划将被延迟
+     */
+    @Value("${export.admission.maxQueuedRows:5000000}")
+    private long maxQueuedRows;
+
+    /***
+     * 延迟计划数量达到该值后新的计划将被拒绝
+     */
+    @Value("${export.admission.maxDeferred:10000}")
+    private int maxDeferred;
+
+    /***
+     * 拒绝时建议客户端重试的等待时间(秒)
+     */
+    @Value("${export.admission.retryAfterSeconds:30}")
+    private int retryAfterSeconds;
+
+    /***
+     * 当前延迟计划数量. 延迟时递增, 由补偿任务定期与数据库校准
+     */
+    private final AtomicInteger deferredCount = new AtomicInteger(-1);
+
+    /***
+     * 判定新的导出计划的准入结果
+     * @param plan 导出计划
+     * @return 准入结果
+     */
+    public AdmissionDecision admit(ExportApiReqDto plan) {
+
+        if(hasCapacity(workloadEstimator.estimateRows(plan))) {
+            return AdmissionDecision.ACCEPTED;
+        }
+        if(deferredCount() < maxDeferred) {
+            return AdmissionDecision.DEFERRED;
+        }
+        return AdmissionDecision.REJECTED;
+    }
+
+    /***
+     * 队列是否可以再接受一个预估行数为estimatedRows的计划. 队列为空时总是可以接受. 调度器已预取的计划计入队列深度
+     * @param estimatedRows 预估行数
+     * @return 是否有空闲容量
+     */
+    public boolean hasCapacity(long estimatedRows) {
+        int depth = ApiCacheQueue.size() + fairShareScheduler.size();
+        if(depth == 0) {
+            return true;
+        }
+        return depth < deferQueueDepth && workloadEstimator.getQueuedRows() + estimatedRows <= maxQueuedRows;
+    }
+
+    /***
+     * 已入库且由本节点持有租约的计划入队. 入队失败(队列已满)时将计划状态改为延迟执行
+     * @param plan 导出计划
+     * @return 是否入队成功
+     */
+    public boolean enqueue(ExportApiReqDto plan) {
+
+        workloadEstimator.onEnqueued(plan);
+        plan.setEnqueuedAt(System.currentTimeMillis());
+        if(ApiCacheQueue.offer(plan)) {
+            return true;
+        }
+
+        workloadEstimator.onDequeued(plan);
+        // 放弃租约, 延迟执行的计划可由任意节点认领
+        if(planLeaseManager.abandon(plan.getPlanId(), PlanStatus.DEFERRED)) {
+            onDeferred();
+        }
+        log.warn("导出计划队列已满, 计划转为延迟执行. planId:{}", plan.getPlanId());
+        return false;
+    }
+
+    /***
+     * 记录新增一个延迟计划
+     */
+    public void onDeferred() {
+        deferredCount.incrementAndGet();
+    }
+
+    /***
+     * 以数据库中的延迟计划数量校准计数
+     * @param count 数据库中的延迟计划数量
+     */
+    public void calibrateDeferred(int count) {
+        deferredCount.set(count);
+    }
+
+    /***
+     * @return 拒绝时建议客户端重试的等待时间(秒)
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    private int deferredCount() {
+        int count = deferredCount.get();
+        if(count < 0) {
+            count = sysExportPlanMapper.countPlanWithStatus(PlanStatus.DEFERRED.getValue());
+            deferredCount.compareAndSet(-1, count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.admission;
+
+import lombok.Getter;
+
+/***
+ * 导出请求准入结果
+ *
+ * @author icefrog
+ */
+@Getter
+public enum AdmissionDecision {
+
+    /***
+     * 已接受. 计划已入库并进入执行队列
+     */
+    ACCEPTED("已接受, 等待执行"),
+
+    /***
+     * 已延迟. 计划已入库, 队列空闲后自动进入执行队列
+     */
+    DEFERRED("系统繁忙, 已延迟执行"),
+
+    /***
+     * 已拒绝. 计划未入库, 客户端应在retryAfterSeconds秒后重试
+     */
+    REJECTED("系统繁忙, 请稍后重试"),
+
+    /***
+     * 已复用. 近期已完成相同的导出, 计划直接以其结果完成
+     */
+    REUSED("已完成, 复用近期相同导出的结果"),
+
+    /***
+     * 已合并. 相同的导出正在执行, 计划等待其结果完成
+     */
+    COALESCED("相同导出执行中, 已合并等待其结果");
+
+    /***
+     * 描述
+     */
+    private String desc;
+
+    AdmissionDecision(String desc) {
+        this.desc = desc;
+    }
+}
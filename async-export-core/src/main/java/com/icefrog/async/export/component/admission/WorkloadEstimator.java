@@ -0,0 +1,269 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.admission;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import com.icefrog.async.export.util.RequestParamsUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * 导出工作量估算. 按beanId(及可选的请求参数签名)维护历史导出行数与执行耗时的指数加权移动平均, 并累计队列中计划的预估行数.
+ * 启动时以数据库中最近完成的计划的line_count初始化行数估算; 耗时仅由本节点实际执行记录, 无耗时数据时按全局每行耗时折算
+ *
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class WorkloadEstimator implements InitializingBean {
+
+    /***
+     * 指数加权移动平均的权重. 越大越偏向最近一次的行数
+     */
+    private static final double ALPHA = 0.3D;
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    /***
+     * 无历史数据时的预估行数
+     */
+    @Value("${export.admission.defaultEstimatedRows:10000}")
+    private long defaultEstimatedRows;
+
+    /***
+     * 是否按请求参数签名(beanId + 规范化的requestParams)单独估算. 相同参数反复导出时估算更准确
+     */
+    @Value("${export.estimator.paramSignature:true}")
+    private boolean paramSignature;
+
+    /***
+     * 按请求参数签名估算时保留的最大签名数量
+     */
+    @Value("${export.estimator.maxSignatures:10000}")
+    private long maxSignatures;
+
+    /***
+     * 启动时用于初始化估算的历史计划数量. 0表示不初始化
+     */
+    @Value("${export.estimator.seedPlans:1000}")
+    private int seedPlans;
+
+    /***
+     * 无耗时数据时的每行耗时(毫秒)
+     */
+    @Value("${export.estimator.defaultMillisPerRow:0.05}")
+    private double defaultMillisPerRow;
+
+    /***
+     * key: beanId
+     */
+    private final ConcurrentMap<String, Estimate> beanEstimates = new ConcurrentHashMap<>();
+
+    /***
+     * key: 请求参数签名
+     */
+    private Cache<String, Estimate> signatureEstimates;
+
+    /***
+     * 全局每行耗时(毫秒)的移动平均
+     */
+    private volatile double millisPerRow = -1;
+
+    /***
+     * 队列中计划的预估行数合计
+     */
+    private final AtomicLong queuedRows = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        signatureEstimates = CacheBuilder.newBuilder().maximumSize(maxSignatures).build();
+    }
+
+    /***
+     * 以数据库中最近完成的计划初始化行数估算. 失败时仅记录日志, 估算从默认值开始
+     */
+    public void seed() {
+        if(seedPlans <= 0) {
+            return;
+        }
+        try {
+            List<SysExportPlan> plans = sysExportPlanMapper.queryRecentPlansWithLineCount(PlanStatus.SUCCESS.getValue(), seedPlans);
+            // 按时间正序回放, 使移动平均偏向最近的计划
+            for (int i = plans.size() - 1; i >= 0; i--) {
+                SysExportPlan plan = plans.get(i);
+                if(plan.getBeanId() != null) {
+                    update(plan.getBeanId(), plan.getRequestParams(), plan.getLineCount(), -1);
+                }
+            }
+            log.info("以{}个历史计划初始化导出工作量估算, beanId数量:{}", plans.size(), beanEstimates.size());
+        } catch (Exception ex) {
+            log.warn("以历史计划初始化导出工作量估算失败. {}", ex.getMessage());
+        }
+    }
+
+    /***
+     * @param beanId Spring bean id
+     * @return 该beanId单次导出的预估行数
+     */
+    public long estimateRows(String beanId) {
+        Estimate estimate = beanId == null ? null : beanEstimates.get(beanId);
+        return estimate == null ? defaultEstimatedRows : Math.round(estimate.rows);
+    }
+
+    /***
+     * @param plan 导出计划
+     * @return 该计划的预估行数. 优先取相同请求参数的历史数据
+     */
+    public long estimateRows(ExportApiReqDto plan) {
+        Estimate estimate = signatureEstimate(plan);
+        return estimate != null ? Math.round(estimate.rows) : estimateRows(plan.getBeanId());
+    }
+
+    /***
+     * @param plan 导出计划
+     * @return 该计划的预估执行耗时(毫秒). 优先取相同请求参数、其次相同beanId的历史耗时, 否则按预估行数折算
+     */
+    public long estimateMillis(ExportApiReqDto plan) {
+        Estimate estimate = signatureEstimate(plan);
+        if(estimate == null || estimate.millis < 0) {
+            estimate = plan.getBeanId() == null ? null : beanEstimates.get(plan.getBeanId());
+        }
+        if(estimate != null && estimate.millis >= 0) {
+            return Math.round(estimate.millis);
+        }
+        long rows = plan.getEstimatedRows() != null ? plan.getEstimatedRows() : estimateRows(plan);
+        return Math.round(rows * (millisPerRow >= 0 ? millisPerRow : defaultMillisPerRow));
+    }
+
+    /***
+     * 记录一次导出完成的实际行数与执行耗时
+     * @param plan 导出计划
+     * @param rows 实际导出行数
+     * @param millis 执行耗时(毫秒)
+     */
+    public void record(ExportApiReqDto plan, long rows, long millis) {
+        if(plan.getBeanId() == null) {
+            return;
+        }
+        update(plan.getBeanId(), plan.getRequestParams(), rows, millis);
+        if(rows > 0) {
+            double current = (double) millis / rows;
+            double previous = millisPerRow;
+            millisPerRow = previous < 0 ? current : previous + ALPHA * (current - previous);
+        }
+    }
+
+    /***
+     * 计划进入队列. 记录预估行数并计入队列工作量
+     * @param plan 导出计划
+     */
+    public void onEnqueued(ExportApiReqDto plan) {
+        if(plan.getEstimatedRows() == null) {
+            plan.setEstimatedRows(estimateRows(plan));
+        }
+        queuedRows.addAndGet(plan.getEstimatedRows());
+    }
+
+    /***
+     * 计划离开队列(开始执行或入队失败). 从队列工作量中扣除
+     * @param plan 导出计划
+     */
+    public void onDequeued(ExportApiReqDto plan) {
+        if(plan.getEstimatedRows() != null) {
+            queuedRows.addAndGet(-plan.getEstimatedRows());
+        }
+    }
+
+    /***
+     * @return 队列中计划的预估行数合计
+     */
+    public long getQueuedRows() {
+        return Math.max(0, queuedRows.get());
+    }
+
+    /***
+     * @return 估算统计(各beanId的平均行数与耗时、全局每行耗时、参数签名数量)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> beans = new TreeMap<>();
+        beanEstimates.forEach((beanId, estimate) -> {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("rows", Math.round(estimate.rows));
+            data.put("millis", estimate.millis < 0 ? null : Math.round(estimate.millis));
+            beans.put(beanId, data);
+        });
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("millisPerRow", millisPerRow < 0 ? null : millisPerRow);
+        data.put("signatures", signatureEstimates.size());
+        data.put("queuedRows", getQueuedRows());
+        data.put("beans", beans);
+        return data;
+    }
+
+    @Nullable
+    private Estimate signatureEstimate(ExportApiReqDto plan) {
+        if(!paramSignature || plan.getBeanId() == null) {
+            return null;
+        }
+        return signatureEstimates.getIfPresent(RequestParamsUtil.signature(plan.getBeanId(), plan.getRequestParams()));
+    }
+
+    private void update(String beanId, String requestParams, long rows, long millis) {
+        beanEstimates.merge(beanId, new Estimate(rows, millis), Estimate::merge);
+        if(paramSignature) {
+            signatureEstimates.asMap().merge(RequestParamsUtil.signature(beanId, requestParams), new Estimate(rows, millis), Estimate::merge);
+        }
+    }
+
+    /***
+     * 行数与耗时的移动平均. 耗时小于0表示尚无耗时数据
+     */
+    private static final class Estimate {
+
+        private final double rows;
+
+        private final double millis;
+
+        private Estimate(double rows, double millis) {
+            this.rows = rows;
+            this.millis = millis;
+        }
+
+        private Estimate merge(Estimate current) {
+            double mergedMillis = current.millis < 0 ? millis : millis < 0 ? current.millis : millis + ALPHA * (current.millis - millis);
+            return new Estimate(rows + ALPHA * (current.rows - rows), mergedMillis);
+        }
+    }
+}
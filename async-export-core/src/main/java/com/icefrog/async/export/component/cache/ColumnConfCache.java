@@ -0,0 +1,213 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.icefrog.async.export.component.mapping.ColumnConf;
+import com.icefrog.async.export.dal.entity.SysExportConf;
+import com.icefrog.async.export.dal.mapper.SysExportConfMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * 导出column配置缓存. key: beanId. value: 解析后的column配置.
+ * 容量有限并按写入时间过期, 配置变更时通过本类的update方法或管理接口主动失效. 同一beanId的并发未命中只查询一次数据库.
+ * 缓存仅在当前节点生效, 多节点部署时其他节点最迟在过期时间后读取到新配置
+ *
+ * @see SysExportConfMapper
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class ColumnConfCache implements InitializingBean {
+
+    @Resource
+    private SysExportConfMapper sysExportConfMapper;
+
+    /***
+     * 缓存最大beanId数量
+     */
+    @Value("${export.confCache.maximumSize:512}")
+    private long maximumSize;
+
+    /***
+     * 缓存写入后的过期时间(秒)
+     */
+    @Value("${export.confCache.expireSeconds:600}")
+    private long expireSeconds;
+
+    private LoadingCache<String, ColumnConf> cache;
+
+    /***
+     * 失效次数. 加载期间发生失效时, 加载结果可能早于配置变更, 需重新加载
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        cache = CacheBuilder.newBuilder()
+                            .maximumSize(maximumSize)
+                            .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                            .recordStats()
+                            .build(new CacheLoader<String, ColumnConf>() {
+                                @Override
+                                public ColumnConf load(String beanId) {
+                                    return loadColumnConf(beanId);
+                                }
+                            });
+    }
+
+    /***
+     * 获取beanId对应的column配置. 缓存未命中时查询数据库并解析
+     *
+     * @param beanId Spring bean id
+     * @return column配置. 数据库中不存在或未配置column json时返回null(不缓存)
+     */
+    @Nullable
+    public ColumnConf get(String beanId) {
+
+        long epoch = invalidations.get();
+        ColumnConf columnConf = load(beanId);
+        if(columnConf != null && invalidations.get() != epoch) {
+            // 加载期间配置已变更(Guava不会失效加载中的条目), 丢弃可能过期的结果
+            cache.invalidate(beanId);
+            columnConf = load(beanId);
+        }
+        return columnConf;
+    }
+
+    @Nullable
+    private ColumnConf load(String beanId) {
+        try {
+            return cache.getUnchecked(beanId);
+        } catch (CacheLoader.InvalidCacheLoadException ex) {
+            // 配置不存在, 不缓存
+            return null;
+        } catch (UncheckedExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+    }
+
+    /***
+     * 查询数据库并解析column配置
+     *
+     * @return column配置. 数据库中不存在或未配置column json时返回null
+     */
+    @Nullable
+    private ColumnConf loadColumnConf(String beanId) {
+
+        SysExportConf sysExportConf = sysExportConfMapper.queryColumnConfWithBeanId(beanId);
+        if(sysExportConf == null) {
+            log.error("beanId:{}无法从数据库检索到对应的column conf", beanId);
+            return null;
+        }
+
+        String columnConfJson = sysExportConf.getColumnConfJson();
+        if(StringUtils.isBlank(columnConfJson)) {
+            log.error("beanId:{} 的 column config json未配置", beanId);
+            return null;
+        }
+
+        return ColumnConf.parse(beanId, columnConfJson, sysExportConf.getFileFormat(),
+                sysExportConf.getTimeoutSeconds());
+    }
+
+    /***
+     * 失效指定beanId的缓存
+     * @param beanId Spring bean id
+     */
+    public void invalidate(String beanId) {
+        if(beanId != null) {
+            invalidations.incrementAndGet();
+            cache.invalidate(beanId);
+        }
+    }
+
+    /***
+     * 失效全部缓存
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /***
+     * 更新column配置(全字段)并失效相关缓存
+     *
+     * @param record 待更新的配置
+     * @return 更新结果
+     */
+    public boolean updateByPrimaryKey(SysExportConf record) {
+        SysExportConf before = sysExportConfMapper.selectByPrimaryKey(record.getId());
+        try {
+            return sysExportConfMapper.updateByPrimaryKey(record) > 0;
+        } finally {
+            invalidate(before, record);
+        }
+    }
+
+    /***
+     * 更新column配置(非空字段)并失效相关缓存
+     *
+     * @param record 待更新的配置
+     * @return 更新结果
+     */
+    public boolean updateByPrimaryKeySelective(SysExportConf record) {
+        SysExportConf before = sysExportConfMapper.selectByPrimaryKey(record.getId());
+        try {
+            return sysExportConfMapper.updateByPrimaryKeySelective(record) > 0;
+        } finally {
+            invalidate(before, record);
+        }
+    }
+
+    /***
+     * @return 缓存命中统计
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /***
+     * @return 当前缓存的beanId数量
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /***
+     * 更新可能修改beanId, 新旧beanId的缓存均需失效
+     */
+    private void invalidate(@Nullable SysExportConf before, SysExportConf after) {
+        if(before != null) {
+            invalidate(before.getBeanId());
+        }
+        invalidate(after.getBeanId());
+    }
+}
@@ -0,0 +1,158 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.icefrog.async.export.handler.dictionary.IDictionaryReplace;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 字典值替换近端缓存. key: (字典code, 替换前的值). value: 替换后的值.
+ * 未命中的值按code分组后通过{@link IDictionaryReplace#replaceBatch(String, Collection)}批量加载, 容量有限并按写入时间过期
+ *
+ * @see IDictionaryReplace
+ * @author icefrog
+ */
+@Component
+public class DictionaryCache implements InitializingBean {
+
+    @Resource
+    private IDictionaryReplace dictionaryReplace;
+
+    /***
+     * 缓存最大条目数量. 每个(code, 值)组合占用一个条目
+     */
+    @Value("${export.dictCache.maximumSize:100000}")
+    private long maximumSize;
+
+    /***
+     * 缓存写入后的过期时间(秒)
+     */
+    @Value("${export.dictCache.expireSeconds:300}")
+    private long expireSeconds;
+
+    private LoadingCache<DictKey, String> cache;
+
+    @Override
+    public void afterPropertiesSet() {
+        cache = CacheBuilder.newBuilder()
+                            .maximumSize(maximumSize)
+                            .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                            .recordStats()
+                            .build(new DictLoader());
+    }
+
+    /***
+     * 批量替换同一字典code下的值
+     *
+     * @param code 字典值字段
+     * @param beforeValues 替换前的字典值(已去重)
+     * @return key: 替换前的字典值. value: 替换后的结果
+     */
+    public Map<String, String> translate(String code, Collection<String> beforeValues) {
+
+        List<DictKey> keys = new ArrayList<>(beforeValues.size());
+        for (String beforeValue : beforeValues) {
+            keys.add(new DictKey(code, beforeValue));
+        }
+
+        try {
+            Map<DictKey, String> loaded = cache.getAll(keys);
+            Map<String, String> result = new HashMap<>(loaded.size() * 2);
+            for (Map.Entry<DictKey, String> entry : loaded.entrySet()) {
+                result.put(entry.getKey().value, entry.getValue());
+            }
+            return result;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("字典值替换失败. code:" + code + ", " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /***
+     * 失效全部缓存
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /***
+     * @return 缓存命中统计
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /***
+     * @return 当前缓存条目数量
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /***
+     * 字典值加载器. 批量加载时按code分组, 每个code调用一次replaceBatch.
+     * 替换结果为null时缓存字符串"null", 与逐个替换时String.valueOf的输出一致
+     */
+    private class DictLoader extends CacheLoader<DictKey, String> {
+
+        @Override
+        public String load(DictKey key) {
+            return String.valueOf(dictionaryReplace.replace(key.code, key.value));
+        }
+
+        @Override
+        public Map<DictKey, String> loadAll(Iterable<? extends DictKey> keys) {
+
+            Map<String, Set<String>> grouped = new HashMap<>();
+            for (DictKey key : keys) {
+                grouped.computeIfAbsent(key.code, k -> new HashSet<>()).add(key.value);
+            }
+
+            Map<DictKey, String> result = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : grouped.entrySet()) {
+                String code = entry.getKey();
+                Map<String, String> replaced = dictionaryReplace.replaceBatch(code, entry.getValue());
+                for (String value : entry.getValue()) {
+                    result.put(new DictKey(code, value), String.valueOf(replaced.get(value)));
+                }
+            }
+            return result;
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class DictKey {
+
+        private final String code;
+
+        private final String value;
+    }
+}
@@ -0,0 +1,396 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.icefrog.async.export.component.admission.AdmissionDecision;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.mapping.ColumnConf;
+import com.icefrog.async.export.component.writer.OutputFormatRegistry;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import com.icefrog.async.export.util.RequestParamsUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * 导出结果复用缓存. key: (beanId, 规范化后的requestParams, column配置版本, 导出格式[, userId]).
+ * 近期已完成的相同导出直接以其下载地址完成新计划, 不再重新查询与生成文件; 相同导出执行中时, 新计划合并到正在执行的计划上,
+ * 由其完成时一并回写. 合并等待的计划由本节点持有租约, 节点宕机后租约过期, 计划由认领任务重新执行.
+ * 被合并的计划执行失败时, 等待中的计划转为延迟执行, 各自独立重新执行.
+ * 缓存仅在当前节点生效, 默认关闭
+ *
+ * @see ColumnConfCache
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class ResultReuseCache implements InitializingBean {
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private ColumnConfCache columnConfCache;
+
+    @Resource
+    private OutputFormatRegistry outputFormatRegistry;
+
+    /***
+     * 是否启用结果复用
+     */
+    @Value("${export.reuse.enabled:false}")
+    private boolean enabled;
+
+    /***
+     * 已完成结果的复用有效期(秒). 不应超过文件下载地址的有效期
+     */
+    @Value("${export.reuse.ttlSeconds:600}")
+    private long ttlSeconds;
+
+    /***
+     * 缓存的已完成结果最大数量
+     */
+    @Value("${export.reuse.maximumSize:1024}")
+    private long maximumSize;
+
+    /***
+     * 是否在不同用户间复用结果. 导出数据与用户权限相关时必须为false
+     */
+    @Value("${export.reuse.shareAcrossUsers:false}")
+    private boolean shareAcrossUsers;
+
+    /***
+     * 规范化requestParams时忽略的顶层参数(如时间戳、随机数), 多个以','分隔
+     */
+    @Value("${export.reuse.ignoredParams:}")
+    private String ignoredParams;
+
+    private Set<String> ignoredParamSet;
+
+    /***
+     * 近期已完成的结果
+     */
+    private Cache<String, Result> completed;
+
+    /***
+     * 执行中的计划. key: 复用key
+     */
+    private final Map<String, InFlight> inFlightByKey = new ConcurrentHashMap<>();
+
+    /***
+     * 执行中的计划. key: planId
+     */
+    private final Map<String, InFlight> inFlightByPlan = new ConcurrentHashMap<>();
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder savedRows = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        completed = CacheBuilder.newBuilder()
+                                .maximumSize(maximumSize)
+                                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                                .build();
+        ignoredParamSet = new HashSet<>();
+        for (String param : StringUtils.split(StringUtils.defaultString(ignoredParams), ',')) {
+            if(StringUtils.isNotBlank(param)) {
+                ignoredParamSet.add(param.trim());
+            }
+        }
+    }
+
+    /***
+     * @return 是否启用结果复用
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /***
+     * 计算请求的复用key
+     *
+     * @param request 导出请求
+     * @return 复用key. 未启用或column配置不存在时返回null
+     */
+    @Nullable
+    public String keyOf(ExportApiReqDto request) {
+
+        if(!enabled || StringUtils.isBlank(request.getBeanId())) {
+            return null;
+        }
+        ColumnConf columnConf = columnConfCache.get(request.getBeanId());
+        if(columnConf == null) {
+            return null;
+        }
+        String format = outputFormatRegistry.resolve(request.getFileFormat(), columnConf.getFileFormat()).name();
+        String user = shareAcrossUsers ? "" : String.valueOf(request.getUserId());
+        return RequestParamsUtil.hash(request.getBeanId(), columnConf.getVersion(), format, user,
+                RequestParamsUtil.normalize(request.getRequestParams(), ignoredParamSet));
+    }
+
+    /***
+     * 尝试复用已完成或执行中的相同导出. 复用成功时计划已入库(已完成或合并等待), 调用方无需再执行
+     *
+     * @param key 复用key
+     * @param plan 待入库的新计划
+     * @return REUSED或COALESCED. 无法复用时返回null, 调用方按正常流程执行并在入队前调用{@link #lead(String, String)}
+     */
+    @Nullable
+    public AdmissionDecision reuse(String key, SysExportPlan plan) {
+
+        requestCount.increment();
+
+        Result result = completed.getIfPresent(key);
+        if(result != null) {
+            plan.setPlanStatus(PlanStatus.SUCCESS.getValue());
+            plan.setUrl(result.url);
+            plan.setLineCount(result.lineCount);
+            plan.setTmSuccess(new Date());
+            if(sysExportPlanMapper.insert(plan) < 1) {
+                return null;
+            }
+            hitCount.increment();
+            savedRows.add(result.lineCount);
+            log.info("导出计划{}复用计划{}的结果", plan.getId(), result.planId);
+            return AdmissionDecision.REUSED;
+        }
+
+        InFlight inFlight = inFlightByKey.get(key);
+        if(inFlight == null) {
+            return null;
+        }
+        synchronized (inFlight) {
+            // 加锁后确认仍在执行, 避免在其完成回写之后加入
+            if(inFlight.done) {
+                return null;
+            }
+            plan.setPlanStatus(PlanStatus.PENDING.getValue());
+            plan.setOwnerNode(planLeaseManager.getNodeId());
+            plan.setLeaseExpire(planLeaseManager.nextLeaseExpire());
+            if(sysExportPlanMapper.insert(plan) < 1) {
+                return null;
+            }
+            planLeaseManager.hold(plan.getId());
+            inFlight.followers.add(plan.getId());
+        }
+        coalescedCount.increment();
+        log.info("导出计划{}合并到执行中的计划{}", plan.getId(), inFlight.planId);
+        return AdmissionDecision.COALESCED;
+    }
+
+    /***
+     * 登记由本节点执行的计划, 后续相同的导出可合并到该计划上. 必须在计划入队之前调用,
+     * 否则计划可能先于登记完成, 登记后无人结束; 入队失败时调用{@link #fail(ExportApiReqDto)}撤销登记
+     *
+     * @param key 复用key
+     * @param planId 计划ID
+     */
+    public void lead(String key, String planId) {
+        InFlight inFlight = new InFlight(key, planId);
+        if(inFlightByKey.putIfAbsent(key, inFlight) == null) {
+            inFlightByPlan.put(planId, inFlight);
+        }
+    }
+
+    /***
+     * 计划执行成功. 缓存结果并完成合并等待的计划
+     *
+     * @param plan 已完成的计划
+     * @param url 文件访问地址
+     * @param lineCount 数据行数
+     */
+    public void complete(ExportApiReqDto plan, String url, long lineCount) {
+
+        if(!enabled) {
+            return;
+        }
+        InFlight inFlight = inFlightByPlan.remove(plan.getPlanId());
+        String key = inFlight != null ? inFlight.key : keyOf(plan);
+        if(key != null) {
+            completed.put(key, new Result(plan.getPlanId(), url, lineCount));
+        }
+        for (String followerId : finish(inFlight)) {
+            try {
+                SysExportPlan follower = new SysExportPlan();
+                follower.setId(followerId);
+                follower.setUrl(url);
+                follower.setLineCount(lineCount);
+                follower.setPlanStatus(PlanStatus.SUCCESS.getValue());
+                follower.setTmSuccess(new Date());
+                // CAS: 已取消或已被其他节点接管的合并计划不回写
+                if(sysExportPlanMapper.finishPlan(follower, Collections.singletonList(PlanStatus.PENDING.getValue()),
+                        planLeaseManager.getNodeId()) > 0) {
+                    savedRows.add(lineCount);
+                }
+            } catch (Exception ex) {
+                log.error("回写合并计划{}失败, 租约过期后将重新执行. {}", followerId, ex.getMessage(), ex);
+                continue;
+            }
+            planLeaseManager.release(followerId);
+        }
+    }
+
+    /***
+     * 计划执行失败. 合并等待的计划转为延迟执行, 由认领任务重新执行
+     *
+     * @param plan 失败的计划
+     */
+    public void fail(ExportApiReqDto plan) {
+        fail(plan.getPlanId());
+    }
+
+    /***
+     * 计划执行失败或在执行前被取消. 合并等待的计划转为延迟执行, 由认领任务重新执行. 非本节点执行的计划无需处理
+     *
+     * @param planId 计划ID
+     */
+    public void fail(String planId) {
+
+        InFlight inFlight = inFlightByPlan.remove(planId);
+        for (String followerId : finish(inFlight)) {
+            try {
+                planLeaseManager.abandon(followerId, PlanStatus.DEFERRED);
+            } catch (Exception ex) {
+                log.error("合并计划{}转为延迟执行失败, 租约过期后将重新执行. {}", followerId, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /***
+     * 取消合并等待的计划. 被合并的计划完成或失败时不再回写该计划
+     *
+     * @param planId 合并等待的计划ID
+     * @return 是否为合并等待的计划
+     */
+    public boolean cancel(String planId) {
+        for (InFlight inFlight : inFlightByKey.values()) {
+            synchronized (inFlight) {
+                if(inFlight.followers.remove(planId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /***
+     * 失效全部已完成的结果
+     */
+    public void invalidateAll() {
+        completed.invalidateAll();
+    }
+
+    /***
+     * @return 复用统计
+     */
+    public Map<String, Object> stats() {
+        long requests = requestCount.sum();
+        long hits = hitCount.sum();
+        long coalesced = coalescedCount.sum();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("enabled", enabled);
+        data.put("size", completed.size());
+        data.put("inFlight", inFlightByKey.size());
+        data.put("requestCount", requests);
+        data.put("hitCount", hits);
+        data.put("coalescedCount", coalesced);
+        data.put("hitRate", requests == 0 ? 0D : (double) (hits + coalesced) / requests);
+        data.put("savedRows", savedRows.sum());
+        return data;
+    }
+
+    /***
+     * 标记执行结束, 此后不再接受合并
+     * @return 合并等待的计划ID
+     */
+    private List<String> finish(@Nullable InFlight inFlight) {
+        if(inFlight == null) {
+            return new ArrayList<>();
+        }
+        inFlightByKey.remove(inFlight.key, inFlight);
+        synchronized (inFlight) {
+            inFlight.done = true;
+            return new ArrayList<>(inFlight.followers);
+        }
+    }
+
+    /***
+     * 已完成的结果
+     */
+    private static final class Result {
+
+        private final String planId;
+
+        private final String url;
+
+        private final long lineCount;
+
+        private Result(String planId, String url, long lineCount) {
+            this.planId = planId;
+            this.url = url;
+            this.lineCount = lineCount;
+        }
+    }
+
+    /***
+     * 执行中的计划及合并等待的计划
+     */
+    private static final class InFlight {
+
+        private final String key;
+
+        private final String planId;
+
+        private final List<String> followers = new ArrayList<>();
+
+        private boolean done;
+
+        private InFlight(String key, String planId) {
+            this.key = key;
+            this.planId = planId;
+        }
+    }
+}
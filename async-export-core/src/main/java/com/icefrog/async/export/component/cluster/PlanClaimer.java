@@ -0,0 +1,128 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.cluster;
+
+import com.icefrog.async.export.component.admission.AdmissionControl;
+import com.icefrog.async.export.component.admission.WorkloadEstimator;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import com.icefrog.async.export.mapstruct.ExportApiReqMapStruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/***
+ * 导出计划认领任务. 定期在本节点队列有空闲容量时, 按提交时间顺序批量认领数据库中可执行的计划并入队:
+ * 无归属或租约已过期(原节点宕机)的待执行计划, 以及延迟执行的计划. 认领基于状态与租约的CAS, 多节点间不会重复执行
+ *
+ * @see PlanLeaseManager
+ * @see AdmissionControl
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class PlanClaimer {
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private AdmissionControl admissionControl;
+
+    @Resource
+    private WorkloadEstimator workloadEstimator;
+
+    /***
+     * 单次从数据库读取的候选计划数量
+     */
+    @Value("${export.cluster.claimBatchSize:50}")
+    private int claimBatchSize;
+
+    @Scheduled(initialDelayString = "${export.cluster.claimIntervalMillis:5000}",
+               fixedDelayString = "${export.cluster.claimIntervalMillis:5000}")
+    public void scheduledClaim() {
+        try {
+            int claimed = claim();
+            if(claimed > 0) {
+                log.info("节点{}认领导出计划{}个", planLeaseManager.getNodeId(), claimed);
+            }
+        } catch (Exception ex) {
+            log.error("认领导出计划异常. {}", ex.getMessage(), ex);
+        } finally {
+            try {
+                admissionControl.calibrateDeferred(sysExportPlanMapper.countPlanWithStatus(PlanStatus.DEFERRED.getValue()));
+            } catch (Exception ex) {
+                log.warn("校准延迟计划数量失败. {}", ex.getMessage());
+            }
+        }
+    }
+
+    /***
+     * 在队列容量允许的范围内批量认领计划并入队
+     * @return 本次认领并入队的计划数量
+     */
+    public int claim() {
+
+        int claimed = 0;
+        List<SysExportPlan> plans;
+        do {
+            plans = sysExportPlanMapper.queryClaimablePlans(PlanStatus.PENDING.getValue(), PlanStatus.DEFERRED.getValue(),
+                    new Date(), claimBatchSize);
+            for (SysExportPlan plan : plans) {
+                if(!admissionControl.hasCapacity(workloadEstimator.estimateRows(plan.getBeanId()))) {
+                    return claimed;
+                }
+                // CAS: 其他节点可能已认领该计划
+                if(!planLeaseManager.claim(plan)) {
+                    continue;
+                }
+                if(!admissionControl.enqueue(ExportApiReqMapStruct.INSTANCE.toApiReqDto(plan))) {
+                    return claimed;
+                }
+                claimed++;
+            }
+        } while (plans.size() == claimBatchSize);
+
+        return claimed;
+    }
+
+    /***
+     * 收回本节点ID名下遗留的待执行计划. 仅在启动时调用, 此时本节点尚未持有任何计划
+     * @return 收回的计划
+     */
+    public List<ExportApiReqDto> reclaimOwn() {
+
+        List<ExportApiReqDto> reclaimed = new ArrayList<>();
+        for (SysExportPlan plan : planLeaseManager.queryOwnPendingPlans()) {
+            if(planLeaseManager.claim(plan)) {
+                reclaimed.add(ExportApiReqMapStruct.INSTANCE.toApiReqDto(plan));
+            }
+        }
+        return reclaimed;
+    }
+}
@@ -0,0 +1,209 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.cluster;
+
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/***
+ * 导出计划租约管理. 多节点部署时, 节点需先通过CAS认领计划(写入owner_node与lease_expire)才能执行,
+ * 并定期为本节点持有(排队或执行中)的计划续约. 节点宕机后租约过期, 计划可被其他节点重新认领.
+ * 续约时发现计划已不再由本节点持有(已取消或已被其他节点接管), 通知租约失效的监听者停止执行
+ *
+ * @see PlanClaimer
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class PlanLeaseManager implements InitializingBean {
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    /***
+     * 节点ID. 未配置时为 主机名-进程ID. 配置为固定值时节点重启可立即收回自身持有的计划
+     */
+    @Value("${export.node.id:}")
+    private String nodeId;
+
+    /***
+     * 租约时长(秒). 应远大于续约间隔与节点间时钟偏差
+     */
+    @Value("${export.cluster.leaseSeconds:120}")
+    private long leaseSeconds;
+
+    /***
+     * 本节点持有租约的计划ID
+     */
+    private final Set<String> ownedPlans = ConcurrentHashMap.newKeySet();
+
+    /***
+     * 租约失效的监听者. 参数: 计划ID
+     */
+    private final List<Consumer<String>> leaseLostListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void afterPropertiesSet() {
+        if(StringUtils.isBlank(nodeId)) {
+            // RuntimeMXBean name: pid@hostname
+            String[] runtime = ManagementFactory.getRuntimeMXBean().getName().split("@", 2);
+            nodeId = runtime.length == 2 ? runtime[1] + "-" + runtime[0] : runtime[0];
+        }
+        log.info("导出节点ID: {}", nodeId);
+    }
+
+    /***
+     * @return 当前节点ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /***
+     * @return 从当前时间起算的租约过期时间
+     */
+    public Date nextLeaseExpire() {
+        return new Date(System.currentTimeMillis() + leaseSeconds * 1000);
+    }
+
+    /***
+     * 认领计划. 成功后计划状态为待执行, 并由本节点持有租约
+     *
+     * @param plan 候选计划
+     * @return 是否认领成功
+     */
+    public boolean claim(SysExportPlan plan) {
+        boolean claimed = sysExportPlanMapper.claimPlan(plan.getId(), plan.getPlanStatus(), PlanStatus.PENDING.getValue(),
+                nodeId, nextLeaseExpire(), new Date()) > 0;
+        if(claimed) {
+            ownedPlans.add(plan.getId());
+        }
+        return claimed;
+    }
+
+    /***
+     * 登记本节点新创建并已写入租约的计划
+     * @param planId 计划ID
+     */
+    public void hold(String planId) {
+        ownedPlans.add(planId);
+    }
+
+    /***
+     * 计划执行结束, 不再续约
+     * @param planId 计划ID
+     */
+    public void release(String planId) {
+        ownedPlans.remove(planId);
+    }
+
+    /***
+     * 放弃计划并修改其状态(如队列已满时转为延迟执行), 使其可被任意节点重新认领
+     *
+     * @param planId 计划ID
+     * @param status 计划状态
+     * @return 是否放弃成功
+     */
+    public boolean abandon(String planId, PlanStatus status) {
+        ownedPlans.remove(planId);
+        return sysExportPlanMapper.releasePlan(planId, nodeId, PlanStatus.PENDING.getValue(), status.getValue()) > 0;
+    }
+
+    /***
+     * 注册租约失效的监听者. 续约时计划已不再由本节点持有, 以计划ID回调
+     * @param listener 监听者
+     */
+    public void onLeaseLost(Consumer<String> listener) {
+        leaseLostListeners.add(listener);
+    }
+
+    /***
+     * 查询本节点ID名下遗留的待执行计划(节点以相同ID重启时)
+     * @return 待执行计划
+     */
+    public List<SysExportPlan> queryOwnPendingPlans() {
+        return sysExportPlanMapper.queryPlanWithOwner(PlanStatus.PENDING.getValue(), nodeId);
+    }
+
+    /***
+     * 定期续约本节点持有的计划
+     */
+    @Scheduled(initialDelayString = "${export.cluster.renewIntervalMillis:30000}",
+               fixedDelayString = "${export.cluster.renewIntervalMillis:30000}")
+    public void renew() {
+
+        if(ownedPlans.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(ownedPlans);
+        try {
+            int renewed = sysExportPlanMapper.renewLease(nodeId, ids, PlanStatus.PENDING.getValue(), nextLeaseExpire());
+            if(renewed < ids.size()) {
+                log.warn("部分计划租约续约失败(已完成或已被其他节点认领). owned:{}, renewed:{}", ids.size(), renewed);
+                lost(ids);
+            }
+        } catch (Exception ex) {
+            log.error("计划租约续约异常. {}", ex.getMessage(), ex);
+        }
+    }
+
+    /***
+     * 找出不再由本节点持有的待执行计划, 停止续约并通知监听者
+     */
+    private void lost(List<String> ids) {
+
+        Set<String> held = new HashSet<>();
+        for (SysExportPlan plan : sysExportPlanMapper.queryPlansWithIds(ids)) {
+            if(Objects.equals(nodeId, plan.getOwnerNode()) && PlanStatus.PENDING.getValue().equals(plan.getPlanStatus())) {
+                held.add(plan.getId());
+            }
+        }
+        for (String planId : ids) {
+            // 续约期间已正常结束的计划不再通知
+            if(held.contains(planId) || !ownedPlans.remove(planId)) {
+                continue;
+            }
+            log.warn("计划{}的租约已失效(已取消或已被其他节点接管), 停止执行", planId);
+            for (Consumer<String> listener : leaseLostListeners) {
+                try {
+                    listener.accept(planId);
+                } catch (Exception ex) {
+                    log.error("计划{}租约失效处理异常. {}", planId, ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.job;
+
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * 单次作业执行的取消信号. 由{@link ExportJobRegistry}在作业被取消或执行超时时触发,
+ * 消费线程、流水线与上传阶段在各自的检查点协作终止. 线程安全
+ *
+ * @see ExportJobRegistry
+ * @author icefrog
+ */
+@Slf4j
+public class CancellationToken {
+
+    /***
+     * 终止后的计划状态: 已取消或执行超时. 为null表示未取消
+     */
+    private volatile PlanStatus status;
+
+    /***
+     * 终止原因, 回写至字段[failed_msg]
+     */
+    private volatile String message;
+
+    /***
+     * 取消时执行的回调(如取消游标查询)
+     */
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    /***
+     * 触发取消. 仅首次调用生效, 已登记的回调在调用线程中执行
+     *
+     * @param status 终止后的计划状态
+     * @param message 终止原因
+     * @return 是否由本次调用触发
+     */
+    public boolean cancel(PlanStatus status, String message) {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if(this.status != null) {
+                return false;
+            }
+            this.message = message;
+            this.status = status;
+            callbacks = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable callback : callbacks) {
+            run(callback);
+        }
+        return true;
+    }
+
+    /***
+     * 登记取消时执行的回调. 已取消时立即执行
+     *
+     * @param listener 回调. 可能由其他线程执行, 且可能在对应资源关闭之后执行
+     */
+    public void onCancel(Runnable listener) {
+        synchronized (this) {
+            if(status == null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        run(listener);
+    }
+
+    public boolean isCancelled() {
+        return status != null;
+    }
+
+    /***
+     * 检查点: 已取消时抛出{@link ExportCancelledException}
+     */
+    public void throwIfCancelled() {
+        PlanStatus current = status;
+        if(current != null) {
+            throw new ExportCancelledException(current, message);
+        }
+    }
+
+    public PlanStatus getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception ex) {
+            log.warn("执行取消回调异常. {}", ex.getMessage(), ex);
+        }
+    }
+}
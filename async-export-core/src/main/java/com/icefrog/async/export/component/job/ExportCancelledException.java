@@ -0,0 +1,41 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.job;
+
+import com.icefrog.async.export.integration.enums.PlanStatus;
+
+/***
+ * 作业已被取消或执行超时. 由{@link CancellationToken#throwIfCancelled()}在检查点抛出, 不会触发重试
+ *
+ * @author icefrog
+ */
+public class ExportCancelledException extends RuntimeException {
+
+    /***
+     * 终止后的计划状态
+     */
+    private final PlanStatus status;
+
+    public ExportCancelledException(PlanStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public PlanStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,245 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.job;
+
+import com.icefrog.async.export.component.cache.ResultReuseCache;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.retry.RetryScheduler;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * 执行中的导出作业登记表. 负责作业的取消与执行超时:
+ * 计划先通过状态CAS置为已取消, 本节点执行中的作业随即触发取消信号; 排队中、等待重试或合并等待的计划出队时跳过.
+ * 被取消的计划尚未执行时, 合并到其上的计划转为延迟执行, 与执行中被取消的作业一致.
+ * 其他节点执行中的计划同样先置为已取消, 执行节点定期检查所登记作业的计划状态后触发取消信号.
+ * 计划租约失效(续约失败)时同样触发取消信号, 失去租约的节点不再继续执行, 其结果回写也会因归属校验失败而被丢弃.
+ * 超时时间优先取导出配置中的timeout_seconds, 未配置时取默认超时时间, 自作业开始执行(出队)起算, 包含上传阶段
+ *
+ * @see CancellationToken
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class ExportJobRegistry implements InitializingBean {
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private ResultReuseCache resultReuseCache;
+
+    @Resource
+    private RetryScheduler retryScheduler;
+
+    /***
+     * 默认单次执行超时时间(秒). 小于等于0表示不限制
+     */
+    @Value("${export.job.timeoutSeconds:0}")
+    private int defaultTimeoutSeconds;
+
+    /***
+     * 执行中的作业. key: planId
+     */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final LongAdder cancelledCount = new LongAdder();
+
+    private final LongAdder timedOutCount = new LongAdder();
+
+    private final LongAdder leaseLostCount = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        planLeaseManager.onLeaseLost(this::leaseLost);
+    }
+
+    /***
+     * 登记开始执行的作业. 计划已被取消或已不再由本节点持有时不登记
+     *
+     * @param plan 出队的计划
+     * @param timeoutSeconds 导出配置中的超时时间(秒), 为空时取默认超时时间
+     * @return 本次执行的取消信号. 计划已被取消或已被其他节点接管时返回null, 调用方应跳过执行
+     */
+    @Nullable
+    public CancellationToken start(ExportApiReqDto plan, @Nullable Integer timeoutSeconds) {
+
+        int timeout = timeoutSeconds != null ? timeoutSeconds : defaultTimeoutSeconds;
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout * 1000L : Long.MAX_VALUE;
+        Job job = new Job(timeout, deadline);
+
+        // 先登记再检查状态: 取消请求的状态CAS要么早于检查(跳过执行), 要么之后命中登记的作业
+        jobs.put(plan.getPlanId(), job);
+        SysExportPlan current = sysExportPlanMapper.selectByPrimaryKey(plan.getPlanId());
+        if(current == null || !PlanStatus.PENDING.getValue().equals(current.getPlanStatus())
+                || !Objects.equals(planLeaseManager.getNodeId(), current.getOwnerNode())) {
+            jobs.remove(plan.getPlanId(), job);
+            log.info("导出计划{}已取消或已被其他节点接管, 跳过执行", plan.getPlanId());
+            return null;
+        }
+        return job.token;
+    }
+
+    /***
+     * 作业执行结束(成功、失败或已终止)
+     *
+     * @param planId 计划ID
+     */
+    public void finish(String planId) {
+        jobs.remove(planId);
+    }
+
+    /***
+     * 取消计划
+     *
+     * @param planId 计划ID
+     * @return 是否已取消. 计划不存在或已结束时返回false
+     */
+    public boolean cancel(String planId) {
+
+        // 先CAS置为已取消: 此后执行节点、重试与合并回写的条件更新均不会覆盖取消结果
+        boolean cancelled = sysExportPlanMapper.updatePlanStatus(planId, PlanStatus.PENDING.getValue(), PlanStatus.CANCELLED.getValue()) > 0
+                || sysExportPlanMapper.updatePlanStatus(planId, PlanStatus.DEFERRED.getValue(), PlanStatus.CANCELLED.getValue()) > 0;
+        if(!cancelled) {
+            return false;
+        }
+        cancelledCount.increment();
+
+        Job job = jobs.get(planId);
+        if(job != null) {
+            // 由执行线程在检查点终止并回写取消结果
+            job.token.cancel(PlanStatus.CANCELLED, "用户取消");
+        } else {
+            // 排队中的计划: 合并到该计划上的计划立即转为延迟执行, 不再等待其出队
+            resultReuseCache.fail(planId);
+        }
+
+        // 合并等待或等待重试的计划不再执行. 排队中的计划出队时跳过, 其他节点执行中的计划由执行节点检查后终止
+        boolean coalesced = resultReuseCache.cancel(planId);
+        boolean retrying = retryScheduler.cancel(planId);
+        if(coalesced || retrying) {
+            planLeaseManager.release(planId);
+        }
+        log.info("导出计划{}已取消", planId);
+        return true;
+    }
+
+    /***
+     * 计划租约已失效(已被取消或已被其他节点接管), 终止本节点执行中的作业
+     *
+     * @param planId 计划ID
+     */
+    private void leaseLost(String planId) {
+        Job job = jobs.get(planId);
+        if(job != null && job.token.cancel(PlanStatus.CANCELLED, "计划租约已失效")) {
+            leaseLostCount.increment();
+        }
+    }
+
+    /***
+     * 定期检查执行中的作业: 超过截止时间的作业触发超时, 已被其他节点置为已取消的作业触发取消
+     */
+    @Scheduled(fixedDelayString = "${export.job.checkIntervalMillis:2000}")
+    public void check() {
+
+        if(jobs.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Job job : jobs.values()) {
+            if(now >= job.deadline && job.token.cancel(PlanStatus.TIMED_OUT, "执行超过" + job.timeoutSeconds + "秒")) {
+                timedOutCount.increment();
+            }
+        }
+
+        List<String> ids = new ArrayList<>(jobs.keySet());
+        if(ids.isEmpty()) {
+            return;
+        }
+        try {
+            for (String planId : sysExportPlanMapper.queryPlanIdsWithStatus(ids, PlanStatus.CANCELLED.getValue())) {
+                Job job = jobs.get(planId);
+                if(job != null && job.token.cancel(PlanStatus.CANCELLED, "用户取消")) {
+                    cancelledCount.increment();
+                }
+            }
+        } catch (Exception ex) {
+            log.error("检查执行中计划的取消状态异常. {}", ex.getMessage(), ex);
+        }
+    }
+
+    /***
+     * @return 执行中的作业数量
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+    /***
+     * @return 作业统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("defaultTimeoutSeconds", defaultTimeoutSeconds);
+        data.put("running", size());
+        data.put("cancelledCount", cancelledCount.sum());
+        data.put("timedOutCount", timedOutCount.sum());
+        data.put("leaseLostCount", leaseLostCount.sum());
+        return data;
+    }
+
+    /***
+     * 执行中的作业
+     */
+    private static final class Job {
+
+        private final CancellationToken token = new CancellationToken();
+
+        private final int timeoutSeconds;
+
+        /***
+         * 截止时间(毫秒). 不限制时为Long.MAX_VALUE
+         */
+        private final long deadline;
+
+        private Job(int timeoutSeconds, long deadline) {
+            this.timeoutSeconds = timeoutSeconds;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.mapping;
+
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/***
+ * 批次结果集解析器. 逐行通过RowPlan取值后, 按字典code汇总整批的去重值, 每个code仅发起一次字典替换.
+ * 批次内为同一结果集类型时输出列式的{@link RowBatch}, 已释放的批次回收复用; 混合类型的批次逐行输出.
+ * 每个导出作业独立创建, 非线程安全(批次的回收可由写入线程执行)
+ *
+ * @see RowPlan
+ * @see RowBatch
+ * @see DictionaryCache
+ * @author icefrog
+ */
+public class BatchRowMapper {
+
+    private final ColumnConf columnConf;
+
+    private final RowPlanCache rowPlanCache;
+
+    private final DictionaryCache dictionaryCache;
+
+    /***
+     * 属性值为null时的替换字符
+     */
+    private final String nullChar;
+
+    /***
+     * 最近一次使用的解析计划. 同一批次内通常为同一类型
+     */
+    private RowPlan lastPlan;
+
+    /***
+     * 已释放、可复用的批次
+     */
+    private final Queue<RowBatch> pool = new ConcurrentLinkedQueue<>();
+
+    public BatchRowMapper(ColumnConf columnConf, RowPlanCache rowPlanCache, DictionaryCache dictionaryCache, String nullChar) {
+        this.columnConf = columnConf;
+        this.rowPlanCache = rowPlanCache;
+        this.dictionaryCache = dictionaryCache;
+        this.nullChar = nullChar;
+    }
+
+    /***
+     * 解析一批结果集
+     *
+     * @param batch 单批次结果集
+     * @return 与batch一一对应的行数据. 单元格顺序与column配置一致. 写入完成后通过{@link RowBatch#release(List)}释放
+     */
+    public List<List<String>> map(List<BaseResultSet> batch) {
+
+        if(batch.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        RowPlan plan = planOf(batch.get(0));
+        for (BaseResultSet row : batch) {
+            if(row.getClass() != plan.getType()) {
+                return mapRows(batch);
+            }
+        }
+
+        RowBatch rows = acquire(plan, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            plan.map(batch.get(i), rows, i);
+        }
+        if(plan.hasDictionary()) {
+            rows.translate(dictionaryCache);
+        }
+        return rows;
+    }
+
+    /***
+     * 逐行解析混合类型的批次
+     */
+    private List<List<String>> mapRows(List<BaseResultSet> batch) {
+
+        List<List<String>> rows = new ArrayList<>(batch.size());
+        RowPlan[] plans = new RowPlan[batch.size()];
+        boolean hasDictionary = false;
+
+        for (int i = 0; i < batch.size(); i++) {
+            BaseResultSet row = batch.get(i);
+            plans[i] = planOf(row);
+            rows.add(plans[i].map(row, nullChar));
+            hasDictionary |= plans[i].hasDictionary();
+        }
+
+        if(hasDictionary) {
+            translate(rows, plans);
+        }
+        return rows;
+    }
+
+    /***
+     * 取可复用的批次. 容量不足的批次直接丢弃
+     */
+    private RowBatch acquire(RowPlan plan, int size) {
+        RowBatch rows;
+        while ((rows = pool.poll()) != null && rows.capacity() < size) {
+            // 容量不足的批次不再复用
+        }
+        if(rows == null) {
+            rows = new RowBatch(columnConf.size(), size, pool::offer);
+        }
+        rows.reset(plan, size, nullChar);
+        return rows;
+    }
+
+    private RowPlan planOf(BaseResultSet row) {
+        if(lastPlan == null || lastPlan.getType() != row.getClass()) {
+            lastPlan = rowPlanCache.get(row.getClass(), columnConf);
+        }
+        return lastPlan;
+    }
+
+    /***
+     * 汇总字典列的去重值, 按code批量替换后回填
+     */
+    private void translate(List<List<String>> rows, RowPlan[] plans) {
+
+        int columns = columnConf.size();
+
+        // key: 字典code. value: 该code下的去重值
+        Map<String, Set<String>> distinct = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if(!plans[i].hasDictionary()) {
+                continue;
+            }
+            List<String> row = rows.get(i);
+            for (int column = 0; column < columns; column++) {
+                String code = plans[i].dictionaryCode(column);
+                if(code != null) {
+                    distinct.computeIfAbsent(code, k -> new HashSet<>()).add(row.get(column));
+                }
+            }
+        }
+
+        Map<String, Map<String, String>> translated = new HashMap<>(distinct.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : distinct.entrySet()) {
+            translated.put(entry.getKey(), dictionaryCache.translate(entry.getKey(), entry.getValue()));
+        }
+
+        for (int i = 0; i < rows.size(); i++) {
+            if(!plans[i].hasDictionary()) {
+                continue;
+            }
+            List<String> row = rows.get(i);
+            for (int column = 0; column < columns; column++) {
+                String code = plans[i].dictionaryCode(column);
+                if(code != null) {
+                    row.set(column, translated.get(code).get(row.get(column)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.mapping;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * 解析后的导出column配置. 属性与表头描述均按column_conf_json中声明的顺序保存, 实例不可变, 可在线程间共享
+ *
+ * @author icefrog
+ */
+@Getter
+public class ColumnConf {
+
+    /***
+     * Spring bean id
+     */
+    private final String beanId;
+
+    /***
+     * 导出的java属性, 顺序即导出列顺序
+     */
+    private final List<String> properties;
+
+    /***
+     * 与properties一一对应的列描述(表头)
+     */
+    private final List<String> headers;
+
+    /***
+     * 导出文件格式. 字段[file_format], 为空时取默认格式
+     */
+    private final String fileFormat;
+
+    /***
+     * 配置版本. 由column_conf_json内容计算, 配置变更后版本随之变化
+     */
+    private final String version;
+
+    /***
+     * 单次执行超时时间(秒). 字段[timeout_seconds], 为空时取默认超时时间
+     */
+    private final Integer timeoutSeconds;
+
+    private ColumnConf(String beanId, List<String> properties, List<String> headers, String fileFormat, String version,
+                       Integer timeoutSeconds) {
+        this.beanId = beanId;
+        this.properties = Collections.unmodifiableList(properties);
+        this.headers = Collections.unmodifiableList(headers);
+        this.fileFormat = fileFormat;
+        this.version = version;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /***
+     * 解析column配置json. key: java property. value: description
+     *
+     * @param beanId Spring bean id
+     * @param columnConfJson column配置json
+     * @return 保持声明顺序的column配置
+     */
+    public static ColumnConf parse(String beanId, String columnConfJson) {
+        return parse(beanId, columnConfJson, null);
+    }
+
+    /***
+     * 解析column配置json. key: java property. value: description
+     *
+     * @param beanId Spring bean id
+     * @param columnConfJson column配置json
+     * @param fileFormat 导出文件格式
+     * @return 保持声明顺序的column配置
+     */
+    public static ColumnConf parse(String beanId, String columnConfJson, String fileFormat) {
+        return parse(beanId, columnConfJson, fileFormat, null);
+    }
+
+    /***
+     * 解析column配置json. key: java property. value: description
+     *
+     * @param beanId Spring bean id
+     * @param columnConfJson column配置json
+     * @param fileFormat 导出文件格式
+     * @param timeoutSeconds 单次执行超时时间(秒)
+     * @return 保持声明顺序的column配置
+     */
+    public static ColumnConf parse(String beanId, String columnConfJson, String fileFormat, Integer timeoutSeconds) {
+
+        JSONObject json = JSON.parseObject(columnConfJson, Feature.OrderedField);
+
+        List<String> properties = new ArrayList<>(json.size());
+        List<String> headers = new ArrayList<>(json.size());
+        for (Map.Entry<String, Object> entry : json.entrySet()) {
+            properties.add(entry.getKey());
+            headers.add(String.valueOf(entry.getValue()));
+        }
+        String version = Hashing.murmur3_128().hashString(columnConfJson, StandardCharsets.UTF_8).toString();
+        return new ColumnConf(beanId, properties, headers, fileFormat, version, timeoutSeconds);
+    }
+
+    /***
+     * @return 导出列数量
+     */
+    public int size() {
+        return properties.size();
+    }
+
+    /***
+     * 转为EasyExcel动态头部的list结构
+     *
+     * @return 动态头
+     */
+    public List<List<String>> toExcelHead() {
+
+        List<List<String>> head = new ArrayList<>(headers.size());
+        for (String header : headers) {
+            head.add(Collections.singletonList(header));
+        }
+        return head;
+    }
+}
@@ -0,0 +1,422 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.mapping;
+
+import com.icefrog.async.export.component.cache.DictionaryCache;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/***
+ * 列式批次. 每列一个定长数组, 整数、浮点数与日期列以long存储, 字典列以整数编码存储(整批的去重值只保存一份, 字典替换只替换去重值),
+ * 其余列保存String引用. 以只读的List&lt;List&lt;String&gt;&gt;视图交给写入器, 不再为每行创建ArrayList、为数值与日期创建String;
+ * 写入器可通过{@link #isLong(int, int)}等方法直接读取单元格.
+ *
+ * <p>批次通过引用计数回收复用: 解析时持有一个引用, 异步写入的一方在写入前{@link #retain()}, 写入后{@link #release()},
+ * 引用归零后交还{@link BatchRowMapper}供下一批次使用. 未释放的批次由GC回收, 不影响正确性
+ *
+ * @see BatchRowMapper
+ * @author icefrog
+ */
+public final class RowBatch extends AbstractList<List<String>> {
+
+    static final byte STRING = 0;
+
+    /***
+     * byte/short/int/long及其包装类型
+     */
+    static final byte LONG = 1;
+
+    /***
+     * double/Double. 以doubleToRawLongBits存储
+     */
+    static final byte DOUBLE = 2;
+
+    /***
+     * java.util.Date(不含子类). 以毫秒时间戳存储
+     */
+    static final byte DATE = 3;
+
+    /***
+     * 需要字典替换的列
+     */
+    static final byte DICT = 4;
+
+    private final int columns;
+
+    private final int capacity;
+
+    private final byte[] kinds;
+
+    private final String[] dictionaryCodes;
+
+    /***
+     * LONG/DOUBLE/DATE列的值
+     */
+    private final long[][] longs;
+
+    /***
+     * LONG/DOUBLE/DATE列的单元格标记. 非0表示取值为null或类型不符, 该单元格以字符串保存在strings中
+     */
+    private final byte[][] overflows;
+
+    /***
+     * STRING列的值, 以及其他类型列中按字符串保存的单元格
+     */
+    private final String[][] strings;
+
+    /***
+     * DICT列的编码
+     */
+    private final int[][] codes;
+
+    private final Dictionary[] dictionaries;
+
+    private final Row[] views;
+
+    private final Consumer<RowBatch> recycler;
+
+    private final AtomicInteger refs = new AtomicInteger();
+
+    private int size;
+
+    private String nullChar;
+
+    RowBatch(int columns, int capacity, Consumer<RowBatch> recycler) {
+        this.columns = columns;
+        this.capacity = capacity;
+        this.recycler = recycler;
+        this.kinds = new byte[columns];
+        this.dictionaryCodes = new String[columns];
+        this.longs = new long[columns][];
+        this.overflows = new byte[columns][];
+        this.strings = new String[columns][];
+        this.codes = new int[columns][];
+        this.dictionaries = new Dictionary[columns];
+        this.views = new Row[capacity];
+    }
+
+    /***
+     * 按解析计划重置批次, 已分配的列数组在列类型不变时复用
+     *
+     * @param plan 解析计划. 批次内所有行均使用该计划
+     * @param size 行数. 不能超过容量
+     * @param nullChar 属性值为null时的替换字符
+     */
+    void reset(RowPlan plan, int size, String nullChar) {
+        this.size = size;
+        this.nullChar = nullChar;
+        for (int column = 0; column < columns; column++) {
+            byte kind = plan.kind(column);
+            kinds[column] = kind;
+            dictionaryCodes[column] = plan.dictionaryCode(column);
+            switch (kind) {
+                case LONG:
+                case DOUBLE:
+                case DATE:
+                    if(longs[column] == null) {
+                        longs[column] = new long[capacity];
+                        overflows[column] = new byte[capacity];
+                    }
+                    break;
+                case DICT:
+                    if(codes[column] == null) {
+                        codes[column] = new int[capacity];
+                        dictionaries[column] = new Dictionary();
+                    }
+                    dictionaries[column].clear();
+                    break;
+                default:
+                    if(strings[column] == null) {
+                        strings[column] = new String[capacity];
+                    }
+                    break;
+            }
+        }
+        refs.set(1);
+    }
+
+    /***
+     * 写入单元格. 值的类型与列类型不符时按String.valueOf保存, 输出与逐行解析一致
+     */
+    void set(int row, int column, Object value) {
+        switch (kinds[column]) {
+            case LONG:
+                if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    longs[column][row] = ((Number) value).longValue();
+                    overflows[column][row] = 0;
+                    return;
+                }
+                break;
+            case DOUBLE:
+                if(value instanceof Double) {
+                    longs[column][row] = Double.doubleToRawLongBits((Double) value);
+                    overflows[column][row] = 0;
+                    return;
+                }
+                break;
+            case DATE:
+                if(value != null && value.getClass() == Date.class) {
+                    longs[column][row] = ((Date) value).getTime();
+                    overflows[column][row] = 0;
+                    return;
+                }
+                break;
+            case DICT:
+                codes[column][row] = dictionaries[column].encode(value == null ? nullChar : String.valueOf(value));
+                return;
+            default:
+                strings[column][row] = value == null ? nullChar : String.valueOf(value);
+                return;
+        }
+        if(strings[column] == null) {
+            strings[column] = new String[capacity];
+        }
+        strings[column][row] = value == null ? nullChar : String.valueOf(value);
+        overflows[column][row] = 1;
+    }
+
+    /***
+     * 字典替换. 按字典code汇总各字典列的去重值, 每个code仅发起一次替换, 替换结果回填至去重值
+     */
+    void translate(DictionaryCache dictionaryCache) {
+
+        // key: 字典code. value: 该code下的去重值
+        Map<String, Set<String>> distinct = new HashMap<>();
+        for (int column = 0; column < columns; column++) {
+            if(kinds[column] == DICT) {
+                distinct.computeIfAbsent(dictionaryCodes[column], k -> new HashSet<>()).addAll(dictionaries[column].values);
+            }
+        }
+
+        Map<String, Map<String, String>> translated = new HashMap<>(distinct.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : distinct.entrySet()) {
+            translated.put(entry.getKey(), dictionaryCache.translate(entry.getKey(), entry.getValue()));
+        }
+
+        for (int column = 0; column < columns; column++) {
+            if(kinds[column] == DICT) {
+                Map<String, String> values = translated.get(dictionaryCodes[column]);
+                List<String> dictionary = dictionaries[column].values;
+                for (int i = 0; i < dictionary.size(); i++) {
+                    dictionary.set(i, values.get(dictionary.get(i)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /***
+     * @return 列数
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /***
+     * 获取单行视图. 视图随批次复用, 仅在批次被持有期间有效
+     */
+    @Override
+    public List<String> get(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);
+        }
+        Row view = views[row];
+        if(view == null) {
+            view = views[row] = new Row(row);
+        }
+        return view;
+    }
+
+    /***
+     * @return 单元格是否为整数. 为true时可通过{@link #getLong(int, int)}读取而无需创建String
+     */
+    public boolean isLong(int row, int column) {
+        return kinds[column] == LONG && overflows[column][row] == 0;
+    }
+
+    public long getLong(int row, int column) {
+        return longs[column][row];
+    }
+
+    /***
+     * @return 单元格文本, 与逐行解析的输出一致. 整数、浮点数与日期列每次调用创建新的String
+     */
+    public String getString(int row, int column) {
+        switch (kinds[column]) {
+            case LONG:
+                return overflows[column][row] == 0 ? Long.toString(longs[column][row]) : strings[column][row];
+            case DOUBLE:
+                return overflows[column][row] == 0 ? Double.toString(Double.longBitsToDouble(longs[column][row])) : strings[column][row];
+            case DATE:
+                return overflows[column][row] == 0 ? new Date(longs[column][row]).toString() : strings[column][row];
+            case DICT:
+                return dictionaries[column].values.get(codes[column][row]);
+            default:
+                return strings[column][row];
+        }
+    }
+
+    /***
+     * 估算批次占用的堆内存(字节). 字符串按 对象头 + 2 * 字符数 计算, 字典列的去重值只计一次
+     */
+    public long heapBytes() {
+        long bytes = 64;
+        for (int column = 0; column < columns; column++) {
+            switch (kinds[column]) {
+                case LONG:
+                case DOUBLE:
+                case DATE:
+                    bytes += 9L * size;
+                    if(strings[column] != null) {
+                        bytes += 4L * size;
+                    }
+                    break;
+                case DICT:
+                    bytes += 4L * size;
+                    for (String value : dictionaries[column].values) {
+                        bytes += 48 + (value == null ? 0 : 2L * value.length());
+                    }
+                    break;
+                default:
+                    String[] values = strings[column];
+                    bytes += 4L * size;
+                    for (int row = 0; row < size; row++) {
+                        bytes += values[row] == null ? 0 : 48 + 2L * values[row].length();
+                    }
+                    break;
+            }
+        }
+        return bytes;
+    }
+
+    /***
+     * 估算写出后的字符数: 每个单元格 字符数 + 1, 每行另加1. 用于文件拆分阈值判断
+     */
+    public long textLength() {
+        long length = size;
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < size; row++) {
+                if(isLong(row, column)) {
+                    length += digits(longs[column][row]) + 1;
+                } else {
+                    String value = getString(row, column);
+                    length += value == null ? 1 : value.length() + 1;
+                }
+            }
+        }
+        return length;
+    }
+
+    /***
+     * 增加一个引用. 调用方须在使用完毕后{@link #release()}
+     */
+    public void retain() {
+        refs.incrementAndGet();
+    }
+
+    /***
+     * 释放一个引用. 引用归零后批次交还解析器复用, 调用方不得再访问
+     */
+    public void release() {
+        if(refs.decrementAndGet() == 0 && recycler != null) {
+            recycler.accept(this);
+        }
+    }
+
+    /***
+     * 释放批次引用. 非{@link RowBatch}的行数据无需释放
+     *
+     * @param rows 解析后的行数据
+     */
+    public static void release(List<List<String>> rows) {
+        if(rows instanceof RowBatch) {
+            ((RowBatch) rows).release();
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private static int digits(long value) {
+        int digits = value < 0 ? 2 : 1;
+        for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /***
+     * 单行视图
+     */
+    private final class Row extends AbstractList<String> {
+
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String get(int column) {
+            return getString(row, column);
+        }
+
+        @Override
+        public int size() {
+            return columns;
+        }
+    }
+
+    /***
+     * 字典列的去重值
+     */
+    private static final class Dictionary {
+
+        private final List<String> values = new ArrayList<>();
+
+        private final Map<String, Integer> index = new HashMap<>();
+
+        private int encode(String value) {
+            Integer code = index.get(value);
+            if(code == null) {
+                code = values.size();
+                values.add(value);
+                index.put(value, code);
+            }
+            return code;
+        }
+
+        private void clear() {
+            values.clear();
+            index.clear();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.mapping;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.icefrog.async.export.integration.annotation.DictionaryScan;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/***
+ * 单行结果集解析计划. 针对(BaseResultSet类型, column配置)一次性解析字段、字典注解与取值方式,
+ * 热路径上仅通过预编译的访问器取值, 不再进行反射查找. 实例不可变, 可在线程间共享
+ *
+ * @see RowPlanCache
+ * @author icefrog
+ */
+public class RowPlan {
+
+    /***
+     * 结果集类型
+     */
+    @Getter
+    private final Class<?> type;
+
+    /***
+     * 按column配置顺序排列的属性访问器
+     */
+    private final Function<Object, Object>[] accessors;
+
+    /***
+     * 与accessors一一对应的字典code. 不需要字典替换的列为null
+     */
+    private final String[] dictionaryCodes;
+
+    /***
+     * 与accessors一一对应的列式存储类型. 见RowBatch中的类型常量
+     */
+    private final byte[] kinds;
+
+    /***
+     * 是否存在需要字典替换的列
+     */
+    private final boolean hasDictionary;
+
+    @SuppressWarnings("unchecked")
+    RowPlan(Class<?> type, ColumnConf columnConf) {
+
+        this.type = type;
+        this.accessors = new Function[columnConf.size()];
+        this.dictionaryCodes = new String[columnConf.size()];
+        this.kinds = new byte[columnConf.size()];
+
+        boolean dictionary = false;
+        List<String> properties = columnConf.getProperties();
+        for (int i = 0; i < properties.size(); i++) {
+            String property = properties.get(i);
+            Field field = ReflectUtil.getField(type, property);
+            if(field == null) {
+                throw new IllegalArgumentException("beanId:" + columnConf.getBeanId() + " column配置中的属性[" + property
+                        + "]在" + type.getName() + "中不存在");
+            }
+            accessors[i] = compileAccessor(type, field);
+
+            // 扫描注解信息
+            DictionaryScan annotation = field.getAnnotation(DictionaryScan.class);
+            if(annotation != null && annotation.scan() && StringUtils.isNotBlank(annotation.code())) {
+                dictionaryCodes[i] = annotation.code();
+                dictionary = true;
+            }
+            kinds[i] = dictionaryCodes[i] != null ? RowBatch.DICT : kindOf(field.getType());
+        }
+        this.hasDictionary = dictionary;
+    }
+
+    /***
+     * 解析单行结果. 按column配置中的java属性顺序输出单元格, 字典列输出替换前的值
+     *
+     * @param row 单行结果对象, 类型必须为{@link #getType()}
+     * @param nullChar 属性值为null时的替换字符
+     * @return 单行单元格数据
+     */
+    public List<String> map(BaseResultSet row, String nullChar) {
+
+        List<String> item = new ArrayList<>(accessors.length);
+        for (Function<Object, Object> accessor : accessors) {
+            Object propertyVal = accessor.apply(row);
+            item.add(propertyVal == null ? nullChar : String.valueOf(propertyVal));
+        }
+        return item;
+    }
+
+    /***
+     * 解析单行结果至列式批次. 字典列写入替换前的值
+     *
+     * @param row 单行结果对象, 类型必须为{@link #getType()}
+     * @param batch 以本计划重置的批次
+     * @param index 行下标
+     */
+    void map(BaseResultSet row, RowBatch batch, int index) {
+        for (int column = 0; column < accessors.length; column++) {
+            batch.set(index, column, accessors[column].apply(row));
+        }
+    }
+
+    /***
+     * 获取指定列的列式存储类型
+     */
+    byte kind(int column) {
+        return kinds[column];
+    }
+
+    /***
+     * 获取指定列的字典code
+     *
+     * @param column 列下标
+     * @return 字典code. 该列不需要字典替换时返回null
+     */
+    public String dictionaryCode(int column) {
+        return dictionaryCodes[column];
+    }
+
+    /***
+     * @return 是否存在需要字典替换的列
+     */
+    public boolean hasDictionary() {
+        return hasDictionary;
+    }
+
+    /***
+     * 按字段声明类型确定列式存储类型. 输出须与String.valueOf一致, 因此仅long可无损表示的整数、double与java.util.Date使用数值存储
+     */
+    private static byte kindOf(Class<?> type) {
+        if(type == long.class || type == Long.class || type == int.class || type == Integer.class
+                || type == short.class || type == Short.class || type == byte.class || type == Byte.class) {
+            return RowBatch.LONG;
+        }
+        if(type == double.class || type == Double.class) {
+            return RowBatch.DOUBLE;
+        }
+        if(type == Date.class) {
+            return RowBatch.DATE;
+        }
+        return RowBatch.STRING;
+    }
+
+    /***
+     * 编译属性访问器. 优先通过LambdaMetafactory将public getter编译为Function, 否则退化为字段的MethodHandle
+     *
+     * @param type 结果集类型
+     * @param field 属性字段
+     * @return 属性访问器
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> compileAccessor(Class<?> type, Field field) {
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        Method getter = findPublicGetter(type, field);
+        if(getter != null && visibleFrom(type)) {
+            try {
+                MethodHandle handle = lookup.unreflect(getter);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        handle,
+                        MethodType.methodType(getter.getReturnType(), type).wrap());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable ignore) {
+                // 退化为MethodHandle
+            }
+        }
+
+        try {
+            ReflectUtil.setAccessible(field);
+            MethodHandle handle = lookup.unreflectGetter(field)
+                                        .asType(MethodType.methodType(Object.class, Object.class));
+            return bean -> {
+                try {
+                    return handle.invokeExact(bean);
+                } catch (Throwable t) {
+                    throw new IllegalStateException("读取属性[" + field.getName() + "]失败: " + t.getMessage(), t);
+                }
+            };
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("无法访问属性[" + field.getName() + "]: " + e.getMessage(), e);
+        }
+    }
+
+    /***
+     * 查找与字段对应的public getter(getXxx/isXxx). 仅当getter返回类型与字段一致时才使用, 避免取值语义发生变化
+     */
+    private static Method findPublicGetter(Class<?> type, Field field) {
+
+        if(!Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+
+        String suffix = StringUtils.capitalize(field.getName());
+        for (String name : new String[]{"get" + suffix, "is" + suffix}) {
+            try {
+                Method method = type.getMethod(name);
+                if(method.getReturnType() == field.getType() && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignore) {
+                // try next
+            }
+        }
+        return null;
+    }
+
+    /***
+     * LambdaMetafactory生成的类由RowPlan的类加载器定义, 仅当该加载器可见结果集类型时才可使用
+     */
+    private static boolean visibleFrom(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, RowPlan.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.mapping;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/***
+ * 单行结果集解析计划缓存. key: (BaseResultSet类型, column配置中的属性列表)
+ *
+ * @see RowPlan
+ * @author icefrog
+ */
+@Component
+public class RowPlanCache {
+
+    /***
+     * 解析计划缓存. 类型与配置组合有限, 上限仅用于防止配置频繁变更时无限增长
+     */
+    private final Cache<PlanKey, RowPlan> plans = CacheBuilder.newBuilder()
+                                                              .maximumSize(1024)
+                                                              .build();
+
+    /***
+     * 获取解析计划, 不存在时编译并缓存
+     *
+     * @param type 结果集类型
+     * @param columnConf column配置
+     * @return 解析计划
+     */
+    public RowPlan get(Class<?> type, ColumnConf columnConf) {
+        try {
+            return plans.get(new PlanKey(type, columnConf.getProperties()), () -> new RowPlan(type, columnConf));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class PlanKey {
+
+        private final Class<?> type;
+
+        private final List<String> properties;
+    }
+}
@@ -0,0 +1,80 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.memory;
+
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * 流水线中解析完成、等待写入的批次. 数据保存在堆内, 或已溢写至作业的{@link SpillFile}, 写入时读回
+ *
+ * @see JobMemory#spill(BufferedBatch)
+ * @author icefrog
+ */
+public final class BufferedBatch {
+
+    /***
+     * 堆内的行数据. 已溢写时为null
+     */
+    private final List<List<String>> rows;
+
+    private final SpillFile spillFile;
+
+    private final SpillFile.Segment segment;
+
+    private BufferedBatch(List<List<String>> rows, SpillFile spillFile, SpillFile.Segment segment) {
+        this.rows = rows;
+        this.spillFile = spillFile;
+        this.segment = segment;
+    }
+
+    /***
+     * @param rows 已解析的行数据
+     * @return 堆内批次
+     */
+    public static BufferedBatch of(List<List<String>> rows) {
+        return new BufferedBatch(rows, null, null);
+    }
+
+    static BufferedBatch spilled(SpillFile spillFile, SpillFile.Segment segment) {
+        return new BufferedBatch(null, spillFile, segment);
+    }
+
+    /***
+     * 获取行数据. 已溢写的批次从溢写文件读回
+     *
+     * @return 行数据
+     * @throws IOException 读取溢写文件失败
+     */
+    public List<List<String>> rows() throws IOException {
+        return rows != null ? rows : spillFile.read(segment);
+    }
+
+    /***
+     * @return 是否已溢写
+     */
+    public boolean isSpilled() {
+        return rows == null;
+    }
+
+    /***
+     * @return 行数
+     */
+    public int size() {
+        return rows != null ? rows.size() : segment.getRows();
+    }
+}
@@ -0,0 +1,212 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.memory;
+
+import com.icefrog.async.export.component.mapping.RowBatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * 单个作业的内存预算. 流水线提交批次前按预估字节数申请预算, 批次写入完成后归还;
+ * 预算不足时由{@link MemoryGovernor}限流等待, 超过等待时间后批次解析完成即溢写至磁盘.
+ *
+ * <p>预估字节数 = 行数 * 平均行字节数. 平均行字节数在每个批次解析后按采样行更新(指数移动平均),
+ * 首个批次解析前按列数估算. 游标自身的缓冲、写入器内部尚未落盘的数据不计入预算
+ *
+ * @see MemoryGovernor
+ * @author icefrog
+ */
+@Slf4j
+public class JobMemory implements AutoCloseable {
+
+    /***
+     * 单行的固定开销: 行对象与单元格数组
+     */
+    private static final int ROW_OVERHEAD = 56;
+
+    /***
+     * 单个单元格的固定开销: 字符串对象、字符数组头与引用
+     */
+    private static final int CELL_OVERHEAD = 48;
+
+    /***
+     * 首个批次解析前, 按单元格平均16个字符估算
+     */
+    private static final int DEFAULT_CELL_CHARS = 16;
+
+    /***
+     * 每批次用于更新平均行字节数的采样行数
+     */
+    private static final int SAMPLE_ROWS = 32;
+
+    private final MemoryGovernor governor;
+
+    private final String planId;
+
+    /***
+     * 作业预算(字节)
+     */
+    private final long budget;
+
+    /***
+     * 已申请的预算(字节). 由governor的锁保护
+     */
+    long used;
+
+    /***
+     * 平均行字节数
+     */
+    private volatile double rowBytes;
+
+    private SpillFile spillFile;
+
+    private volatile boolean aborted;
+
+    JobMemory(MemoryGovernor governor, String planId, long budget, int columns) {
+        this.governor = governor;
+        this.planId = planId;
+        this.budget = budget;
+        this.rowBytes = ROW_OVERHEAD + columns * (CELL_OVERHEAD + 2D * DEFAULT_CELL_CHARS);
+    }
+
+    /***
+     * @param rows 行数
+     * @return 预估字节数
+     */
+    public long estimate(int rows) {
+        return (long) (rows * rowBytes);
+    }
+
+    /***
+     * 以已解析的批次更新平均行字节数
+     *
+     * @param rows 已解析的行数据
+     */
+    public void observe(List<List<String>> rows) {
+        if(rows.isEmpty()) {
+            return;
+        }
+        if(rows instanceof RowBatch) {
+            rowBytes = rowBytes * 0.7D + ((RowBatch) rows).heapBytes() / (double) rows.size() * 0.3D;
+            return;
+        }
+        int step = Math.max(1, rows.size() / SAMPLE_ROWS);
+        long bytes = 0;
+        int sampled = 0;
+        for (int i = 0; i < rows.size(); i += step) {
+            List<String> row = rows.get(i);
+            bytes += ROW_OVERHEAD;
+            for (String cell : row) {
+                bytes += CELL_OVERHEAD + (cell == null ? 0 : 2L * cell.length());
+            }
+            sampled++;
+        }
+        double sample = (double) bytes / sampled;
+        rowBytes = rowBytes * 0.7D + sample * 0.3D;
+    }
+
+    /***
+     * 申请预算. 预算不足时限流等待
+     *
+     * @param bytes 预估字节数
+     * @param preferSpill 作业已有批次溢写且尚未写入完成时为true, 预算不足时不再等待, 直接溢写
+     * @return 是否已申请到预算. 为false时批次应溢写
+     * @throws IOException 作业已终止
+     */
+    public boolean reserve(long bytes, boolean preferSpill) throws IOException {
+        return governor.reserve(this, bytes, preferSpill);
+    }
+
+    /***
+     * 归还预算
+     *
+     * @param bytes 申请时的字节数
+     */
+    public void release(long bytes) {
+        governor.release(this, bytes);
+    }
+
+    /***
+     * 将堆内批次溢写至磁盘. 由解析阶段串行调用
+     *
+     * @param batch 堆内批次
+     * @return 已溢写的批次
+     * @throws IOException 写入溢写文件失败
+     */
+    public BufferedBatch spill(BufferedBatch batch) throws IOException {
+        if(batch.isSpilled()) {
+            return batch;
+        }
+        SpillFile file = spillFile();
+        List<List<String>> rows = batch.rows();
+        SpillFile.Segment segment = file.append(rows);
+        RowBatch.release(rows);
+        governor.onSpilled(segment);
+        return BufferedBatch.spilled(file, segment);
+    }
+
+    /***
+     * 终止作业(取消或失败). 限流等待中的申请立即返回
+     */
+    public void abort() {
+        aborted = true;
+        governor.wakeUp();
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    String getPlanId() {
+        return planId;
+    }
+
+    /***
+     * 作业结束: 归还剩余预算并删除溢写文件. 须在流水线关闭之后调用
+     */
+    @Override
+    public void close() {
+        governor.closed(this);
+        SpillFile file;
+        synchronized (this) {
+            file = spillFile;
+            spillFile = null;
+        }
+        if(file != null) {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                log.warn("删除溢写文件失败. planId:{}, {}", planId, ex.getMessage());
+            }
+        }
+    }
+
+    private synchronized SpillFile spillFile() throws IOException {
+        if(spillFile == null) {
+            spillFile = new SpillFile(new File(governor.getSpillDir(), planId + "-" + System.nanoTime() + MemoryGovernor.SPILL_SUFFIX));
+            log.info("导出计划{}内存预算不足, 批次溢写至磁盘", planId);
+        }
+        return spillFile;
+    }
+}
@@ -0,0 +1,295 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * 导出内存预算. 以流水线中已拉取、尚未写入完成的批次的预估字节数计量, 分为全局预算与单作业预算:
+ * <pre>
+ * 两级预算均足够                          -> 申请成功, 批次在堆内等待写入
+ * 否则等待其他批次写入完成(限流拉取)
+ * 等待超过throttleMillis, 或作业已有批次溢写 -> 批次解析完成后溢写至磁盘, 写入阶段按顺序读回
+ * 单个批次超过作业预算                     -> 直接溢写
+ * </pre>
+ * 关闭溢写时一直等待; 作业没有占用预算时无论全局预算是否足够均予放行, 保证每个作业都能推进
+ *
+ * @see JobMemory
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class MemoryGovernor implements InitializingBean {
+
+    static final String SPILL_SUFFIX = ".spill";
+
+    /***
+     * 单次等待的最长时间(毫秒). 到期后重新检查作业是否已终止
+     */
+    private static final long WAIT_SLICE_MILLIS = 100;
+
+    /***
+     * 全局预算(字节). 小于等于0时取最大堆内存的30%
+     */
+    @Value("${export.memory.globalBudgetBytes:0}")
+    private long globalBudget;
+
+    /***
+     * 单作业预算(字节). 小于等于0时取全局预算的1/4
+     */
+    @Value("${export.memory.jobBudgetBytes:0}")
+    private long jobBudget;
+
+    /***
+     * 预算不足时等待的最长时间(毫秒), 超过后批次溢写
+     */
+    @Value("${export.memory.throttleMillis:200}")
+    private long throttleMillis;
+
+    /***
+     * 是否允许溢写. 关闭时预算不足的作业一直等待
+     */
+    @Value("${export.memory.spill.enabled:true}")
+    private boolean spillEnabled;
+
+    /***
+     * 溢写目录. 为空时取 ${export.temp.dir}/spill
+     */
+    @Value("${export.memory.spill.dir:}")
+    private String spillDirPath;
+
+    @Value("${export.temp.dir}")
+    private String tempDir;
+
+    private File spillDir;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    /***
+     * 已申请的预算合计(字节). 由lock保护
+     */
+    private long reserved;
+
+    private volatile long peakReserved;
+
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    private final LongAdder throttledCount = new LongAdder();
+
+    private final LongAdder throttledNanos = new LongAdder();
+
+    private final LongAdder spilledBatches = new LongAdder();
+
+    private final LongAdder spilledRows = new LongAdder();
+
+    private final LongAdder spilledBytes = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        if(globalBudget <= 0) {
+            globalBudget = (long) (Runtime.getRuntime().maxMemory() * 0.3D);
+        }
+        if(jobBudget <= 0 || jobBudget > globalBudget) {
+            jobBudget = globalBudget / 4;
+        }
+        spillDir = StringUtils.isBlank(spillDirPath) ? new File(tempDir, "spill") : new File(spillDirPath);
+        if(!spillDir.isDirectory() && !spillDir.mkdirs()) {
+            log.warn("创建溢写目录失败: {}", spillDir.getAbsolutePath());
+        }
+        // 上次运行残留的溢写文件
+        File[] stale = spillDir.listFiles((dir, name) -> name.endsWith(SPILL_SUFFIX));
+        if(stale != null) {
+            for (File file : stale) {
+                if(!file.delete()) {
+                    log.warn("删除残留的溢写文件失败: {}", file.getAbsolutePath());
+                }
+            }
+        }
+        log.info("初始化导出内存预算成功! global:{}, job:{}, throttleMillis:{}, spill:{}, spillDir:{}",
+                globalBudget, jobBudget, throttleMillis, spillEnabled, spillDir.getAbsolutePath());
+    }
+
+    /***
+     * 作业开始执行时打开内存预算. 作业结束时须关闭
+     *
+     * @param planId 计划ID
+     * @param columns 导出列数, 用于首个批次的预估
+     * @return 作业内存预算
+     */
+    public JobMemory open(String planId, int columns) {
+        activeJobs.incrementAndGet();
+        return new JobMemory(this, planId, jobBudget, columns);
+    }
+
+    boolean reserve(JobMemory job, long bytes, boolean preferSpill) throws IOException {
+        lock.lock();
+        try {
+            long start = 0;
+            try {
+                while (true) {
+                    if(job.isAborted() || (job.used + bytes <= job.getBudget() && reserved + bytes <= globalBudget)) {
+                        admit(job, bytes);
+                        return true;
+                    }
+                    if(job.used == 0 && (!spillEnabled || bytes > job.getBudget())) {
+                        if(spillEnabled) {
+                            return false;
+                        }
+                        admit(job, bytes);
+                        return true;
+                    }
+                    if(spillEnabled && preferSpill) {
+                        return false;
+                    }
+                    if(start == 0) {
+                        start = System.nanoTime();
+                        throttledCount.increment();
+                    }
+                    long remaining = spillEnabled ? TimeUnit.MILLISECONDS.toNanos(throttleMillis) - (System.nanoTime() - start) : Long.MAX_VALUE;
+                    if(remaining <= 0) {
+                        return false;
+                    }
+                    released.awaitNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(WAIT_SLICE_MILLIS)));
+                }
+            } finally {
+                if(start != 0) {
+                    throttledNanos.add(System.nanoTime() - start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待内存预算时被中断. planId: " + job.getPlanId());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(JobMemory job, long bytes) {
+        lock.lock();
+        try {
+            long freed = Math.min(bytes, job.used);
+            job.used -= freed;
+            reserved -= freed;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void closed(JobMemory job) {
+        lock.lock();
+        try {
+            reserved -= job.used;
+            job.used = 0;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        activeJobs.decrementAndGet();
+    }
+
+    void wakeUp() {
+        lock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onSpilled(SpillFile.Segment segment) {
+        spilledBatches.increment();
+        spilledRows.add(segment.getRows());
+        spilledBytes.add(segment.getLength());
+    }
+
+    File getSpillDir() {
+        return spillDir;
+    }
+
+    private void admit(JobMemory job, long bytes) {
+        job.used += bytes;
+        reserved += bytes;
+        if(reserved > peakReserved) {
+            peakReserved = reserved;
+        }
+    }
+
+    /***
+     * @return 已申请的预算合计(字节)
+     */
+    public long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getGlobalBudget() {
+        return globalBudget;
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    public long getSpilledBatches() {
+        return spilledBatches.sum();
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes.sum();
+    }
+
+    /***
+     * @return 内存预算统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("globalBudgetBytes", globalBudget);
+        data.put("jobBudgetBytes", jobBudget);
+        data.put("reservedBytes", getReserved());
+        data.put("peakReservedBytes", peakReserved);
+        data.put("activeJobs", activeJobs.get());
+        data.put("throttledCount", throttledCount.sum());
+        data.put("throttledMillis", TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum()));
+        data.put("spillEnabled", spillEnabled);
+        data.put("spilledBatches", spilledBatches.sum());
+        data.put("spilledRows", spilledRows.sum());
+        data.put("spilledBytes", spilledBytes.sum());
+        return data;
+    }
+}
@@ -0,0 +1,206 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * 单个作业的溢写文件. 已解析的批次以紧凑的行格式顺序追加, 写入阶段按{@link Segment}定位读回.
+ * <pre>
+ * 批次: varint(行数) 行...
+ * 行:   varint(列数) 单元格...
+ * 单元格: varint(UTF-8字节数 + 1) 字节..., 0表示null
+ * </pre>
+ * 追加由解析阶段串行调用, 读取由写入阶段调用, 两者使用位置读写, 可并发执行. 关闭时删除文件
+ *
+ * @see JobMemory
+ * @author icefrog
+ */
+public class SpillFile implements Closeable {
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    /***
+     * 下一批次的写入位置
+     */
+    private long position;
+
+    SpillFile(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /***
+     * 追加一个批次
+     *
+     * @param rows 已解析的行数据
+     * @return 批次在文件中的位置
+     * @throws IOException IOException
+     */
+    public synchronized Segment append(List<List<String>> rows) throws IOException {
+
+        Encoder encoder = new Encoder(rows.size() * 64);
+        encoder.writeVarInt(rows.size());
+        for (List<String> row : rows) {
+            encoder.writeVarInt(row.size());
+            for (String cell : row) {
+                if(cell == null) {
+                    encoder.writeVarInt(0);
+                } else {
+                    byte[] bytes = cell.getBytes(StandardCharsets.UTF_8);
+                    encoder.writeVarInt(bytes.length + 1);
+                    encoder.write(bytes, 0, bytes.length);
+                }
+            }
+        }
+
+        ByteBuffer buffer = encoder.toByteBuffer();
+        Segment segment = new Segment(position, buffer.remaining(), rows.size());
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return segment;
+    }
+
+    /***
+     * 读回一个批次
+     *
+     * @param segment 批次位置
+     * @return 行数据
+     * @throws IOException IOException
+     */
+    public List<List<String>> read(Segment segment) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(segment.length);
+        long offset = segment.offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if(read < 0) {
+                throw new IOException("溢写文件不完整. file:" + file.getName() + ", offset:" + segment.offset);
+            }
+        }
+        buffer.flip();
+
+        byte[] bytes = buffer.array();
+        int rowCount = readVarInt(buffer);
+        List<List<String>> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            int columns = readVarInt(buffer);
+            List<String> row = new ArrayList<>(columns);
+            for (int column = 0; column < columns; column++) {
+                int length = readVarInt(buffer) - 1;
+                if(length < 0) {
+                    row.add(null);
+                } else {
+                    row.add(new String(bytes, buffer.position(), length, StandardCharsets.UTF_8));
+                    buffer.position(buffer.position() + length);
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /***
+     * @return 已写入的字节数
+     */
+    public synchronized long size() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /***
+     * 批次在溢写文件中的位置
+     */
+    public static final class Segment {
+
+        private final long offset;
+
+        private final int length;
+
+        private final int rows;
+
+        private Segment(long offset, int length, int rows) {
+            this.offset = offset;
+            this.length = length;
+            this.rows = rows;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+    }
+
+    /***
+     * 可直接取得内部数组的字节缓冲
+     */
+    private static final class Encoder extends ByteArrayOutputStream {
+
+        private Encoder(int size) {
+            super(size);
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
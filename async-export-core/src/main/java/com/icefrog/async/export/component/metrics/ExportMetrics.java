@@ -0,0 +1,336 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.metrics;
+
+import com.google.common.cache.CacheStats;
+import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.cache.ColumnConfCache;
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.component.job.ExportJobRegistry;
+import com.icefrog.async.export.component.memory.MemoryGovernor;
+import com.icefrog.async.export.component.pipeline.ExportPipeline;
+import com.icefrog.async.export.component.pipeline.StageExecutor;
+import com.icefrog.async.export.component.pipeline.StageMetrics;
+import com.icefrog.async.export.component.retry.RetryScheduler;
+import com.icefrog.async.export.component.scheduler.FairShareScheduler;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/***
+ * 导出引擎指标. 通过Micrometer注册, 由actuator以/actuator/prometheus(Prometheus格式)与/actuator/metrics暴露:
+ * <ul>
+ *   <li>export.queue.depth: 计划队列、调度缓冲与等待重试的计划数量. export.queue.wait: 各beanId的排队等待时间</li>
+ *   <li>export.stage.duration: 各beanId拉取、解析、写入(单批次)与上传、回写(单作业)的耗时分布</li>
+ *   <li>export.rows / export.bytes: 各beanId导出的数据行数与写出的文件字节数. 行速率取rate(export_rows_total)</li>
+ *   <li>export.jobs: 各beanId按最终状态统计的作业数量. export.jobs.running: 执行中的作业数量</li>
+ *   <li>export.workers.*: 消费线程数量、忙碌数量与利用率. export.pipeline.*: 流水线各阶段的线程数、队列深度与累计忙碌时间</li>
+ *   <li>export.memory.*: 内存预算、已申请的预算, 限流次数与溢写的批次数、字节数</li>
+ *   <li>cache.*: column配置与字典值缓存的命中、未命中、淘汰次数与条目数量</li>
+ * </ul>
+ * beanId标签的取值范围即导出配置中的beanId, 仅在通过配置校验后登记
+ *
+ * @author icefrog
+ */
+@Component
+public class ExportMetrics implements InitializingBean {
+
+    public static final String STAGE_FETCH = "fetch";
+
+    public static final String STAGE_MAP = "map";
+
+    public static final String STAGE_WRITE = "write";
+
+    public static final String STAGE_UPLOAD = "upload";
+
+    public static final String STAGE_REWRITE = "rewrite";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private FairShareScheduler fairShareScheduler;
+
+    @Resource
+    private RetryScheduler retryScheduler;
+
+    @Resource
+    private ExportJobRegistry exportJobRegistry;
+
+    @Resource
+    private ColumnConfCache columnConfCache;
+
+    @Resource
+    private DictionaryCache dictionaryCache;
+
+    @Resource
+    private ExportPipeline exportPipeline;
+
+    @Resource
+    private MemoryGovernor memoryGovernor;
+
+    /***
+     * 耗时指标是否发布直方图(Prometheus histogram_quantile所需的bucket)
+     */
+    @Value("${export.metrics.histogram:true}")
+    private boolean histogram;
+
+    /***
+     * 耗时直方图的上限(秒). 超过该值的样本计入最大的bucket
+     */
+    @Value("${export.metrics.maxExpectedSeconds:3600}")
+    private long maxExpectedSeconds;
+
+    /***
+     * 各beanId的指标. key: beanId
+     */
+    private final Map<String, BeanMeters> beanMeters = new ConcurrentHashMap<>();
+
+    /***
+     * 正在执行作业的消费线程数量
+     */
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+
+    private volatile int workerCount;
+
+    @Override
+    public void afterPropertiesSet() {
+
+        Gauge.builder("export.queue.depth", this, metrics -> ApiCacheQueue.size())
+             .tag("queue", "plan").description("计划队列中等待消费的计划数量").register(meterRegistry);
+        Gauge.builder("export.queue.depth", fairShareScheduler, FairShareScheduler::size)
+             .tag("queue", "scheduler").description("已从计划队列取出、等待调度的计划数量").register(meterRegistry);
+        Gauge.builder("export.queue.depth", retryScheduler, RetryScheduler::size)
+             .tag("queue", "retry").description("等待重试的计划数量").register(meterRegistry);
+        Gauge.builder("export.jobs.running", exportJobRegistry, ExportJobRegistry::size)
+             .description("执行中(含上传阶段)的作业数量").register(meterRegistry);
+
+        Gauge.builder("export.workers", this, metrics -> metrics.workerCount)
+             .description("消费线程数量").register(meterRegistry);
+        Gauge.builder("export.workers.busy", busyWorkers, AtomicInteger::get)
+             .description("正在执行作业的消费线程数量").register(meterRegistry);
+        Gauge.builder("export.workers.utilization", this, ExportMetrics::utilization)
+             .description("消费线程利用率").register(meterRegistry);
+
+        bindStage(exportPipeline.getFetchMetrics(), null);
+        for (StageExecutor stage : exportPipeline.getStages()) {
+            bindStage(stage.getMetrics(), stage);
+        }
+
+        Gauge.builder("export.memory.budget", memoryGovernor, MemoryGovernor::getGlobalBudget)
+             .baseUnit("bytes").description("全局内存预算").register(meterRegistry);
+        Gauge.builder("export.memory.reserved", memoryGovernor, MemoryGovernor::getReserved)
+             .baseUnit("bytes").description("已拉取、尚未写入完成的批次的预估字节数").register(meterRegistry);
+        FunctionCounter.builder("export.memory.throttled", memoryGovernor, MemoryGovernor::getThrottledCount)
+                       .description("预算不足而等待的次数").register(meterRegistry);
+        FunctionCounter.builder("export.memory.spilled", memoryGovernor, MemoryGovernor::getSpilledBatches)
+                       .description("溢写至磁盘的批次数").register(meterRegistry);
+        FunctionCounter.builder("export.memory.spilled.bytes", memoryGovernor, MemoryGovernor::getSpilledBytes)
+                       .baseUnit("bytes").register(meterRegistry);
+
+        bindCache("columnConf", columnConfCache, ColumnConfCache::stats, ColumnConfCache::size);
+        bindCache("dictionary", dictionaryCache, DictionaryCache::stats, DictionaryCache::size);
+    }
+
+    /***
+     * 获取beanId的指标
+     *
+     * @param beanId 已通过配置校验的beanId
+     * @return 指标
+     */
+    public BeanMeters of(String beanId) {
+        return beanMeters.computeIfAbsent(beanId, BeanMeters::new);
+    }
+
+    /***
+     * @param workerCount 消费线程数量
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    /***
+     * 消费线程开始执行作业
+     */
+    public void workerBusy() {
+        busyWorkers.incrementAndGet();
+    }
+
+    /***
+     * 消费线程执行作业结束
+     */
+    public void workerIdle() {
+        busyWorkers.decrementAndGet();
+    }
+
+    private double utilization() {
+        int workers = workerCount;
+        return workers > 0 ? (double) busyWorkers.get() / workers : 0D;
+    }
+
+    private Timer timer(String name, String beanId, String stage) {
+        Timer.Builder builder = Timer.builder(name).tag("beanId", beanId);
+        if(stage != null) {
+            builder.tag("stage", stage);
+        }
+        return builder.publishPercentileHistogram(histogram)
+                      .maximumExpectedValue(Duration.ofSeconds(maxExpectedSeconds))
+                      .register(meterRegistry);
+    }
+
+    /***
+     * 流水线阶段指标
+     *
+     * @param metrics 阶段运行统计
+     * @param executor 阶段线程池. 拉取阶段由消费线程执行, 为null
+     */
+    private void bindStage(StageMetrics metrics, StageExecutor executor) {
+        String stage = metrics.getName();
+        Gauge.builder("export.pipeline.active", metrics, StageMetrics::getActiveCount)
+             .tag("stage", stage).description("执行中的任务数").register(meterRegistry);
+        FunctionCounter.builder("export.pipeline.completed", metrics, StageMetrics::getCompletedCount)
+                       .tag("stage", stage).register(meterRegistry);
+        FunctionCounter.builder("export.pipeline.failed", metrics, StageMetrics::getFailedCount)
+                       .tag("stage", stage).register(meterRegistry);
+        FunctionCounter.builder("export.pipeline.busy", metrics, m -> m.getBusyNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                       .tag("stage", stage).baseUnit("seconds")
+                       .description("累计执行耗时. 阶段利用率 = rate(busy) / threads").register(meterRegistry);
+        if(executor != null) {
+            Gauge.builder("export.pipeline.threads", executor, StageExecutor::getPoolSize)
+                 .tag("stage", stage).register(meterRegistry);
+            Gauge.builder("export.pipeline.queue.depth", executor, StageExecutor::getQueueDepth)
+                 .tag("stage", stage).register(meterRegistry);
+        }
+    }
+
+    /***
+     * 缓存指标. 与Micrometer内置缓存指标同名, 以cache标签区分
+     */
+    private <T> void bindCache(String name, T cache, Function<T, CacheStats> stats, ToDoubleFunction<T> size) {
+        FunctionCounter.builder("cache.gets", cache, c -> stats.apply(c).hitCount())
+                       .tags("cache", name, "result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cache, c -> stats.apply(c).missCount())
+                       .tags("cache", name, "result", "miss").register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", cache, c -> stats.apply(c).evictionCount())
+                       .tag("cache", name).register(meterRegistry);
+        Gauge.builder("cache.size", cache, size)
+             .tag("cache", name).register(meterRegistry);
+    }
+
+    /***
+     * 单个beanId的指标. 消费线程在作业开始时获取, 避免逐批次查找
+     */
+    public final class BeanMeters {
+
+        private final String beanId;
+
+        private final Timer queueWait;
+
+        private final Timer fetch;
+
+        private final Timer map;
+
+        private final Timer write;
+
+        private final Timer upload;
+
+        private final Timer rewrite;
+
+        private final Counter rows;
+
+        private final Counter bytes;
+
+        private BeanMeters(String beanId) {
+            this.beanId = beanId;
+            this.queueWait = timer("export.queue.wait", beanId, null);
+            this.fetch = timer("export.stage.duration", beanId, STAGE_FETCH);
+            this.map = timer("export.stage.duration", beanId, STAGE_MAP);
+            this.write = timer("export.stage.duration", beanId, STAGE_WRITE);
+            this.upload = timer("export.stage.duration", beanId, STAGE_UPLOAD);
+            this.rewrite = timer("export.stage.duration", beanId, STAGE_REWRITE);
+            this.rows = Counter.builder("export.rows").tag("beanId", beanId).register(meterRegistry);
+            this.bytes = Counter.builder("export.bytes").tag("beanId", beanId).baseUnit("bytes").register(meterRegistry);
+        }
+
+        /***
+         * 记录计划自入队至出队的等待时间
+         */
+        public void recordQueueWait(ExportApiReqDto plan) {
+            if(plan.getEnqueuedAt() != null) {
+                queueWait.record(Math.max(0, System.currentTimeMillis() - plan.getEnqueuedAt()), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /***
+         * 记录阶段耗时
+         *
+         * @param stage 阶段. 见STAGE_*常量
+         * @param startNanos 阶段开始时间(System.nanoTime)
+         */
+        public void record(String stage, long startNanos) {
+            stageTimer(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void addRows(long count) {
+            rows.increment(count);
+        }
+
+        public void addBytes(long count) {
+            bytes.increment(count);
+        }
+
+        /***
+         * 记录作业的最终状态
+         */
+        public void finished(PlanStatus status) {
+            meterRegistry.counter("export.jobs", "beanId", beanId, "status", status.name().toLowerCase()).increment();
+        }
+
+        private Timer stageTimer(String stage) {
+            switch (stage) {
+                case STAGE_FETCH:
+                    return fetch;
+                case STAGE_MAP:
+                    return map;
+                case STAGE_WRITE:
+                    return write;
+                case STAGE_UPLOAD:
+                    return upload;
+                case STAGE_REWRITE:
+                    return rewrite;
+                default:
+                    throw new IllegalArgumentException("未知的阶段: " + stage);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.partition;
+
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import com.icefrog.async.export.integration.export.ExportCursor;
+import com.icefrog.async.export.integration.export.IPartitionedExport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * 分区并行拉取游标. 将{@link IPartitionedExport}的多个分区合并为单个{@link ExportCursor}:
+ * 各分区在线程池上并行预取, 消费线程严格按分区顺序逐批取出, 因此写出顺序与串行拉取一致.
+ *
+ * <p>每个分区最多预取bufferBatches个批次, 同时预取的分区数不超过maxInFlight, 内存占用上限约为
+ * maxInFlight * bufferBatches * batchSize行. 预取任务在缓冲区已满时直接结束而非阻塞等待,
+ * 由消费线程取走数据后重新提交, 因此线程池中的线程不会因等待消费而被占用, 多个作业共享同一线程池时也不会相互饿死
+ *
+ * @see PartitionedFetchExecutor
+ * @author icefrog
+ */
+@Slf4j
+public class PartitionedExportCursor implements ExportCursor {
+
+    /***
+     * 分区数据结束标记
+     */
+    private static final List<BaseResultSet> END = Collections.emptyList();
+
+    private final IPartitionedExport export;
+
+    private final String requestParams;
+
+    private final int batchSize;
+
+    private final int bufferBatches;
+
+    private final int maxInFlight;
+
+    private final Executor executor;
+
+    /***
+     * 各分区预取任务, 下标与分区顺序一致
+     */
+    private final List<PartitionPump> pumps;
+
+    /***
+     * 当前正在消费的分区下标
+     */
+    private int current;
+
+    /***
+     * 已提交预取的分区数量
+     */
+    private int started;
+
+    /***
+     * 游标是否已关闭. 关闭后预取任务将尽快停止
+     */
+    private volatile boolean closed;
+
+    /***
+     * 游标是否已取消. 取消后消费线程不再等待分区数据
+     */
+    private volatile boolean cancelled;
+
+    public PartitionedExportCursor(IPartitionedExport export, String requestParams, int batchSize,
+                                   int bufferBatches, int maxInFlight, Executor executor) {
+        if(batchSize < 1 || bufferBatches < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("batchSize, bufferBatches and maxInFlight must be greater than 0");
+        }
+        this.export = export;
+        this.requestParams = requestParams;
+        this.batchSize = batchSize;
+        this.bufferBatches = bufferBatches;
+        this.maxInFlight = maxInFlight;
+        this.executor = executor;
+
+        List<String> partitions = export.partitions(requestParams);
+        this.pumps = new ArrayList<>(partitions == null ? 0 : partitions.size());
+        if(partitions != null) {
+            for (String partition : partitions) {
+                pumps.add(new PartitionPump(partition));
+            }
+        }
+    }
+
+    @Override
+    public List<BaseResultSet> nextBatch() throws IOException {
+
+        while (current < pumps.size()) {
+
+            checkCancelled();
+
+            // 保持当前分区之后最多maxInFlight个分区处于预取状态
+            while (started < pumps.size() && started < current + maxInFlight) {
+                pumps.get(started++).schedule();
+            }
+
+            PartitionPump pump = pumps.get(current);
+            List<BaseResultSet> batch;
+            try {
+                batch = pump.buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待分区数据时被中断. partition:" + pump.partition, e);
+            }
+
+            checkCancelled();
+            if(batch == END) {
+                if(pump.error != null) {
+                    throw new IOException("分区数据拉取失败. partition:" + pump.partition
+                            + ", " + pump.error.getMessage(), pump.error);
+                }
+                current++;
+                continue;
+            }
+
+            // 缓冲区已腾出空间, 唤醒已暂停的预取任务
+            pump.schedule();
+            return batch;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        for (PartitionPump pump : pumps) {
+            pump.closeIfIdle();
+        }
+    }
+
+    /***
+     * 停止全部分区的预取并取消执行中的分区游标. 阻塞等待分区数据的消费线程随即被唤醒
+     */
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+        this.closed = true;
+        for (PartitionPump pump : pumps) {
+            pump.cancel();
+        }
+    }
+
+    public int getPartitionCount() {
+        return pumps.size();
+    }
+
+    private void checkCancelled() throws IOException {
+        if(cancelled) {
+            throw new IOException("分区拉取已取消");
+        }
+    }
+
+    /***
+     * 单个分区的预取任务. 同一时刻最多只有一个线程执行该任务, 分区游标仅在持有该任务的监视器时访问
+     */
+    private final class PartitionPump implements Runnable {
+
+        private final String partition;
+
+        /***
+         * 预取缓冲区. 数据批次数量不超过bufferBatches, 额外容纳一个结束标记
+         */
+        private final BlockingQueue<List<BaseResultSet>> buffer = new LinkedBlockingQueue<>();
+
+        /***
+         * 是否已提交到线程池(或正在执行)
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /***
+         * 分区游标. 取消时由其他线程读取
+         */
+        private volatile ExportCursor cursor;
+
+        private volatile boolean finished;
+
+        private volatile Throwable error;
+
+        private PartitionPump(String partition) {
+            this.partition = partition;
+        }
+
+        private void schedule() {
+            if(finished || closed || buffer.size() >= bufferBatches) {
+                return;
+            }
+            if(scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException ex) {
+                    scheduled.set(false);
+                    fail(ex);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    fill();
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if(closed) {
+                // 游标可能在本任务执行期间被关闭, 由本任务负责释放分区游标
+                closeIfIdle();
+            } else {
+                // 消费线程可能在本任务检查缓冲区之后、释放scheduled之前取走了数据, 此时需要重新提交
+                schedule();
+            }
+        }
+
+        private void fill() {
+            if(finished) {
+                return;
+            }
+            if(closed) {
+                closeCursor();
+                return;
+            }
+            try {
+                if(cursor == null) {
+                    cursor = export.openCursor(requestParams, partition, batchSize);
+                }
+                while (!closed && buffer.size() < bufferBatches) {
+                    List<BaseResultSet> batch = cursor.nextBatch();
+                    if(batch == null) {
+                        finish();
+                        return;
+                    }
+                    // 游标实现可能在下一次nextBatch时复用本批次List, 预取时需拷贝. 行对象按ExportCursor约定不会被复用
+                    if(!batch.isEmpty()) {
+                        buffer.add(new ArrayList<>(batch));
+                    }
+                }
+            } catch (Throwable ex) {
+                fail(ex);
+            }
+        }
+
+        private void finish() {
+            closeCursor();
+            finished = true;
+            buffer.add(END);
+        }
+
+        private void fail(Throwable ex) {
+            if(cancelled) {
+                log.info("分区游标已取消. partition:{}, {}", partition, ex.getMessage());
+            } else {
+                log.error("分区数据拉取失败. partition:{}, {}", partition, ex.getMessage(), ex);
+            }
+            closeCursor();
+            error = ex;
+            finished = true;
+            buffer.add(END);
+        }
+
+        private void cancel() {
+            ExportCursor partitionCursor = cursor;
+            if(partitionCursor != null) {
+                partitionCursor.cancel();
+            }
+            // 唤醒等待本分区数据的消费线程
+            buffer.add(END);
+        }
+
+        private void closeIfIdle() {
+            if(!scheduled.get()) {
+                synchronized (this) {
+                    closeCursor();
+                }
+            }
+        }
+
+        private void closeCursor() {
+            if(cursor == null) {
+                return;
+            }
+            try {
+                cursor.close();
+            } catch (IOException ex) {
+                log.warn("关闭分区游标异常. partition:{}, {}", partition, ex.getMessage());
+            } finally {
+                cursor = null;
+            }
+        }
+    }
+}
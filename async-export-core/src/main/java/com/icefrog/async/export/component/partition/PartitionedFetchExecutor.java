@@ -0,0 +1,111 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.partition;
+
+import com.icefrog.async.export.integration.export.ExportCursor;
+import com.icefrog.async.export.integration.export.IPartitionedExport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 分区并行拉取线程池. 所有消费线程共享同一个有界ForkJoinPool(asyncMode, 按提交顺序调度),
+ * 并行度即同时访问数据源的最大分区数, 应结合数据库连接池大小配置
+ *
+ * @see PartitionedExportCursor
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class PartitionedFetchExecutor implements InitializingBean, DisposableBean {
+
+    /***
+     * 分区拉取并行度. 小于等于0时取CPU核数
+     */
+    @Value("${export.partition.parallelism:0}")
+    private int parallelism;
+
+    /***
+     * 单个分区最多预取的批次数
+     */
+    @Value("${export.partition.bufferBatches:4}")
+    private int bufferBatches;
+
+    /***
+     * 单个作业同时预取的最大分区数. 小于等于0时取parallelism
+     */
+    @Value("${export.partition.maxInFlight:0}")
+    private int maxInFlight;
+
+    /***
+     * 分区拉取线程名称前缀
+     */
+    @Value("${export.partition.threadNamePrefix:PartitionFetchThread-}")
+    private String threadNamePrefix;
+
+    private ForkJoinPool pool;
+
+    @Override
+    public void afterPropertiesSet() {
+        int size = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.parallelism = size;
+        if(maxInFlight <= 0) {
+            maxInFlight = size;
+        }
+        this.pool = new ForkJoinPool(size, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName(threadNamePrefix + thread.getPoolIndex());
+            return thread;
+        }, (t, e) -> log.error("分区拉取线程异常退出. {}", e.getMessage(), e), true);
+
+        log.info("初始化分区拉取线程池成功! parallelism:{}, maxInFlight:{}, bufferBatches:{}", size, maxInFlight, bufferBatches);
+    }
+
+    /***
+     * 打开分区并行拉取游标
+     *
+     * @param export 分区导出实现
+     * @param requestParams 请求参数
+     * @param batchSize 期望的单批次数据量
+     * @return 按分区顺序合并的导出游标
+     */
+    public ExportCursor open(IPartitionedExport export, String requestParams, int batchSize) {
+        return new PartitionedExportCursor(export, requestParams, batchSize, bufferBatches, maxInFlight, pool);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getActiveThreadCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        pool.shutdown();
+        if(!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+    }
+}
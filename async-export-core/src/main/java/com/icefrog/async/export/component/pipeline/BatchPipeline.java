@@ -0,0 +1,278 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.pipeline;
+
+import com.icefrog.async.export.component.memory.JobMemory;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * 单个作业的批次流水线. 消费线程拉取批次后提交, 解析与写入分别在对应阶段执行:
+ * 同一作业的解析串行执行(解析器非线程安全), 写入按提交顺序串行执行, 不同批次的解析与写入并行.
+ * 已提交但未写入完成的批次超过maxInFlight时, 提交线程等待最早的批次写入完成(反压).
+ * 指定作业内存预算时, 提交前按预估字节数申请预算, 写入函数确认批次已被写入目标消费(如异步分片写入完成)后归还;
+ * 未申请到预算的批次解析后溢写至磁盘, 不计入maxInFlight.
+ *
+ * <p>非线程安全, 仅由打开它的消费线程调用. 必须在关闭写入目标之前关闭本流水线
+ *
+ * @param <T> 解析后的批次类型
+ * @see ExportPipeline
+ * @author icefrog
+ */
+public class BatchPipeline<T> implements AutoCloseable {
+
+    /***
+     * 批次解析函数
+     */
+    @FunctionalInterface
+    public interface Transformer<T> {
+        T transform(List<BaseResultSet> batch);
+    }
+
+    /***
+     * 批次写入函数
+     */
+    @FunctionalInterface
+    public interface Writer<T> {
+
+        /***
+         * @param rows 解析后的批次
+         * @param consumed 批次数据不再被写入目标引用时回调, 可在方法返回之后由其他线程调用. 方法抛出异常时可不回调
+         * @throws IOException IOException
+         */
+        void write(T rows, Runnable consumed) throws IOException;
+    }
+
+    /***
+     * 批次溢写函数. 在解析阶段执行, 返回可在写入阶段读回的批次
+     */
+    @FunctionalInterface
+    public interface Spiller<T> {
+        T spill(T rows) throws IOException;
+    }
+
+    private final Transformer<T> transformer;
+
+    private final Writer<T> writer;
+
+    private final Executor transformStage;
+
+    private final Executor writeStage;
+
+    private final int maxInFlight;
+
+    /***
+     * 作业内存预算. 为null时不申请预算
+     */
+    private final JobMemory memory;
+
+    private final Spiller<T> spiller;
+
+    /***
+     * 最近一次提交的解析任务. 下一批次的解析在其之后执行
+     */
+    private CompletableFuture<?> transformTail = CompletableFuture.completedFuture(null);
+
+    /***
+     * 最近一次提交的写入任务. 下一批次的写入在其之后执行
+     */
+    private CompletableFuture<Void> writeTail = CompletableFuture.completedFuture(null);
+
+    /***
+     * 尚未确认完成的写入任务, 按提交顺序排列
+     */
+    private final Deque<InFlight> inFlight = new ArrayDeque<>();
+
+    /***
+     * inFlight中未溢写的批次数量
+     */
+    private int heapInFlight;
+
+    /***
+     * 已溢写但尚未写入完成的批次数量. 大于0时新的批次在预算不足时直接溢写, 不再等待
+     */
+    private final AtomicInteger spilledInFlight = new AtomicInteger();
+
+    /***
+     * 作业已失败或已关闭. 后续尚未执行的解析、写入任务直接跳过
+     */
+    private volatile boolean aborted;
+
+    BatchPipeline(Transformer<T> transformer, Writer<T> writer, Executor transformStage, Executor writeStage, int maxInFlight) {
+        this(transformer, writer, transformStage, writeStage, maxInFlight, null, null);
+    }
+
+    BatchPipeline(Transformer<T> transformer, Writer<T> writer, Executor transformStage, Executor writeStage, int maxInFlight,
+                  JobMemory memory, Spiller<T> spiller) {
+        this.transformer = transformer;
+        this.writer = writer;
+        this.transformStage = transformStage;
+        this.writeStage = writeStage;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.memory = memory;
+        this.spiller = spiller;
+    }
+
+    /***
+     * 提交一个批次. 仅拷贝批次List(浅拷贝), 游标实现可在下一次拉取时复用原List;
+     * 行对象按{@link com.icefrog.async.export.integration.export.ExportCursor#nextBatch()}的约定在返回后不再被修改
+     *
+     * @param batch 单批次结果集
+     * @throws IOException 之前提交的批次解析或写入失败, 或等待内存预算时被中断
+     */
+    public void submit(List<BaseResultSet> batch) throws IOException {
+
+        List<BaseResultSet> rows = new ArrayList<>(batch);
+
+        long bytes = memory == null ? 0 : memory.estimate(rows.size());
+        boolean spill = memory != null && !memory.reserve(bytes, spilledInFlight.get() > 0);
+
+        CompletableFuture<T> transformed = transformTail.thenApplyAsync(ignored -> {
+            if(aborted) {
+                return null;
+            }
+            T result = transformer.transform(rows);
+            if(!spill) {
+                return result;
+            }
+            try {
+                return spiller.spill(result);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, transformStage);
+        transformTail = transformed;
+
+        // 写入目标消费批次后归还预算. 未执行写入或写入失败时在写入任务结束时归还
+        Runnable consumed = spill || memory == null ? () -> { } : once(() -> memory.release(bytes));
+        writeTail = writeTail.thenCombineAsync(transformed, (ignored, result) -> {
+            if(aborted) {
+                consumed.run();
+                return null;
+            }
+            try {
+                writer.write(result, consumed);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+            return null;
+        }, writeStage);
+        writeTail = writeTail.whenComplete((ignored, ex) -> {
+            if(ex != null) {
+                consumed.run();
+            }
+        });
+        if(spill) {
+            spilledInFlight.incrementAndGet();
+            writeTail = writeTail.whenComplete((ignored, ex) -> spilledInFlight.decrementAndGet());
+        } else {
+            heapInFlight++;
+        }
+        inFlight.addLast(new InFlight(writeTail, spill));
+
+        while (heapInFlight > maxInFlight || (!inFlight.isEmpty() && inFlight.peekFirst().future.isDone())) {
+            await(inFlight.pollFirst());
+        }
+    }
+
+    /***
+     * 等待所有已提交的批次写入完成
+     *
+     * @throws IOException 批次解析或写入失败
+     */
+    public void finish() throws IOException {
+        while (!inFlight.isEmpty()) {
+            await(inFlight.pollFirst());
+        }
+    }
+
+    /***
+     * 终止尚未执行的批次并等待执行中的批次结束, 此后写入目标不再被访问. 正常结束时应先调用{@link #finish()}
+     */
+    @Override
+    public void close() {
+        if(inFlight.isEmpty()) {
+            return;
+        }
+        aborted = true;
+        try {
+            writeTail.handle((ignored, ex) -> null).join();
+        } finally {
+            inFlight.clear();
+            heapInFlight = 0;
+        }
+    }
+
+    private void await(InFlight batch) throws IOException {
+        if(!batch.spilled) {
+            heapInFlight--;
+        }
+        try {
+            batch.future.join();
+        } catch (CompletionException ex) {
+            aborted = true;
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /***
+     * @return 仅执行一次的回调
+     */
+    private static Runnable once(Runnable action) {
+        AtomicBoolean done = new AtomicBoolean();
+        return () -> {
+            if(done.compareAndSet(false, true)) {
+                action.run();
+            }
+        };
+    }
+
+    /***
+     * 已提交的批次
+     */
+    private static final class InFlight {
+
+        private final CompletableFuture<Void> future;
+
+        private final boolean spilled;
+
+        private InFlight(CompletableFuture<Void> future, boolean spilled) {
+            this.future = future;
+            this.spilled = spilled;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.pipeline;
+
+import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.memory.JobMemory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 导出流水线. 将单个导出作业拆分为 拉取 -> 解析 -> 写入 -> 上传 四个阶段, 阶段之间通过有界队列交接:
+ * <ul>
+ *     <li>拉取: 由消费线程执行(线程数即export.consumer.poolSize), 上游队列为{@link ApiCacheQueue}</li>
+ *     <li>解析: 行数据取值与字典替换, CPU密集</li>
+ *     <li>写入: 追加写入临时文件. 同一作业的批次严格按顺序写入; 文件拆分为多个分片时, 各分片在分片阶段并行写入</li>
+ *     <li>上传: 文件管理器处理、移除临时文件、回写计划状态. 消费线程提交后即可拉取下一个作业</li>
+ * </ul>
+ * 作业内第k批写入、第k+1批解析与第k+2批拉取同时进行; 作业间第N个作业的上传与第N+1个作业的拉取同时进行
+ *
+ * @see BatchPipeline
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class ExportPipeline implements InitializingBean, DisposableBean {
+
+    /***
+     * 解析阶段线程数. 小于等于0时取CPU核数
+     */
+    @Value("${export.pipeline.transform.threads:0}")
+    private int transformThreads;
+
+    @Value("${export.pipeline.transform.queueCapacity:64}")
+    private int transformQueueCapacity;
+
+    /***
+     * 写入阶段线程数. 小于等于0时取CPU核数
+     */
+    @Value("${export.pipeline.write.threads:0}")
+    private int writeThreads;
+
+    @Value("${export.pipeline.write.queueCapacity:64}")
+    private int writeQueueCapacity;
+
+    /***
+     * 分片写入阶段线程数. 小于等于0时取CPU核数
+     */
+    @Value("${export.pipeline.part.threads:0}")
+    private int partThreads;
+
+    @Value("${export.pipeline.part.queueCapacity:64}")
+    private int partQueueCapacity;
+
+    /***
+     * 上传阶段线程数
+     */
+    @Value("${export.pipeline.upload.threads:2}")
+    private int uploadThreads;
+
+    @Value("${export.pipeline.upload.queueCapacity:16}")
+    private int uploadQueueCapacity;
+
+    /***
+     * 单个作业已拉取但尚未写入完成的最大批次数. 决定作业内流水线的深度与内存占用
+     */
+    @Value("${export.pipeline.maxInFlightBatches:4}")
+    private int maxInFlightBatches;
+
+    /***
+     * 停机时等待上传阶段完成的最长时间(秒)
+     */
+    @Value("${export.pipeline.awaitTerminationSeconds:60}")
+    private long awaitTerminationSeconds;
+
+    @Value("${export.pipeline.threadNamePrefix:ExportPipeline-}")
+    private String threadNamePrefix;
+
+    private StageMetrics fetchMetrics;
+
+    private StageExecutor transformStage;
+
+    private StageExecutor writeStage;
+
+    private StageExecutor partStage;
+
+    private StageExecutor uploadStage;
+
+    @Override
+    public void afterPropertiesSet() {
+        int cpu = Runtime.getRuntime().availableProcessors();
+        fetchMetrics = new StageMetrics("fetch");
+        transformStage = new StageExecutor("transform", transformThreads > 0 ? transformThreads : cpu,
+                transformQueueCapacity, threadNamePrefix);
+        writeStage = new StageExecutor("write", writeThreads > 0 ? writeThreads : cpu,
+                writeQueueCapacity, threadNamePrefix);
+        partStage = new StageExecutor("part", partThreads > 0 ? partThreads : cpu,
+                partQueueCapacity, threadNamePrefix);
+        uploadStage = new StageExecutor("upload", uploadThreads, uploadQueueCapacity, threadNamePrefix);
+
+        log.info("初始化导出流水线成功! transform:{}, write:{}, part:{}, upload:{}, maxInFlightBatches:{}",
+                transformStage.stats().get("poolSize"), writeStage.stats().get("poolSize"),
+                partStage.stats().get("poolSize"), uploadStage.stats().get("poolSize"), maxInFlightBatches);
+    }
+
+    /***
+     * 为单个作业创建批次流水线
+     *
+     * @param transformer 批次解析函数. 同一作业的批次将串行调用, 因此无需线程安全
+     * @param writer 批次写入函数. 同一作业的批次将按顺序串行调用
+     * @param <T> 解析后的批次类型
+     * @return 批次流水线
+     */
+    public <T> BatchPipeline<T> open(BatchPipeline.Transformer<T> transformer, BatchPipeline.Writer<T> writer) {
+        return new BatchPipeline<>(transformer, writer, transformStage, writeStage, maxInFlightBatches);
+    }
+
+    /***
+     * 为单个作业创建受内存预算约束的批次流水线
+     *
+     * @param transformer 批次解析函数. 同一作业的批次将串行调用, 因此无需线程安全
+     * @param writer 批次写入函数. 同一作业的批次将按顺序串行调用
+     * @param memory 作业内存预算. 须在流水线关闭之后关闭
+     * @param spiller 批次溢写函数. 未申请到预算的批次解析后调用
+     * @param <T> 解析后的批次类型
+     * @return 批次流水线
+     */
+    public <T> BatchPipeline<T> open(BatchPipeline.Transformer<T> transformer, BatchPipeline.Writer<T> writer,
+                                     JobMemory memory, BatchPipeline.Spiller<T> spiller) {
+        return new BatchPipeline<>(transformer, writer, transformStage, writeStage, maxInFlightBatches, memory, spiller);
+    }
+
+    public StageMetrics getFetchMetrics() {
+        return fetchMetrics;
+    }
+
+    public StageExecutor getPartStage() {
+        return partStage;
+    }
+
+    public StageExecutor getUploadStage() {
+        return uploadStage;
+    }
+
+    /***
+     * @return 各执行阶段, 按流水线顺序排列
+     */
+    public List<StageExecutor> getStages() {
+        return Arrays.asList(transformStage, writeStage, partStage, uploadStage);
+    }
+
+    /***
+     * 各阶段运行统计, 按流水线顺序排列
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> stats = new ArrayList<>(5);
+        Map<String, Object> fetch = fetchMetrics.snapshot();
+        fetch.put("queueDepth", ApiCacheQueue.size());
+        stats.add(fetch);
+        stats.add(transformStage.stats());
+        stats.add(writeStage.stats());
+        stats.add(partStage.stats());
+        stats.add(uploadStage.stats());
+        return stats;
+    }
+
+    /***
+     * 消费线程已停止后调用(依赖顺序保证), 此时解析、写入阶段已无进行中的作业, 仅需等待上传阶段完成
+     */
+    @Override
+    public void destroy() throws Exception {
+        if(!uploadStage.shutdown(awaitTerminationSeconds, TimeUnit.SECONDS)) {
+            log.warn("等待上传阶段完成超时({}s), 强制停止", awaitTerminationSeconds);
+        }
+        transformStage.shutdown(0, TimeUnit.SECONDS);
+        writeStage.shutdown(0, TimeUnit.SECONDS);
+        partStage.shutdown(0, TimeUnit.SECONDS);
+        log.info("导出流水线已停止");
+    }
+}
@@ -0,0 +1,108 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.pipeline;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * 流水线阶段执行器. 固定线程数 + 有界交接队列, 队列满时由提交线程直接执行(反压), 因此上游阶段不会无限堆积待处理数据.
+ * 线程池关闭后提交的任务同样由提交线程执行, 保证依赖该任务的后续阶段总能完成
+ *
+ * @author icefrog
+ */
+public class StageExecutor implements Executor {
+
+    private final StageMetrics metrics;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    /***
+     * 因队列已满由提交线程执行的任务数
+     */
+    private final LongAdder callerRuns = new LongAdder();
+
+    public StageExecutor(String name, int threads, int queueCapacity, String threadNamePrefix) {
+        if(threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("threads and queueCapacity must be greater than 0. stage:" + name);
+        }
+        this.metrics = new StageMetrics(name);
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + name + "-%d").setDaemon(false).build(),
+                (task, pool) -> {
+                    callerRuns.increment();
+                    task.run();
+                });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(() -> metrics.run(command));
+    }
+
+    /***
+     * 停止接收新的任务, 并等待已提交的任务执行完成
+     *
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 是否在等待时间内执行完成
+     * @throws InterruptedException InterruptedException
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if(executor.awaitTermination(timeout, unit)) {
+            return true;
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    public String getName() {
+        return metrics.getName();
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> data = metrics.snapshot();
+        data.put("poolSize", executor.getMaximumPoolSize());
+        data.put("queueDepth", executor.getQueue().size());
+        data.put("queueCapacity", queueCapacity);
+        data.put("callerRunsCount", callerRuns.sum());
+        return data;
+    }
+}
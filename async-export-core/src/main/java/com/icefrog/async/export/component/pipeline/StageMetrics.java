@@ -0,0 +1,126 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * 流水线单个阶段的运行统计. 线程安全
+ *
+ * @author icefrog
+ */
+public class StageMetrics {
+
+    private final String name;
+
+    /***
+     * 执行中的任务数
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    /***
+     * 累计执行耗时(纳秒)
+     */
+    private final LongAdder busyNanos = new LongAdder();
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    /***
+     * 执行任务并记录耗时
+     *
+     * @param task 任务
+     */
+    public void run(Runnable task) {
+        long start = begin();
+        boolean success = false;
+        try {
+            task.run();
+            success = true;
+        } finally {
+            end(start, success);
+        }
+    }
+
+    /***
+     * 标记任务开始
+     *
+     * @return 开始时间, 用于{@link #end(long, boolean)}
+     */
+    public long begin() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /***
+     * 标记任务结束
+     *
+     * @param start {@link #begin()}的返回值
+     * @param success 是否执行成功
+     */
+    public void end(long start, boolean success) {
+        busyNanos.add(System.nanoTime() - start);
+        active.decrementAndGet();
+        if(success) {
+            completed.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /***
+     * @return 累计执行耗时(纳秒)
+     */
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("stage", name);
+        data.put("activeCount", active.get());
+        data.put("completedCount", completed.sum());
+        data.put("failedCount", failed.sum());
+        data.put("busyMillis", TimeUnit.NANOSECONDS.toMillis(busyNanos.sum()));
+        return data;
+    }
+}
@@ -0,0 +1,465 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.queue;
+
+import com.alibaba.fastjson.JSON;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * 基于内存映射文件的追加式持久化队列. 容量受磁盘空间(maxSegments * segmentSize)约束而非堆内存, 进程重启后未消费的计划不丢失.
+ * <pre>
+ * 目录结构:
+ *   {seq}.seg    固定大小的段文件, 顺序追加记录. 记录格式: [int 长度][UTF-8 JSON], 长度为0表示尚未写入, 为-1表示本段结束
+ *   checkpoint   消费位置 [long 段序号][long 段内偏移]
+ * </pre>
+ * 段写满后滚动到新段; 消费位置越过某段后该段即被删除(压缩), 删除前释放段的内存映射. 写入先写数据后写长度, 进程崩溃时不会读到半条记录.
+ * 消费位置在出队时即更新, 语义为至少一次: 出队后未执行完成的计划仍为数据库中的待执行状态, 由启动加载或补偿机制恢复.
+ * 启动加载通过{@link #restore(Collection)}保留重启前未消费的计划, 仅追加数据库中收回而journal中不存在的计划
+ *
+ * @author icefrog
+ */
+@Slf4j
+public class JournalPlanQueue implements PlanQueue {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /***
+     * 记录头长度(int)
+     */
+    private static final int HEADER_SIZE = 4;
+
+    /***
+     * 段结束标记
+     */
+    private static final int END_OF_SEGMENT = -1;
+
+    private final File dir;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    /***
+     * 每次写入后是否强制刷盘. 关闭时依赖操作系统刷出page cache, 仅在机器掉电时可能丢失最近写入
+     */
+    private final boolean forceOnWrite;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    /***
+     * 已打开的段. key: 段序号
+     */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    private MappedByteBuffer checkpoint;
+
+    private long writeSeq;
+
+    private int writePos;
+
+    private long readSeq;
+
+    private int readPos;
+
+    /***
+     * 未消费的记录数量
+     */
+    private int count;
+
+    public JournalPlanQueue(File dir, int segmentSize, int maxSegments, boolean forceOnWrite) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.forceOnWrite = forceOnWrite;
+        recover();
+    }
+
+    @Override
+    public boolean offer(@NonNull ExportApiReqDto in) {
+
+        byte[] payload = JSON.toJSONString(in).getBytes(StandardCharsets.UTF_8);
+        if(payload.length + HEADER_SIZE * 2 > segmentSize) {
+            log.error("导出计划序列化后长度{}超过journal段大小{}, 丢弃. planId:{}", payload.length, segmentSize, in.getPlanId());
+            return false;
+        }
+
+        lock.lock();
+        try {
+            // 剩余空间需同时容纳本条记录与段结束标记
+            if(writePos + HEADER_SIZE + payload.length + HEADER_SIZE > segmentSize) {
+                if(segments.size() >= maxSegments) {
+                    return false;
+                }
+                roll();
+            }
+
+            MappedByteBuffer segment = segments.get(writeSeq);
+            ByteBuffer slice = segment.duplicate();
+            slice.position(writePos + HEADER_SIZE);
+            slice.put(payload);
+            segment.putInt(writePos, payload.length);
+            if(forceOnWrite) {
+                segment.force();
+            }
+            writePos += HEADER_SIZE + payload.length;
+
+            count++;
+            notEmpty.signal();
+            return true;
+        } catch (IOException e) {
+            log.error("导出计划写入journal失败. planId:{}, {}", in.getPlanId(), e.getMessage(), e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ExportApiReqDto take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ExportApiReqDto poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if(nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /***
+     * 保留重启前未消费的计划, 按顺序追加其中不存在的计划(以planId判定)
+     */
+    @Override
+    public List<ExportApiReqDto> restore(@NonNull Collection<ExportApiReqDto> reclaimed) {
+
+        List<ExportApiReqDto> queued;
+        lock.lock();
+        try {
+            queued = pending();
+        } finally {
+            lock.unlock();
+        }
+
+        Set<String> planIds = new HashSet<>();
+        for (ExportApiReqDto in : queued) {
+            planIds.add(in.getPlanId());
+        }
+        for (ExportApiReqDto in : reclaimed) {
+            if(!planIds.add(in.getPlanId())) {
+                continue;
+            }
+            if(offer(in)) {
+                queued.add(in);
+            } else {
+                log.error("恢复journal队列时磁盘容量不足, 丢弃计划. planId:{}", in.getPlanId());
+            }
+        }
+        return queued;
+    }
+
+    /***
+     * 清空journal(删除全部段)后按顺序写入指定内容
+     */
+    @Override
+    public void reset(@NonNull Collection<ExportApiReqDto> initCollection) {
+        lock.lock();
+        try {
+            for (Map.Entry<Long, MappedByteBuffer> segment : segments.entrySet()) {
+                unmap(segment.getValue());
+                deleteSegmentFile(segment.getKey());
+            }
+            segments.clear();
+
+            long seq = writeSeq + 1;
+            openSegment(seq);
+            writeSeq = seq;
+            writePos = 0;
+            readSeq = seq;
+            readPos = 0;
+            count = 0;
+            saveCheckpoint();
+        } catch (IOException e) {
+            throw new IllegalStateException("重置journal队列失败: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+
+        for (ExportApiReqDto in : initCollection) {
+            if(!offer(in)) {
+                log.error("初始化journal队列时磁盘容量不足, 丢弃计划. planId:{}", in.getPlanId());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (MappedByteBuffer segment : segments.values()) {
+                segment.force();
+            }
+            checkpoint.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /***
+     * 读取当前消费位置的记录并推进消费位置. 调用方需持有锁且count大于0
+     */
+    private ExportApiReqDto dequeue() {
+
+        while (true) {
+            MappedByteBuffer segment = segments.get(readSeq);
+            int length = readPos + HEADER_SIZE > segmentSize ? END_OF_SEGMENT : segment.getInt(readPos);
+
+            if(length == END_OF_SEGMENT || (length == 0 && readSeq < writeSeq)) {
+                // 本段已消费完, 推进到下一段并删除本段
+                long consumed = readSeq;
+                readSeq = segments.higherKey(consumed);
+                readPos = 0;
+                saveCheckpoint();
+                unmap(segments.remove(consumed));
+                deleteSegmentFile(consumed);
+                continue;
+            }
+
+            byte[] payload = new byte[length];
+            ByteBuffer slice = segment.duplicate();
+            slice.position(readPos + HEADER_SIZE);
+            slice.get(payload);
+
+            readPos += HEADER_SIZE + length;
+            saveCheckpoint();
+            count--;
+
+            return JSON.parseObject(new String(payload, StandardCharsets.UTF_8), ExportApiReqDto.class);
+        }
+    }
+
+    /***
+     * 读取全部未消费的记录, 不推进消费位置. 调用方需持有锁
+     */
+    private List<ExportApiReqDto> pending() {
+
+        List<ExportApiReqDto> plans = new ArrayList<>(count);
+        for (Map.Entry<Long, MappedByteBuffer> entry : segments.entrySet()) {
+            ByteBuffer segment = entry.getValue().duplicate();
+            int pos = entry.getKey() == readSeq ? readPos : 0;
+            while (pos + HEADER_SIZE <= segmentSize) {
+                int length = segment.getInt(pos);
+                if(length <= 0 || pos + HEADER_SIZE + length > segmentSize) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                segment.position(pos + HEADER_SIZE);
+                segment.get(payload);
+                plans.add(JSON.parseObject(new String(payload, StandardCharsets.UTF_8), ExportApiReqDto.class));
+                pos += HEADER_SIZE + length;
+            }
+        }
+        return plans;
+    }
+
+    /***
+     * 在当前写入段末尾写入结束标记并滚动到新段
+     */
+    private void roll() throws IOException {
+        MappedByteBuffer current = segments.get(writeSeq);
+        if(writePos + HEADER_SIZE <= segmentSize) {
+            current.putInt(writePos, END_OF_SEGMENT);
+        }
+        openSegment(writeSeq + 1);
+        writeSeq++;
+        writePos = 0;
+    }
+
+    private void saveCheckpoint() {
+        // 先写偏移后写段序号: 崩溃时最坏情况为重复消费, 不会跳过记录
+        checkpoint.putLong(8, readPos);
+        checkpoint.putLong(0, readSeq);
+    }
+
+    /***
+     * 启动恢复: 加载消费位置, 删除已消费的段, 扫描未消费记录数量与写入位置
+     */
+    private void recover() throws IOException {
+
+        if(!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建journal目录: " + dir.getAbsolutePath());
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, CHECKPOINT_FILE), "rw")) {
+            checkpoint = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        }
+        readSeq = checkpoint.getLong(0);
+        readPos = (int) checkpoint.getLong(8);
+
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        TreeMap<Long, File> existing = new TreeMap<>();
+        if(files != null) {
+            for (File file : files) {
+                existing.put(Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+
+        // 删除已消费的段
+        for (Long seq : existing.headMap(readSeq).keySet()) {
+            deleteSegmentFile(seq);
+        }
+        existing = new TreeMap<>(existing.tailMap(readSeq));
+
+        if(existing.isEmpty()) {
+            openSegment(readSeq);
+            readPos = 0;
+        } else {
+            if(existing.firstKey() != readSeq) {
+                readSeq = existing.firstKey();
+                readPos = 0;
+            }
+            for (Long seq : existing.keySet()) {
+                openSegment(seq);
+            }
+        }
+        saveCheckpoint();
+
+        // 扫描未消费记录
+        writeSeq = segments.lastKey();
+        for (Long seq : segments.keySet()) {
+            MappedByteBuffer segment = segments.get(seq);
+            int pos = seq == readSeq ? readPos : 0;
+            while (pos + HEADER_SIZE <= segmentSize) {
+                int length = segment.getInt(pos);
+                if(length <= 0 || pos + HEADER_SIZE + length > segmentSize) {
+                    break;
+                }
+                pos += HEADER_SIZE + length;
+                count++;
+            }
+            if(seq == writeSeq) {
+                writePos = pos;
+            }
+        }
+
+        log.info("journal队列恢复完成. dir:{}, segments:{}, pending:{}", dir.getAbsolutePath(), segments.size(), count);
+    }
+
+    private void openSegment(long seq) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile(seq), "rw")) {
+            segments.put(seq, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    private void deleteSegmentFile(long seq) {
+        File file = segmentFile(seq);
+        if(file.exists() && !file.delete()) {
+            log.warn("删除已消费的journal段失败: {}", file.getAbsolutePath());
+        }
+    }
+
+    /***
+     * 释放段的内存映射. 映射在缓冲区被回收前一直占用虚拟内存与文件句柄, 已删除的段文件在此之前不会释放磁盘空间.
+     * 释放后不可再访问该缓冲区; 无法释放时(如运行时禁止访问)仅记录日志, 由GC回收
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if(buffer == null) {
+            return;
+        }
+        try {
+            // JDK 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // JDK 8: DirectByteBuffer.cleaner().clean()
+        } catch (Exception e) {
+            log.warn("释放journal段内存映射失败: {}", e.getMessage());
+            return;
+        }
+        try {
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object instance = cleaner.invoke(buffer);
+            if(instance != null) {
+                instance.getClass().getMethod("clean").invoke(instance);
+            }
+        } catch (Exception e) {
+            log.warn("释放journal段内存映射失败: {}", e.getMessage());
+        }
+    }
+
+    private File segmentFile(long seq) {
+        return new File(dir, String.format("%020d%s", seq, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,77 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.queue;
+
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import org.springframework.lang.NonNull;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 基于LinkedBlockingQueue的内存队列实现. 进程退出后内容丢失, 依赖启动时从数据库重新加载待执行计划
+ *
+ * @see BlockingQueue
+ * @see LinkedBlockingQueue
+ * @author icefrog
+ */
+public class MemoryPlanQueue implements PlanQueue {
+
+    /***
+     * 队列容量
+     */
+    private final int capacity;
+
+    private volatile BlockingQueue<ExportApiReqDto> queue;
+
+    public MemoryPlanQueue(int capacity) {
+        this.capacity = capacity;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(@NonNull ExportApiReqDto in) {
+        return queue.offer(in);
+    }
+
+    @Override
+    public ExportApiReqDto take() throws InterruptedException {
+        return queue.take();
+    }
+
+    @Override
+    public ExportApiReqDto poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    /***
+     * 重新构建内存队列. 容量取配置容量与初始化内容数量的较大值, 保证初始化内容不被丢弃
+     */
+    @Override
+    public synchronized void reset(@NonNull Collection<ExportApiReqDto> initCollection) {
+        BlockingQueue<ExportApiReqDto> rebuilt = new LinkedBlockingQueue<>(Math.max(capacity, initCollection.size()));
+        rebuilt.addAll(initCollection);
+        this.queue = rebuilt;
+    }
+}
@@ -0,0 +1,90 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.queue;
+
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * 导出计划队列存储实现. 由{@link com.icefrog.async.export.component.ApiCacheQueue}统一对外提供入队/出队操作
+ *
+ * @see MemoryPlanQueue
+ * @see JournalPlanQueue
+ * @author icefrog
+ */
+public interface PlanQueue {
+
+    /***
+     * 非阻塞式入队. 当队列满, 则返回false（表示丢弃）. 否则返回true
+     * @param in ExportApiReqDto
+     * @return 是否入队成功
+     */
+    boolean offer(@NonNull ExportApiReqDto in);
+
+    /***
+     * 阻塞获取. 当队列为空时阻塞。 直到获取到结果
+     * @return ExportApiReqDto
+     * @throws InterruptedException
+     */
+    ExportApiReqDto take() throws InterruptedException;
+
+    /***
+     * 限时阻塞获取
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return ExportApiReqDto. 超时未获取到结果则返回null
+     * @throws InterruptedException
+     */
+    @Nullable
+    ExportApiReqDto poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /***
+     * @return 当前队列中等待消费的计划数量
+     */
+    int size();
+
+    /***
+     * 清空队列并写入指定内容
+     * @param initCollection 需要初始化的列表内容
+     */
+    void reset(@NonNull Collection<ExportApiReqDto> initCollection);
+
+    /***
+     * 启动恢复: 以数据库中收回的计划初始化队列. 默认清空队列后写入;
+     * 持久化队列保留重启前未消费的计划, 仅追加其中不存在的计划
+     * @param reclaimed 数据库中收回的计划
+     * @return 恢复后队列中的计划(含重启前未消费的计划)
+     */
+    default List<ExportApiReqDto> restore(@NonNull Collection<ExportApiReqDto> reclaimed) {
+        reset(reclaimed);
+        return new ArrayList<>(reclaimed);
+    }
+
+    /***
+     * 释放队列占用的资源. 默认无操作
+     * @throws IOException IOException
+     */
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,94 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.queue;
+
+import com.icefrog.async.export.component.ApiCacheQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+
+/***
+ * 根据配置为ApiCacheQueue安装队列存储实现. 在ApplicationRunner(初始化数据库待执行计划到队列)之前完成
+ * <pre>
+ * export.queue.type=memory   内存队列(默认)
+ * export.queue.type=journal  基于内存映射文件的持久化队列
+ * </pre>
+ *
+ * @see ApiCacheQueue
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class PlanQueueConfigurer implements InitializingBean, DisposableBean {
+
+    /***
+     * 队列类型: memory, journal
+     */
+    @Value("${export.queue.type:memory}")
+    private String type;
+
+    /***
+     * 内存队列容量
+     */
+    @Value("${export.queue.capacity:200}")
+    private int capacity;
+
+    /***
+     * journal目录
+     */
+    @Value("${export.queue.journal.dir:journal}")
+    private String journalDir;
+
+    /***
+     * journal单个段文件大小(字节)
+     */
+    @Value("${export.queue.journal.segmentSize:16777216}")
+    private int segmentSize;
+
+    /***
+     * journal最大段数量. 决定持久化队列的磁盘容量上限
+     */
+    @Value("${export.queue.journal.maxSegments:64}")
+    private int maxSegments;
+
+    /***
+     * 每次入队后是否强制刷盘
+     */
+    @Value("${export.queue.journal.forceOnWrite:false}")
+    private boolean forceOnWrite;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+
+        if("journal".equalsIgnoreCase(type)) {
+            ApiCacheQueue.install(new JournalPlanQueue(new File(journalDir), segmentSize, maxSegments, forceOnWrite));
+            log.info("导出计划队列使用journal持久化队列. dir:{}, segmentSize:{}, maxSegments:{}", journalDir, segmentSize, maxSegments);
+        } else {
+            ApiCacheQueue.install(new MemoryPlanQueue(capacity));
+            log.info("导出计划队列使用内存队列. capacity:{}", capacity);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        ApiCacheQueue.close();
+    }
+}
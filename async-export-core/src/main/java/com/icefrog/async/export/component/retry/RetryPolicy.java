@@ -0,0 +1,159 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.retry;
+
+import com.icefrog.async.export.component.job.ExportCancelledException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/***
+ * 导出作业重试策略. 按异常类型判定是否可重试, 并计算带随机抖动的指数退避时间.
+ * 异常及其cause链中任一异常属于fatalExceptions时不重试; 否则任一异常属于retryableExceptions时重试; 其余异常不重试
+ *
+ * @see RetryScheduler
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class RetryPolicy implements InitializingBean {
+
+    /***
+     * 最大重试次数(不含首次执行). 0表示不重试
+     */
+    @Value("${export.retry.maxAttempts:3}")
+    private int maxAttempts;
+
+    /***
+     * 首次重试的基础延迟(毫秒). 第n次重试的延迟为 baseDelayMillis * 2^(n-1), 不超过maxDelayMillis
+     */
+    @Value("${export.retry.baseDelayMillis:5000}")
+    private long baseDelayMillis;
+
+    /***
+     * 最大重试延迟(毫秒)
+     */
+    @Value("${export.retry.maxDelayMillis:300000}")
+    private long maxDelayMillis;
+
+    /***
+     * 随机抖动比例(0~1). 实际延迟在[delay * (1 - jitter), delay]之间均匀分布, 避免大量作业同时重试
+     */
+    @Value("${export.retry.jitter:0.5}")
+    private double jitter;
+
+    /***
+     * 可重试的异常类型(含子类), 多个以','分隔
+     */
+    @Value("${export.retry.retryableExceptions:java.io.IOException,java.sql.SQLTransientException,java.sql.SQLRecoverableException,"
+            + "org.springframework.dao.TransientDataAccessException,org.springframework.dao.RecoverableDataAccessException,"
+            + "java.util.concurrent.TimeoutException}")
+    private String retryableExceptions;
+
+    /***
+     * 不可重试的异常类型(含子类), 优先于retryableExceptions, 多个以','分隔
+     */
+    @Value("${export.retry.fatalExceptions:java.lang.IllegalArgumentException,java.lang.IllegalStateException,"
+            + "java.io.FileNotFoundException,org.springframework.dao.NonTransientDataAccessException}")
+    private String fatalExceptions;
+
+    private List<Class<?>> retryableTypes;
+
+    private List<Class<?>> fatalTypes;
+
+    @Override
+    public void afterPropertiesSet() {
+        retryableTypes = loadTypes(retryableExceptions);
+        fatalTypes = loadTypes(fatalExceptions);
+        jitter = Math.min(1D, Math.max(0D, jitter));
+    }
+
+    /***
+     * @return 最大重试次数
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /***
+     * 判定异常是否可重试
+     *
+     * @param ex 作业异常
+     * @return 是否可重试
+     */
+    public boolean isRetryable(Throwable ex) {
+        boolean retryable = false;
+        // cause链可能成环
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Throwable current = ex; current != null && visited.add(current); current = current.getCause()) {
+            // 取消与执行超时不受配置影响, 始终不重试
+            if(current instanceof ExportCancelledException || matches(fatalTypes, current)) {
+                return false;
+            }
+            retryable |= matches(retryableTypes, current);
+        }
+        return retryable;
+    }
+
+    /***
+     * 计算第attempt次重试前的延迟
+     *
+     * @param attempt 重试次数, 从1开始
+     * @return 延迟(毫秒)
+     */
+    public long delayMillis(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 30);
+        long delay = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        if(delay < 0) {
+            delay = maxDelayMillis;
+        }
+        return delay - (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    private static boolean matches(List<Class<?>> types, Throwable ex) {
+        for (Class<?> type : types) {
+            if(type.isInstance(ex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Class<?>> loadTypes(String classNames) {
+        List<Class<?>> types = new ArrayList<>();
+        for (String className : StringUtils.split(StringUtils.defaultString(classNames), ',')) {
+            if(StringUtils.isBlank(className)) {
+                continue;
+            }
+            try {
+                types.add(Class.forName(className.trim()));
+            } catch (ClassNotFoundException ex) {
+                log.warn("重试策略中的异常类型{}不存在, 已忽略", className.trim());
+            }
+        }
+        return types;
+    }
+}
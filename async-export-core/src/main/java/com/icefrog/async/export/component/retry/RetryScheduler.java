@@ -0,0 +1,221 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.retry;
+
+import com.icefrog.async.export.component.admission.AdmissionControl;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * 导出作业延迟重试. 可重试的失败作业回写重试次数(retry_qty)后进入延迟队列, 到期后由独立的重试线程重新入队执行,
+ * 不占用消费线程. 等待重试期间计划保持待执行状态并由本节点持有租约, 节点宕机后租约过期, 计划由其他节点认领执行.
+ * 计划已被取消或租约已失效时不再重试
+ *
+ * @see RetryPolicy
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class RetryScheduler implements InitializingBean, DisposableBean {
+
+    @Resource
+    private RetryPolicy retryPolicy;
+
+    @Resource
+    private AdmissionControl admissionControl;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    /***
+     * 失败消息最大长度. 字段[failed_msg]
+     */
+    private static final int MAX_FAILED_MSG_LENGTH = 1024;
+
+    private final DelayQueue<DelayedPlan> delayQueue = new DelayQueue<>();
+
+    private final LongAdder scheduledCount = new LongAdder();
+
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    private final LongAdder fatalCount = new LongAdder();
+
+    private Thread retryThread;
+
+    private volatile boolean running = true;
+
+    @Override
+    public void afterPropertiesSet() {
+        planLeaseManager.onLeaseLost(this::cancel);
+        retryThread = new Thread(this::dispatch, "export-retry");
+        retryThread.setDaemon(true);
+        retryThread.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // 等待中的计划仍为待执行状态, 将在节点重启后或租约过期后重新执行
+        running = false;
+        retryThread.interrupt();
+    }
+
+    /***
+     * 失败作业申请重试. 可重试且未超过最大重试次数时, 回写重试次数并进入延迟队列
+     *
+     * @param plan 失败的作业
+     * @param ex 作业异常
+     * @return 是否已安排重试. 为false时调用方按失败处理(计划已被取消或已被其他节点接管时, 失败状态同样不会回写)
+     */
+    public boolean schedule(ExportApiReqDto plan, Throwable ex) {
+
+        if(!retryPolicy.isRetryable(ex)) {
+            fatalCount.increment();
+            return false;
+        }
+        int attempt = (plan.getRetryQty() == null ? 0 : plan.getRetryQty()) + 1;
+        if(attempt > retryPolicy.getMaxAttempts()) {
+            exhaustedCount.increment();
+            return false;
+        }
+
+        SysExportPlan record = new SysExportPlan();
+        record.setId(plan.getPlanId());
+        record.setPlanStatus(PlanStatus.PENDING.getValue());
+        record.setRetryQty(attempt);
+        record.setFailedMsg(StringUtils.abbreviate(ex.getMessage(), MAX_FAILED_MSG_LENGTH));
+        record.setLeaseExpire(planLeaseManager.nextLeaseExpire());
+        try {
+            // CAS: 计划仍由本节点持有且为待执行状态
+            if(sysExportPlanMapper.finishPlan(record, Collections.singletonList(PlanStatus.PENDING.getValue()),
+                    planLeaseManager.getNodeId()) < 1) {
+                log.warn("导出计划{}已在其他位置被取消或已被其他节点接管, 不再重试", plan.getPlanId());
+                return false;
+            }
+        } catch (Exception updateEx) {
+            log.error("回写计划{}重试次数失败. {}", plan.getPlanId(), updateEx.getMessage(), updateEx);
+            return false;
+        }
+
+        plan.setRetryQty(attempt);
+        planLeaseManager.hold(plan.getPlanId());
+        long delay = retryPolicy.delayMillis(attempt);
+        delayQueue.put(new DelayedPlan(plan, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay)));
+        scheduledCount.increment();
+        log.warn("导出计划{}执行失败, {}ms后第{}次重试. {}", plan.getPlanId(), delay, attempt, ex.getMessage());
+        return true;
+    }
+
+    /***
+     * 取消等待重试的计划
+     *
+     * @param planId 计划ID
+     * @return 是否为等待重试的计划
+     */
+    public boolean cancel(String planId) {
+        return delayQueue.removeIf(delayed -> delayed.plan.getPlanId().equals(planId));
+    }
+
+    /***
+     * @return 等待重试的计划数量
+     */
+    public int size() {
+        return delayQueue.size();
+    }
+
+    /***
+     * @return 重试统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("maxAttempts", retryPolicy.getMaxAttempts());
+        data.put("waiting", size());
+        data.put("scheduledCount", scheduledCount.sum());
+        data.put("exhaustedCount", exhaustedCount.sum());
+        data.put("fatalCount", fatalCount.sum());
+        return data;
+    }
+
+    /***
+     * 重试线程: 到期的计划重新入队. 队列已满时计划转为延迟执行
+     */
+    private void dispatch() {
+        while (running) {
+            ExportApiReqDto plan;
+            try {
+                plan = delayQueue.take().plan;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                admissionControl.enqueue(plan);
+            } catch (Exception ex) {
+                // 租约过期后由认领任务重新执行
+                planLeaseManager.release(plan.getPlanId());
+                log.error("导出计划{}重新入队失败. {}", plan.getPlanId(), ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /***
+     * 等待重试的计划
+     */
+    private static final class DelayedPlan implements Delayed {
+
+        private final ExportApiReqDto plan;
+
+        /***
+         * 到期时间(System.nanoTime)
+         */
+        private final long dueNanos;
+
+        private DelayedPlan(ExportApiReqDto plan, long dueNanos) {
+            this.plan = plan;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
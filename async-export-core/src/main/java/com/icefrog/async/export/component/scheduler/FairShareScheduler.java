@@ -0,0 +1,594 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.scheduler;
+
+import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.admission.WorkloadEstimator;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * 导出计划公平调度. 位于ApiCacheQueue与消费线程之间: 从队列中预取至多window个计划, 按以下规则决定下一个执行的计划
+ * <pre>
+ * 1. 优先级类别之间按权重平滑加权轮询(export.scheduler.classWeights), 低优先级类别不会被饿死
+ * 2. 同一类别内按userId区分流, 以预估行数为代价做差额轮询(DRR), 单个用户提交大量导出时不影响其他用户
+ * 3. 同一用户的计划按预估执行耗时从短到长执行(SJF), 等待时间越长优先级越高(aging), 避免大型导出被饿死;
+ *    export.scheduler.order=fifo时按beanId轮询, 同一beanId按预取顺序执行
+ * 4. 每个beanId同时执行的计划数量不超过上限(舱壁), 达到上限的beanId暂不参与调度
+ * </pre>
+ * 未显式指定优先级类别的计划, 按export.scheduler.beanClasses配置判定, 否则预估行数不超过interactiveRows的视为交互式.
+ * 预取的计划与队列中的计划一样只存在于内存, 进程退出后由数据库中的待执行计划恢复
+ *
+ * @see PriorityClass
+ * @see WorkloadEstimator
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class FairShareScheduler implements InitializingBean {
+
+    @Resource
+    private WorkloadEstimator workloadEstimator;
+
+    /***
+     * 是否启用公平调度. 关闭时按队列顺序(FIFO)执行
+     */
+    @Value("${export.scheduler.enabled:true}")
+    private boolean enabled;
+
+    /***
+     * 从队列预取的最大计划数量. 越大调度越公平, 但预取的计划不再计入队列容量
+     */
+    @Value("${export.scheduler.window:64}")
+    private int window;
+
+    /***
+     * DRR每轮为每个用户增加的额度(行)
+     */
+    @Value("${export.scheduler.quantumRows:50000}")
+    private long quantumRows;
+
+    /***
+     * 预估行数不超过该值且未指定类别的计划视为交互式
+     */
+    @Value("${export.scheduler.interactiveRows:10000}")
+    private long interactiveRows;
+
+    /***
+     * 各优先级类别的权重. 格式: class:weight,class:weight
+     */
+    @Value("${export.scheduler.classWeights:interactive:8,normal:3,batch:1}")
+    private String classWeights;
+
+    /***
+     * beanId的默认优先级类别. 格式: beanId:class,beanId:class
+     */
+    @Value("${export.scheduler.beanClasses:}")
+    private String beanClasses;
+
+    /***
+     * 同一用户的计划执行顺序: sjf(预估耗时最短优先), fifo(按beanId轮询)
+     */
+    @Value("${export.scheduler.order:sjf}")
+    private String order;
+
+    /***
+     * SJF老化系数: 计划每等待1毫秒, 其预估耗时视为减少agingFactor毫秒
+     */
+    @Value("${export.scheduler.agingFactor:1.0}")
+    private double agingFactor;
+
+    /***
+     * 每个beanId同时执行的最大计划数量. 小于等于0时取消费线程数-1, 保证至少一个消费线程可供其他beanId使用
+     */
+    @Value("${export.scheduler.maxRunningPerBean:0}")
+    private int maxRunningPerBean;
+
+    /***
+     * 指定beanId同时执行的最大计划数量. 格式: beanId:limit,beanId:limit
+     */
+    @Value("${export.scheduler.beanLimits:}")
+    private String beanLimits;
+
+    /***
+     * 受并发上限限制而等待时, 重新检查队列中新计划的间隔
+     */
+    private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Comparator<Entry> RANK_ORDER = Comparator.comparingDouble(entry -> entry.rank);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /***
+     * 有计划结束执行时通知等待中的消费线程
+     */
+    private final Condition released = lock.newCondition();
+
+    private final Map<PriorityClass, ClassQueue> classes = new EnumMap<>(PriorityClass.class);
+
+    private final Map<String, PriorityClass> beanClassMap = new HashMap<>();
+
+    private final Map<String, Integer> beanLimitMap = new HashMap<>();
+
+    /***
+     * key: beanId. value: 执行中的计划数量
+     */
+    private final Map<String, Integer> running = new HashMap<>();
+
+    /***
+     * 是否按预估耗时最短优先
+     */
+    private boolean shortestFirst;
+
+    /***
+     * 预取序号. fifo时作为计划的排序值
+     */
+    private long sequence;
+
+    /***
+     * 消费线程数量
+     */
+    private volatile int workerCount;
+
+    /***
+     * 已预取尚未执行的计划数量
+     */
+    private volatile int buffered;
+
+    @Override
+    public void afterPropertiesSet() {
+        shortestFirst = !"fifo".equalsIgnoreCase(order);
+        Map<String, String> weights = parsePairs(classWeights);
+        for (PriorityClass priorityClass : PriorityClass.values()) {
+            String weight = weights.get(priorityClass.getValue());
+            classes.put(priorityClass, new ClassQueue(priorityClass, weight == null ? 1 : Math.max(1, Integer.parseInt(weight))));
+        }
+        for (Map.Entry<String, String> entry : parsePairs(beanClasses).entrySet()) {
+            PriorityClass priorityClass = PriorityClass.of(entry.getValue());
+            if(priorityClass == null) {
+                log.warn("export.scheduler.beanClasses中beanId:{}的优先级类别{}无法识别, 已忽略", entry.getKey(), entry.getValue());
+                continue;
+            }
+            beanClassMap.put(entry.getKey(), priorityClass);
+        }
+        for (Map.Entry<String, String> entry : parsePairs(beanLimits).entrySet()) {
+            beanLimitMap.put(entry.getKey(), Integer.parseInt(entry.getValue()));
+        }
+    }
+
+    /***
+     * 设置消费线程数量. 用于计算beanId默认的并发上限
+     * @param workerCount 消费线程数量
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    /***
+     * 获取下一个待执行的计划. 调用方在计划执行结束后必须调用{@link #release(ExportApiReqDto)}
+     *
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 待执行的计划. 超时返回null
+     * @throws InterruptedException InterruptedException
+     */
+    @Nullable
+    public ExportApiReqDto next(long timeout, TimeUnit unit) throws InterruptedException {
+
+        if(!enabled) {
+            return ApiCacheQueue.poll(timeout, unit);
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long remaining;
+            lock.lockInterruptibly();
+            try {
+                prefetch();
+                Entry entry = select();
+                while (entry == null && buffered >= window) {
+                    // 预取的计划均受并发上限限制时越过window继续预取, 避免其阻塞其他beanId的计划
+                    ExportApiReqDto plan = ApiCacheQueue.poll(0, TimeUnit.NANOSECONDS);
+                    if(plan == null) {
+                        break;
+                    }
+                    add(plan);
+                    entry = select();
+                }
+                if(entry != null) {
+                    return dispatch(entry);
+                }
+                remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    return null;
+                }
+                if(buffered > 0) {
+                    // 预取的计划均受并发上限限制: 等待执行中的计划结束, 期间定期检查队列中的新计划
+                    released.awaitNanos(Math.min(remaining, RECHECK_NANOS));
+                    continue;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // 无预取的计划: 在锁外阻塞等待队列中的新计划
+            ExportApiReqDto plan = ApiCacheQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            if(plan == null) {
+                return null;
+            }
+            lock.lockInterruptibly();
+            try {
+                add(plan);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /***
+     * 计划执行结束, 释放其占用的beanId并发额度
+     * @param plan 由{@link #next(long, TimeUnit)}获取的计划
+     */
+    public void release(ExportApiReqDto plan) {
+        if(!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            running.computeIfPresent(String.valueOf(plan.getBeanId()), (beanId, count) -> count > 1 ? count - 1 : null);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /***
+     * @return 已预取尚未执行的计划数量
+     */
+    public int size() {
+        return buffered;
+    }
+
+    /***
+     * @return 调度统计(各类别的预取数量、用户数、执行次数、等待时间, 各beanId执行中的数量)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            data.put("enabled", enabled);
+            data.put("order", shortestFirst ? "sjf" : "fifo");
+            data.put("buffered", buffered);
+            for (ClassQueue classQueue : classes.values()) {
+                Map<String, Object> classData = new LinkedHashMap<>();
+                classData.put("weight", classQueue.weight);
+                classData.put("buffered", classQueue.size);
+                classData.put("users", classQueue.active.size());
+                classData.put("dispatched", classQueue.dispatched);
+                classData.put("avgWaitMillis", classQueue.dispatched == 0 ? 0 : classQueue.totalWaitMillis / classQueue.dispatched);
+                classData.put("maxWaitMillis", classQueue.maxWaitMillis);
+                data.put(classQueue.priorityClass.getValue(), classData);
+            }
+            data.put("running", new HashMap<>(running));
+        } finally {
+            lock.unlock();
+        }
+        return data;
+    }
+
+    /***
+     * 从队列非阻塞地预取计划, 直至达到window
+     */
+    private void prefetch() throws InterruptedException {
+        while (buffered < window) {
+            ExportApiReqDto plan = ApiCacheQueue.poll(0, TimeUnit.NANOSECONDS);
+            if(plan == null) {
+                return;
+            }
+            add(plan);
+        }
+    }
+
+    private void add(ExportApiReqDto plan) {
+        if(plan.getEstimatedRows() == null) {
+            plan.setEstimatedRows(workloadEstimator.estimateRows(plan.getBeanId()));
+        }
+        Entry entry = new Entry(plan);
+        // 线性老化: 排序值 = 预估耗时 - agingFactor * (当前时间 - 预取时间). 当前时间对所有计划相同, 排序值在预取时即可确定
+        entry.rank = shortestFirst ? workloadEstimator.estimateMillis(plan) + agingFactor * entry.bufferedAt : sequence++;
+        classes.get(classify(plan)).add(entry);
+        buffered++;
+    }
+
+    /***
+     * 判定计划的优先级类别: 计划指定 > beanId配置 > 按预估行数
+     */
+    private PriorityClass classify(ExportApiReqDto plan) {
+        PriorityClass priorityClass = PriorityClass.of(plan.getPriority());
+        if(priorityClass == null) {
+            priorityClass = beanClassMap.get(plan.getBeanId());
+        }
+        if(priorityClass == null) {
+            priorityClass = plan.getEstimatedRows() <= interactiveRows ? PriorityClass.INTERACTIVE : PriorityClass.NORMAL;
+        }
+        return priorityClass;
+    }
+
+    /***
+     * 按平滑加权轮询选择类别. 选中的类别内没有可执行的计划(均受并发上限限制)时, 按轮询顺序尝试其他类别
+     */
+    @Nullable
+    private Entry select() {
+
+        List<ClassQueue> candidates = new ArrayList<>(classes.size());
+        int totalWeight = 0;
+        for (ClassQueue classQueue : classes.values()) {
+            if(classQueue.size > 0) {
+                classQueue.current += classQueue.weight;
+                totalWeight += classQueue.weight;
+                candidates.add(classQueue);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.current, a.current));
+        for (ClassQueue classQueue : candidates) {
+            Entry entry = classQueue.select();
+            if(entry != null) {
+                classQueue.current -= totalWeight;
+                return entry;
+            }
+        }
+        // 本次未调度任何计划, 撤销权重累加
+        for (ClassQueue classQueue : candidates) {
+            classQueue.current -= classQueue.weight;
+        }
+        return null;
+    }
+
+    private ExportApiReqDto dispatch(Entry entry) {
+        running.merge(String.valueOf(entry.plan.getBeanId()), 1, Integer::sum);
+        buffered--;
+        return entry.plan;
+    }
+
+    private boolean hasCapacity(String beanId) {
+        Integer limit = beanLimitMap.get(beanId);
+        if(limit == null) {
+            int workers = workerCount;
+            limit = maxRunningPerBean > 0 ? maxRunningPerBean : workers > 1 ? workers - 1 : Integer.MAX_VALUE;
+        }
+        return running.getOrDefault(beanId, 0) < limit;
+    }
+
+    private static Map<String, String> parsePairs(String value) {
+        Map<String, String> pairs = new LinkedHashMap<>();
+        for (String pair : StringUtils.split(StringUtils.defaultString(value), ',')) {
+            String[] kv = StringUtils.split(pair, ':');
+            if(kv.length == 2 && StringUtils.isNotBlank(kv[0]) && StringUtils.isNotBlank(kv[1])) {
+                pairs.put(kv[0].trim(), kv[1].trim());
+            }
+        }
+        return pairs;
+    }
+
+    /***
+     * 预取的计划
+     */
+    private static final class Entry {
+
+        private final ExportApiReqDto plan;
+
+        private final String beanId;
+
+        /***
+         * DRR代价: 预估行数
+         */
+        private final long cost;
+
+        private final long bufferedAt = System.currentTimeMillis();
+
+        /***
+         * 同一用户内的排序值, 越小越先执行
+         */
+        private double rank;
+
+        private Entry(ExportApiReqDto plan) {
+            this.plan = plan;
+            this.beanId = String.valueOf(plan.getBeanId());
+            this.cost = Math.max(1, plan.getEstimatedRows());
+        }
+    }
+
+    /***
+     * 单个优先级类别. 类别内按用户做DRR
+     */
+    private final class ClassQueue {
+
+        private final PriorityClass priorityClass;
+
+        private final int weight;
+
+        /***
+         * 平滑加权轮询的当前权重
+         */
+        private long current;
+
+        /***
+         * key: userId
+         */
+        private final Map<String, Flow> flows = new HashMap<>();
+
+        /***
+         * 有待执行计划的用户, 按轮询顺序排列. 队首为当前轮到的用户
+         */
+        private final ArrayDeque<Flow> active = new ArrayDeque<>();
+
+        private int size;
+
+        private long dispatched;
+
+        private long totalWaitMillis;
+
+        private long maxWaitMillis;
+
+        private ClassQueue(PriorityClass priorityClass, int weight) {
+            this.priorityClass = priorityClass;
+            this.weight = weight;
+        }
+
+        private void add(Entry entry) {
+            String user = String.valueOf(entry.plan.getUserId());
+            Flow flow = flows.get(user);
+            if(flow == null) {
+                flow = new Flow(user);
+                flows.put(user, flow);
+                active.addLast(flow);
+            }
+            flow.add(entry);
+            size++;
+        }
+
+        /***
+         * DRR: 轮到的用户增加quantum额度, 额度足以支付其下一个可执行计划的代价时执行该计划, 否则轮到下一个用户.
+         * 一轮内没有用户可执行时, 直接补足所需的空转轮次, 避免大代价计划导致多次空转
+         */
+        @Nullable
+        private Entry select() {
+
+            for (int pass = 0; pass < 2; pass++) {
+                long minRounds = Long.MAX_VALUE;
+                int flowCount = active.size();
+                for (int i = 0; i < flowCount; i++) {
+                    Flow flow = active.peekFirst();
+                    Entry entry = flow.peekRunnable();
+                    if(entry != null) {
+                        if(!flow.inTurn) {
+                            flow.deficit += quantumRows;
+                            flow.inTurn = true;
+                        }
+                        if(entry.cost <= flow.deficit) {
+                            flow.deficit -= entry.cost;
+                            flow.remove(entry);
+                            if(flow.isEmpty()) {
+                                active.pollFirst();
+                                flows.remove(flow.user);
+                            }
+                            size--;
+                            long wait = System.currentTimeMillis() - entry.bufferedAt;
+                            dispatched++;
+                            totalWaitMillis += wait;
+                            maxWaitMillis = Math.max(maxWaitMillis, wait);
+                            return entry;
+                        }
+                        minRounds = Math.min(minRounds, (entry.cost - flow.deficit + quantumRows - 1) / quantumRows);
+                    }
+                    flow.inTurn = false;
+                    active.addLast(active.pollFirst());
+                }
+                if(minRounds == Long.MAX_VALUE) {
+                    // 全部受并发上限限制
+                    return null;
+                }
+                for (Flow flow : active) {
+                    if(flow.peekRunnable() != null) {
+                        flow.deficit += (minRounds - 1) * quantumRows;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /***
+     * 单个用户的待执行计划. 按beanId分组, 组内按排序值排列
+     */
+    private final class Flow {
+
+        private final String user;
+
+        /***
+         * key: beanId. 迭代顺序即轮询顺序
+         */
+        private final LinkedHashMap<String, PriorityQueue<Entry>> beans = new LinkedHashMap<>();
+
+        private long deficit;
+
+        private boolean inTurn;
+
+        private Flow(String user) {
+            this.user = user;
+        }
+
+        private void add(Entry entry) {
+            beans.computeIfAbsent(entry.beanId, key -> new PriorityQueue<>(RANK_ORDER)).add(entry);
+        }
+
+        /***
+         * @return 未达到并发上限的beanId中, sjf时排序值最小的计划, fifo时按轮询顺序第一个beanId的队首计划
+         */
+        @Nullable
+        private Entry peekRunnable() {
+            Entry runnable = null;
+            for (Map.Entry<String, PriorityQueue<Entry>> bean : beans.entrySet()) {
+                if(!hasCapacity(bean.getKey())) {
+                    continue;
+                }
+                Entry head = bean.getValue().peek();
+                if(!shortestFirst) {
+                    return head;
+                }
+                if(runnable == null || head.rank < runnable.rank) {
+                    runnable = head;
+                }
+            }
+            return runnable;
+        }
+
+        /***
+         * 移除队首计划, 并将该beanId移至轮询末尾
+         */
+        private void remove(Entry entry) {
+            PriorityQueue<Entry> queue = beans.remove(entry.beanId);
+            queue.poll();
+            if(!queue.isEmpty()) {
+                beans.put(entry.beanId, queue);
+            }
+        }
+
+        private boolean isEmpty() {
+            return beans.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.scheduler;
+
+import lombok.Getter;
+import org.springframework.lang.Nullable;
+
+/***
+ * 导出计划调度优先级类别. 各类别按权重分享消费线程, 低优先级类别不会被完全饿死
+ *
+ * @see FairShareScheduler
+ * @author icefrog
+ */
+@Getter
+public enum PriorityClass {
+
+    /***
+     * 交互式. 用户在页面等待结果的小型导出
+     */
+    INTERACTIVE("interactive", "交互式导出"),
+
+    /***
+     * 普通
+     */
+    NORMAL("normal", "普通导出"),
+
+    /***
+     * 批量. 报表、对账等大型后台导出
+     */
+    BATCH("batch", "批量导出");
+
+    /***
+     * 数据库对应字段
+     */
+    private String value;
+
+    /***
+     * 字段描述
+     */
+    private String desc;
+
+    PriorityClass(String value, String desc) {
+        this.value = value;
+        this.desc = desc;
+    }
+
+    /***
+     * @param value 字段[priority]
+     * @return 对应的优先级类别. 为空或无法识别时返回null
+     */
+    @Nullable
+    public static PriorityClass of(@Nullable String value) {
+        for (PriorityClass priorityClass : values()) {
+            if(priorityClass.value.equalsIgnoreCase(value)) {
+                return priorityClass;
+            }
+        }
+        return null;
+    }
+}
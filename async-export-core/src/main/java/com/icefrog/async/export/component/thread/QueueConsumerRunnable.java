@@ -17,25 +17,47 @@
 package com.icefrog.async.export.component.thread;
 
 import cn.hutool.core.util.IdUtil;
-import cn.hutool.core.util.ReflectUtil;
-import com.alibaba.fastjson.JSON;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.icefrog.async.export.component.ApiCacheQueue;
-import com.icefrog.async.export.dal.entity.SysExportConf;
+import com.icefrog.async.export.component.admission.WorkloadEstimator;
+import com.icefrog.async.export.component.cache.ColumnConfCache;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.component.cache.ResultReuseCache;
+import com.icefrog.async.export.component.job.CancellationToken;
+import com.icefrog.async.export.component.job.ExportJobRegistry;
+import com.icefrog.async.export.component.mapping.ColumnConf;
+import com.icefrog.async.export.component.mapping.BatchRowMapper;
+import com.icefrog.async.export.component.mapping.RowBatch;
+import com.icefrog.async.export.component.mapping.RowPlanCache;
+import com.icefrog.async.export.component.metrics.ExportMetrics;
+import com.icefrog.async.export.component.partition.PartitionedFetchExecutor;
+import com.icefrog.async.export.component.memory.BufferedBatch;
+import com.icefrog.async.export.component.memory.JobMemory;
+import com.icefrog.async.export.component.memory.MemoryGovernor;
+import com.icefrog.async.export.component.pipeline.BatchPipeline;
+import com.icefrog.async.export.component.pipeline.ExportPipeline;
+import com.icefrog.async.export.component.pipeline.StageMetrics;
+import com.icefrog.async.export.component.retry.RetryScheduler;
+import com.icefrog.async.export.component.scheduler.FairShareScheduler;
+import com.icefrog.async.export.component.writer.ExportTarget;
+import com.icefrog.async.export.component.writer.IOutputFormat;
+import com.icefrog.async.export.component.writer.LocalFileTarget;
+import com.icefrog.async.export.component.writer.OutputFormatRegistry;
+import com.icefrog.async.export.component.writer.RollingRowWriter;
+import com.icefrog.async.export.component.writer.RollingWriterFactory;
+import com.icefrog.async.export.component.writer.StreamUploadTarget;
 import com.icefrog.async.export.dal.entity.SysExportPlan;
-import com.icefrog.async.export.dal.mapper.SysExportConfMapper;
 import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
 import com.icefrog.async.export.dto.ExportApiReqDto;
-import com.icefrog.async.export.dto.IOResultDto;
-import com.icefrog.async.export.handler.dictionary.IDictionaryReplace;
 import com.icefrog.async.export.handler.filemanage.IFileManager;
-import com.icefrog.async.export.integration.annotation.DictionaryScan;
+import com.icefrog.async.export.handler.filemanage.IStreamFileManager;
 import com.icefrog.async.export.integration.enums.PlanStatus;
 import com.icefrog.async.export.integration.export.BaseResultSet;
+import com.icefrog.async.export.integration.export.ExportCursor;
 import com.icefrog.async.export.integration.export.IExport;
+import com.icefrog.async.export.integration.export.IPartitionedExport;
+import com.icefrog.async.export.integration.export.IStreamExport;
+import com.icefrog.async.export.integration.export.ListExportCursor;
 import com.icefrog.async.export.integration.spring.ApplicationContextBeanProvider;
-import com.icefrog.async.export.util.ExcelUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tomcat.util.http.fileupload.FileUtils;
@@ -45,11 +67,14 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /***
  * 导出计划异步消费线程. 该线程将不断阻塞take队列中的结果。消费信息并上传oss等.
+ * 由{@link com.icefrog.async.export.event.ExportPlanConsumerQueueInit}以线程池的形式启动多个消费线程并发消费队列.
+ * 消费线程仅负责拉取数据, 解析、写入与上传交由{@link ExportPipeline}的对应阶段执行.
+ * 作业被取消或执行超时时, 拉取、解析、写入与上传均在下一个检查点终止, 并释放临时文件与未完成的上传
  *
  * @author icefrog
  */
@@ -58,20 +83,62 @@ import java.util.*;
 public class QueueConsumerRunnable implements Runnable {
 
     @Resource
-    private SysExportConfMapper sysExportConfMapper;
+    private ColumnConfCache columnConfCache;
 
     @Resource
     private SysExportPlanMapper sysExportPlanMapper;
 
     @Resource
-    private IDictionaryReplace dictionaryReplace;
+    private DictionaryCache dictionaryCache;
 
     @Resource
     private IFileManager fileManager;
 
+    @Resource
+    private IStreamFileManager streamFileManager;
+
+    @Resource
+    private ResultReuseCache resultReuseCache;
+
+    @Resource
+    private FairShareScheduler fairShareScheduler;
+
+    @Resource
+    private RetryScheduler retryScheduler;
+
+    @Resource
+    private ExportJobRegistry exportJobRegistry;
+
+    @Resource
+    private ExportMetrics exportMetrics;
+
     @Resource
     private ApplicationContextBeanProvider applicationContextBeanProvider;
 
+    @Resource
+    private RowPlanCache rowPlanCache;
+
+    @Resource
+    private WorkloadEstimator workloadEstimator;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private PartitionedFetchExecutor partitionedFetchExecutor;
+
+    @Resource
+    private ExportPipeline exportPipeline;
+
+    @Resource
+    private MemoryGovernor memoryGovernor;
+
+    @Resource
+    private OutputFormatRegistry outputFormatRegistry;
+
+    @Resource
+    private RollingWriterFactory rollingWriterFactory;
+
     /***
      * 注入可配置的当列为null时的默认替换字符. 不配置择默认为空字符串
      */
@@ -91,160 +158,425 @@ public class QueueConsumerRunnable implements Runnable {
     private String sheetName;
 
     /***
-     * 默认excel文件后缀
+     * 单批次从导出实现拉取的数据量
      */
-    @Value("${export.fileSuffix:xlsx}")
-    private String fileSuffix;
+    @Value("${export.batchSize:1000}")
+    private int batchSize;
 
+    /***
+     * 上传模式. file: 写入本地临时文件后交由IFileManager处理; stream: 边写入边通过IStreamFileManager上传, 不产生本地临时文件
+     */
+    @Value("${export.upload.mode:file}")
+    private String uploadMode;
+
+
+    /***
+     * 队列无数据时单次poll的最长等待时间(毫秒). 决定消费线程感知停机信号的最大延迟
+     */
+    private static final long POLL_TIMEOUT_MILLIS = 1000L;
 
+    /***
+     * 流式上传模式
+     */
+    private static final String UPLOAD_MODE_STREAM = "stream";
+
+    /***
+     * 运行标记. 置为false后消费线程在完成当前作业后退出, 不再从队列获取新的作业
+     */
+    private volatile boolean running = true;
+
+    /***
+     * 该实例为无状态单例, 可由消费线程池中的多个线程同时执行. 作业相关的状态(resultSet、columnConf等)
+     * 均声明在{@link #consume(ExportApiReqDto)}的栈内, 线程间互不共享
+     */
     @Override
     public void run() {
 
         if(log.isInfoEnabled()) {
-            log.info("{}成功分配资源, 监听队列...", QueueConsumerRunnable.class.getSimpleName());
+            log.info("{}成功分配资源, 监听队列...", Thread.currentThread().getName());
         }
 
-        while(true) {
-
-            // 声明导出最终内存结果集
-            List<Map<String, String>> resultSet = Lists.newArrayList();
-
-            // 声明当前处理的导出column配置
-            Map<String, Object> columnConf = Maps.newHashMap();
+        while(running) {
 
             // 声明待处理的导出计划
-            ExportApiReqDto plan = null;
-
-            // 细粒度异常处理, 避免单次队列阻塞获取异常导致整个线程不可用
+            ExportApiReqDto plan;
             try {
-                plan = ApiCacheQueue.take();
-
-                String beanId = plan.getBeanId();
-                if(StringUtils.isBlank(beanId)) {
-                    log.error("错误的尝试处理一次请求作业. beanId:{}, methodName:{}, userId:{}, requestParams:{}",
-                            plan.getBeanId(), plan.getMethodName(), plan.getUserId(),
-                            plan.getRequestParams());
-                    break;
+                plan = fairShareScheduler.next(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if(plan != null) {
+                workloadEstimator.onDequeued(plan);
+                exportMetrics.workerBusy();
+                try {
+                    consume(plan);
+                } finally {
+                    fairShareScheduler.release(plan);
+                    exportMetrics.workerIdle();
                 }
+            }
+        }
 
-                IExport bean = applicationContextBeanProvider.getBean(plan.getBeanId(), IExport.class);
-                List<BaseResultSet> baseResultSets = bean.exportHandler(null);
+        if(log.isInfoEnabled()) {
+            log.info("{}停止监听队列, 消费线程退出", Thread.currentThread().getName());
+        }
+    }
 
-                // 通过beanId查询column配置
-                SysExportConf sysExportConf = sysExportConfMapper.queryColumnConfWithBeanId(plan.getBeanId());
-                if(sysExportConf == null) {
-                    log.error("beanId:{}无法从数据库检索到对应的column conf, 丢弃该作业计划!");
-                    break;
-                }
+    /***
+     * 通知所有消费线程停止获取新的作业. 正在执行的作业不受影响, 将继续执行直到完成
+     */
+    public void shutdown() {
+        this.running = false;
+    }
 
-                String columnConfJson = sysExportConf.getColumnConfJson();
-                if(StringUtils.isBlank(columnConfJson)) {
-                    log.error("beanId:{} 的 column config json未配置, 丢弃该作业计划!");
-                    break;
-                }
-                // JSON to Map. key: java property. value: description
-                columnConf = JSON.parseObject(columnConfJson).getInnerMap();
-
-                Set<String> keys = columnConf.keySet();
-                Iterator<String> columnConfIterator = keys.iterator();
-                // 反射解析返回结果
-                for (BaseResultSet baseResultSet : baseResultSets) {
-                    Map<String, String> item = Maps.newHashMap();
-
-                    while(columnConfIterator.hasNext()) {
-                        // column配置中的java属性.
-                        String property = columnConfIterator.next();
-                        Field field = ReflectUtil.getField(baseResultSet.getClass(), property);
-                        // 设置反射私有对象可访问
-                        ReflectUtil.setAccessible(field);
-
-                        // 反射获取与封装对象属性值
-                        Object propertyVal = field.get(baseResultSet) == null ? defaultNullChar : field.get(baseResultSet);
-
-                        // 扫描注解信息
-                        DictionaryScan annotation = field.getAnnotation(DictionaryScan.class);
-                        if(annotation != null && annotation.scan()) {
-                            // 存在字典扫描
-                            String code = annotation.code();
-                            if(StringUtils.isNotBlank(code)) {
-                                propertyVal = dictionaryReplace.replace(code, String.valueOf(propertyVal));
-                            }
-                        }
-                        item.put(property, String.valueOf(propertyVal));
+    /***
+     * 处理单个导出计划. 细粒度异常处理, 避免单次作业异常导致消费线程不可用.
+     * 文件写入完成后即交由上传阶段处理, 消费线程随即返回拉取下一个作业
+     *
+     * @param plan 待处理的导出计划
+     */
+    private void consume(ExportApiReqDto plan) {
+
+        // 已处理的数据行数
+        long lineCount = 0;
+
+        // 开始执行时间. 用于记录执行耗时
+        long startMillis = System.currentTimeMillis();
+
+        // 文件名(不含后缀). 文件拆分时各分片均以此为前缀
+        String baseName = null;
+
+        // 文件写入目标: 本地临时文件或流式上传
+        ExportTarget target = null;
+
+        // 是否已移交上传阶段. 移交后由上传阶段负责回写计划与释放租约
+        boolean handedOff = false;
+
+        // 是否已安排重试. 重试期间继续持有租约
+        boolean retrying = false;
+
+        // 本次执行的取消信号
+        CancellationToken token = null;
+
+        try {
+            String beanId = plan.getBeanId();
+            if(StringUtils.isBlank(beanId)) {
+                log.error("错误的尝试处理一次请求作业. beanId:{}, methodName:{}, userId:{}, requestParams:{}",
+                        plan.getBeanId(), plan.getMethodName(), plan.getUserId(),
+                        plan.getRequestParams());
+                discard(plan, "beanId为空");
+                return;
+            }
+
+            // 通过beanId获取column配置(缓存). key: java property. value: description. 保持配置声明顺序
+            ColumnConf columnConf = columnConfCache.get(beanId);
+            if(columnConf == null) {
+                log.error("beanId:{} 未能获取有效的column conf, 丢弃该作业计划!", beanId);
+                discard(plan, "beanId:" + beanId + " 未配置有效的column conf");
+                return;
+            }
+
+            ExportMetrics.BeanMeters meters = exportMetrics.of(beanId);
+            meters.recordQueueWait(plan);
+
+            // 登记执行中的作业. 计划在排队期间已被取消时跳过
+            token = exportJobRegistry.start(plan, columnConf.getTimeoutSeconds());
+            if(token == null) {
+                log.info("导出计划{}已取消, 跳过执行", plan.getPlanId());
+                // 合并等待的计划转为延迟执行, 各自独立执行
+                resultReuseCache.fail(plan);
+                return;
+            }
+            CancellationToken cancellation = token;
+
+            // 导出格式: 请求 > column配置 > 默认格式
+            IOutputFormat outputFormat = outputFormatRegistry.resolve(plan.getFileFormat(), columnConf.getFileFormat());
+
+            if(UPLOAD_MODE_STREAM.equalsIgnoreCase(uploadMode)) {
+                baseName = IdUtil.fastSimpleUUID();
+                target = new StreamUploadTarget(streamFileManager);
+            } else {
+                baseName = prepareFile();
+                target = new LocalFileTarget(tempDir);
+            }
+
+            // 1. 按批次拉取结果集, 每批提交至流水线解析并追加写入目标. 超过sheet/文件阈值时自动拆分
+            List<String> parts;
+            BatchRowMapper rowMapper = new BatchRowMapper(columnConf, rowPlanCache, dictionaryCache, defaultNullChar);
+            StageMetrics fetchMetrics = exportPipeline.getFetchMetrics();
+            // 内存预算最后关闭: 流水线关闭后才删除溢写文件
+            try (JobMemory memory = memoryGovernor.open(plan.getPlanId(), columnConf.size());
+                 ExportCursor cursor = openCursor(beanId, plan.getRequestParams());
+                 RollingRowWriter writer = rollingWriterFactory.open(outputFormat, target, baseName, sheetName, columnConf.toExcelHead());
+                 BatchPipeline<BufferedBatch> pipeline = exportPipeline.open(
+                         rows -> {
+                             cancellation.throwIfCancelled();
+                             long mapStart = System.nanoTime();
+                             try {
+                                 List<List<String>> mapped = rowMapper.map(rows);
+                                 memory.observe(mapped);
+                                 return BufferedBatch.of(mapped);
+                             } finally {
+                                 meters.record(ExportMetrics.STAGE_MAP, mapStart);
+                             }
+                         },
+                         (batch, consumed) -> {
+                             cancellation.throwIfCancelled();
+                             long writeStart = System.nanoTime();
+                             List<List<String>> rows = batch.rows();
+                             try {
+                                 // 分片异步写出后才归还内存预算
+                                 writer.append(rows, consumed);
+                             } finally {
+                                 RowBatch.release(rows);
+                                 meters.record(ExportMetrics.STAGE_WRITE, writeStart);
+                             }
+                         },
+                         memory, memory::spill)) {
+                // 取消时中断游标中执行的查询, 并结束内存预算的等待
+                cancellation.onCancel(cursor::cancel);
+                cancellation.onCancel(memory::abort);
+                while (true) {
+                    cancellation.throwIfCancelled();
+                    long start = fetchMetrics.begin();
+                    boolean fetched = false;
+                    List<BaseResultSet> batch;
+                    try {
+                        batch = cursor.nextBatch();
+                        fetched = true;
+                    } finally {
+                        fetchMetrics.end(start, fetched);
+                        meters.record(ExportMetrics.STAGE_FETCH, start);
+                    }
+                    if(batch == null) {
+                        break;
                     }
-                    // 重置迭代器游标变量
-                    columnConfIterator = keys.iterator();
-                    // 添加该对象到结果集
-                    resultSet.add(item);
+                    pipeline.submit(batch);
+                    lineCount += batch.size();
+                    meters.addRows(batch.size());
                 }
+                pipeline.finish();
+                parts = writer.getParts();
+            }
+            cancellation.throwIfCancelled();
+
+            // 记录实际行数与拉取、写入耗时, 用于后续计划的调度
+            workloadEstimator.record(plan, lineCount, System.currentTimeMillis() - startMillis);
+            meters.addBytes(target.getBytesWritten());
+
+            // 2. 移交上传阶段
+            String fileName = baseName;
+            ExportTarget exportTarget = target;
+            long dataLine = lineCount;
+            exportPipeline.getUploadStage().execute(() -> upload(plan, fileName, exportTarget, parts, dataLine, cancellation));
+            handedOff = true;
+
+        } catch (Exception e) {
+            if(token != null && token.isCancelled()) {
+                terminate(plan, baseName, target, lineCount, token);
+            } else {
+                retrying = fail(plan, baseName, target, lineCount, e);
+            }
+        } finally {
+            if(!handedOff) {
+                exportJobRegistry.finish(plan.getPlanId());
+                if(!retrying) {
+                    // 计划已结束, 不再续约
+                    planLeaseManager.release(plan.getPlanId());
+                }
+            }
+        }
+    }
 
-                // 1. 将文件写入临时磁盘区域
-                IOResultDto ioResultDto = writeFile(resultSet, columnConf);
+    /***
+     * 上传阶段: 完成文件上传(或将文件交由自定义文件管理器处理), 移除临时文件并回写计划状态.
+     * 存在多个文件分片时, 本地文件按配置打包为单个zip处理, 否则逐个处理后以','拼接下载地址
+     *
+     * @param plan 导出计划
+     * @param baseName 文件名(不含后缀)
+     * @param target 文件写入目标
+     * @param parts 已写入完成的文件分片
+     * @param lineCount 数据行数
+     * @param token 本次执行的取消信号
+     */
+    private void upload(ExportApiReqDto plan, String baseName, ExportTarget target, List<String> parts, long lineCount,
+                        CancellationToken token) {
+        boolean retrying = false;
+        try {
+            token.throwIfCancelled();
+            long start = System.nanoTime();
+            String url;
+            if(target instanceof StreamUploadTarget) {
+                // 流式上传: 数据已在写入时上传, 此处仅完成上传
+                url = String.join(",", ((StreamUploadTarget) target).commit());
+            } else {
+                url = processLocalFiles(baseName, parts);
+            }
+            exportMetrics.of(plan.getBeanId()).record(ExportMetrics.STAGE_UPLOAD, start);
+
+            // 回写数据库(成功状态). 未更新表示计划已在其他位置被取消或已被其他节点接管, 结果不可复用
+            if(rewritePlan(plan, lineCount, url, PlanStatus.SUCCESS, null)) {
+                resultReuseCache.complete(plan, url, lineCount);
+            } else {
+                resultReuseCache.fail(plan);
+            }
 
-                // 2. 将文件交由自定义文件管理器处理
-                String url = fileManager.process(ioResultDto.getDir(), ioResultDto.getFileName());
+        } catch (Exception e) {
+            if(token.isCancelled()) {
+                terminate(plan, baseName, target, lineCount, token);
+            } else {
+                retrying = fail(plan, baseName, target, lineCount, e);
+            }
+        } finally {
+            exportJobRegistry.finish(plan.getPlanId());
+            if(!retrying) {
+                // 计划已结束, 不再续约
+                planLeaseManager.release(plan.getPlanId());
+            }
+        }
+    }
 
-                // 3. 从磁盘上移除临时文件
-                removeFile(ioResultDto.getAbsolutePath());
+    /***
+     * 将本地文件交由自定义文件管理器处理, 并移除临时文件
+     *
+     * @param baseName 临时文件名(不含后缀)
+     * @param parts 文件分片
+     * @return 文件访问地址
+     * @throws IOException 打包失败
+     */
+    private String processLocalFiles(String baseName, List<String> parts) throws IOException {
+
+        File delivered = null;
+        if(parts.size() == 1) {
+            delivered = new File(tempDir, parts.get(0));
+        } else if(rollingWriterFactory.isZip()) {
+            delivered = new File(tempDir, baseName + ".zip");
+            List<File> files = new ArrayList<>(parts.size());
+            for (String part : parts) {
+                files.add(new File(tempDir, part));
+            }
+            rollingWriterFactory.bundle(files, delivered);
+        }
 
-                // 回写数据库(成功状态)
-                rewritePlan(plan.getPlanId(), Long.valueOf(resultSet.size()), url, PlanStatus.SUCCESS.getValue(), 0, plan.getI18n(), null);
+        // 将文件交由自定义文件管理器处理
+        String url;
+        if(delivered != null) {
+            url = fileManager.process(tempDir, delivered.getName());
+        } else {
+            StringJoiner urls = new StringJoiner(",");
+            for (String part : parts) {
+                urls.add(fileManager.process(tempDir, part));
+            }
+            url = urls.toString();
+        }
 
-            } catch (Exception e) {
-                log.error("队列处理异常(异步消费队列), 异常信息:" + e.getMessage(), e);
-                // 回写数据库(失败状态)
-                rewritePlan(plan.getPlanId(), Long.valueOf(resultSet.size()), null, PlanStatus.FAILED.getValue(), 0, plan.getI18n(), e.getMessage());
+        // 从磁盘上移除临时文件. 文件管理器接管源文件时, 仅移除已打包进zip的分片
+        if(!fileManager.ownsSourceFile()) {
+            removeFiles(baseName);
+        } else if(delivered != null && parts.size() > 1) {
+            for (String part : parts) {
+                removeFile(tempDir + File.separator + part);
             }
         }
+        return url;
     }
 
-
     /***
-     * 写出内存数据到磁盘。（取决于配置的IO临时存储目录）
+     * 作业失败处理: 放弃上传或移除写入未完成的临时文件. 可重试时安排延迟重试, 否则回写数据库(失败状态)
      *
-     * @param resultSet 待写入磁盘的内存结果集
-     * @param columnConf column配置map
-     * @throws IOException 可能的IO异常。 该实现不做处理
-     * @return IOResultDto 写入成功后的文件信息
+     * @return 是否已安排重试
      */
-    private IOResultDto writeFile(List<Map<String, String>> resultSet, Map<String, Object> columnConf) throws IOException {
+    private boolean fail(ExportApiReqDto plan, String baseName, ExportTarget target, long lineCount, Exception e) {
+        log.error("队列处理异常(异步消费队列), 异常信息:" + e.getMessage(), e);
+        discard(baseName, target);
+        if(retryScheduler.schedule(plan, e)) {
+            return true;
+        }
+        rewritePlan(plan, lineCount, null, PlanStatus.FAILED, e.getMessage());
+        resultReuseCache.fail(plan);
+        return false;
+    }
 
-        IOResultDto result = new IOResultDto();
+    /***
+     * 作业被取消或执行超时: 放弃上传或移除临时文件, 回写数据库(已取消或执行超时状态), 不再重试
+     */
+    private void terminate(ExportApiReqDto plan, String baseName, ExportTarget target, long lineCount, CancellationToken token) {
+        log.warn("导出计划{}终止执行: {}, 已拉取{}行. {}", plan.getPlanId(), token.getStatus().getValue(), lineCount, token.getMessage());
+        discard(baseName, target);
+        rewritePlan(plan, lineCount, null, token.getStatus(), token.getMessage());
+        resultReuseCache.fail(plan);
+    }
 
-        // 1. 将map结构列配置信息转为list结构
-        List<List<String>> headers = new ArrayList<>(columnConf.size());
-        for (Object value : columnConf.values()) {
-            List<String> headItem = Lists.newArrayList();
-            headItem.add(String.valueOf(value));
-            headers.add(headItem);
+    /***
+     * 放弃流式上传中的分片, 或移除写入未完成的临时文件
+     */
+    private void discard(String baseName, ExportTarget target) {
+        if(target instanceof StreamUploadTarget) {
+            ((StreamUploadTarget) target).abort();
+        } else if(baseName != null) {
+            removeFiles(baseName);
         }
+    }
 
-        // 2. 将map结构的数据主体信息转换为list结构
-        List<List<String>> dataList = new ArrayList<>(resultSet.size());
-        for (Map<String, String> cycleItem : resultSet) {
-            Collection<String> values = cycleItem.values();
-            List<String> dataItem = new ArrayList<>(values);
-            dataList.add(dataItem);
+    /***
+     * @return 计划已重试的次数
+     */
+    private static int retryQtyOf(ExportApiReqDto plan) {
+        return plan.getRetryQty() == null ? 0 : plan.getRetryQty();
+    }
+
+    /***
+     * 根据beanId打开导出游标. 实现了IPartitionedExport的bean按分区并行拉取, 实现了IStreamExport的bean直接打开游标,
+     * 实现了IExport的bean通过ListExportCursor适配. 计划中保存的请求参数原样传递给导出实现, 以便实现方下推查询条件
+     *
+     * @param beanId Spring bean id
+     * @param requestParams 请求参数. 字段[request_params]
+     * @return 导出结果集游标
+     */
+    private ExportCursor openCursor(String beanId, String requestParams) {
+
+        Object bean = applicationContextBeanProvider.getBean(beanId);
+        if(bean instanceof IPartitionedExport) {
+            return partitionedFetchExecutor.open((IPartitionedExport) bean, requestParams, batchSize);
+        }
+        if(bean instanceof IStreamExport) {
+            return ((IStreamExport) bean).openCursor(requestParams, batchSize);
+        }
+        if(bean instanceof IExport) {
+            return new ListExportCursor(((IExport) bean).exportHandler(requestParams), batchSize);
         }
+        throw new IllegalStateException("beanId:" + beanId + " 未实现IExport、IStreamExport或IPartitionedExport, 无法执行导出");
+    }
 
-        // 3. 构建文件名与文件临时目录
-        String fileName = IdUtil.fastSimpleUUID() + "." + fileSuffix;
+    /***
+     * 构建临时文件名与文件临时目录。（取决于配置的IO临时存储目录）
+     *
+     * @return 临时文件名(不含后缀)
+     */
+    private String prepareFile() {
 
         File tempDirFile = new File(tempDir);
         if(!tempDirFile.exists()) {
             tempDirFile.mkdirs();
         }
+        return IdUtil.fastSimpleUUID();
+    }
 
-        String absolutePath = tempDir + File.separator + fileName;
-
-        // 写出到本地磁盘
-        ExcelUtil.dynamicHeadWrite(absolutePath, sheetName, headers, dataList);
-
-        // 回写文件描述信息
-        result.setDir(tempDir);
-        result.setFileName(fileName);
-        result.setAbsolutePath(absolutePath);
-        return result;
+    /***
+     * 删除临时目录下以baseName为前缀的全部文件(文件分片及zip)
+     *
+     * @param baseName 临时文件名(不含后缀)
+     */
+    private void removeFiles(String baseName) {
+        File[] files = new File(tempDir).listFiles((dir, name) -> name.startsWith(baseName));
+        if(files == null) {
+            return;
+        }
+        for (File file : files) {
+            removeFile(file.getAbsolutePath());
+        }
     }
 
     /***
@@ -264,29 +596,69 @@ public class QueueConsumerRunnable implements Runnable {
     }
 
     /***
-     * 更新plan记录状态
+     * 丢弃无法执行的计划: 回写执行失败, 否则仅停止续约的计划在租约过期后会被反复认领与丢弃.
+     * beanId未通过配置校验, 不计入beanId指标
      *
-     * @param planId 待更新的planId
+     * @param exportPlan 导出计划
+     * @param failedMsg 失败原因
+     */
+    private void discard(ExportApiReqDto exportPlan, String failedMsg) {
+        rewritePlan(exportPlan, 0L, null, PlanStatus.FAILED, failedMsg, null);
+        resultReuseCache.fail(exportPlan);
+    }
+
+    /***
+     * 更新plan记录状态(作业的最终状态). 仅当计划仍由本节点持有且为待执行状态时更新(已取消的计划可回写取消结果),
+     * 失去租约的节点不会覆盖其他节点的执行结果
+     *
+     * @param exportPlan 待更新的计划. 字段[retry_qty]、[i18n]取自计划
      * @param dataLine 字段[data_line]
      * @param ossUrl 字段[url]
      * @param status 字段[plan_status]
-     * @param retryQty 字段[retry_qty]
-     * @param i18n 字段[i18n]
-     * @return 更新结果
+     * @param failedMsg 字段[failed_msg]
+     * @return 更新结果. 为false表示计划已在其他位置被取消或已被其他节点接管
+     */
+    private boolean rewritePlan(ExportApiReqDto exportPlan, Long dataLine, String ossUrl, PlanStatus status, String failedMsg) {
+        return rewritePlan(exportPlan, dataLine, ossUrl, status, failedMsg, exportMetrics.of(exportPlan.getBeanId()));
+    }
+
+    /***
+     * @see #rewritePlan(ExportApiReqDto, Long, String, PlanStatus, String)
+     * @param meters beanId指标, 为null时不记录
      */
-    private boolean rewritePlan(String planId, Long dataLine, String ossUrl, String status, int retryQty, String i18n, String failedMsg) {
+    private boolean rewritePlan(ExportApiReqDto exportPlan, Long dataLine, String ossUrl, PlanStatus status, String failedMsg,
+                                ExportMetrics.BeanMeters meters) {
 
         SysExportPlan plan = new SysExportPlan();
-        plan.setId(planId);
+        plan.setId(exportPlan.getPlanId());
         plan.setLineCount(dataLine);
         plan.setUrl(ossUrl);
-        plan.setPlanStatus(status);
-        plan.setRetryQty(retryQty);
+        plan.setPlanStatus(status.getValue());
+        plan.setRetryQty(retryQtyOf(exportPlan));
         plan.setTmSuccess(new Date());
         plan.setFailedMsg(failedMsg);
-        plan.setI18n(i18n);
+        plan.setI18n(exportPlan.getI18n());
+
+        List<String> expectStatuses = status == PlanStatus.CANCELLED
+                ? Arrays.asList(PlanStatus.PENDING.getValue(), PlanStatus.CANCELLED.getValue())
+                : Collections.singletonList(PlanStatus.PENDING.getValue());
 
         // 更新记录状态
-        return sysExportPlanMapper.updateByPrimaryKeySelective(plan) > 0;
+        long start = System.nanoTime();
+        boolean updated = false;
+        try {
+            updated = sysExportPlanMapper.finishPlan(plan, expectStatuses, planLeaseManager.getNodeId()) > 0;
+            if(!updated) {
+                log.warn("导出计划{}已在其他位置被取消或已被其他节点接管, 丢弃本次执行结果: {}", exportPlan.getPlanId(), status.getValue());
+            }
+            return updated;
+        } finally {
+            if(meters != null) {
+                meters.record(ExportMetrics.STAGE_REWRITE, start);
+                if(updated) {
+                    meters.finished(status);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,260 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import com.icefrog.async.export.component.mapping.RowBatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/***
+ * CSV增量写入器(RFC 4180). 单元格先追加到字符缓冲区, 满后批量编码为UTF-8写入字节缓冲区, 字节缓冲区满后整块写入通道,
+ * 避免逐行创建String与byte[]. 字节缓冲区为堆内存, 随写入器回收, 不为每个写入器分配不受堆大小约束的直接内存.
+ * 列式批次中的整数单元格直接写入数字字符, 不创建String. 非线程安全
+ *
+ * @author icefrog
+ */
+public class CsvRowWriter implements IRowWriter {
+
+    /***
+     * UTF-8 BOM. Excel打开无BOM的UTF-8 csv时中文会乱码
+     */
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final char SEPARATOR = ',';
+
+    private static final char QUOTE = '"';
+
+    private static final String LINE_BREAK = "\r\n";
+
+    private final WritableByteChannel channel;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final CharBuffer chars;
+
+    private final ByteBuffer bytes;
+
+    /***
+     * 整数转字符的缓冲区. long最多19位数字与1位符号
+     */
+    private final char[] digits = new char[20];
+
+    private long rowCount;
+
+    private boolean closed;
+
+    /***
+     * @param channel 写入目标. 关闭写入器时一并关闭
+     * @param bufferSize 字节缓冲区大小(字节)
+     * @param bom 是否写入UTF-8 BOM
+     * @param head 动态头. 每列取最后一级作为表头, 为空时不写表头
+     * @throws IOException IOException
+     */
+    public CsvRowWriter(WritableByteChannel channel, int bufferSize, boolean bom, List<List<String>> head) throws IOException {
+        this.channel = channel;
+        this.bytes = ByteBuffer.allocate(Math.max(bufferSize, 4096));
+        this.chars = CharBuffer.allocate(Math.max(bufferSize / 4, 1024));
+        if(bom) {
+            bytes.put(UTF8_BOM);
+        }
+        if(head != null && !head.isEmpty()) {
+            for (int i = 0; i < head.size(); i++) {
+                if(i > 0) {
+                    put(SEPARATOR);
+                }
+                List<String> levels = head.get(i);
+                writeCell(levels == null || levels.isEmpty() ? null : levels.get(levels.size() - 1));
+            }
+            put(LINE_BREAK);
+        }
+    }
+
+    @Override
+    public void append(List<List<String>> rows) throws IOException {
+        if(closed) {
+            throw new IllegalStateException("CsvRowWriter has been closed");
+        }
+        if(rows == null) {
+            return;
+        }
+        if(rows instanceof RowBatch) {
+            append((RowBatch) rows);
+            return;
+        }
+        for (List<String> row : rows) {
+            for (int i = 0; i < row.size(); i++) {
+                if(i > 0) {
+                    put(SEPARATOR);
+                }
+                writeCell(row.get(i));
+            }
+            put(LINE_BREAK);
+        }
+        rowCount += rows.size();
+    }
+
+    private void append(RowBatch batch) throws IOException {
+        int columns = batch.columns();
+        for (int row = 0; row < batch.size(); row++) {
+            for (int column = 0; column < columns; column++) {
+                if(column > 0) {
+                    put(SEPARATOR);
+                }
+                if(batch.isLong(row, column)) {
+                    put(batch.getLong(row, column));
+                } else {
+                    writeCell(batch.getString(row, column));
+                }
+            }
+            put(LINE_BREAK);
+        }
+        rowCount += batch.size();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /***
+     * 刷出缓冲区并关闭通道. 重复调用无副作用
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            encode(true);
+            while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+                flushBytes();
+            }
+            flushBytes();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /***
+     * 写出单元格. 包含分隔符、引号或换行时整体加引号, 内部引号转义为两个引号
+     */
+    private void writeCell(String value) throws IOException {
+        if(value == null || value.isEmpty()) {
+            return;
+        }
+        if(!needsQuote(value)) {
+            put(value);
+            return;
+        }
+        put(QUOTE);
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if(value.charAt(i) == QUOTE) {
+                put(value, from, i + 1);
+                put(QUOTE);
+                from = i + 1;
+            }
+        }
+        put(value, from, value.length());
+        put(QUOTE);
+    }
+
+    private static boolean needsQuote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == SEPARATOR || c == QUOTE || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(char c) throws IOException {
+        if(!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+    }
+
+    /***
+     * 写出整数. 数字与负号无需加引号
+     */
+    private void put(long value) throws IOException {
+        if(value == Long.MIN_VALUE) {
+            put(Long.toString(value));
+            return;
+        }
+        int pos = digits.length;
+        long remaining = Math.abs(value);
+        do {
+            digits[--pos] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if(value < 0) {
+            digits[--pos] = '-';
+        }
+        if(chars.remaining() < digits.length - pos) {
+            encode(false);
+        }
+        chars.put(digits, pos, digits.length - pos);
+    }
+
+    private void put(String value) throws IOException {
+        put(value, 0, value.length());
+    }
+
+    private void put(String value, int start, int end) throws IOException {
+        while (start < end) {
+            if(!chars.hasRemaining()) {
+                encode(false);
+            }
+            int next = Math.min(end, start + chars.remaining());
+            chars.put(value, start, next);
+            start = next;
+        }
+    }
+
+    /***
+     * 将字符缓冲区编码到字节缓冲区. 跨缓冲区边界的代理对保留在字符缓冲区中, 待下次编码
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (encoder.encode(chars, bytes, endOfInput) == CoderResult.OVERFLOW) {
+            flushBytes();
+        }
+        chars.compact();
+    }
+
+    private void flushBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
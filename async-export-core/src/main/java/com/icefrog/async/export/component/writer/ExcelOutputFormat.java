@@ -0,0 +1,64 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import com.icefrog.async.export.util.ExcelUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/***
+ * Excel导出格式. 基于EasyExcel, 文件后缀(xlsx/xls)由export.fileSuffix决定
+ *
+ * @see ExcelRowWriter
+ * @see ExcelUtil#openDynamicHeadWriter(String, String, List)
+ * @author icefrog
+ */
+@Component
+public class ExcelOutputFormat implements IOutputFormat {
+
+    public static final String NAME = "excel";
+
+    /***
+     * 默认excel文件后缀
+     */
+    @Value("${export.fileSuffix:xlsx}")
+    private String fileSuffix;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String suffix() {
+        return fileSuffix;
+    }
+
+    @Override
+    public IRowWriter open(String absolutePath, String sheetName, List<List<String>> head) {
+        return new ExcelRowWriter(ExcelUtil.openDynamicHeadWriter(absolutePath, sheetName, head));
+    }
+
+    @Override
+    public IRowWriter open(WritableByteChannel channel, String sheetName, List<List<String>> head) {
+        return new ExcelRowWriter(ExcelUtil.openDynamicHeadWriter(Channels.newOutputStream(channel), "xls".equalsIgnoreCase(fileSuffix), sheetName, head));
+    }
+}
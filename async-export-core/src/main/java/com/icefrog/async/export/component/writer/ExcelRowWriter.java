@@ -0,0 +1,66 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import com.icefrog.async.export.util.ExcelUtil;
+
+import java.util.List;
+
+/***
+ * Excel增量写入器. 适配{@link ExcelUtil.ExcelWriteSession}, 支持多sheet. 非线程安全
+ *
+ * @see ExcelOutputFormat
+ * @author icefrog
+ */
+public class ExcelRowWriter implements IRowWriter {
+
+    private final ExcelUtil.ExcelWriteSession session;
+
+    public ExcelRowWriter(ExcelUtil.ExcelWriteSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public void append(List<List<String>> rows) {
+        session.append(rows);
+    }
+
+    @Override
+    public long getRowCount() {
+        return session.getRowCount();
+    }
+
+    @Override
+    public boolean supportsSheets() {
+        return true;
+    }
+
+    @Override
+    public long maxRowsPerSheet() {
+        return session.maxRowsPerSheet();
+    }
+
+    @Override
+    public void nextSheet(String sheetName) {
+        session.nextSheet(sheetName);
+    }
+
+    @Override
+    public void close() {
+        session.close();
+    }
+}
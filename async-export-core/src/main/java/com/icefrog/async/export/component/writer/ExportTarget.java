@@ -0,0 +1,49 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * 导出文件写入目标. 决定每个文件(分片)的数据写往何处: 本地临时文件或流式上传
+ *
+ * @see LocalFileTarget
+ * @see StreamUploadTarget
+ * @author icefrog
+ */
+public interface ExportTarget {
+
+    /***
+     * 打开一个文件的写入
+     *
+     * @param format 导出格式
+     * @param fileName 文件名. 包含后缀
+     * @param sheetName sheet name
+     * @param head 动态头
+     * @return 文件写入器
+     * @throws IOException IOException
+     */
+    IRowWriter open(IOutputFormat format, String fileName, String sheetName, List<List<String>> head) throws IOException;
+
+    /***
+     * 已写出的文件字节数. 应在全部文件写入器关闭之后调用
+     *
+     * @return 字节数
+     */
+    long getBytesWritten();
+}
@@ -0,0 +1,62 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/***
+ * gzip压缩的CSV导出格式. 文本重复度高的导出数据通常可压缩至原大小的10%~20%, 以少量CPU换取上传与下载耗时
+ *
+ * @author icefrog
+ */
+@Component
+public class GzipCsvOutputFormat extends CsvOutputFormat {
+
+    public static final String NAME = "csv.gz";
+
+    /***
+     * 压缩级别. 1~9, 级别越高压缩率越高、CPU开销越大
+     */
+    @Value("${export.csv.gzipLevel:" + Deflater.BEST_SPEED + "}")
+    private int gzipLevel;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String suffix() {
+        return "csv.gz";
+    }
+
+    @Override
+    protected WritableByteChannel wrap(WritableByteChannel channel) throws IOException {
+        return Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize) {
+            {
+                def.setLevel(gzipLevel);
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/***
+ * 导出文件格式SPI. 实现类注册为Spring bean后即可通过{@link #name()}在sys_export_conf或导出请求中选用
+ *
+ * @see OutputFormatRegistry
+ * @author icefrog
+ */
+public interface IOutputFormat {
+
+    /***
+     * @return 格式名称, 即file_format字段取值. 不区分大小写
+     */
+    String name();
+
+    /***
+     * @return 文件后缀(不含'.')
+     */
+    String suffix();
+
+    /***
+     * 打开文件写入
+     *
+     * @param absolutePath 文件绝对路径
+     * @param sheetName sheet name. 不支持多sheet的格式可忽略
+     * @param head 动态头. 结构与EasyExcel动态头一致, 每列一个list
+     * @return 文件写入器. 使用完毕后必须关闭
+     * @throws IOException IOException
+     */
+    IRowWriter open(String absolutePath, String sheetName, List<List<String>> head) throws IOException;
+
+    /***
+     * 打开通道写入. 用于流式上传等无本地文件的场景
+     *
+     * @param channel 写入目标. 关闭写入器时一并关闭
+     * @param sheetName sheet name. 不支持多sheet的格式可忽略
+     * @param head 动态头. 结构与EasyExcel动态头一致, 每列一个list
+     * @return 文件写入器. 使用完毕后必须关闭
+     * @throws IOException IOException
+     */
+    IRowWriter open(WritableByteChannel channel, String sheetName, List<List<String>> head) throws IOException;
+}
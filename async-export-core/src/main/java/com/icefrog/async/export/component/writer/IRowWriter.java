@@ -0,0 +1,67 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * 导出文件增量写入规约. 数据分批追加, 关闭时完成文件写出. 实现非线程安全, 由调用方保证串行访问
+ *
+ * @see IOutputFormat
+ * @author icefrog
+ */
+public interface IRowWriter extends Closeable {
+
+    /***
+     * 追加一批数据行
+     *
+     * @param rows 数据体. 单元格顺序与表头一致, 写入完成后调用方可复用或释放
+     * @throws IOException IOException
+     */
+    void append(List<List<String>> rows) throws IOException;
+
+    /***
+     * @return 已写入的数据行数
+     */
+    long getRowCount();
+
+    /***
+     * @return 是否支持多sheet. 支持时可通过{@link #nextSheet(String)}切换sheet
+     */
+    default boolean supportsSheets() {
+        return false;
+    }
+
+    /***
+     * @return 单个sheet(不支持多sheet时即单个文件)可容纳的最大数据行数
+     */
+    default long maxRowsPerSheet() {
+        return Long.MAX_VALUE;
+    }
+
+    /***
+     * 结束当前sheet, 后续数据写入新的sheet
+     *
+     * @param sheetName 新sheet名称
+     * @throws IOException IOException
+     */
+    default void nextSheet(String sheetName) throws IOException {
+        throw new UnsupportedOperationException("This writer does not support multiple sheets!");
+    }
+}
@@ -0,0 +1,61 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * 本地临时文件写入目标. 写入完成后由{@link com.icefrog.async.export.handler.filemanage.IFileManager}处理
+ *
+ * @author icefrog
+ */
+public class LocalFileTarget implements ExportTarget {
+
+    private final String dir;
+
+    /***
+     * 已打开的文件. 文件分片可能由多个线程打开
+     */
+    private final List<File> files = new ArrayList<>();
+
+    public LocalFileTarget(String dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public IRowWriter open(IOutputFormat format, String fileName, String sheetName, List<List<String>> head) throws IOException {
+        File file = new File(dir, fileName);
+        synchronized (files) {
+            files.add(file);
+        }
+        return format.open(file.getAbsolutePath(), sheetName, head);
+    }
+
+    @Override
+    public long getBytesWritten() {
+        long bytes = 0;
+        synchronized (files) {
+            for (File file : files) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,97 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ * 导出文件格式注册表. 汇总容器中全部{@link IOutputFormat}实现, 按 导出请求 > sys_export_conf > export.defaultFormat 的优先级选用
+ *
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class OutputFormatRegistry implements InitializingBean {
+
+    @Resource
+    private List<IOutputFormat> outputFormats;
+
+    /***
+     * 默认导出格式
+     */
+    @Value("${export.defaultFormat:" + ExcelOutputFormat.NAME + "}")
+    private String defaultFormat;
+
+    private final Map<String, IOutputFormat> formats = new HashMap<>();
+
+    @Override
+    public void afterPropertiesSet() {
+        for (IOutputFormat format : outputFormats) {
+            IOutputFormat previous = formats.put(normalize(format.name()), format);
+            if(previous != null) {
+                throw new IllegalStateException("导出格式名称重复: " + format.name());
+            }
+        }
+        if(!supports(defaultFormat)) {
+            throw new IllegalStateException("export.defaultFormat配置的格式不存在: " + defaultFormat);
+        }
+        log.info("已注册导出格式: {}, 默认格式: {}", formats.keySet(), defaultFormat);
+    }
+
+    /***
+     * @param name 格式名称
+     * @return 是否支持该格式. 为空视为支持(取默认格式)
+     */
+    public boolean supports(String name) {
+        return StringUtils.isBlank(name) || formats.containsKey(normalize(name));
+    }
+
+    /***
+     * 按优先级选用导出格式
+     *
+     * @param names 候选格式名称, 优先级从高到低. 为空的候选将被跳过
+     * @return 导出格式
+     * @throws IllegalArgumentException 首个非空候选不存在时
+     */
+    public IOutputFormat resolve(String... names) {
+        for (String name : names) {
+            if(StringUtils.isBlank(name)) {
+                continue;
+            }
+            IOutputFormat format = formats.get(normalize(name));
+            if(format == null) {
+                throw new IllegalArgumentException("不支持的导出格式: " + name);
+            }
+            return format;
+        }
+        return formats.get(normalize(defaultFormat));
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,389 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import com.icefrog.async.export.component.mapping.RowBatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/***
+ * 自动拆分的文件写入器. 单个sheet达到行数上限时切换到新的sheet, 单个文件达到行数/字节阈值时切换到新的文件分片.
+ *
+ * <p>每个分片的写入在分片执行器上串行执行, 不同分片之间并行: 分片切换后, 上一分片剩余批次的写入与文件收尾(xlsx压缩打包等)
+ * 与新分片的写入同时进行, 大文件的生成不再受限于单个POI写入线程. 尚未写入完成的批次总数受maxPendingBatches限制.
+ *
+ * <p>写入的批次为{@link RowBatch}时, 在分片写入完成前持有批次引用, 调用方写入后即可释放.
+ * 需要在批次被分片实际写出后才归还的资源(如内存预算), 通过{@link #append(List, Runnable)}的回调归还.
+ *
+ * <p>首个分片的文件名即打开时指定的文件名, 后续分片依次为 文件名-2.后缀、文件名-3.后缀... 非线程安全, 由调用方保证串行调用
+ *
+ * @see IOutputFormat
+ * @author icefrog
+ */
+@Slf4j
+public class RollingRowWriter implements IRowWriter {
+
+    private final IOutputFormat format;
+
+    private final ExportTarget target;
+
+    /***
+     * 不含后缀的文件名
+     */
+    private final String baseName;
+
+    private final String sheetName;
+
+    private final List<List<String>> head;
+
+    /***
+     * 单sheet数据行数阈值. 小于等于0时取写入器支持的最大行数
+     */
+    private final long sheetRows;
+
+    /***
+     * 单文件数据行数阈值. 小于等于0时不按行数拆分文件
+     */
+    private final long fileRows;
+
+    /***
+     * 单文件预估字节数阈值. 小于等于0时不按大小拆分文件
+     */
+    private final long fileBytes;
+
+    private final Executor partExecutor;
+
+    /***
+     * 尚未写入完成的批次许可
+     */
+    private final Semaphore pending;
+
+    private final List<Part> parts = new ArrayList<>();
+
+    private Part current;
+
+    private long rowCount;
+
+    private boolean closed;
+
+    public RollingRowWriter(IOutputFormat format, ExportTarget target, String baseName, String sheetName, List<List<String>> head,
+                            long sheetRows, long fileRows, long fileBytes, Executor partExecutor, int maxPendingBatches) {
+        this.format = format;
+        this.target = target;
+        this.baseName = baseName;
+        this.sheetName = sheetName;
+        this.head = head;
+        this.sheetRows = sheetRows;
+        this.fileRows = fileRows;
+        this.fileBytes = fileBytes;
+        this.partExecutor = partExecutor;
+        this.pending = new Semaphore(Math.max(1, maxPendingBatches));
+    }
+
+    /***
+     * 打开首个分片. 在首次写入之前调用, 确保无数据时也能生成只有表头的文件
+     *
+     * @throws IOException IOException
+     */
+    public void open() throws IOException {
+        if(current == null) {
+            current = openPart();
+        }
+    }
+
+    @Override
+    public void append(List<List<String>> rows) throws IOException {
+        append(rows, null);
+    }
+
+    /***
+     * 追加一批数据. 数据由分片执行器异步写出, 方法返回时可能尚未写入
+     *
+     * @param rows 数据行
+     * @param consumed 本批次全部写入分片(无论成功与否)后回调, 可能在其他线程执行. 方法抛出异常时可能不回调, 由调用方处理
+     * @throws IOException 之前的批次写入失败, 或等待分片写入时被中断
+     */
+    public void append(List<List<String>> rows, @Nullable Runnable consumed) throws IOException {
+        if(closed) {
+            throw new IllegalStateException("RollingRowWriter has been closed");
+        }
+        if(rows == null || rows.isEmpty()) {
+            if(consumed != null) {
+                consumed.run();
+            }
+            return;
+        }
+        open();
+
+        List<CompletableFuture<Void>> written = consumed == null ? null : new ArrayList<>(1);
+        int from = 0;
+        while (from < rows.size()) {
+            if(current.fileFull()) {
+                current.finish();
+                current = openPart();
+            } else if(current.sheetFull()) {
+                current.nextSheet();
+            }
+            int to = (int) Math.min(rows.size(), from + current.capacity());
+            List<List<String>> slice = from == 0 && to == rows.size() ? rows : rows.subList(from, to);
+            CompletableFuture<Void> tail = current.append(rows, slice);
+            if(written != null) {
+                written.add(tail);
+            }
+            rowCount += slice.size();
+            from = to;
+        }
+        if(consumed != null) {
+            CompletableFuture.allOf(written.toArray(new CompletableFuture[0])).whenComplete((ignored, ex) -> consumed.run());
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /***
+     * 等待全部分片写入完成并关闭. 任一分片失败时抛出异常, 此时仍会等待其他分片结束
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        if(current != null) {
+            current.finish();
+        }
+        IOException failure = null;
+        for (Part part : parts) {
+            try {
+                part.tail.join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                if(failure == null) {
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    /***
+     * @return 全部分片的文件名, 按顺序排列. 应在最后一次写入之后调用
+     */
+    public List<String> getParts() {
+        List<String> fileNames = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            fileNames.add(part.fileName);
+        }
+        return Collections.unmodifiableList(fileNames);
+    }
+
+    private Part openPart() throws IOException {
+        int index = parts.size() + 1;
+        String fileName = baseName + (index == 1 ? "" : "-" + index) + "." + format.suffix();
+        Part part = new Part(fileName, target.open(format, fileName, sheetName, head));
+        parts.add(part);
+        return part;
+    }
+
+    /***
+     * 估算单批次写出后的字节数. 按字符数估算, 仅用于拆分阈值判断
+     */
+    private static long estimateBytes(List<List<String>> rows) {
+        if(rows instanceof RowBatch) {
+            return ((RowBatch) rows).textLength();
+        }
+        long bytes = 0;
+        for (List<String> row : rows) {
+            for (String cell : row) {
+                bytes += cell == null ? 1 : cell.length() + 1;
+            }
+            bytes++;
+        }
+        return bytes;
+    }
+
+    /***
+     * 单个文件分片. 写入任务通过CompletableFuture串联, 同一分片串行执行
+     */
+    private final class Part {
+
+        private final String fileName;
+
+        private final IRowWriter writer;
+
+        /***
+         * 单sheet可写入的数据行数
+         */
+        private final long sheetLimit;
+
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        private long rows;
+
+        private long sheetRowCount;
+
+        private long bytes;
+
+        private int sheets = 1;
+
+        private Part(String fileName, IRowWriter writer) {
+            this.fileName = fileName;
+            this.writer = writer;
+            long max = writer.maxRowsPerSheet();
+            this.sheetLimit = sheetRows > 0 ? Math.min(sheetRows, max) : max;
+        }
+
+        private boolean fileFull() {
+            if(rows == 0) {
+                return false;
+            }
+            if(fileRows > 0 && rows >= fileRows) {
+                return true;
+            }
+            if(fileBytes > 0 && bytes >= fileBytes) {
+                return true;
+            }
+            // 不支持多sheet的格式, sheet上限即文件上限
+            return !writer.supportsSheets() && sheetRowCount >= sheetLimit;
+        }
+
+        private boolean sheetFull() {
+            return sheetRowCount >= sheetLimit;
+        }
+
+        /***
+         * @return 当前sheet与当前文件剩余可写入的行数
+         */
+        private long capacity() {
+            long capacity = sheetLimit - sheetRowCount;
+            if(fileRows > 0) {
+                capacity = Math.min(capacity, fileRows - rows);
+            }
+            return Math.max(1, capacity);
+        }
+
+        /***
+         * @param batch 调用方写入的整批数据
+         * @param slice 写入本分片的部分
+         * @return 本次写入任务
+         */
+        private CompletableFuture<Void> append(List<List<String>> batch, List<List<String>> slice) throws IOException {
+            rows += slice.size();
+            sheetRowCount += slice.size();
+            if(fileBytes > 0) {
+                bytes += estimateBytes(slice);
+            }
+            submit(() -> writer.append(slice));
+            // 调用方在本方法返回前持有引用, 写入任务此前已完成也不会提前回收
+            if(batch instanceof RowBatch) {
+                RowBatch retained = (RowBatch) batch;
+                retained.retain();
+                tail.whenComplete((ignored, ex) -> retained.release());
+            }
+            return tail;
+        }
+
+        private void nextSheet() throws IOException {
+            String name = sheetName + "-" + (++sheets);
+            sheetRowCount = 0;
+            submit(() -> writer.nextSheet(name));
+        }
+
+        /***
+         * 关闭分片写入器. 前序写入失败时同样关闭, 以释放文件句柄
+         */
+        private void finish() throws IOException {
+            acquire();
+            CompletableFuture<Void> next = tail.handleAsync((ignored, ex) -> {
+                try {
+                    writer.close();
+                } catch (IOException closeEx) {
+                    if(ex == null) {
+                        throw new CompletionException(closeEx);
+                    }
+                    log.warn("关闭分片写入器异常. file:{}, {}", fileName, closeEx.getMessage());
+                }
+                if(ex != null) {
+                    throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                }
+                return null;
+            }, partExecutor);
+            chain(next);
+        }
+
+        private void submit(IoTask task) throws IOException {
+            failFast();
+            acquire();
+            chain(tail.thenRunAsync(() -> {
+                try {
+                    task.run();
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, partExecutor));
+        }
+
+        private void acquire() throws IOException {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待分片写入时被中断. file:" + fileName, e);
+            }
+        }
+
+        /***
+         * 前序任务失败时后续任务不会执行, 因此在任务结束(无论是否执行)时统一归还许可
+         */
+        private void chain(CompletableFuture<Void> next) {
+            next.whenComplete((ignored, ex) -> pending.release());
+            tail = next;
+        }
+
+        private void failFast() throws IOException {
+            if(tail.isCompletedExceptionally()) {
+                try {
+                    tail.join();
+                } catch (CompletionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoTask {
+        void run() throws IOException;
+    }
+}
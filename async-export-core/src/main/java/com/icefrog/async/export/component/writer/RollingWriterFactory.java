@@ -0,0 +1,122 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import com.icefrog.async.export.component.pipeline.ExportPipeline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/***
+ * 自动拆分写入器工厂. 统一持有sheet/文件拆分阈值配置, 并负责将多个文件分片打包为单个zip
+ *
+ * @see RollingRowWriter
+ * @author icefrog
+ */
+@Component
+public class RollingWriterFactory {
+
+    @Resource
+    private ExportPipeline exportPipeline;
+
+    /***
+     * 单sheet数据行数阈值. 小于等于0时取格式支持的最大行数(xlsx: 1048575, xls: 65535)
+     */
+    @Value("${export.split.sheetRows:0}")
+    private long sheetRows;
+
+    /***
+     * 单文件数据行数阈值. 小于等于0时不按行数拆分文件
+     */
+    @Value("${export.split.fileRows:0}")
+    private long fileRows;
+
+    /***
+     * 单文件预估字节数阈值. 小于等于0时不按大小拆分文件
+     */
+    @Value("${export.split.fileBytes:0}")
+    private long fileBytes;
+
+    /***
+     * 存在多个文件分片时是否打包为单个zip交由文件管理器处理
+     */
+    @Value("${export.split.zip:true}")
+    private boolean zip;
+
+    /***
+     * 单个作业尚未写入完成的最大批次数(所有分片合计)
+     */
+    @Value("${export.split.maxPendingBatches:8}")
+    private int maxPendingBatches;
+
+    /***
+     * 打开自动拆分写入器
+     *
+     * @param format 导出格式
+     * @param target 写入目标
+     * @param baseName 不含后缀的文件名
+     * @param sheetName sheet name
+     * @param head 动态头
+     * @return 已打开首个分片的写入器
+     * @throws IOException IOException
+     */
+    public RollingRowWriter open(IOutputFormat format, ExportTarget target, String baseName, String sheetName,
+                                 List<List<String>> head) throws IOException {
+        RollingRowWriter writer = new RollingRowWriter(format, target, baseName, sheetName, head,
+                sheetRows, fileRows, fileBytes, exportPipeline.getPartStage(), maxPendingBatches);
+        writer.open();
+        return writer;
+    }
+
+    public boolean isZip() {
+        return zip;
+    }
+
+    /***
+     * 将多个文件分片打包为zip. 已压缩的格式(xlsx、gz、zip)仅存储不再压缩
+     *
+     * @param parts 文件分片
+     * @param target 目标zip文件
+     * @throws IOException IOException
+     */
+    public void bundle(List<File> parts, File target) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target.toPath()), 1 << 16))) {
+            for (File part : parts) {
+                out.setLevel(isCompressed(part.getName()) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+                out.putNextEntry(new ZipEntry(part.getName()));
+                Files.copy(part.toPath(), (OutputStream) out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static boolean isCompressed(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".xlsx") || name.endsWith(".gz") || name.endsWith(".zip");
+    }
+}
@@ -0,0 +1,116 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import com.icefrog.async.export.handler.filemanage.IStreamFileManager;
+import com.icefrog.async.export.handler.filemanage.UploadSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * 流式上传写入目标. 每个文件(分片)打开一个{@link UploadSink}, 数据写入即上传, 不经过本地临时文件.
+ * 写入全部完成后通过{@link #commit()}完成上传, 失败时通过{@link #abort()}放弃
+ *
+ * @author icefrog
+ */
+public class StreamUploadTarget implements ExportTarget {
+
+    private final IStreamFileManager streamFileManager;
+
+    private final List<UploadSink> sinks = new ArrayList<>();
+
+    /***
+     * 已写入各上传通道的字节数
+     */
+    private final LongAdder bytesWritten = new LongAdder();
+
+    public StreamUploadTarget(IStreamFileManager streamFileManager) {
+        this.streamFileManager = streamFileManager;
+    }
+
+    @Override
+    public synchronized IRowWriter open(IOutputFormat format, String fileName, String sheetName, List<List<String>> head) throws IOException {
+        UploadSink sink = streamFileManager.openSink(fileName);
+        sinks.add(sink);
+        return format.open(new CountingChannel(sink, bytesWritten), sheetName, head);
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /***
+     * 按顺序完成全部文件的上传
+     *
+     * @return 各文件的访问地址
+     * @throws IOException 任一文件上传失败
+     */
+    public synchronized List<String> commit() throws IOException {
+        List<String> urls = new ArrayList<>(sinks.size());
+        for (UploadSink sink : sinks) {
+            urls.add(sink.commit());
+        }
+        return urls;
+    }
+
+    /***
+     * 放弃全部文件的上传. 已完成上传的文件不受影响
+     */
+    public synchronized void abort() {
+        for (UploadSink sink : sinks) {
+            sink.abort();
+        }
+    }
+
+    /***
+     * 统计写入字节数的通道. 关闭时同时关闭上传通道
+     */
+    private static final class CountingChannel implements WritableByteChannel {
+
+        private final WritableByteChannel delegate;
+
+        private final LongAdder counter;
+
+        private CountingChannel(WritableByteChannel delegate, LongAdder counter) {
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = delegate.write(src);
+            counter.add(written);
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
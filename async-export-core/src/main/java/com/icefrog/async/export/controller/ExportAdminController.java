@@ -0,0 +1,210 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.controller;
+
+import com.google.common.cache.CacheStats;
+import com.icefrog.async.export.component.admission.WorkloadEstimator;
+import com.icefrog.async.export.component.cache.ColumnConfCache;
+import com.icefrog.async.export.component.cache.DictionaryCache;
+import com.icefrog.async.export.component.cache.ResultReuseCache;
+import com.icefrog.async.export.component.job.ExportJobRegistry;
+import com.icefrog.async.export.component.memory.MemoryGovernor;
+import com.icefrog.async.export.component.pipeline.ExportPipeline;
+import com.icefrog.async.export.component.retry.RetryScheduler;
+import com.icefrog.async.export.component.scheduler.FairShareScheduler;
+import com.icefrog.async.export.dal.entity.SysExportConf;
+import com.icefrog.async.export.util.ApiResult;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * 导出服务管理接口. 用于运维操作, 不应对外暴露
+ *
+ * @author icefrog
+ */
+@RestController
+@RequestMapping("/admin")
+public class ExportAdminController {
+
+    @Resource
+    private ColumnConfCache columnConfCache;
+
+    @Resource
+    private DictionaryCache dictionaryCache;
+
+    @Resource
+    private ExportPipeline exportPipeline;
+
+    @Resource
+    private ResultReuseCache resultReuseCache;
+
+    @Resource
+    private FairShareScheduler fairShareScheduler;
+
+    @Resource
+    private WorkloadEstimator workloadEstimator;
+
+    @Resource
+    private RetryScheduler retryScheduler;
+
+    @Resource
+    private ExportJobRegistry exportJobRegistry;
+
+    @Resource
+    private MemoryGovernor memoryGovernor;
+
+    /***
+     * 失效column配置缓存
+     * @param beanId 指定beanId. 为空时失效全部
+     */
+    @PostMapping("/conf/evict")
+    public ApiResult evictConf(@RequestParam(value = "beanId", required = false) String beanId) {
+
+        if(StringUtils.isBlank(beanId)) {
+            columnConfCache.invalidateAll();
+        } else {
+            columnConfCache.invalidate(beanId);
+        }
+        return new ApiResult<>().success(null);
+    }
+
+    /***
+     * 更新column配置(非空字段), 并失效对应的缓存
+     * @param sysExportConf 待更新的配置. id不能为空
+     */
+    @PostMapping("/conf/update")
+    public ApiResult updateConf(@RequestBody SysExportConf sysExportConf) {
+
+        if(StringUtils.isBlank(sysExportConf.getId())) {
+            return new ApiResult<>().error("[id] can not be null!", null);
+        }
+        if(!columnConfCache.updateByPrimaryKeySelective(sysExportConf)) {
+            return new ApiResult<>().error("column配置更新失败!", null);
+        }
+        return new ApiResult<>().success(null);
+    }
+
+    /***
+     * column配置缓存统计
+     */
+    @GetMapping("/conf/stats")
+    public ApiResult confStats() {
+        return new ApiResult<>().success(statsOf(columnConfCache.size(), columnConfCache.stats()));
+    }
+
+    /***
+     * 失效字典值缓存
+     */
+    @PostMapping("/dict/evict")
+    public ApiResult evictDict() {
+        dictionaryCache.invalidateAll();
+        return new ApiResult<>().success(null);
+    }
+
+    /***
+     * 字典值缓存统计
+     */
+    @GetMapping("/dict/stats")
+    public ApiResult dictStats() {
+        return new ApiResult<>().success(statsOf(dictionaryCache.size(), dictionaryCache.stats()));
+    }
+
+    /***
+     * 失效已完成的导出结果复用缓存. 执行中的合并不受影响
+     */
+    @PostMapping("/reuse/evict")
+    public ApiResult evictReuse() {
+        resultReuseCache.invalidateAll();
+        return new ApiResult<>().success(null);
+    }
+
+    /***
+     * 导出结果复用统计(命中率、合并次数、节省的数据行数等)
+     */
+    @GetMapping("/reuse/stats")
+    public ApiResult reuseStats() {
+        return new ApiResult<>().success(resultReuseCache.stats());
+    }
+
+    /***
+     * 导出流水线各阶段统计(线程数、队列深度、执行耗时等)
+     */
+    @GetMapping("/pipeline/stats")
+    public ApiResult pipelineStats() {
+        return new ApiResult<>().success(exportPipeline.stats());
+    }
+
+    /***
+     * 公平调度统计(各优先级类别的预取数量、等待时间, 各beanId执行中的数量)
+     */
+    @GetMapping("/scheduler/stats")
+    public ApiResult schedulerStats() {
+        return new ApiResult<>().success(fairShareScheduler.stats());
+    }
+
+    /***
+     * 工作量估算统计(各beanId的平均行数与执行耗时)
+     */
+    @GetMapping("/estimator/stats")
+    public ApiResult estimatorStats() {
+        return new ApiResult<>().success(workloadEstimator.stats());
+    }
+
+    /***
+     * 重试统计(等待重试、已安排重试、超过最大次数与不可重试的作业数量)
+     */
+    @GetMapping("/retry/stats")
+    public ApiResult retryStats() {
+        return new ApiResult<>().success(retryScheduler.stats());
+    }
+
+    /***
+     * 作业统计(执行中、已取消与执行超时的作业数量)
+     */
+    @GetMapping("/job/stats")
+    public ApiResult jobStats() {
+        return new ApiResult<>().success(exportJobRegistry.stats());
+    }
+
+    /***
+     * 内存预算统计(已申请的预算、限流与溢写)
+     */
+    @GetMapping("/memory/stats")
+    public ApiResult memoryStats() {
+        return new ApiResult<>().success(memoryGovernor.stats());
+    }
+
+    private Map<String, Object> statsOf(long size, CacheStats stats) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("size", size);
+        data.put("hitCount", stats.hitCount());
+        data.put("missCount", stats.missCount());
+        data.put("hitRate", stats.hitRate());
+        data.put("loadCount", stats.loadCount());
+        data.put("evictionCount", stats.evictionCount());
+        return data;
+    }
+}
@@ -17,23 +17,40 @@
 package com.icefrog.async.export.controller;
 
 import cn.hutool.core.util.IdUtil;
-import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.admission.AdmissionControl;
+import com.icefrog.async.export.component.admission.AdmissionDecision;
+import com.icefrog.async.export.component.cache.ResultReuseCache;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.job.ExportJobRegistry;
+import com.icefrog.async.export.component.scheduler.PriorityClass;
+import com.icefrog.async.export.component.writer.OutputFormatRegistry;
 import com.icefrog.async.export.dal.entity.SysExportPlan;
 import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.AdmissionResultDto;
 import com.icefrog.async.export.dto.ExportApiReqDto;
 import com.icefrog.async.export.integration.enums.PlanStatus;
 import com.icefrog.async.export.util.ApiResult;
-import org.springframework.web.bind.annotation.GetMapping;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import java.util.Date;
+import java.util.Objects;
 
 /***
  * 导出功能业务参数唯一入口网关
  *
+ * @see AdmissionControl
+ * @see ResultReuseCache
+ * @see ExportJobRegistry
  * @author icefrog
  */
 @RestController
@@ -43,32 +60,135 @@ public class ExportGatewayController {
     @Resource
     private SysExportPlanMapper sysExportPlanMapper;
 
-    @GetMapping("/export")
-    public ApiResult index(@RequestBody ExportApiReqDto exportApiReqDto) {
+    @Resource
+    private AdmissionControl admissionControl;
+
+    @Resource
+    private PlanLeaseManager planLeaseManager;
+
+    @Resource
+    private OutputFormatRegistry outputFormatRegistry;
+
+    @Resource
+    private ResultReuseCache resultReuseCache;
+
+    @Resource
+    private ExportJobRegistry exportJobRegistry;
+
+    /***
+     * 导出请求. 请求体为json, 兼容GET与POST(部分HTTP客户端不支持携带请求体的GET)
+     */
+    @RequestMapping(value = "/export", method = {RequestMethod.GET, RequestMethod.POST})
+    public ApiResult index(@RequestBody ExportApiReqDto exportApiReqDto, HttpServletResponse response) {
+
+        if(!outputFormatRegistry.supports(exportApiReqDto.getFileFormat())) {
+            return new ApiResult<>().error("不支持的导出格式: " + exportApiReqDto.getFileFormat(), null);
+        }
+        if(StringUtils.isNotBlank(exportApiReqDto.getPriority()) && PriorityClass.of(exportApiReqDto.getPriority()) == null) {
+            return new ApiResult<>().error("不支持的优先级类别: " + exportApiReqDto.getPriority(), null);
+        }
 
-        // 请求结果入库.
         exportApiReqDto.setPlanId(IdUtil.fastSimpleUUID());
-        // 写入数据库. 确保一致性,当入库失败,不写入内存队列
+
+        // 结果复用. 近期已完成或正在执行相同的导出时, 不再占用执行资源
+        String reuseKey = resultReuseCache.keyOf(exportApiReqDto);
+        if(reuseKey != null) {
+            AdmissionDecision reused = resultReuseCache.reuse(reuseKey, newPlan(exportApiReqDto));
+            if(reused != null) {
+                return new ApiResult<>().success(reused.getDesc(), new AdmissionResultDto(exportApiReqDto.getPlanId(), reused, null));
+            }
+        }
+
+        // 准入控制. 拒绝时不入库, 返回429并告知客户端重试时间
+        AdmissionDecision decision = admissionControl.admit(exportApiReqDto);
+        if(decision == AdmissionDecision.REJECTED) {
+            int retryAfter = admissionControl.getRetryAfterSeconds();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            return new ApiResult<>().error(decision.getDesc(), new AdmissionResultDto(null, decision, retryAfter));
+        }
+
+        // 请求结果入库. 确保一致性,当入库失败,不写入内存队列
+        SysExportPlan plan = newPlan(exportApiReqDto);
+        plan.setPlanStatus(decision == AdmissionDecision.ACCEPTED ? PlanStatus.PENDING.getValue() : PlanStatus.DEFERRED.getValue());
+        if(decision == AdmissionDecision.ACCEPTED) {
+            // 由本节点直接持有租约, 避免被其他节点认领
+            plan.setOwnerNode(planLeaseManager.getNodeId());
+            plan.setLeaseExpire(planLeaseManager.nextLeaseExpire());
+        }
+        int insertResult = sysExportPlanMapper.insert(plan);
+        if(insertResult < 1) {
+            return new ApiResult<>().error("导出作业信息入库失败!");
+        }
+
+        // 请求参数信息入队. 入队失败时计划已转为延迟执行
+        if(decision == AdmissionDecision.DEFERRED) {
+            admissionControl.onDeferred();
+        } else {
+            planLeaseManager.hold(exportApiReqDto.getPlanId());
+            // 入队前登记: 入队后消费线程可能在本方法返回前即完成计划, 此时登记的计划将永远不会结束
+            if(reuseKey != null) {
+                resultReuseCache.lead(reuseKey, exportApiReqDto.getPlanId());
+            }
+            boolean enqueued = false;
+            try {
+                enqueued = admissionControl.enqueue(exportApiReqDto);
+            } finally {
+                if(!enqueued) {
+                    // 计划已转为延迟执行, 不再接受合并. 期间已合并的计划一并转为延迟执行
+                    resultReuseCache.fail(exportApiReqDto);
+                }
+            }
+            if(!enqueued) {
+                decision = AdmissionDecision.DEFERRED;
+            }
+        }
+
+        return new ApiResult<>().success(decision.getDesc(), new AdmissionResultDto(exportApiReqDto.getPlanId(), decision, null));
+    }
+
+    /***
+     * 取消导出计划. 执行中的作业在下一个检查点终止并回写已取消状态, 尚未执行的计划不再执行
+     *
+     * @param planId 计划ID
+     * @param userId 发起取消的用户. 仅允许取消本人的计划
+     */
+    @PostMapping("/cancel")
+    public ApiResult cancel(@RequestParam("planId") String planId, @RequestParam("userId") Long userId) {
+
+        SysExportPlan plan = sysExportPlanMapper.selectByPrimaryKey(planId);
+        if(plan == null) {
+            return new ApiResult<>().error("导出计划不存在: " + planId, null);
+        }
+        if(!Objects.equals(userId, plan.getUserId())) {
+            return new ApiResult<>().error("无权取消该导出计划", null);
+        }
+        if(!exportJobRegistry.cancel(planId)) {
+            return new ApiResult<>().error("导出计划已结束, 无法取消. 计划状态: " + plan.getPlanStatus(), null);
+        }
+        return new ApiResult<>().success(PlanStatus.CANCELLED.getDesc(), planId);
+    }
+
+    /***
+     * 根据请求构建待入库的计划. 计划状态由调用方设置
+     *
+     * @param exportApiReqDto 导出请求
+     * @return 计划
+     */
+    private SysExportPlan newPlan(ExportApiReqDto exportApiReqDto) {
         SysExportPlan plan = new SysExportPlan();
         plan.setId(exportApiReqDto.getPlanId());
         plan.setUserId(exportApiReqDto.getUserId());
         plan.setBeanId(exportApiReqDto.getBeanId());
         plan.setMethodName(exportApiReqDto.getMethodName());
         plan.setRequestParams(exportApiReqDto.getRequestParams());
-        plan.setPlanStatus(PlanStatus.PENDING.getValue());
+        plan.setFileFormat(exportApiReqDto.getFileFormat());
+        plan.setPriority(exportApiReqDto.getPriority());
+        plan.setI18n(exportApiReqDto.getI18n());
         plan.setRetryQty(0);
         plan.setTmCreate(new Date());
         plan.setTmSuccess(null);
         plan.setIsDel(0);
-        int insertResult = sysExportPlanMapper.insert(plan);
-        if(insertResult < 1) {
-            return new ApiResult<>().error("导出作业信息入库失败!");
-        }
-
-        // 请求参数信息入队
-        ApiCacheQueue.offer(exportApiReqDto);
-
-        return new ApiResult<>().success(null);
+        return plan;
     }
 }
-
@@ -0,0 +1,50 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.dto;
+
+import com.icefrog.async.export.component.admission.AdmissionDecision;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/***
+ * 导出请求准入结果
+ *
+ * @author icefrog
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AdmissionResultDto implements Serializable {
+
+    /***
+     * 导出计划ID. 拒绝时为null
+     */
+    private String planId;
+
+    /***
+     * 准入结果
+     */
+    private AdmissionDecision decision;
+
+    /***
+     * 拒绝时建议客户端重试的等待时间(秒). 非拒绝时为null
+     */
+    private Integer retryAfterSeconds;
+}
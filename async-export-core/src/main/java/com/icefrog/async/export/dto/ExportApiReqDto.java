@@ -67,4 +67,29 @@ public class ExportApiReqDto implements Serializable {
      * 当前操作用户ID
      */
     private Long userId;
+
+    /***
+     * 导出文件格式: excel、csv、csv.gz. 为空时取column配置中的格式
+     */
+    private String fileFormat;
+
+    /***
+     * 调度优先级类别: interactive、normal、batch. 为空时由调度器按导出配置与预估行数判定
+     */
+    private String priority;
+
+    /***
+     * 已重试次数. 字段[retry_qty]
+     */
+    private Integer retryQty;
+
+    /***
+     * 入队时的预估导出行数. 由系统计算, 用于准入控制
+     */
+    private Long estimatedRows;
+
+    /***
+     * 入队时间(毫秒). 由系统设置, 用于统计排队等待时间
+     */
+    private Long enqueuedAt;
 }
@@ -16,9 +16,14 @@
 
 package com.icefrog.async.export.event;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.icefrog.async.export.component.metrics.ExportMetrics;
+import com.icefrog.async.export.component.scheduler.FairShareScheduler;
 import com.icefrog.async.export.component.thread.QueueConsumerRunnable;
 import com.icefrog.async.export.controller.ExportGatewayController;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.core.Ordered;
@@ -26,9 +31,13 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /***
- * 导出计划队列消费者线程初始化（并启动）优先级低于：初始化数据库待执行导出计划到队列中
+ * 导出计划队列消费者线程池初始化（并启动）优先级低于：初始化数据库待执行导出计划到队列中
+ * 应用停机时停止获取新的作业, 并等待执行中的作业完成(最长等待export.consumer.awaitTerminationSeconds秒)
  *
  * @see ExportPlanDb2QueueInitEvent
  * @see QueueConsumerRunnable
@@ -39,23 +48,78 @@ import javax.annotation.Resource;
 @Slf4j
 @Order(Ordered.LOWEST_PRECEDENCE)
 @Component
-public class ExportPlanConsumerQueueInit implements ApplicationRunner {
+public class ExportPlanConsumerQueueInit implements ApplicationRunner, DisposableBean {
 
     @Resource
     private QueueConsumerRunnable queueConsumerRunnable;
 
+    @Resource
+    private FairShareScheduler fairShareScheduler;
+
+    @Resource
+    private ExportMetrics exportMetrics;
+
+    /***
+     * 消费线程数量. 小于等于0时取CPU核数。 受限于数据库连接池大小, 不建议超过连接池maxActive
+     */
+    @Value("${export.consumer.poolSize:0}")
+    private int poolSize;
+
+    /***
+     * 消费线程名称前缀
+     */
+    @Value("${export.consumer.threadNamePrefix:QueueConsumerRunnableThread-}")
+    private String threadNamePrefix;
+
+    /***
+     * 停机时等待执行中作业完成的最长时间(秒)
+     */
+    @Value("${export.consumer.awaitTerminationSeconds:60}")
+    private long awaitTerminationSeconds;
+
+    /***
+     * 消费线程池
+     */
+    private ExecutorService consumerPool;
+
     @Override
     public void run(ApplicationArguments args) {
 
         try {
-            Thread thread = new Thread(queueConsumerRunnable);
-            thread.setName("QueueConsumerRunnableThread");
-            thread.setDaemon(false);
-            thread.start();
+            int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+            fairShareScheduler.setWorkerCount(size);
+            exportMetrics.setWorkerCount(size);
+
+            consumerPool = Executors.newFixedThreadPool(size, new ThreadFactoryBuilder()
+                    .setNameFormat(threadNamePrefix + "%d")
+                    .setDaemon(false)
+                    .build());
+            for (int i = 0; i < size; i++) {
+                consumerPool.execute(queueConsumerRunnable);
+            }
 
-            log.info("初始化导出计划队列消费线程成功!");
+            log.info("初始化导出计划队列消费线程池成功! poolSize:{}", size);
         } catch (Exception ex) {
-            log.error("初始化导出计划队列消费线程失败. {}", ex.getMessage(), ex);
+            log.error("初始化导出计划队列消费线程池失败. {}", ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+
+        if(consumerPool == null) {
+            return;
+        }
+
+        // 停止获取新的作业, 队列中未消费的计划仍为待执行状态, 将在下次启动时重新加载
+        queueConsumerRunnable.shutdown();
+        consumerPool.shutdown();
+
+        if(!consumerPool.awaitTermination(awaitTerminationSeconds, TimeUnit.SECONDS)) {
+            log.warn("等待执行中的导出作业完成超时({}s), 强制停止消费线程池", awaitTerminationSeconds);
+            consumerPool.shutdownNow();
+        } else {
+            log.info("导出计划队列消费线程池已停止");
         }
     }
 }
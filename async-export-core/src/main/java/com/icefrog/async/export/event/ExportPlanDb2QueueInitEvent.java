@@ -17,10 +17,9 @@
 package com.icefrog.async.export.event;
 
 import com.icefrog.async.export.component.ApiCacheQueue;
-import com.icefrog.async.export.dal.entity.SysExportPlan;
-import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
-import com.icefrog.async.export.integration.enums.PlanStatus;
-import com.icefrog.async.export.mapstruct.ExportApiReqMapStruct;
+import com.icefrog.async.export.component.admission.WorkloadEstimator;
+import com.icefrog.async.export.component.cluster.PlanClaimer;
+import com.icefrog.async.export.dto.ExportApiReqDto;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
@@ -43,7 +42,10 @@ import java.util.List;
 public class ExportPlanDb2QueueInitEvent implements ApplicationRunner {
 
     @Resource
-    private SysExportPlanMapper sysExportPlanMapper;
+    private PlanClaimer planClaimer;
+
+    @Resource
+    private WorkloadEstimator workloadEstimator;
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
@@ -54,17 +56,31 @@ public class ExportPlanDb2QueueInitEvent implements ApplicationRunner {
     }
 
     /***
-     * 同步数据库中待执行导出计划到内存队列
+     * 同步数据库中待执行导出计划到内存队列. 多节点部署时各节点仅加载自身认领的计划:
+     * 先收回本节点ID名下遗留的计划, 再在队列容量允许的范围内认领无归属或租约已过期的计划
      * @return 如果同步失败,返回false. 否则返回true
      */
     public boolean initPlan2Queue() {
 
+        // 以历史计划初始化工作量估算. 失败时不影响启动
+        workloadEstimator.seed();
+
         try {
-            // 查询数据库中待处理状态计划任务
-            List<SysExportPlan> plans = sysExportPlanMapper.queryPlanWithStatus(PlanStatus.PENDING.getValue());
+            // 收回本节点遗留的待执行计划并初始化队列. 持久化队列中重启前未消费的计划予以保留
+            List<ExportApiReqDto> dtos = planClaimer.reclaimOwn();
+            long now = System.currentTimeMillis();
+            for (ExportApiReqDto dto : dtos) {
+                dto.setEstimatedRows(workloadEstimator.estimateRows(dto));
+                dto.setEnqueuedAt(now);
+            }
+            List<ExportApiReqDto> queued = ApiCacheQueue.restore(dtos);
+            for (ExportApiReqDto dto : queued) {
+                workloadEstimator.onEnqueued(dto);
+            }
 
-            // 转换为DTO并初始化队列
-            ApiCacheQueue.reconstruction(ExportApiReqMapStruct.INSTANCE.toApiReqDtos(plans));
+            // 认领首批可执行计划
+            int claimed = planClaimer.claim();
+            log.info("初始化导出计划队列. 收回:{}, 队列:{}, 认领:{}", dtos.size(), queued.size(), claimed);
         } catch (Exception ex) {
             log.error("同步数据库中待执行导出计划到内存队列失败. {}", ex.getMessage());
             return false;
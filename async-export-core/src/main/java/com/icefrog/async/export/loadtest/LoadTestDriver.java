@@ -0,0 +1,358 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.loadtest;
+
+import cn.hutool.core.io.FileUtil;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.icefrog.async.export.component.admission.AdmissionDecision;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import com.icefrog.async.export.util.ApiResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * 压测驱动. 压测profile(loadtest)下应用启动完成后, 由独立线程通过HTTP接口/export提交loadtest.plans个计划,
+ * 轮询计划状态直至全部结束, 输出计划吞吐、行吞吐与作业延迟分布(p50/p99/p999).
+ * 作业延迟为计划提交至回写结束时间(tm_success)的耗时, 包含排队、执行与上传; 限速提交时自计划的预定提交时间起算
+ *
+ * @see LoadTestReport
+ * @author icefrog
+ */
+@Slf4j
+@Component
+@Profile("loadtest")
+@ConditionalOnProperty(name = "loadtest.driver.enabled", havingValue = "true", matchIfMissing = true)
+public class LoadTestDriver implements ApplicationRunner {
+
+    /***
+     * 单次批量查询计划状态的ID数量
+     */
+    private static final int QUERY_CHUNK = 500;
+
+    /***
+     * 结束状态
+     */
+    private static final Set<String> FINISHED = ImmutableSet.of(PlanStatus.SUCCESS.getValue(), PlanStatus.FAILED.getValue(),
+            PlanStatus.CANCELLED.getValue(), PlanStatus.TIMED_OUT.getValue());
+
+    @Resource
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    @Resource
+    private Environment environment;
+
+    @Resource
+    private ApplicationContext applicationContext;
+
+    @Value("${loadtest.plans:2000}")
+    private int plans;
+
+    @Value("${loadtest.concurrency:16}")
+    private int concurrency;
+
+    @Value("${loadtest.ratePerSecond:0}")
+    private double ratePerSecond;
+
+    @Value("${loadtest.beans:loadTestNarrow,loadTestMedium,loadTestWide}")
+    private String[] beans;
+
+    @Value("${loadtest.rows:10000}")
+    private long rows;
+
+    @Value("${loadtest.cellLength:16}")
+    private int cellLength;
+
+    @Value("${loadtest.batchDelayMillis:0}")
+    private long batchDelayMillis;
+
+    @Value("${loadtest.fileFormat:}")
+    private String fileFormat;
+
+    @Value("${loadtest.users:20}")
+    private int users;
+
+    @Value("${loadtest.timeoutSeconds:1800}")
+    private long timeoutSeconds;
+
+    @Value("${loadtest.pollMillis:50}")
+    private long pollMillis;
+
+    @Value("${loadtest.report:}")
+    private String reportFile;
+
+    @Value("${loadtest.cleanOutput:true}")
+    private boolean cleanOutput;
+
+    @Value("${loadtest.exitOnFinish:true}")
+    private boolean exitOnFinish;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 独立线程执行, 不阻塞其他启动任务(如消费线程池初始化)
+        Thread driver = new Thread(this::drive, "loadtest-driver");
+        driver.start();
+    }
+
+    private void drive() {
+
+        LoadTestReport report;
+        try {
+            report = execute();
+        } catch (Exception ex) {
+            log.error("压测执行异常. {}", ex.getMessage(), ex);
+            exit(1);
+            return;
+        }
+
+        log.info("压测结果: {}", JSON.toJSONString(report, SerializerFeature.PrettyFormat));
+        if(StringUtils.isNotBlank(reportFile)) {
+            FileUtil.writeString(JSON.toJSONString(report, SerializerFeature.PrettyFormat), new File(reportFile), StandardCharsets.UTF_8);
+        }
+        if(cleanOutput) {
+            FileUtil.del(environment.getProperty("default.target.dir"));
+        }
+        exit(report.getUnfinished() > 0 || report.getSubmitFailed() > 0 ? 1 : 0);
+    }
+
+    private LoadTestReport execute() throws InterruptedException {
+
+        String url = "http://127.0.0.1:" + environment.getProperty("local.server.port")
+                + StringUtils.removeEnd(environment.getProperty("server.servlet.context-path", ""), "/") + "/export";
+        log.info("压测开始. 计划数量:{}, 并发:{}, 速率:{}/s, beanId:{}, 行数:{}, 单元格字符数:{}, url:{}",
+                plans, concurrency, ratePerSecond > 0 ? ratePerSecond : "不限", String.join(",", beans), rows, cellLength, url);
+
+        LoadTestReport report = new LoadTestReport();
+        report.setPlans(plans);
+
+        // key: planId. value: 提交时间(毫秒)
+        Map<String, Long> submitted = new ConcurrentHashMap<>(plans * 2);
+        long[] submitLatency = new long[plans];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger deferred = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong rejectedRetries = new AtomicLong();
+
+        long start = System.currentTimeMillis();
+        long intervalNanos = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond) : 0L;
+        long startNanos = System.nanoTime();
+
+        ExecutorService submitters = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder()
+                .setNameFormat("loadtest-submit-%d").build());
+        for (int t = 0; t < concurrency; t++) {
+            submitters.execute(() -> {
+                int seq;
+                while ((seq = next.getAndIncrement()) < plans) {
+                    long submitAt = System.currentTimeMillis();
+                    if(intervalNanos > 0) {
+                        // 按预定时间提交. 提交落后于计划时不补偿等待, 延迟仍自预定时间起算
+                        long dueNanos = startNanos + seq * intervalNanos;
+                        long waitNanos = dueNanos - System.nanoTime();
+                        if(waitNanos > 0) {
+                            sleepNanos(waitNanos);
+                        }
+                        submitAt = start + TimeUnit.NANOSECONDS.toMillis(dueNanos - startNanos);
+                    }
+
+                    long requestStart = System.nanoTime();
+                    JSONObject data = submit(url, request(seq), rejectedRetries);
+                    submitLatency[seq] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStart);
+                    if(data == null) {
+                        failed.incrementAndGet();
+                        continue;
+                    }
+                    submitted.put(data.getString("planId"), submitAt);
+                    if(AdmissionDecision.DEFERRED.name().equals(data.getString("decision"))) {
+                        deferred.incrementAndGet();
+                    } else {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        submitters.shutdown();
+        submitters.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+        log.info("计划提交完成. 成功:{}, 失败:{}, 耗时:{}ms", submitted.size(), failed.get(), System.currentTimeMillis() - start);
+
+        List<SysExportPlan> finished = await(submitted.keySet(), start + TimeUnit.SECONDS.toMillis(timeoutSeconds));
+
+        long end = start;
+        long rowCount = 0;
+        long[] jobLatency = new long[finished.size()];
+        for (int i = 0; i < finished.size(); i++) {
+            SysExportPlan plan = finished.get(i);
+            long finishAt = plan.getTmSuccess() == null ? System.currentTimeMillis() : plan.getTmSuccess().getTime();
+            jobLatency[i] = Math.max(0, finishAt - submitted.get(plan.getId()));
+            end = Math.max(end, finishAt);
+            report.getFinished().merge(plan.getPlanStatus(), 1, Integer::sum);
+            if(PlanStatus.SUCCESS.getValue().equals(plan.getPlanStatus()) && plan.getLineCount() != null) {
+                rowCount += plan.getLineCount();
+            }
+        }
+
+        long elapsed = Math.max(1, end - start);
+        report.setAccepted(accepted.get());
+        report.setDeferred(deferred.get());
+        report.setRejectedRetries(rejectedRetries.get());
+        report.setSubmitFailed(failed.get());
+        report.setUnfinished(submitted.size() - finished.size());
+        report.setElapsedMillis(elapsed);
+        report.setPlansPerSecond(finished.size() * 1000D / elapsed);
+        report.setRows(rowCount);
+        report.setRowsPerSecond(rowCount * 1000D / elapsed);
+        report.setJobLatency(LoadTestReport.distribution(jobLatency));
+        report.setSubmitLatency(LoadTestReport.distribution(submitLatency));
+        return report;
+    }
+
+    private ExportApiReqDto request(int seq) {
+        JSONObject params = new JSONObject();
+        params.put("rows", rows);
+        params.put("cellLength", cellLength);
+        params.put("batchDelayMillis", batchDelayMillis);
+
+        ExportApiReqDto request = new ExportApiReqDto();
+        request.setBeanId(beans[seq % beans.length].trim());
+        request.setRequestParams(params.toJSONString());
+        request.setI18n("zh_CN");
+        request.setUserId(10000L + seq % Math.max(1, users));
+        request.setFileFormat(StringUtils.trimToNull(fileFormat));
+        return request;
+    }
+
+    /***
+     * 提交计划. 被准入控制拒绝(429)时按Retry-After等待后重试
+     *
+     * @return 提交结果(AdmissionResultDto). 提交失败时返回null
+     */
+    private JSONObject submit(String url, ExportApiReqDto request, AtomicLong rejectedRetries) {
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        HttpEntity<String> entity = new HttpEntity<>(JSON.toJSONString(request), headers);
+
+        while (true) {
+            try {
+                JSONObject result = JSON.parseObject(restTemplate.postForObject(url, entity, String.class));
+                if(!ApiResult.CODE_SUCCESS.equals(result.getInteger("code"))) {
+                    log.warn("提交计划失败. beanId:{}, {}", request.getBeanId(), result.getString("message"));
+                    return null;
+                }
+                return result.getJSONObject("data");
+            } catch (HttpClientErrorException ex) {
+                if(ex.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                    log.warn("提交计划失败. beanId:{}, {}", request.getBeanId(), ex.getMessage());
+                    return null;
+                }
+                rejectedRetries.incrementAndGet();
+                String retryAfter = ex.getResponseHeaders() == null ? null : ex.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+                sleepNanos(TimeUnit.SECONDS.toNanos(StringUtils.isNumeric(retryAfter) ? Long.parseLong(retryAfter) : 1L));
+            } catch (Exception ex) {
+                log.warn("提交计划失败. beanId:{}, {}", request.getBeanId(), ex.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /***
+     * 轮询计划状态直至全部结束或超过截止时间
+     *
+     * @return 已结束的计划
+     */
+    private List<SysExportPlan> await(Set<String> planIds, long deadline) throws InterruptedException {
+
+        List<String> pending = new ArrayList<>(planIds);
+        List<SysExportPlan> finished = new ArrayList<>(planIds.size());
+        long lastProgress = System.currentTimeMillis();
+
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            List<String> remaining = new ArrayList<>();
+            for (List<String> chunk : Lists.partition(pending, QUERY_CHUNK)) {
+                for (SysExportPlan plan : sysExportPlanMapper.queryPlansWithIds(chunk)) {
+                    if(FINISHED.contains(plan.getPlanStatus())) {
+                        finished.add(plan);
+                    } else {
+                        remaining.add(plan.getId());
+                    }
+                }
+            }
+            pending = remaining;
+
+            if(System.currentTimeMillis() - lastProgress >= TimeUnit.SECONDS.toMillis(5)) {
+                lastProgress = System.currentTimeMillis();
+                log.info("压测进行中. 已结束:{}, 未结束:{}", finished.size(), pending.size());
+            }
+            if(!pending.isEmpty()) {
+                TimeUnit.MILLISECONDS.sleep(pollMillis);
+            }
+        }
+        return finished;
+    }
+
+    private void exit(int code) {
+        if(exitOnFinish) {
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
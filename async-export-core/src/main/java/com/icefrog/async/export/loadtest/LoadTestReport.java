@@ -0,0 +1,132 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.loadtest;
+
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * 压测结果. 延迟单位为毫秒
+ *
+ * @see LoadTestDriver
+ * @author icefrog
+ */
+@Data
+public class LoadTestReport {
+
+    /***
+     * 计划数量
+     */
+    private int plans;
+
+    /***
+     * 入库并进入队列的计划数量
+     */
+    private int accepted;
+
+    /***
+     * 入库后延迟执行的计划数量
+     */
+    private int deferred;
+
+    /***
+     * 准入控制拒绝(429)后重试的次数
+     */
+    private long rejectedRetries;
+
+    /***
+     * 提交失败的计划数量
+     */
+    private int submitFailed;
+
+    /***
+     * 已结束的计划数量, 按最终状态统计. key: 计划状态
+     */
+    private Map<String, Integer> finished = new LinkedHashMap<>();
+
+    /***
+     * 等待超时仍未结束的计划数量
+     */
+    private int unfinished;
+
+    /***
+     * 首个计划提交至最后一个计划结束的时间(毫秒)
+     */
+    private long elapsedMillis;
+
+    /***
+     * 计划吞吐(个/秒)
+     */
+    private double plansPerSecond;
+
+    /***
+     * 导出成功的行数
+     */
+    private long rows;
+
+    /***
+     * 行吞吐(行/秒)
+     */
+    private double rowsPerSecond;
+
+    /***
+     * 作业延迟: 提交至计划结束(tm_success)
+     */
+    private Map<String, Long> jobLatency;
+
+    /***
+     * 提交延迟: /export请求耗时, 含429重试
+     */
+    private Map<String, Long> submitLatency;
+
+    /***
+     * 延迟分布统计
+     *
+     * @param samples 延迟样本(毫秒), 会被排序
+     * @return min、p50、p90、p99、p999、max、mean
+     */
+    public static Map<String, Long> distribution(long[] samples) {
+        Map<String, Long> data = new LinkedHashMap<>();
+        if(samples.length == 0) {
+            return data;
+        }
+        Arrays.sort(samples);
+        data.put("min", samples[0]);
+        data.put("p50", percentile(samples, 0.50D));
+        data.put("p90", percentile(samples, 0.90D));
+        data.put("p99", percentile(samples, 0.99D));
+        data.put("p999", percentile(samples, 0.999D));
+        data.put("max", samples[samples.length - 1]);
+        data.put("mean", Math.round(Arrays.stream(samples).average().orElse(0D)));
+        return data;
+    }
+
+    /***
+     * 百分位数(nearest-rank)
+     *
+     * @param sorted 已排序的样本
+     * @param quantile 分位(0~1]
+     * @return 不小于quantile比例样本的最小值
+     */
+    static long percentile(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
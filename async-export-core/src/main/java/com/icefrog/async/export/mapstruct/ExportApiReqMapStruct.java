@@ -49,7 +49,9 @@ public interface ExportApiReqMapStruct {
         @Mapping(source = "i18n", target = "i18n"),
         @Mapping(source = "beanId", target = "beanId"),
         @Mapping(source = "methodName", target = "methodName"),
-        @Mapping(source = "userId", target = "userId")
+        @Mapping(source = "userId", target = "userId"),
+        @Mapping(target = "estimatedRows", ignore = true),
+        @Mapping(target = "enqueuedAt", ignore = true)
     })
     ExportApiReqDto toApiReqDto(SysExportPlan plan);
 
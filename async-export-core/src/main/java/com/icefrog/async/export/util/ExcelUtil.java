@@ -17,7 +17,12 @@
 package com.icefrog.async.export.util;
 
 import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.ExcelWriter;
+import com.alibaba.excel.support.ExcelTypeEnum;
+import com.alibaba.excel.write.metadata.WriteSheet;
 
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.List;
 
 /***
@@ -28,6 +33,16 @@ import java.util.List;
  */
 public class ExcelUtil {
 
+    /***
+     * xlsx单个sheet最大行数(含表头)
+     */
+    public static final long XLSX_MAX_ROWS = 1048576L;
+
+    /***
+     * xls单个sheet最大行数(含表头)
+     */
+    public static final long XLS_MAX_ROWS = 65536L;
+
     /***
      * 动态头部excel写入
      * @param absolutePath xlsx文件绝对路径
@@ -41,4 +56,145 @@ public class ExcelUtil {
                  .sheet(sheetName)
                  .doWrite(data);
     }
+
+    /***
+     * 打开动态头部excel增量写入会话. 数据可分批多次追加, 每批写入后即可释放, 适用于大数据量导出
+     *
+     * @param absolutePath xlsx文件绝对路径
+     * @param sheetName sheet name
+     * @param head 动态头
+     * @return 写入会话. 使用完毕后必须调用{@link ExcelWriteSession#close()}完成文件写出
+     */
+    public static ExcelWriteSession openDynamicHeadWriter(String absolutePath, String sheetName, List<List<String>> head) {
+        ExcelWriter excelWriter = EasyExcel.write(absolutePath)
+                                           .head(head)
+                                           .build();
+        return openSession(excelWriter, absolutePath.toLowerCase().endsWith(".xls"), sheetName, head);
+    }
+
+    /***
+     * 打开动态头部excel增量写入会话, 写入到输出流. 输出流在会话关闭时一并关闭
+     *
+     * @param outputStream 输出流
+     * @param xls 是否为xls格式. 否则为xlsx
+     * @param sheetName sheet name
+     * @param head 动态头
+     * @return 写入会话. 使用完毕后必须调用{@link ExcelWriteSession#close()}完成文件写出
+     */
+    public static ExcelWriteSession openDynamicHeadWriter(OutputStream outputStream, boolean xls, String sheetName, List<List<String>> head) {
+        ExcelWriter excelWriter = EasyExcel.write(outputStream)
+                                           .excelType(xls ? ExcelTypeEnum.XLS : ExcelTypeEnum.XLSX)
+                                           .head(head)
+                                           .build();
+        return openSession(excelWriter, xls, sheetName, head);
+    }
+
+    private static ExcelWriteSession openSession(ExcelWriter excelWriter, boolean xls, String sheetName, List<List<String>> head) {
+        WriteSheet writeSheet = EasyExcel.writerSheet(0, sheetName).build();
+
+        // 单sheet可容纳的数据行数 = sheet最大行数 - 表头行数
+        long maxRows = xls ? XLS_MAX_ROWS : XLSX_MAX_ROWS;
+        int headRows = 0;
+        if(head != null) {
+            for (List<String> column : head) {
+                headRows = Math.max(headRows, column == null ? 0 : column.size());
+            }
+        }
+        return new ExcelWriteSession(excelWriter, writeSheet, maxRows - headRows);
+    }
+
+    /***
+     * Excel增量写入会话. 基于EasyExcel的ExcelWriter与WriteSheet, xlsx格式下已写入的行将按窗口刷出到磁盘, 不在内存中保留.
+     * 该会话非线程安全
+     */
+    public static class ExcelWriteSession {
+
+        private final ExcelWriter excelWriter;
+
+        private WriteSheet writeSheet;
+
+        /***
+         * 单sheet可容纳的最大数据行数
+         */
+        private final long maxRowsPerSheet;
+
+        /***
+         * 已写入的数据行数
+         */
+        private long rowCount;
+
+        /***
+         * sheet(及表头)是否已写出
+         */
+        private boolean sheetCreated;
+
+        private boolean closed;
+
+        private ExcelWriteSession(ExcelWriter excelWriter, WriteSheet writeSheet, long maxRowsPerSheet) {
+            this.excelWriter = excelWriter;
+            this.writeSheet = writeSheet;
+            this.maxRowsPerSheet = maxRowsPerSheet;
+        }
+
+        /***
+         * 追加一批数据行
+         * @param rows 数据体. 写入完成后调用方可复用或释放
+         */
+        public void append(List<List<String>> rows) {
+            if(closed) {
+                throw new IllegalStateException("ExcelWriteSession has been closed");
+            }
+            if(rows == null || rows.isEmpty()) {
+                return;
+            }
+            excelWriter.write(rows, writeSheet);
+            rowCount += rows.size();
+            sheetCreated = true;
+        }
+
+        /***
+         * @return 已写入的数据行数
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /***
+         * @return 单sheet可容纳的最大数据行数
+         */
+        public long maxRowsPerSheet() {
+            return maxRowsPerSheet;
+        }
+
+        /***
+         * 结束当前sheet, 后续数据写入新的sheet. 当前sheet无数据时仍写出表头
+         *
+         * @param sheetName 新sheet名称
+         */
+        public void nextSheet(String sheetName) {
+            if(closed) {
+                throw new IllegalStateException("ExcelWriteSession has been closed");
+            }
+            if(!sheetCreated) {
+                excelWriter.write(Collections.emptyList(), writeSheet);
+            }
+            writeSheet = EasyExcel.writerSheet(writeSheet.getSheetNo() + 1, sheetName).build();
+            sheetCreated = false;
+        }
+
+        /***
+         * 完成写入并释放文件句柄. 重复调用无副作用
+         */
+        public void close() {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            if(!sheetCreated) {
+                // 无任何数据时仍写出表头, 与一次性写入的行为保持一致
+                excelWriter.write(Collections.emptyList(), writeSheet);
+            }
+            excelWriter.finish();
+        }
+    }
 }
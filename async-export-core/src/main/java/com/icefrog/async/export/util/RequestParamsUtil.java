@@ -0,0 +1,80 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+/***
+ * Request params Utils. 用于比较、归类导出请求参数
+ *
+ * @author icefrog
+ */
+public class RequestParamsUtil {
+
+    /***
+     * 规范化请求参数: json按key排序并移除忽略的顶层参数, 非json时去除首尾空白
+     *
+     * @param requestParams 请求参数. 字段[request_params]
+     * @param ignoredParams 忽略的顶层参数
+     * @return 规范化后的请求参数. 为空时返回空字符串
+     */
+    public static String normalize(String requestParams, Set<String> ignoredParams) {
+
+        if(StringUtils.isBlank(requestParams)) {
+            return "";
+        }
+        try {
+            Object json = JSON.parse(requestParams);
+            if(json instanceof JSONObject && !ignoredParams.isEmpty()) {
+                ((JSONObject) json).keySet().removeAll(ignoredParams);
+            }
+            return JSON.toJSONString(json, SerializerFeature.MapSortField, SerializerFeature.SortField);
+        } catch (JSONException ex) {
+            return requestParams.trim();
+        }
+    }
+
+    /***
+     * 计算beanId与规范化请求参数的签名. 参数顺序、空白不同的相同请求签名相同
+     *
+     * @param beanId Spring bean id
+     * @param requestParams 请求参数
+     * @return 签名
+     */
+    public static String signature(String beanId, String requestParams) {
+        return hash(beanId, normalize(requestParams, Collections.emptySet()));
+    }
+
+    /***
+     * 拼接各部分并计算128位哈希
+     *
+     * @param parts 参与计算的各部分
+     * @return 十六进制哈希值
+     */
+    public static String hash(String... parts) {
+        return Hashing.murmur3_128().hashString(String.join("\u0000", parts), StandardCharsets.UTF_8).toString();
+    }
+}
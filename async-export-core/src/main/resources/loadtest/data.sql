@@ -0,0 +1,15 @@
+-- 压测profile(loadtest)初始数据: 压测导出实现的column配置, 以及用于初始化工作量估算的历史计划
+
+INSERT INTO sys_export_conf (id, column_conf_json, bean_id, create_id, tm_create, remark, is_del) VALUES ('loadtest1', '{"c00":"列00","c01":"列01","c02":"列02","c03":"列03","c04":"列04"}', 'loadTestNarrow', 0, '2019-10-22 00:00:00', '压测: 5列', 0);
+INSERT INTO sys_export_conf (id, column_conf_json, bean_id, create_id, tm_create, remark, is_del) VALUES ('loadtest2', '{"c00":"列00","c01":"列01","c02":"列02","c03":"列03","c04":"列04","c05":"列05","c06":"列06","c07":"列07","c08":"列08","c09":"列09","c10":"列10","c11":"列11","c12":"列12","c13":"列13","c14":"列14","c15":"列15","c16":"列16","c17":"列17","c18":"列18","c19":"列19"}', 'loadTestMedium', 0, '2019-10-22 00:00:00', '压测: 20列', 0);
+INSERT INTO sys_export_conf (id, column_conf_json, bean_id, create_id, tm_create, remark, is_del) VALUES ('loadtest3', '{"c00":"列00","c01":"列01","c02":"列02","c03":"列03","c04":"列04","c05":"列05","c06":"列06","c07":"列07","c08":"列08","c09":"列09","c10":"列10","c11":"列11","c12":"列12","c13":"列13","c14":"列14","c15":"列15","c16":"列16","c17":"列17","c18":"列18","c19":"列19","c20":"列20","c21":"列21","c22":"列22","c23":"列23","c24":"列24","c25":"列25","c26":"列26","c27":"列27","c28":"列28","c29":"列29","c30":"列30","c31":"列31","c32":"列32","c33":"列33","c34":"列34","c35":"列35","c36":"列36","c37":"列37","c38":"列38","c39":"列39"}', 'loadTestWide', 0, '2019-10-22 00:00:00', '压测: 40列', 0);
+
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-01', 0, 'loadTestNarrow', '{"rows":1000}', 1000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-02', 0, 'loadTestNarrow', '{"rows":10000}', 10000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-03', 0, 'loadTestNarrow', '{"rows":100000}', 100000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-04', 0, 'loadTestMedium', '{"rows":1000}', 1000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-05', 0, 'loadTestMedium', '{"rows":10000}', 10000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-06', 0, 'loadTestMedium', '{"rows":100000}', 100000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-07', 0, 'loadTestWide', '{"rows":1000}', 1000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-08', 0, 'loadTestWide', '{"rows":10000}', 10000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
+INSERT INTO sys_export_plan (id, user_id, bean_id, request_params, line_count, plan_status, retry_qty, i18n, tm_create, tm_success, is_del) VALUES ('loadtest-history-09', 0, 'loadTestWide', '{"rows":100000}', 100000, '执行成功', 0, 'zh_CN', '2019-10-22 00:00:00', '2019-10-22 00:00:10', 0);
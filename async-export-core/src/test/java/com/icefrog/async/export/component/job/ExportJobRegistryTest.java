@@ -0,0 +1,139 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.job;
+
+import com.icefrog.async.export.component.admission.AdmissionDecision;
+import com.icefrog.async.export.component.cache.ResultReuseCache;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.retry.RetryScheduler;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/***
+ * ExportJobRegistry: 取消计划时状态CAS优先, 尚未执行的被合并计划取消后, 合并等待的计划转为延迟执行
+ *
+ * @author icefrog
+ */
+public class ExportJobRegistryTest {
+
+    private static final String NODE = "node-a";
+
+    private SysExportPlanMapper sysExportPlanMapper;
+
+    private PlanLeaseManager planLeaseManager;
+
+    private ResultReuseCache resultReuseCache;
+
+    private ExportJobRegistry registry;
+
+    @Before
+    public void setUp() {
+        sysExportPlanMapper = Mockito.mock(SysExportPlanMapper.class);
+        when(sysExportPlanMapper.insert(any(SysExportPlan.class))).thenReturn(1);
+        planLeaseManager = Mockito.mock(PlanLeaseManager.class);
+        when(planLeaseManager.getNodeId()).thenReturn(NODE);
+
+        resultReuseCache = new ResultReuseCache();
+        ReflectionTestUtils.setField(resultReuseCache, "sysExportPlanMapper", sysExportPlanMapper);
+        ReflectionTestUtils.setField(resultReuseCache, "planLeaseManager", planLeaseManager);
+        ReflectionTestUtils.setField(resultReuseCache, "enabled", true);
+        ReflectionTestUtils.setField(resultReuseCache, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(resultReuseCache, "maximumSize", 16L);
+        ReflectionTestUtils.setField(resultReuseCache, "ignoredParams", "");
+        resultReuseCache.afterPropertiesSet();
+
+        registry = new ExportJobRegistry();
+        ReflectionTestUtils.setField(registry, "sysExportPlanMapper", sysExportPlanMapper);
+        ReflectionTestUtils.setField(registry, "planLeaseManager", planLeaseManager);
+        ReflectionTestUtils.setField(registry, "resultReuseCache", resultReuseCache);
+        ReflectionTestUtils.setField(registry, "retryScheduler", Mockito.mock(RetryScheduler.class));
+    }
+
+    @Test
+    public void cancellingQueuedLeaderDefersItsFollowers() {
+
+        resultReuseCache.lead("key", "leader");
+        assertEquals(AdmissionDecision.COALESCED, resultReuseCache.reuse("key", plan("follower")));
+        when(sysExportPlanMapper.updatePlanStatus("leader", PlanStatus.PENDING.getValue(), PlanStatus.CANCELLED.getValue())).thenReturn(1);
+
+        assertTrue(registry.cancel("leader"));
+
+        verify(planLeaseManager).abandon("follower", PlanStatus.DEFERRED);
+        // 被合并的计划已结束, 相同导出不再合并到该计划上
+        assertNull(resultReuseCache.reuse("key", plan("next")));
+    }
+
+    @Test
+    public void cancellingRunningLeaderSignalsJob() {
+
+        resultReuseCache.lead("key", "leader");
+        assertEquals(AdmissionDecision.COALESCED, resultReuseCache.reuse("key", plan("follower")));
+        SysExportPlan current = plan("leader");
+        current.setOwnerNode(NODE);
+        when(sysExportPlanMapper.selectByPrimaryKey("leader")).thenReturn(current);
+        when(sysExportPlanMapper.updatePlanStatus("leader", PlanStatus.PENDING.getValue(), PlanStatus.CANCELLED.getValue())).thenReturn(1);
+
+        ExportApiReqDto request = new ExportApiReqDto();
+        request.setPlanId("leader");
+        CancellationToken token = registry.start(request, null);
+        assertNotNull(token);
+
+        assertTrue(registry.cancel("leader"));
+
+        // 执行线程在检查点终止, 由其回写取消结果并处理合并等待的计划
+        assertTrue(token.isCancelled());
+        verify(planLeaseManager, never()).abandon(anyString(), eq(PlanStatus.DEFERRED));
+    }
+
+    @Test
+    public void finishedPlanCannotBeCancelled() {
+
+        resultReuseCache.lead("key", "leader");
+        assertEquals(AdmissionDecision.COALESCED, resultReuseCache.reuse("key", plan("follower")));
+
+        assertFalse(registry.cancel("leader"));
+
+        verify(planLeaseManager, never()).abandon(anyString(), any(PlanStatus.class));
+    }
+
+    private static SysExportPlan plan(String id) {
+        SysExportPlan plan = new SysExportPlan();
+        plan.setId(id);
+        plan.setUserId(1L);
+        plan.setBeanId("exampleExport");
+        plan.setPlanStatus(PlanStatus.PENDING.getValue());
+        return plan;
+    }
+}
@@ -0,0 +1,160 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.mapping;
+
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * BatchRowMapper/RowBatch: 列式批次的解析结果, 以及按引用计数回收复用
+ *
+ * @author icefrog
+ */
+public class BatchRowMapperTest {
+
+    private BatchRowMapper mapper;
+
+    @Before
+    public void setUp() {
+        ColumnConf columnConf = ColumnConf.parse("testExport", "{\"name\":\"名称\",\"amount\":\"金额\"}");
+        mapper = new BatchRowMapper(columnConf, new RowPlanCache(), null, "-");
+    }
+
+    @Test
+    public void mapIntoColumnarBatch() {
+
+        List<List<String>> rows = mapper.map(batch(new Item("a", 1L), new Item(null, -20L), new Item("c", null)));
+
+        assertTrue(rows instanceof RowBatch);
+        assertEquals(Arrays.asList(
+                Arrays.asList("a", "1"),
+                Arrays.asList("-", "-20"),
+                Arrays.asList("c", "-")), copy(rows));
+
+        RowBatch batch = (RowBatch) rows;
+        assertTrue(batch.isLong(0, 1));
+        assertEquals(-20L, batch.getLong(1, 1));
+        // null按替换字符保存, 不再是整数
+        assertFalse(batch.isLong(2, 1));
+    }
+
+    @Test
+    public void releasedBatchIsReused() {
+
+        List<List<String>> first = mapper.map(batch(new Item("a", 1L), new Item("b", 2L)));
+        RowBatch.release(first);
+
+        List<List<String>> second = mapper.map(batch(new Item("c", 3L)));
+        assertSame(first, second);
+        assertEquals(1, second.size());
+        assertEquals(Arrays.asList("c", "3"), second.get(0));
+    }
+
+    @Test
+    public void retainedBatchIsNotReusedUntilReleased() {
+
+        List<List<String>> first = mapper.map(batch(new Item("a", 1L)));
+        RowBatch batch = (RowBatch) first;
+        // 异步写入方持有引用
+        batch.retain();
+        RowBatch.release(first);
+
+        List<List<String>> second = mapper.map(batch(new Item("b", 2L)));
+        assertNotSame(first, second);
+        assertEquals(Arrays.asList("a", "1"), first.get(0));
+
+        batch.release();
+        RowBatch.release(second);
+        List<List<String>> third = mapper.map(batch(new Item("c", 3L)));
+        assertTrue(third == first || third == second);
+        assertEquals(Arrays.asList("c", "3"), third.get(0));
+    }
+
+    @Test
+    public void batchWithInsufficientCapacityIsNotReused() {
+
+        List<List<String>> small = mapper.map(batch(new Item("a", 1L)));
+        RowBatch.release(small);
+
+        List<List<String>> large = mapper.map(batch(new Item("b", 2L), new Item("c", 3L)));
+        assertNotSame(small, large);
+        assertEquals(2, large.size());
+    }
+
+    @Test
+    public void mixedTypesAreMappedRowByRow() {
+
+        List<BaseResultSet> mixed = new ArrayList<>();
+        mixed.add(new Item("a", 1L));
+        mixed.add(new SpecialItem("b", 2L));
+
+        List<List<String>> rows = mapper.map(mixed);
+        assertFalse(rows instanceof RowBatch);
+        assertEquals(Arrays.asList(Arrays.asList("a", "1"), Arrays.asList("b", "2")), copy(rows));
+        // 非RowBatch无需释放
+        RowBatch.release(rows);
+    }
+
+    private static List<BaseResultSet> batch(Item... items) {
+        return new ArrayList<>(Arrays.asList(items));
+    }
+
+    /***
+     * 行视图随批次复用, 比较前拷贝
+     */
+    private static List<List<String>> copy(List<List<String>> rows) {
+        List<List<String>> copy = new ArrayList<>(rows.size());
+        for (List<String> row : rows) {
+            copy.add(new ArrayList<>(row));
+        }
+        return copy;
+    }
+
+    @Data
+    @EqualsAndHashCode(callSuper = false)
+    public static class Item extends BaseResultSet {
+
+        private String name;
+
+        private Long amount;
+
+        public Item(String name, Long amount) {
+            this.name = name;
+            this.amount = amount;
+        }
+    }
+
+    public static class SpecialItem extends Item {
+
+        public SpecialItem(String name, Long amount) {
+            super(name, amount);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.memory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * MemoryGovernor: 预算的申请、归还与溢写
+ *
+ * @author icefrog
+ */
+public class MemoryGovernorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MemoryGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new MemoryGovernor();
+        ReflectionTestUtils.setField(governor, "globalBudget", 1000L);
+        ReflectionTestUtils.setField(governor, "jobBudget", 600L);
+        ReflectionTestUtils.setField(governor, "throttleMillis", 10L);
+        ReflectionTestUtils.setField(governor, "spillEnabled", true);
+        ReflectionTestUtils.setField(governor, "spillDirPath", "");
+        ReflectionTestUtils.setField(governor, "tempDir", folder.getRoot().getAbsolutePath());
+        governor.afterPropertiesSet();
+    }
+
+    @Test
+    public void reserveWithinJobBudgetAndRelease() throws Exception {
+
+        try (JobMemory job = governor.open("plan-1", 3)) {
+            assertTrue(job.reserve(400, false));
+            assertTrue(job.reserve(200, false));
+            assertEquals(600, governor.getReserved());
+
+            // 超过单作业预算: 限流等待后返回false, 由调用方溢写
+            assertFalse(job.reserve(1, false));
+
+            job.release(400);
+            assertEquals(200, governor.getReserved());
+            assertTrue(job.reserve(300, false));
+        }
+        // 关闭时归还剩余预算
+        assertEquals(0, governor.getReserved());
+    }
+
+    @Test
+    public void globalBudgetIsSharedAcrossJobs() throws Exception {
+
+        try (JobMemory a = governor.open("plan-a", 3); JobMemory b = governor.open("plan-b", 3)) {
+            assertTrue(a.reserve(600, false));
+            assertFalse(b.reserve(500, true));
+            assertTrue(b.reserve(400, true));
+            assertEquals(1000, governor.getReserved());
+        }
+        assertEquals(0, governor.getReserved());
+    }
+
+    @Test
+    public void spilledBatchIsReadBackAndFileRemovedOnClose() throws Exception {
+
+        List<List<String>> rows = Arrays.asList(Arrays.asList("1", "a"), Arrays.asList("2", null));
+        File spillDir = new File(folder.getRoot(), "spill");
+        try (JobMemory job = governor.open("plan-1", 2)) {
+            BufferedBatch spilled = job.spill(BufferedBatch.of(rows));
+            assertTrue(spilled.isSpilled());
+            assertEquals(2, spilled.size());
+            assertEquals(rows, spilled.rows());
+            assertEquals(1, spillDir.list().length);
+            assertEquals(1, governor.getSpilledBatches());
+        }
+        assertEquals(0, spillDir.list().length);
+    }
+}
@@ -0,0 +1,89 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.memory;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * SpillFile: 批次写入后按位置读回, 内容(含null、空串、多字节字符与长单元格)与写入时一致
+ *
+ * @author icefrog
+ */
+public class SpillFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readBackWhatWasAppended() throws Exception {
+
+        List<List<String>> first = Arrays.asList(
+                Arrays.asList("1", "张三", null),
+                Arrays.asList("2", "", "a,b\"c\r\n"),
+                Collections.<String>emptyList());
+        // 单元格长度跨越varint的1、2、3字节边界
+        List<List<String>> second = Arrays.asList(
+                Arrays.asList(StringUtils.repeat('x', 127), StringUtils.repeat('y', 128)),
+                Arrays.asList(StringUtils.repeat("中", 6000), "😀"));
+        List<List<String>> third = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            third.add(Arrays.asList(String.valueOf(i), "row-" + i));
+        }
+
+        File file = new File(folder.getRoot(), "job.spill");
+        try (SpillFile spillFile = new SpillFile(file)) {
+            SpillFile.Segment s1 = spillFile.append(first);
+            SpillFile.Segment s2 = spillFile.append(second);
+            SpillFile.Segment s3 = spillFile.append(third);
+
+            assertEquals(3, s1.getRows());
+            assertEquals(1000, s3.getRows());
+            assertEquals(s1.getLength() + s2.getLength() + s3.getLength(), spillFile.size());
+
+            // 读回顺序与写入顺序无关
+            assertEquals(third, spillFile.read(s3));
+            assertEquals(first, spillFile.read(s1));
+            assertEquals(second, spillFile.read(s2));
+            assertEquals(first, spillFile.read(s1));
+        }
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void emptyBatch() throws Exception {
+
+        File file = new File(folder.getRoot(), "empty.spill");
+        try (SpillFile spillFile = new SpillFile(file)) {
+            SpillFile.Segment segment = spillFile.append(Collections.<List<String>>emptyList());
+            assertEquals(0, segment.getRows());
+            assertTrue(spillFile.read(segment).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.pipeline;
+
+import com.icefrog.async.export.component.memory.JobMemory;
+import com.icefrog.async.export.component.memory.MemoryGovernor;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/***
+ * BatchPipeline内存预算: 写入函数确认批次已被写入目标消费后才归还预算, 跳过或失败的批次由流水线归还
+ *
+ * @author icefrog
+ */
+public class BatchPipelineMemoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MemoryGovernor governor;
+
+    private ExecutorService transformStage;
+
+    private ExecutorService writeStage;
+
+    @Before
+    public void setUp() {
+        governor = new MemoryGovernor();
+        ReflectionTestUtils.setField(governor, "globalBudget", 1L << 30);
+        ReflectionTestUtils.setField(governor, "jobBudget", 1L << 30);
+        ReflectionTestUtils.setField(governor, "throttleMillis", 10L);
+        ReflectionTestUtils.setField(governor, "spillEnabled", true);
+        ReflectionTestUtils.setField(governor, "spillDirPath", "");
+        ReflectionTestUtils.setField(governor, "tempDir", folder.getRoot().getAbsolutePath());
+        governor.afterPropertiesSet();
+        transformStage = Executors.newFixedThreadPool(2);
+        writeStage = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        transformStage.shutdownNow();
+        writeStage.shutdownNow();
+    }
+
+    @Test
+    public void reservationIsHeldUntilWriterConsumesBatch() throws Exception {
+
+        List<Runnable> pendingConsumed = Collections.synchronizedList(new ArrayList<>());
+        try (JobMemory memory = governor.open("plan-1", 1);
+             BatchPipeline<List<BaseResultSet>> pipeline = new BatchPipeline<>(rows -> rows,
+                     (rows, consumed) -> pendingConsumed.add(consumed), transformStage, writeStage, 4, memory, rows -> rows)) {
+
+            for (int i = 0; i < 3; i++) {
+                pipeline.submit(batch(10));
+            }
+            pipeline.finish();
+
+            // 写入函数已返回, 但写入目标尚未消费: 预算仍被占用
+            long expected = 3 * memory.estimate(10);
+            assertEquals(expected, governor.getReserved());
+
+            for (Runnable consumed : pendingConsumed) {
+                consumed.run();
+                // 重复回调不会重复归还
+                consumed.run();
+            }
+            assertEquals(0, governor.getReserved());
+        }
+    }
+
+    @Test
+    public void reservationIsReleasedWhenWriteFails() throws Exception {
+
+        try (JobMemory memory = governor.open("plan-1", 1);
+             BatchPipeline<List<BaseResultSet>> pipeline = new BatchPipeline<>(rows -> rows,
+                     (rows, consumed) -> {
+                         throw new IOException("write failed");
+                     }, transformStage, writeStage, 4, memory, rows -> rows)) {
+
+            try {
+                // 写入失败可能在提交下一批次或等待完成时抛出
+                pipeline.submit(batch(10));
+                pipeline.finish();
+                fail("写入失败应抛出异常");
+            } catch (IOException expected) {
+                assertEquals("write failed", expected.getMessage());
+            }
+            assertEquals(0, governor.getReserved());
+        }
+    }
+
+    private static List<BaseResultSet> batch(int size) {
+        List<BaseResultSet> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(new Row());
+        }
+        return batch;
+    }
+
+    private static final class Row extends BaseResultSet {
+    }
+}
@@ -0,0 +1,190 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.pipeline;
+
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/***
+ * BatchPipeline: 解析串行、写入按提交顺序执行, 超过maxInFlight时的反压, 以及关闭时跳过未执行的批次
+ *
+ * @author icefrog
+ */
+public class BatchPipelineTest {
+
+    private ExecutorService transformStage;
+
+    private ExecutorService writeStage;
+
+    private ExecutorService submitter;
+
+    @Before
+    public void setUp() {
+        transformStage = Executors.newFixedThreadPool(4);
+        writeStage = Executors.newFixedThreadPool(4);
+        submitter = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        transformStage.shutdownNow();
+        writeStage.shutdownNow();
+        submitter.shutdownNow();
+    }
+
+    @Test
+    public void writesFollowSubmitOrder() throws Exception {
+
+        AtomicInteger transforming = new AtomicInteger();
+        AtomicInteger maxConcurrentTransforms = new AtomicInteger();
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        BatchPipeline.Transformer<Integer> transformer = batch -> {
+            maxConcurrentTransforms.accumulateAndGet(transforming.incrementAndGet(), Math::max);
+            sleep(ThreadLocalRandom.current().nextInt(3));
+            transforming.decrementAndGet();
+            return ((Row) batch.get(0)).index;
+        };
+        try (BatchPipeline<Integer> pipeline = new BatchPipeline<>(transformer,
+                (index, consumed) -> {
+                    sleep(ThreadLocalRandom.current().nextInt(3));
+                    written.add(index);
+                    consumed.run();
+                }, transformStage, writeStage, 4)) {
+
+            List<BaseResultSet> batch = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                // 游标可复用List: 提交后立即修改不影响已提交的批次
+                batch.clear();
+                batch.add(new Row(i));
+                pipeline.submit(batch);
+            }
+            pipeline.finish();
+        }
+
+        assertEquals(100, written.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), written.get(i));
+        }
+        assertEquals(1, maxConcurrentTransforms.get());
+    }
+
+    @Test
+    public void submitBlocksWhenTooManyBatchesInFlight() throws Exception {
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger written = new AtomicInteger();
+        try (BatchPipeline<List<BaseResultSet>> pipeline = new BatchPipeline<>(rows -> rows,
+                (rows, consumed) -> {
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written.incrementAndGet();
+                }, transformStage, writeStage, 2)) {
+
+            pipeline.submit(Collections.singletonList(new Row(0)));
+            pipeline.submit(Collections.singletonList(new Row(1)));
+
+            Future<?> third = submitter.submit(() -> {
+                pipeline.submit(Collections.singletonList(new Row(2)));
+                return null;
+            });
+            try {
+                third.get(200, TimeUnit.MILLISECONDS);
+                fail("写入未完成时第三个批次应等待");
+            } catch (TimeoutException expected) {
+                assertFalse(third.isDone());
+            }
+
+            unblock.countDown();
+            third.get(5, TimeUnit.SECONDS);
+            pipeline.finish();
+        }
+        assertEquals(3, written.get());
+    }
+
+    @Test
+    public void closeSkipsPendingBatches() throws Exception {
+
+        AtomicInteger written = new AtomicInteger();
+        CountDownLatch firstWriting = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        BatchPipeline<List<BaseResultSet>> pipeline = new BatchPipeline<>(rows -> rows,
+                (rows, consumed) -> {
+                    firstWriting.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written.incrementAndGet();
+                }, transformStage, writeStage, 8);
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(Collections.singletonList(new Row(i)));
+        }
+        assertTrue(firstWriting.await(5, TimeUnit.SECONDS));
+
+        Future<?> closing = submitter.submit(pipeline::close);
+        while (!(Boolean) ReflectionTestUtils.getField(pipeline, "aborted")) {
+            sleep(1);
+        }
+        unblock.countDown();
+        closing.get(5, TimeUnit.SECONDS);
+
+        // 执行中的批次写完, 其余批次跳过
+        assertEquals(1, written.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Row extends BaseResultSet {
+
+        private final int index;
+
+        private Row(int index) {
+            this.index = index;
+        }
+    }
+}
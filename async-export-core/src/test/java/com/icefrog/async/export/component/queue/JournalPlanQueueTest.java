@@ -0,0 +1,221 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.queue;
+
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * JournalPlanQueue: 进程崩溃(未调用close)后以同一目录重新打开, 未消费的计划按顺序恢复, 已消费的计划不再出现;
+ * 启动加载时保留恢复的计划, 数据库中收回的计划不重复写入
+ *
+ * @author icefrog
+ */
+public class JournalPlanQueueTest {
+
+    /***
+     * 段大小. 每段只能容纳少量记录, 使测试覆盖跨段滚动与已消费段的删除
+     */
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoverUnconsumedPlansAfterCrash() throws Exception {
+
+        File dir = folder.newFolder("journal");
+        JournalPlanQueue queue = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(queue.offer(plan(i)));
+        }
+        for (int i = 0; i < 7; i++) {
+            assertEquals("plan-" + i, queue.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        }
+
+        // 模拟崩溃: 不调用close, 直接以同一目录重新打开
+        JournalPlanQueue recovered = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        assertEquals(13, recovered.size());
+        for (int i = 7; i < 20; i++) {
+            assertEquals("plan-" + i, recovered.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        }
+        assertNull(recovered.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void consumedSegmentsAreDeleted() throws Exception {
+
+        File dir = folder.newFolder("journal");
+        JournalPlanQueue queue = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(plan(i));
+        }
+        int before = segmentFiles(dir).size();
+        assertTrue(before > 1);
+
+        for (int i = 0; i < 20; i++) {
+            queue.poll(0, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(segmentFiles(dir).size() < before);
+
+        JournalPlanQueue recovered = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        assertEquals(0, recovered.size());
+    }
+
+    @Test
+    public void tornWriteIsIgnoredOnRecovery() throws Exception {
+
+        File dir = folder.newFolder("journal");
+        JournalPlanQueue queue = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        queue.offer(plan(0));
+        queue.offer(plan(1));
+
+        // 模拟写入数据后、写入长度前崩溃: 末条记录之后只有数据, 长度仍为0
+        List<File> segments = segmentFiles(dir);
+        File last = segments.get(segments.size() - 1);
+        try (RandomAccessFile raf = new RandomAccessFile(last, "rw")) {
+            long pos = 0;
+            int length;
+            while ((length = raf.readInt()) > 0) {
+                pos += 4 + length;
+                raf.seek(pos);
+            }
+            raf.seek(pos + 4);
+            raf.write("{\"planId\":\"torn\"}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        JournalPlanQueue recovered = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        assertEquals(2, recovered.size());
+        assertTrue(recovered.offer(plan(2)));
+        assertEquals("plan-0", recovered.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        assertEquals("plan-1", recovered.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        assertEquals("plan-2", recovered.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        assertNull(recovered.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void offerFailsWhenSegmentsAreExhausted() throws Exception {
+
+        JournalPlanQueue queue = new JournalPlanQueue(folder.newFolder("journal"), SEGMENT_SIZE, 2, false);
+        int accepted = 0;
+        while (queue.offer(plan(accepted))) {
+            accepted++;
+        }
+        assertTrue(accepted > 0);
+        assertEquals(accepted, queue.size());
+        assertFalse(queue.offer(plan(accepted)));
+
+        // 消费后腾出的段可再次写入
+        for (int i = 0; i < accepted; i++) {
+            queue.poll(0, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(queue.offer(plan(accepted)));
+    }
+
+    @Test
+    public void restoreKeepsRecoveredPlansWithoutDuplicates() throws Exception {
+
+        File dir = folder.newFolder("journal");
+        JournalPlanQueue queue = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(plan(i));
+        }
+        for (int i = 0; i < 3; i++) {
+            queue.poll(0, TimeUnit.MILLISECONDS);
+        }
+
+        // 崩溃后数据库中收回: plan-1出队后未执行完成, plan-5仍在journal中, plan-10未写入journal
+        JournalPlanQueue recovered = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        List<ExportApiReqDto> queued = recovered.restore(Arrays.asList(plan(1), plan(5), plan(10)));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 3; i < 10; i++) {
+            expected.add("plan-" + i);
+        }
+        expected.add("plan-1");
+        expected.add("plan-10");
+        assertEquals(expected, planIds(queued));
+        assertEquals(expected.size(), recovered.size());
+        for (String planId : expected) {
+            assertEquals(planId, recovered.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        }
+        assertNull(recovered.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void resetDropsAllSegments() throws Exception {
+
+        File dir = folder.newFolder("journal");
+        JournalPlanQueue queue = new JournalPlanQueue(dir, SEGMENT_SIZE, 64, false);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(plan(i));
+        }
+        assertTrue(segmentFiles(dir).size() > 1);
+
+        queue.reset(Arrays.asList(plan(20), plan(21)));
+
+        assertEquals(1, segmentFiles(dir).size());
+        assertEquals(2, queue.size());
+        assertEquals("plan-20", queue.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        assertEquals("plan-21", queue.poll(0, TimeUnit.MILLISECONDS).getPlanId());
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    private static ExportApiReqDto plan(int index) {
+        ExportApiReqDto plan = new ExportApiReqDto();
+        plan.setPlanId("plan-" + index);
+        plan.setBeanId("exampleExport");
+        plan.setRequestParams("{\"index\":" + index + "}");
+        plan.setI18n("zh_CN");
+        plan.setUserId(1L);
+        return plan;
+    }
+
+    private static List<String> planIds(List<ExportApiReqDto> plans) {
+        List<String> planIds = new ArrayList<>(plans.size());
+        for (ExportApiReqDto plan : plans) {
+            planIds.add(plan.getPlanId());
+        }
+        return planIds;
+    }
+
+    private static List<File> segmentFiles(File dir) throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+        if(files == null) {
+            throw new IOException("journal目录不存在: " + dir);
+        }
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return segments;
+    }
+}
@@ -0,0 +1,125 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.retry;
+
+import com.icefrog.async.export.component.job.ExportCancelledException;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * RetryPolicy: 按异常及其cause链判定是否可重试, 以及指数退避延迟的范围
+ *
+ * @author icefrog
+ */
+public class RetryPolicyTest {
+
+    private RetryPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new RetryPolicy();
+        ReflectionTestUtils.setField(policy, "maxAttempts", 3);
+        ReflectionTestUtils.setField(policy, "baseDelayMillis", 1000L);
+        ReflectionTestUtils.setField(policy, "maxDelayMillis", 10000L);
+        ReflectionTestUtils.setField(policy, "jitter", 0.5D);
+        ReflectionTestUtils.setField(policy, "retryableExceptions", "java.io.IOException,java.sql.SQLTransientException,"
+                + "org.springframework.dao.TransientDataAccessException,com.example.Missing");
+        ReflectionTestUtils.setField(policy, "fatalExceptions", "java.lang.IllegalStateException,java.io.FileNotFoundException,"
+                + "org.springframework.dao.NonTransientDataAccessException");
+        policy.afterPropertiesSet();
+    }
+
+    @Test
+    public void transientFailuresAreRetryable() {
+
+        assertTrue(policy.isRetryable(new IOException("io")));
+        assertTrue(policy.isRetryable(new SocketTimeoutException("timeout")));
+        assertTrue(policy.isRetryable(new SQLTransientConnectionException("connection")));
+        assertTrue(policy.isRetryable(new QueryTimeoutException("query timeout")));
+    }
+
+    @Test
+    public void causeChainIsInspected() {
+
+        assertTrue(policy.isRetryable(new UncheckedIOException(new IOException("io"))));
+        assertTrue(policy.isRetryable(new RuntimeException(new RuntimeException(new IOException("io")))));
+        // cause链中任一异常不可重试时不重试
+        assertFalse(policy.isRetryable(new IOException(new IllegalStateException("state"))));
+    }
+
+    @Test
+    public void fatalAndUnknownFailuresAreNotRetryable() {
+
+        assertFalse(policy.isRetryable(new IllegalStateException("state")));
+        // FileNotFoundException是IOException的子类, 不可重试优先
+        assertFalse(policy.isRetryable(new FileNotFoundException("missing")));
+        assertFalse(policy.isRetryable(new DataIntegrityViolationException("duplicate")));
+        assertFalse(policy.isRetryable(new NullPointerException()));
+        assertFalse(policy.isRetryable(new ExportCancelledException(PlanStatus.CANCELLED, "cancelled")));
+        assertFalse(policy.isRetryable(new IOException(new ExportCancelledException(PlanStatus.TIMED_OUT, "timed out"))));
+    }
+
+    @Test
+    public void cyclicCauseChainTerminates() {
+
+        IOException first = new IOException("first");
+        RuntimeException second = new RuntimeException("second", first);
+        first.initCause(second);
+
+        assertTrue(policy.isRetryable(first));
+    }
+
+    @Test
+    public void delayGrowsExponentiallyWithinBounds() {
+
+        for (int i = 0; i < 100; i++) {
+            assertBetween(500, 1000, policy.delayMillis(1));
+            assertBetween(1000, 2000, policy.delayMillis(2));
+            assertBetween(2000, 4000, policy.delayMillis(3));
+            // 不超过maxDelayMillis, 且移位溢出时仍取上限
+            assertBetween(5000, 10000, policy.delayMillis(5));
+            assertBetween(5000, 10000, policy.delayMillis(100));
+        }
+    }
+
+    @Test
+    public void noJitterGivesExactDelay() {
+
+        ReflectionTestUtils.setField(policy, "jitter", 0D);
+        assertEquals(1000, policy.delayMillis(1));
+        assertEquals(4000, policy.delayMillis(3));
+        assertEquals(10000, policy.delayMillis(64));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue("delay " + actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+    }
+}
@@ -0,0 +1,207 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.scheduler;
+
+import com.icefrog.async.export.component.ApiCacheQueue;
+import com.icefrog.async.export.component.admission.WorkloadEstimator;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/***
+ * FairShareScheduler: 用户间按DRR公平分享, 优先级类别间按平滑加权轮询分享, 同一用户内按预估耗时最短优先
+ *
+ * @author icefrog
+ */
+public class FairShareSchedulerTest {
+
+    private WorkloadEstimator workloadEstimator;
+
+    private FairShareScheduler scheduler;
+
+    private int sequence;
+
+    @Before
+    public void setUp() {
+        ApiCacheQueue.reconstruction(1000);
+        workloadEstimator = Mockito.mock(WorkloadEstimator.class);
+        when(workloadEstimator.estimateMillis(any(ExportApiReqDto.class))).thenReturn(0L);
+        scheduler = new FairShareScheduler();
+        ReflectionTestUtils.setField(scheduler, "workloadEstimator", workloadEstimator);
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "window", 64);
+        ReflectionTestUtils.setField(scheduler, "quantumRows", 1000L);
+        ReflectionTestUtils.setField(scheduler, "interactiveRows", 100L);
+        ReflectionTestUtils.setField(scheduler, "classWeights", "interactive:8,normal:3,batch:1");
+        ReflectionTestUtils.setField(scheduler, "beanClasses", "");
+        ReflectionTestUtils.setField(scheduler, "order", "sjf");
+        ReflectionTestUtils.setField(scheduler, "agingFactor", 1.0D);
+        ReflectionTestUtils.setField(scheduler, "maxRunningPerBean", 1000);
+        ReflectionTestUtils.setField(scheduler, "beanLimits", "");
+        scheduler.afterPropertiesSet();
+    }
+
+    @Test
+    public void usersShareFairlyRegardlessOfSubmitOrder() throws Exception {
+
+        for (int i = 0; i < 20; i++) {
+            ApiCacheQueue.offer(plan(1L, "normal", 1000L));
+        }
+        ApiCacheQueue.offer(plan(2L, "normal", 1000L));
+        ApiCacheQueue.offer(plan(2L, "normal", 1000L));
+
+        // 用户2的计划排在用户1的20个计划之后, 仍在前4次调度中轮到
+        List<Long> users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            users.add(scheduler.next(0, TimeUnit.MILLISECONDS).getUserId());
+        }
+        assertEquals(2, users.stream().filter(user -> user == 2L).count());
+
+        for (int i = 0; i < 18; i++) {
+            assertEquals(Long.valueOf(1L), scheduler.next(0, TimeUnit.MILLISECONDS).getUserId());
+        }
+        assertNull(scheduler.next(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deficitAccountsForPlanCost() throws Exception {
+
+        // 用户1的计划代价是用户2的3倍: 用户1每执行1个计划, 用户2执行3个
+        for (int i = 0; i < 3; i++) {
+            ApiCacheQueue.offer(plan(1L, "normal", 3000L));
+        }
+        for (int i = 0; i < 9; i++) {
+            ApiCacheQueue.offer(plan(2L, "normal", 1000L));
+        }
+
+        int user1 = 0;
+        for (int i = 0; i < 8; i++) {
+            if(scheduler.next(0, TimeUnit.MILLISECONDS).getUserId() == 1L) {
+                user1++;
+            }
+        }
+        assertEquals(2, user1);
+    }
+
+    @Test
+    public void classesShareByWeight() throws Exception {
+
+        for (int i = 0; i < 9; i++) {
+            ApiCacheQueue.offer(plan(1L, "batch", 10L));
+        }
+        for (int i = 0; i < 9; i++) {
+            ApiCacheQueue.offer(plan(1L, "interactive", 10L));
+        }
+
+        // interactive:batch = 8:1, 批量类别不会被饿死
+        int interactive = 0;
+        for (int i = 0; i < 9; i++) {
+            if("interactive".equals(scheduler.next(0, TimeUnit.MILLISECONDS).getPriority())) {
+                interactive++;
+            }
+        }
+        assertEquals(8, interactive);
+    }
+
+    @Test
+    public void unspecifiedClassIsDerivedFromEstimatedRows() throws Exception {
+
+        ApiCacheQueue.offer(plan(1L, null, 5000L));
+        ApiCacheQueue.offer(plan(1L, null, 50L));
+
+        // 预估行数不超过interactiveRows的计划归为交互式, 权重更高先执行
+        assertEquals(Long.valueOf(50L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+        assertEquals(Long.valueOf(5000L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+    }
+
+    @Test
+    public void shortestJobFirstWithinUser() throws Exception {
+
+        // 预估耗时间隔远大于预取时间差, 老化不影响顺序
+        when(workloadEstimator.estimateMillis(any(ExportApiReqDto.class)))
+                .thenAnswer(invocation -> invocation.<ExportApiReqDto>getArgument(0).getEstimatedRows() * 1000_000L);
+        ApiCacheQueue.offer(plan(1L, "normal", 500L));
+        ApiCacheQueue.offer(plan(1L, "normal", 100L));
+        ApiCacheQueue.offer(plan(1L, "normal", 300L));
+        ApiCacheQueue.offer(plan(1L, "normal", 200L, "otherExport"));
+
+        // 跨beanId取预估耗时最短者
+        assertEquals(Long.valueOf(100L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+        assertEquals(Long.valueOf(200L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+        assertEquals(Long.valueOf(300L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+        assertEquals(Long.valueOf(500L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+    }
+
+    @Test
+    public void fifoKeepsSubmitOrderWithinBean() throws Exception {
+
+        ReflectionTestUtils.setField(scheduler, "order", "fifo");
+        scheduler.afterPropertiesSet();
+        when(workloadEstimator.estimateMillis(any(ExportApiReqDto.class)))
+                .thenAnswer(invocation -> invocation.<ExportApiReqDto>getArgument(0).getEstimatedRows() * 1000_000L);
+        ApiCacheQueue.offer(plan(1L, "normal", 500L));
+        ApiCacheQueue.offer(plan(1L, "normal", 100L));
+        ApiCacheQueue.offer(plan(1L, "normal", 300L));
+
+        assertEquals(Long.valueOf(500L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+        assertEquals(Long.valueOf(100L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+        assertEquals(Long.valueOf(300L), scheduler.next(0, TimeUnit.MILLISECONDS).getEstimatedRows());
+    }
+
+    @Test
+    public void beanAtConcurrencyLimitDoesNotBlockOthers() throws Exception {
+
+        ReflectionTestUtils.setField(scheduler, "beanLimits", "exampleExport:1");
+        scheduler.afterPropertiesSet();
+        ApiCacheQueue.offer(plan(1L, "normal", 100L));
+        ApiCacheQueue.offer(plan(1L, "normal", 100L));
+        ApiCacheQueue.offer(plan(1L, "normal", 100L, "otherExport"));
+
+        ExportApiReqDto first = scheduler.next(0, TimeUnit.MILLISECONDS);
+        assertEquals("exampleExport", first.getBeanId());
+        assertEquals("otherExport", scheduler.next(0, TimeUnit.MILLISECONDS).getBeanId());
+        // exampleExport已达上限, 释放后才能继续
+        assertNull(scheduler.next(0, TimeUnit.MILLISECONDS));
+        scheduler.release(first);
+        assertEquals("exampleExport", scheduler.next(0, TimeUnit.MILLISECONDS).getBeanId());
+    }
+
+    private ExportApiReqDto plan(Long userId, String priority, Long estimatedRows) {
+        return plan(userId, priority, estimatedRows, "exampleExport");
+    }
+
+    private ExportApiReqDto plan(Long userId, String priority, Long estimatedRows, String beanId) {
+        ExportApiReqDto plan = new ExportApiReqDto();
+        plan.setPlanId("plan-" + sequence++);
+        plan.setBeanId(beanId);
+        plan.setUserId(userId);
+        plan.setPriority(priority);
+        plan.setEstimatedRows(estimatedRows);
+        return plan;
+    }
+}
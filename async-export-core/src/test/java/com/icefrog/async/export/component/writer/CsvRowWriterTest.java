@@ -0,0 +1,116 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/***
+ * CsvRowWriter: RFC 4180转义、表头、BOM, 以及跨缓冲区边界的多字节字符
+ *
+ * @author icefrog
+ */
+public class CsvRowWriterTest {
+
+    @Test
+    public void quoteCellsContainingSpecialCharacters() throws Exception {
+
+        String csv = write(false, null, Arrays.asList(
+                Arrays.asList("plain", "a,b", "say \"hi\""),
+                Arrays.asList("line1\nline2", "cr\r", "\"")));
+
+        assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\"\r\n"
+                + "\"line1\nline2\",\"cr\r\",\"\"\"\"\r\n", csv);
+    }
+
+    @Test
+    public void nullAndEmptyCellsAreEmpty() throws Exception {
+
+        String csv = write(false, null, Collections.singletonList(Arrays.asList(null, "", "x", null)));
+
+        assertEquals(",,x,\r\n", csv);
+    }
+
+    @Test
+    public void headUsesLastLevel() throws Exception {
+
+        List<List<String>> head = Arrays.asList(
+                Arrays.asList("基本信息", "名称"),
+                Collections.singletonList("金额,元"),
+                Collections.<String>emptyList());
+
+        String csv = write(false, head, Collections.singletonList(Arrays.asList("a", "1", "b")));
+
+        assertEquals("名称,\"金额,元\",\r\na,1,b\r\n", csv);
+    }
+
+    @Test
+    public void bomIsWrittenFirst() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvRowWriter writer = new CsvRowWriter(Channels.newChannel(out), 4096, true, null)) {
+            writer.append(Collections.singletonList(Collections.singletonList("a")));
+        }
+
+        assertArrayEquals(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', '\r', '\n'}, out.toByteArray());
+    }
+
+    @Test
+    public void multiByteTextAcrossBufferBoundaries() throws Exception {
+
+        // 字符缓冲区为1024字符: 代理对落在缓冲区边界, 长单元格跨越多个缓冲区
+        String emojiAtBoundary = StringUtils.repeat('a', 1023) + "😀";
+        String longCell = StringUtils.repeat("中文,", 3000);
+        List<List<String>> rows = Arrays.asList(
+                Collections.singletonList(emojiAtBoundary),
+                Arrays.asList(longCell, "尾"));
+
+        String csv = write(false, null, rows);
+
+        assertEquals(emojiAtBoundary + "\r\n\"" + longCell + "\",尾\r\n", csv);
+    }
+
+    @Test
+    public void rowCountIsTracked() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvRowWriter writer = new CsvRowWriter(Channels.newChannel(out), 4096, false, null)) {
+            writer.append(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("2")));
+            writer.append(Collections.singletonList(Collections.singletonList("3")));
+            assertEquals(3, writer.getRowCount());
+        }
+    }
+
+    private static String write(boolean bom, List<List<String>> head, List<List<String>> rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvRowWriter writer = new CsvRowWriter(Channels.newChannel(out), 4096, bom, head)) {
+            writer.append(rows);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.component.writer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * RollingRowWriter: 按行数、字节数拆分文件分片, 每个分片均带表头, 批次写出后回调
+ *
+ * @author icefrog
+ */
+public class RollingRowWriterTest {
+
+    private static final List<List<String>> HEAD = Arrays.asList(
+            Collections.singletonList("编号"), Collections.singletonList("名称"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CsvOutputFormat format;
+
+    private ExecutorService partExecutor;
+
+    @Before
+    public void setUp() {
+        format = new CsvOutputFormat();
+        ReflectionTestUtils.setField(format, "bufferSize", 4096);
+        ReflectionTestUtils.setField(format, "bom", false);
+        partExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        partExecutor.shutdownNow();
+    }
+
+    @Test
+    public void splitFilesByRows() throws Exception {
+
+        RollingRowWriter writer = open(5, 0);
+        for (int batch = 0; batch < 3; batch++) {
+            writer.append(rows(batch * 4, 4));
+        }
+        writer.close();
+
+        assertEquals(12, writer.getRowCount());
+        assertEquals(Arrays.asList("export.csv", "export-2.csv", "export-3.csv"), writer.getParts());
+        assertEquals(expected(0, 5), read("export.csv"));
+        assertEquals(expected(5, 5), read("export-2.csv"));
+        assertEquals(expected(10, 2), read("export-3.csv"));
+    }
+
+    @Test
+    public void splitFilesByBytes() throws Exception {
+
+        RollingRowWriter writer = open(0, 1000);
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            rows.add(Arrays.asList(String.valueOf(i), StringUtils.repeat('x', 400)));
+        }
+        for (List<String> row : rows) {
+            writer.append(Collections.singletonList(row));
+        }
+        writer.close();
+
+        // 达到阈值后的下一批次写入新分片
+        assertTrue(writer.getParts().size() > 1);
+        long total = 0;
+        for (String part : writer.getParts()) {
+            List<String> lines = read(part);
+            assertEquals("编号,名称", lines.get(0));
+            total += lines.size() - 1;
+        }
+        assertEquals(4, total);
+    }
+
+    @Test
+    public void openWritesHeadOnlyFileWithoutRows() throws Exception {
+
+        RollingRowWriter writer = open(5, 0);
+        writer.close();
+
+        assertEquals(Collections.singletonList("export.csv"), writer.getParts());
+        assertEquals(Collections.singletonList("编号,名称"), read("export.csv"));
+    }
+
+    @Test
+    public void consumedRunsAfterBatchWrittenToAllParts() throws Exception {
+
+        RollingRowWriter writer = open(5, 0);
+        CountDownLatch consumed = new CountDownLatch(2);
+        // 跨越分片边界的批次在两个分片均写出后回调
+        writer.append(rows(0, 8), consumed::countDown);
+        writer.append(Collections.<List<String>>emptyList(), consumed::countDown);
+
+        assertTrue(consumed.await(5, TimeUnit.SECONDS));
+        writer.close();
+        assertEquals(Arrays.asList("export.csv", "export-2.csv"), writer.getParts());
+    }
+
+    private RollingRowWriter open(long fileRows, long fileBytes) throws IOException {
+        RollingRowWriter writer = new RollingRowWriter(format, new LocalFileTarget(folder.getRoot().getAbsolutePath()),
+                "export", "sheet", HEAD, 0, fileRows, fileBytes, partExecutor, 4);
+        writer.open();
+        return writer;
+    }
+
+    private static List<List<String>> rows(int from, int count) {
+        List<List<String>> rows = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            rows.add(Arrays.asList(String.valueOf(i), "name-" + i));
+        }
+        return rows;
+    }
+
+    private static List<String> expected(int from, int count) {
+        List<String> lines = new ArrayList<>();
+        lines.add("编号,名称");
+        for (int i = from; i < from + count; i++) {
+            lines.add(i + ",name-" + i);
+        }
+        return lines;
+    }
+
+    private List<String> read(String fileName) throws IOException {
+        return Files.readAllLines(new File(folder.getRoot(), fileName).toPath(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,169 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.controller;
+
+import com.icefrog.async.export.component.admission.AdmissionControl;
+import com.icefrog.async.export.component.admission.AdmissionDecision;
+import com.icefrog.async.export.component.cache.ResultReuseCache;
+import com.icefrog.async.export.component.cluster.PlanLeaseManager;
+import com.icefrog.async.export.component.writer.OutputFormatRegistry;
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import com.icefrog.async.export.dal.mapper.SysExportPlanMapper;
+import com.icefrog.async.export.dto.AdmissionResultDto;
+import com.icefrog.async.export.dto.ExportApiReqDto;
+import com.icefrog.async.export.integration.enums.PlanStatus;
+import com.icefrog.async.export.util.ApiResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+/***
+ * ExportGatewayController: 结果复用的执行计划在入队前登记, 消费线程在请求返回前完成或失败时, 相同导出不会合并到已结束的计划上
+ *
+ * @author icefrog
+ */
+public class ExportGatewayControllerTest {
+
+    private static final String REUSE_KEY = "reuse-key";
+
+    private ExportGatewayController controller;
+
+    private ResultReuseCache resultReuseCache;
+
+    private AdmissionControl admissionControl;
+
+    @Before
+    public void setUp() {
+        SysExportPlanMapper sysExportPlanMapper = Mockito.mock(SysExportPlanMapper.class);
+        when(sysExportPlanMapper.insert(any(SysExportPlan.class))).thenReturn(1);
+        PlanLeaseManager planLeaseManager = Mockito.mock(PlanLeaseManager.class);
+        when(planLeaseManager.getNodeId()).thenReturn("node-a");
+        OutputFormatRegistry outputFormatRegistry = Mockito.mock(OutputFormatRegistry.class);
+        when(outputFormatRegistry.supports(any())).thenReturn(true);
+        admissionControl = Mockito.mock(AdmissionControl.class);
+        when(admissionControl.admit(any(ExportApiReqDto.class))).thenReturn(AdmissionDecision.ACCEPTED);
+
+        ResultReuseCache cache = new ResultReuseCache();
+        ReflectionTestUtils.setField(cache, "sysExportPlanMapper", sysExportPlanMapper);
+        ReflectionTestUtils.setField(cache, "planLeaseManager", planLeaseManager);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "maximumSize", 16L);
+        ReflectionTestUtils.setField(cache, "ignoredParams", "");
+        cache.afterPropertiesSet();
+        resultReuseCache = Mockito.spy(cache);
+        doReturn(REUSE_KEY).when(resultReuseCache).keyOf(any(ExportApiReqDto.class));
+
+        controller = new ExportGatewayController();
+        ReflectionTestUtils.setField(controller, "sysExportPlanMapper", sysExportPlanMapper);
+        ReflectionTestUtils.setField(controller, "admissionControl", admissionControl);
+        ReflectionTestUtils.setField(controller, "planLeaseManager", planLeaseManager);
+        ReflectionTestUtils.setField(controller, "outputFormatRegistry", outputFormatRegistry);
+        ReflectionTestUtils.setField(controller, "resultReuseCache", resultReuseCache);
+    }
+
+    @Test
+    public void leaderFailingBeforeRequestReturnsIsNotCoalescedInto() {
+
+        // 消费线程在请求返回前即执行失败
+        doAnswer(invocation -> {
+            resultReuseCache.fail(invocation.<ExportApiReqDto>getArgument(0));
+            return true;
+        }).when(admissionControl).enqueue(any(ExportApiReqDto.class));
+
+        assertEquals(AdmissionDecision.ACCEPTED, decisionOf(controller.index(request(), new MockHttpServletResponse())));
+
+        assertNull(resultReuseCache.reuse(REUSE_KEY, plan()));
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    public void leaderCompletingBeforeRequestReturnsIsReused() {
+
+        doAnswer(invocation -> {
+            resultReuseCache.complete(invocation.getArgument(0), "/export/result.csv", 10L);
+            return true;
+        }).when(admissionControl).enqueue(any(ExportApiReqDto.class));
+
+        assertEquals(AdmissionDecision.ACCEPTED, decisionOf(controller.index(request(), new MockHttpServletResponse())));
+
+        assertEquals(AdmissionDecision.REUSED, resultReuseCache.reuse(REUSE_KEY, plan()));
+        // 已完成的结果过期后按正常流程重新执行, 不会合并到已结束的计划
+        resultReuseCache.invalidateAll();
+        assertNull(resultReuseCache.reuse(REUSE_KEY, plan()));
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    public void leaderIsDroppedWhenEnqueueFails() {
+
+        when(admissionControl.enqueue(any(ExportApiReqDto.class))).thenReturn(false);
+
+        assertEquals(AdmissionDecision.DEFERRED, decisionOf(controller.index(request(), new MockHttpServletResponse())));
+
+        assertNull(resultReuseCache.reuse(REUSE_KEY, plan()));
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    public void runningLeaderAcceptsFollowers() {
+
+        when(admissionControl.enqueue(any(ExportApiReqDto.class))).thenReturn(true);
+
+        controller.index(request(), new MockHttpServletResponse());
+
+        assertEquals(AdmissionDecision.COALESCED, resultReuseCache.reuse(REUSE_KEY, plan()));
+        assertEquals(1, inFlight());
+    }
+
+    private int inFlight() {
+        Map<String, Object> stats = resultReuseCache.stats();
+        return (Integer) stats.get("inFlight");
+    }
+
+    private static AdmissionDecision decisionOf(ApiResult result) {
+        return ((AdmissionResultDto) result.getData()).getDecision();
+    }
+
+    private static ExportApiReqDto request() {
+        ExportApiReqDto request = new ExportApiReqDto();
+        request.setBeanId("exampleExport");
+        request.setRequestParams("{}");
+        request.setUserId(1L);
+        return request;
+    }
+
+    private static SysExportPlan plan() {
+        SysExportPlan plan = new SysExportPlan();
+        plan.setId("follower");
+        plan.setUserId(1L);
+        plan.setBeanId("exampleExport");
+        plan.setPlanStatus(PlanStatus.PENDING.getValue());
+        return plan;
+    }
+}
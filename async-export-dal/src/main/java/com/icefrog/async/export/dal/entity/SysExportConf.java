@@ -77,4 +77,14 @@ public class SysExportConf {
      * Mark delete or not . 0：delete(logic), 1：not delete
      */
     private Integer isDel;
+
+    /***
+     * 导出文件格式: excel、csv、csv.gz. 为空时取默认格式
+     */
+    private String fileFormat;
+
+    /***
+     * 单次执行超时时间(秒). 为空时取默认超时时间, 小于等于0表示不限制
+     */
+    private Integer timeoutSeconds;
 }
\ No newline at end of file
@@ -64,7 +64,7 @@ public class SysExportPlan {
     private String url;
 
     /***
-     * 计划状态：待执行、执行成功、执行失败
+     * 计划状态：待执行、延迟执行、执行成功、执行失败
      */
     private String planStatus;
 
@@ -97,4 +97,24 @@ public class SysExportPlan {
      * Mark delete or not . 0：delete(logic), 1：not delete
      */
     private Integer isDel;
+
+    /***
+     * 持有该计划租约的节点ID
+     */
+    private String ownerNode;
+
+    /***
+     * 租约过期时间. 过期后其他节点可重新认领该计划
+     */
+    private Date leaseExpire;
+
+    /***
+     * 导出文件格式. 为空时取column配置中的格式
+     */
+    private String fileFormat;
+
+    /***
+     * 调度优先级类别: interactive、normal、batch. 为空时由调度器按导出配置与预估行数判定
+     */
+    private String priority;
 }
\ No newline at end of file
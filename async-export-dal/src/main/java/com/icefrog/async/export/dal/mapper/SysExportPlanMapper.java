@@ -21,6 +21,8 @@ import org.apache.ibatis.annotations.Param;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /***
@@ -43,4 +45,64 @@ public interface SysExportPlanMapper {
     int updateByPrimaryKey(SysExportPlan record);
 
     List<SysExportPlan> queryPlanWithStatus(@NonNull @Param("planStatus") String planStatus);
+
+    List<SysExportPlan> queryPlanWithStatusLimit(@NonNull @Param("planStatus") String planStatus, @Param("limit") int limit);
+
+    int countPlanWithStatus(@NonNull @Param("planStatus") String planStatus);
+
+    /***
+     * 按创建时间倒序查询最近的、已记录数据行数的计划. 用于初始化工作量估算
+     */
+    List<SysExportPlan> queryRecentPlansWithLineCount(@NonNull @Param("planStatus") String planStatus, @Param("limit") int limit);
+
+    /***
+     * 查询ids中状态为planStatus的计划ID. 用于检查执行中的计划是否已被取消
+     */
+    List<String> queryPlanIdsWithStatus(@Param("ids") Collection<String> ids, @Param("planStatus") String planStatus);
+
+    /***
+     * 按ID批量查询计划
+     */
+    List<SysExportPlan> queryPlansWithIds(@Param("ids") Collection<String> ids);
+
+    /***
+     * 状态CAS更新. 仅当记录当前状态为expectStatus时更新为planStatus
+     * @return 更新行数. 为0表示状态已被其他操作修改
+     */
+    int updatePlanStatus(@Param("id") String id, @Param("expectStatus") String expectStatus, @Param("planStatus") String planStatus);
+
+    /***
+     * 查询可被认领的计划: 无归属或租约已过期的待执行计划, 以及无归属的延迟执行计划
+     */
+    List<SysExportPlan> queryClaimablePlans(@Param("pendingStatus") String pendingStatus, @Param("deferredStatus") String deferredStatus,
+                                            @Param("now") Date now, @Param("limit") int limit);
+
+    List<SysExportPlan> queryPlanWithOwner(@Param("planStatus") String planStatus, @Param("ownerNode") String ownerNode);
+
+    /***
+     * 认领计划(CAS). 仅当计划状态为expectStatus, 且无归属、归属于ownerNode或租约已过期时认领成功
+     * @return 更新行数. 为0表示已被其他节点认领
+     */
+    int claimPlan(@Param("id") String id, @Param("expectStatus") String expectStatus, @Param("planStatus") String planStatus,
+                  @Param("ownerNode") String ownerNode, @Param("leaseExpire") Date leaseExpire, @Param("now") Date now);
+
+    /***
+     * 续约ownerNode持有且状态为expectStatus的计划租约
+     * @return 续约成功的行数
+     */
+    int renewLease(@Param("ownerNode") String ownerNode, @Param("ids") Collection<String> ids, @Param("expectStatus") String expectStatus,
+                   @Param("leaseExpire") Date leaseExpire);
+
+    /***
+     * 释放ownerNode持有且状态为expectStatus的计划并修改状态
+     */
+    int releasePlan(@Param("id") String id, @Param("ownerNode") String ownerNode, @Param("expectStatus") String expectStatus,
+                    @Param("planStatus") String planStatus);
+
+    /***
+     * 回写计划的执行结果(CAS). 仅当计划归属于ownerNode且状态为expectStatuses之一时, 更新record中的非空字段
+     * @return 更新行数. 为0表示计划已被取消或已被其他节点接管
+     */
+    int finishPlan(@Param("record") SysExportPlan record, @Param("expectStatuses") Collection<String> expectStatuses,
+                   @Param("ownerNode") String ownerNode);
 }
\ No newline at end of file
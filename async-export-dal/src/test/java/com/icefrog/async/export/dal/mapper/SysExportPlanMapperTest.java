@@ -0,0 +1,233 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.dal.mapper;
+
+import com.icefrog.async.export.dal.entity.SysExportPlan;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/***
+ * SysExportPlanMapper: 计划租约的抢占、续期、释放与终态写入均以持有节点与期望状态为条件(CAS)
+ *
+ * @author icefrog
+ */
+public class SysExportPlanMapperTest {
+
+    private static final String PENDING = "待执行";
+
+    private static final String DEFERRED = "延迟执行";
+
+    private static final String SUCCESS = "执行成功";
+
+    private static final String CANCELLED = "已取消";
+
+    private static final String NODE_A = "node-a";
+
+    private static final String NODE_B = "node-b";
+
+    private SqlSession session;
+
+    private SysExportPlanMapper mapper;
+
+    private long created = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:plan;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection();
+             InputStream in = getClass().getResourceAsStream("/schema.sql")) {
+            RunScript.execute(connection, new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        String resource = "mapper/SysExportPlanMapper.xml";
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(configuration);
+        session = factory.openSession(true);
+        mapper = session.getMapper(SysExportPlanMapper.class);
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void claimOnlyUnownedOrExpiredPlans() {
+
+        Date now = new Date();
+        insert("p1", PENDING, null, null);
+
+        assertEquals(1, mapper.claimPlan("p1", PENDING, PENDING, NODE_A, minutes(now, 1), now));
+        // 租约未过期: 其他节点无法抢占, 持有节点可重复抢占
+        assertEquals(0, mapper.claimPlan("p1", PENDING, PENDING, NODE_B, minutes(now, 1), now));
+        assertEquals(1, mapper.claimPlan("p1", PENDING, PENDING, NODE_A, minutes(now, 2), now));
+        // 状态不符
+        assertEquals(0, mapper.claimPlan("p1", DEFERRED, PENDING, NODE_A, minutes(now, 1), now));
+
+        // 租约过期后可被其他节点接管
+        Date later = minutes(now, 3);
+        assertEquals(1, mapper.claimPlan("p1", PENDING, PENDING, NODE_B, minutes(later, 1), later));
+        assertEquals(NODE_B, mapper.selectByPrimaryKey("p1").getOwnerNode());
+    }
+
+    @Test
+    public void claimableIncludesExpiredLeasesAndUnownedDeferredPlans() {
+
+        Date now = new Date();
+        insert("unowned", PENDING, null, null);
+        insert("expired", PENDING, NODE_A, minutes(now, -1));
+        insert("leased", PENDING, NODE_A, minutes(now, 1));
+        insert("deferred", DEFERRED, null, null);
+        insert("deferredOwned", DEFERRED, NODE_A, minutes(now, -1));
+        insert("done", SUCCESS, null, null);
+
+        List<SysExportPlan> plans = mapper.queryClaimablePlans(PENDING, DEFERRED, now, 10);
+
+        assertEquals(Arrays.asList("unowned", "expired", "deferred"), ids(plans));
+    }
+
+    @Test
+    public void renewOnlyOwnedPlansWithExpectedStatus() {
+
+        Date now = new Date();
+        insert("owned", PENDING, NODE_A, now);
+        insert("stolen", PENDING, NODE_B, now);
+        insert("cancelled", CANCELLED, NODE_A, now);
+
+        Date expire = minutes(now, 5);
+        assertEquals(1, mapper.renewLease(NODE_A, Arrays.asList("owned", "stolen", "cancelled"), PENDING, expire));
+
+        assertEquals(expire.getTime(), mapper.selectByPrimaryKey("owned").getLeaseExpire().getTime());
+        assertEquals(now.getTime(), mapper.selectByPrimaryKey("stolen").getLeaseExpire().getTime());
+        assertEquals(now.getTime(), mapper.selectByPrimaryKey("cancelled").getLeaseExpire().getTime());
+    }
+
+    @Test
+    public void releaseRequiresOwnerAndExpectedStatus() {
+
+        Date now = new Date();
+        insert("p1", PENDING, NODE_A, minutes(now, 1));
+
+        assertEquals(0, mapper.releasePlan("p1", NODE_B, PENDING, DEFERRED));
+        assertEquals(0, mapper.releasePlan("p1", NODE_A, CANCELLED, DEFERRED));
+        assertEquals(1, mapper.releasePlan("p1", NODE_A, PENDING, DEFERRED));
+
+        SysExportPlan plan = mapper.selectByPrimaryKey("p1");
+        assertEquals(DEFERRED, plan.getPlanStatus());
+        assertNull(plan.getOwnerNode());
+        assertNull(plan.getLeaseExpire());
+    }
+
+    @Test
+    public void finishIsFencedByOwnerAndStatus() {
+
+        Date now = new Date();
+        insert("p1", PENDING, NODE_A, minutes(now, 1));
+
+        SysExportPlan record = new SysExportPlan();
+        record.setId("p1");
+        record.setPlanStatus(SUCCESS);
+        record.setLineCount(100L);
+        record.setUrl("/export/p1.csv");
+
+        // 租约已被其他节点接管
+        assertEquals(0, mapper.finishPlan(record, Collections.singletonList(PENDING), NODE_B));
+        // 计划已不是待执行(如已被取消)
+        assertEquals(0, mapper.finishPlan(record, Collections.singletonList(DEFERRED), NODE_A));
+        assertEquals(1, mapper.finishPlan(record, Collections.singletonList(PENDING), NODE_A));
+
+        SysExportPlan plan = mapper.selectByPrimaryKey("p1");
+        assertEquals(SUCCESS, plan.getPlanStatus());
+        assertEquals(Long.valueOf(100L), plan.getLineCount());
+        assertEquals("/export/p1.csv", plan.getUrl());
+        // 未指定的字段保持不变
+        assertEquals(NODE_A, plan.getOwnerNode());
+        assertEquals(Integer.valueOf(0), plan.getRetryQty());
+
+        // 终态之后不再被覆盖
+        record.setPlanStatus(CANCELLED);
+        assertEquals(0, mapper.finishPlan(record, Collections.singletonList(PENDING), NODE_A));
+    }
+
+    @Test
+    public void cancelledPlanCanBeFinishedAsCancelled() {
+
+        insert("p1", CANCELLED, NODE_A, new Date());
+
+        SysExportPlan record = new SysExportPlan();
+        record.setId("p1");
+        record.setPlanStatus(CANCELLED);
+        record.setFailedMsg("cancelled by user");
+
+        assertEquals(1, mapper.finishPlan(record, Arrays.asList(PENDING, CANCELLED), NODE_A));
+        assertEquals("cancelled by user", mapper.selectByPrimaryKey("p1").getFailedMsg());
+    }
+
+    private void insert(String id, String status, String ownerNode, Date leaseExpire) {
+        SysExportPlan plan = new SysExportPlan();
+        plan.setId(id);
+        plan.setUserId(1L);
+        plan.setBeanId("exampleExport");
+        plan.setPlanStatus(status);
+        plan.setRetryQty(0);
+        plan.setIsDel(0);
+        plan.setOwnerNode(ownerNode);
+        plan.setLeaseExpire(leaseExpire);
+        // 按插入顺序递增, 便于校验查询顺序
+        plan.setTmCreate(new Date(created += 1000));
+        mapper.insertSelective(plan);
+    }
+
+    private static Date minutes(Date date, int minutes) {
+        return new Date(date.getTime() + TimeUnit.MINUTES.toMillis(minutes));
+    }
+
+    private static List<String> ids(List<SysExportPlan> plans) {
+        String[] ids = new String[plans.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = plans.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+}
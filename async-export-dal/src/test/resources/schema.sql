@@ -0,0 +1,26 @@
+-- SysExportPlanMapper测试用表结构. 与mysql-db-script.sql一致, 由H2以MySQL兼容模式执行
+drop table if exists sys_export_plan;
+
+create table sys_export_plan
+(
+    id             varchar(32)   not null primary key,
+    user_id        bigint        null,
+    bean_id        varchar(128)  null,
+    method_name    varchar(128)  null,
+    request_params varchar(1024) null,
+    line_count     bigint        null,
+    url            varchar(1024) null,
+    plan_status    varchar(10)   null,
+    retry_qty      int default 0 null,
+    i18n           varchar(16)   null,
+    failed_msg     varchar(1024) null,
+    tm_create      datetime      null,
+    tm_success     datetime      null,
+    is_del         int default 0 null,
+    owner_node     varchar(64)   null,
+    lease_expire   datetime      null,
+    file_format    varchar(16)   null,
+    priority       varchar(16)   null
+);
+
+create index sys_export_plan_status_index on sys_export_plan (plan_status, tm_create);
@@ -0,0 +1,97 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler;
+
+import com.icefrog.async.export.handler.dto.ExampleDto;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import com.icefrog.async.export.integration.export.ExportCursor;
+import com.icefrog.async.export.integration.export.IPartitionedExport;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * 分区导出handler示例. 按主键区间将数据拆分为多个分区, 由引擎并行拉取后按分区顺序写出.
+ * 使用时需在sys_export_conf中配置beanId为examplePartitionedHandler的记录
+ *
+ * @author icefrog
+ */
+@Component("examplePartitionedHandler")
+public class ExamplePartitionedHandler implements IPartitionedExport {
+
+    /***
+     * 示例数据总行数
+     */
+    private static final int TOTAL = 100000;
+
+    /***
+     * 单个分区的主键区间跨度
+     */
+    private static final int PARTITION_SPAN = 20000;
+
+    /***
+     * 一般此处先查询min(id)、max(id)(可结合requestParams中的查询条件), 再按固定跨度切分为若干[from,to)区间
+     *
+     * @param requestParams 请求参数. 一般为页面查询条件
+     * @return 有序分区描述. 格式: from-to
+     */
+    @Override
+    public List<String> partitions(String requestParams) {
+        List<String> partitions = new ArrayList<>();
+        for (int from = 0; from < TOTAL; from += PARTITION_SPAN) {
+            partitions.add(from + "-" + Math.min(TOTAL, from + PARTITION_SPAN));
+        }
+        return partitions;
+    }
+
+    /***
+     * 一般此处执行 where id >= from and id < to 的索引区间扫描, 每次nextBatch返回一页数据
+     *
+     * @param requestParams 请求参数. 一般为页面查询条件
+     * @param partition 分区描述. 格式: from-to
+     * @param batchSize 期望的单批次数据量
+     * @return 该分区的导出结果集游标
+     */
+    @Override
+    public ExportCursor openCursor(String requestParams, String partition, int batchSize) {
+
+        String[] range = partition.split("-");
+        int to = Integer.parseInt(range[1]);
+
+        return new ExportCursor() {
+
+            private int offset = Integer.parseInt(range[0]);
+
+            @Override
+            public List<BaseResultSet> nextBatch() {
+                if(offset >= to) {
+                    return null;
+                }
+                int end = Math.min(to, offset + batchSize);
+                List<BaseResultSet> rs = new ArrayList<>(end - offset);
+                for (; offset < end; offset++) {
+                    ExampleDto dto = new ExampleDto();
+                    dto.setTestName("name-" + offset);
+                    dto.setTestContent(String.valueOf(offset % 2));
+                    rs.add(dto);
+                }
+                return rs;
+            }
+        };
+    }
+}
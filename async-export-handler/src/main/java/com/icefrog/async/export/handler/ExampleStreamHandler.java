@@ -0,0 +1,72 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler;
+
+import com.icefrog.async.export.handler.dto.ExampleDto;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import com.icefrog.async.export.integration.export.ExportCursor;
+import com.icefrog.async.export.integration.export.IStreamExport;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * 流式导出handler示例. 按批次生成数据, 与ExampleHandler共用column配置时需在sys_export_conf中配置beanId为exampleStreamHandler的记录
+ *
+ * @author icefrog
+ */
+@Component("exampleStreamHandler")
+public class ExampleStreamHandler implements IStreamExport {
+
+    /***
+     * 示例数据总行数
+     */
+    private static final int TOTAL = 10000;
+
+    /***
+     * 一般此处打开数据库游标或分页查询. 每次nextBatch返回一页数据
+     *
+     * @param requestParams 请求参数. 一般为页面查询条件
+     * @param batchSize 期望的单批次数据量
+     * @return 导出结果集游标
+     */
+    @Override
+    public ExportCursor openCursor(String requestParams, int batchSize) {
+
+        return new ExportCursor() {
+
+            private int offset;
+
+            @Override
+            public List<BaseResultSet> nextBatch() {
+                if(offset >= TOTAL) {
+                    return null;
+                }
+                int end = Math.min(TOTAL, offset + batchSize);
+                List<BaseResultSet> rs = new ArrayList<>(end - offset);
+                for (; offset < end; offset++) {
+                    ExampleDto dto = new ExampleDto();
+                    dto.setTestName("name-" + offset);
+                    dto.setTestContent(String.valueOf(offset % 2));
+                    rs.add(dto);
+                }
+                return rs;
+            }
+        };
+    }
+}
@@ -16,6 +16,10 @@
 
 package com.icefrog.async.export.handler.dictionary;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /***
  * 字典值替换。针对不同的字典值替换实现均实现该接口
  *
@@ -31,4 +35,20 @@ public interface IDictionaryReplace {
      */
     String replace(String code, String beforeValue);
 
+    /***
+     * 批量字典值替换. 导出时同一批次中同一字典code的去重值将通过一次调用完成替换.
+     * 基于数据库或远程服务的实现应重写此方法, 以一次查询完成整批替换. 默认逐个调用{@link #replace(String, String)}
+     *
+     * @param code 字典值字段。
+     * @param beforeValues 替换前的字典值(已去重)
+     * @return key: 替换前的字典值. value: 替换后的结果. 未包含在结果中的值视为替换结果为null
+     */
+    default Map<String, String> replaceBatch(String code, Collection<String> beforeValues) {
+        Map<String, String> result = new HashMap<>(beforeValues.size() * 2);
+        for (String beforeValue : beforeValues) {
+            result.put(beforeValue, replace(code, beforeValue));
+        }
+        return result;
+    }
+
 }
@@ -30,7 +30,18 @@ public interface IFileManager {
      * @param dir 文件在本地磁盘的绝对路径（文件夹）。
      * @param fileName 文件名。包含后缀
      * @return 最终文件访问地址，可能是存在于网络上任意位置的url地址，也可能是本地磁盘的盘符描述的文件路径
+     * @throws java.io.UncheckedIOException 处理失败. 不应返回null, 系统按作业失败处理(可重试时重新执行)
      */
     String process(String dir, String fileName);
 
+    /***
+     * 是否接管源文件. 返回true时由实现负责处理成功后源文件的移动或删除, 系统在{@link #process(String, String)}成功返回之后
+     * 不再删除该文件; 返回false时系统在处理完成后删除源文件. 处理失败(抛出异常)时实现应保留源文件, 由系统在计划失败或重新执行前清理
+     *
+     * @return 是否接管源文件
+     */
+    default boolean ownsSourceFile() {
+        return false;
+    }
+
 }
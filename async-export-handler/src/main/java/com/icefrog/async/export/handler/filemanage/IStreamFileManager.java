@@ -0,0 +1,39 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.filemanage;
+
+import java.io.IOException;
+
+/***
+ * 流式文件处理接口. 区别于{@link IFileManager}处理已写入本地磁盘的文件, 该接口提供一个写入目标,
+ * 导出数据边生成边写入(如对象存储的分片上传), 不再经过本地临时文件. 通过export.upload.mode=stream启用
+ *
+ * @see UploadSink
+ * @see MultipartUploadSink
+ * @author icefrog
+ */
+public interface IStreamFileManager {
+
+    /***
+     * 打开文件写入目标. 每次导出(或每个文件分片)打开一个
+     *
+     * @param fileName 文件名. 包含后缀
+     * @return 写入目标. 数据写入完成后由调用方{@link UploadSink#commit()}或{@link UploadSink#abort()}
+     * @throws IOException IOException
+     */
+    UploadSink openSink(String fileName) throws IOException;
+}
@@ -0,0 +1,156 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.filemanage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/***
+ * 分片上传写入目标基类. 写入的数据在内存中按partSize聚合, 每满一个分片即调用{@link #uploadPart(int, ByteBuffer)}上传,
+ * 内存占用恒定为一个分片大小, 与文件总大小无关. 对象存储的实现只需对接 初始化/上传分片/完成/放弃 四个操作.
+ * 非线程安全
+ *
+ * @author icefrog
+ */
+@Slf4j
+public abstract class MultipartUploadSink implements UploadSink {
+
+    /***
+     * 待上传的分片数据
+     */
+    private final ByteBuffer part;
+
+    /***
+     * 已上传的分片数量. 分片序号从1开始
+     */
+    private int partCount;
+
+    private long size;
+
+    private boolean open = true;
+
+    private boolean committed;
+
+    private boolean aborted;
+
+    /***
+     * @param partSize 分片大小(字节). 对象存储通常要求除最后一个分片外不小于5MB
+     */
+    protected MultipartUploadSink(int partSize) {
+        this.part = ByteBuffer.allocate(partSize);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if(!open) {
+            throw new ClosedChannelException();
+        }
+        int written = 0;
+        while (src.hasRemaining()) {
+            if(!part.hasRemaining()) {
+                flushPart();
+            }
+            int n = Math.min(src.remaining(), part.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + n);
+            part.put(src);
+            src.limit(limit);
+            written += n;
+        }
+        size += written;
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /***
+     * 数据写入结束, 上传最后一个分片(可能小于partSize). 空文件同样上传一个空分片
+     */
+    @Override
+    public void close() throws IOException {
+        if(!open) {
+            return;
+        }
+        open = false;
+        if(part.position() > 0 || partCount == 0) {
+            flushPart();
+        }
+    }
+
+    @Override
+    public String commit() throws IOException {
+        if(aborted) {
+            throw new IllegalStateException("upload has been aborted");
+        }
+        close();
+        String url = completeUpload(partCount, size);
+        committed = true;
+        return url;
+    }
+
+    @Override
+    public void abort() {
+        if(committed || aborted) {
+            return;
+        }
+        aborted = true;
+        open = false;
+        try {
+            abortUpload();
+        } catch (Exception ex) {
+            log.warn("放弃分片上传异常. {}", ex.getMessage(), ex);
+        }
+    }
+
+    private void flushPart() throws IOException {
+        part.flip();
+        uploadPart(++partCount, part);
+        part.clear();
+    }
+
+    /***
+     * 上传一个分片
+     *
+     * @param partNumber 分片序号, 从1开始
+     * @param data 分片数据. 方法返回后将被复用
+     * @throws IOException IOException
+     */
+    protected abstract void uploadPart(int partNumber, ByteBuffer data) throws IOException;
+
+    /***
+     * 合并全部分片, 完成上传
+     *
+     * @param partCount 分片数量
+     * @param size 文件总大小(字节)
+     * @return 最终文件访问地址
+     * @throws IOException IOException
+     */
+    protected abstract String completeUpload(int partCount, long size) throws IOException;
+
+    /***
+     * 放弃上传, 清理已上传的分片
+     *
+     * @throws IOException IOException
+     */
+    protected abstract void abortUpload() throws IOException;
+}
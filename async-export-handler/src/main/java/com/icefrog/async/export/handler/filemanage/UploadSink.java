@@ -0,0 +1,43 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.filemanage;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/***
+ * 流式上传写入目标. 生命周期: write* -> close(数据写入结束) -> commit(完成上传) 或 任意阶段 abort(放弃上传).
+ * close仅表示数据写入结束, 不代表上传完成; 写入器在结束时会关闭通道, 上传结果由调用方另行commit
+ *
+ * @see IStreamFileManager
+ * @author icefrog
+ */
+public interface UploadSink extends WritableByteChannel {
+
+    /***
+     * 完成上传. 未close时先close
+     *
+     * @return 最终文件访问地址
+     * @throws IOException 上传失败
+     */
+    String commit() throws IOException;
+
+    /***
+     * 放弃上传, 清理已上传的数据. 不抛出异常, 可重复调用
+     */
+    void abort();
+}
@@ -16,16 +16,26 @@
 
 package com.icefrog.async.export.handler.filemanage.impl;
 
-import cn.hutool.core.io.FileUtil;
 import com.icefrog.async.export.handler.filemanage.IFileManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /***
- * 本地文件管理器，将已存在的本地文件转移到指定目录
+ * 本地文件管理器，将已存在的本地文件转移到指定目录.
+ * 与目标目录位于同一文件系统时直接原子重命名, 不产生数据拷贝; 跨文件系统时通过FileChannel.transferTo(零拷贝)复制后删除源文件.
+ * 该实现接管源文件, 转移成功后系统不再额外删除; 转移失败时源文件保留, 由系统按作业失败处理
  *
  * @author icefrog.su@qq.com
  */
@@ -41,6 +51,7 @@ public class LocalDiskFileManager implements IFileManager {
      * @param dir 文件在本地磁盘的绝对路径（文件夹）。
      * @param fileName 文件名。包含后缀
      * @return 最终的文件磁盘地址（包含文件名）
+     * @throws UncheckedIOException 转移失败. 源文件保留
      */
     @Override
     public String process(String dir, String fileName) {
@@ -49,17 +60,66 @@ public class LocalDiskFileManager implements IFileManager {
         String targetPath = defaultTargetDir + File.separator + fileName;
 
         try {
-            File targetDir = new File(defaultTargetDir);
-            if(!targetDir.exists()) {
-                targetDir.mkdirs();
-            }
+            Files.createDirectories(Paths.get(defaultTargetDir));
 
-            FileUtil.copy(new File(sourcePath), new File(targetPath), true);
+            move(Paths.get(sourcePath), Paths.get(targetPath));
             return targetPath;
-        } catch (Exception e) {
+        } catch (IOException e) {
             log.error("LocalDiskFileManager转移文件地址失败. absolutePath:{}, fileName:{}, defaultTargetDir:{}",
-                    sourcePath, fileName, defaultTargetDir);
-            return null;
+                    sourcePath, fileName, defaultTargetDir, e);
+            throw new UncheckedIOException("转移文件失败: " + sourcePath, e);
+        }
+    }
+
+    @Override
+    public boolean ownsSourceFile() {
+        return true;
+    }
+
+    /***
+     * 移动文件. 优先原子重命名, 不支持时(跨文件系统)复制到目标目录下的临时文件, 完成后重命名为目标文件并删除源文件,
+     * 保证目标路径上不会出现写入一半的文件
+     */
+    private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        } catch (AtomicMoveNotSupportedException ex) {
+            log.debug("不支持原子移动, 使用复制. source:{}, target:{}", source, target);
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            transfer(source, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            deleteQuietly(temp);
+            throw ex;
+        }
+        Files.delete(source);
+    }
+
+    /***
+     * 通过FileChannel.transferTo复制文件. 在支持的平台上由内核完成拷贝(sendfile/copy_file_range), 数据不经过用户态
+     */
+    private void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(true);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("删除文件失败. path:{}, {}", path, ex.getMessage());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.filemanage.impl;
+
+import cn.hutool.core.util.IdUtil;
+import com.icefrog.async.export.handler.filemanage.IStreamFileManager;
+import com.icefrog.async.export.handler.filemanage.MultipartUploadSink;
+import com.icefrog.async.export.handler.filemanage.UploadSink;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/***
+ * 本地对象存储模拟实现, 用于开发与测试. 按对象存储的分片上传语义工作: 每个分片写入 root/.uploads/uploadId/partNumber,
+ * 完成时按序号合并为 root/fileName, 放弃时删除全部分片. 对接真实对象存储时参照本类实现{@link MultipartUploadSink}即可
+ *
+ * @author icefrog
+ */
+@Slf4j
+@Component
+public class LocalObjectStoreFileManager implements IStreamFileManager {
+
+    /***
+     * 模拟对象存储的根目录
+     */
+    @Value("${export.objectStore.root:data/object-store}")
+    private String root;
+
+    /***
+     * 分片大小(字节)
+     */
+    @Value("${export.objectStore.partSize:8388608}")
+    private int partSize;
+
+    @Override
+    public UploadSink openSink(String fileName) throws IOException {
+        Path uploadDir = Paths.get(root, ".uploads", IdUtil.fastSimpleUUID());
+        Files.createDirectories(uploadDir);
+        return new LocalMultipartUploadSink(partSize, uploadDir, Paths.get(root, fileName));
+    }
+
+    private static final class LocalMultipartUploadSink extends MultipartUploadSink {
+
+        private final Path uploadDir;
+
+        private final Path target;
+
+        private LocalMultipartUploadSink(int partSize, Path uploadDir, Path target) {
+            super(partSize);
+            this.uploadDir = uploadDir;
+            this.target = target;
+        }
+
+        @Override
+        protected void uploadPart(int partNumber, ByteBuffer data) throws IOException {
+            try (FileChannel out = FileChannel.open(partPath(partNumber),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+        }
+
+        @Override
+        protected String completeUpload(int partCount, long size) throws IOException {
+            Path temp = uploadDir.resolve("complete");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (int i = 1; i <= partCount; i++) {
+                    try (FileChannel in = FileChannel.open(partPath(i), StandardOpenOption.READ)) {
+                        long position = 0;
+                        long length = in.size();
+                        while (position < length) {
+                            position += in.transferTo(position, length - position, out);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deleteUploadDir();
+            if(log.isDebugEnabled()) {
+                log.debug("分片上传完成. target:{}, parts:{}, size:{}", target, partCount, size);
+            }
+            return target.toString();
+        }
+
+        @Override
+        protected void abortUpload() throws IOException {
+            deleteUploadDir();
+        }
+
+        private Path partPath(int partNumber) {
+            return uploadDir.resolve(String.format("%05d", partNumber));
+        }
+
+        private void deleteUploadDir() throws IOException {
+            if(!Files.exists(uploadDir)) {
+                return;
+            }
+            try (Stream<Path> paths = Files.walk(uploadDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.loadtest;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/***
+ * 压测profile(loadtest)下注册的导出实现. 三个beanId共用{@link SyntheticExportHandler},
+ * 导出宽度由压测库中各自的column配置决定: loadTestNarrow 5列, loadTestMedium 20列, loadTestWide 40列
+ *
+ * @author icefrog
+ */
+@Configuration
+@Profile("loadtest")
+public class LoadTestHandlerConfiguration {
+
+    @Bean("loadTestNarrow")
+    public SyntheticExportHandler loadTestNarrow() {
+        return new SyntheticExportHandler();
+    }
+
+    @Bean("loadTestMedium")
+    public SyntheticExportHandler loadTestMedium() {
+        return new SyntheticExportHandler();
+    }
+
+    @Bean("loadTestWide")
+    public SyntheticExportHandler loadTestWide() {
+        return new SyntheticExportHandler();
+    }
+}
@@ -0,0 +1,125 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.loadtest;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import com.icefrog.async.export.integration.export.ExportCursor;
+import com.icefrog.async.export.integration.export.IStreamExport;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * 压测用流式导出实现. 按请求参数生成数据, 不访问外部系统. 请求参数(json):
+ * <ul>
+ *   <li>rows: 导出行数, 默认10000</li>
+ *   <li>cellLength: 单元格字符数, 默认16</li>
+ *   <li>batchDelayMillis: 每批次额外等待的时间(毫秒), 模拟数据源查询耗时, 默认0</li>
+ * </ul>
+ * 单元格内容由行号与列号确定, 相同参数的导出结果完全一致
+ *
+ * @see LoadTestHandlerConfiguration
+ * @author icefrog
+ */
+public class SyntheticExportHandler implements IStreamExport {
+
+    private static final int DEFAULT_ROWS = 10000;
+
+    private static final int DEFAULT_CELL_LENGTH = 16;
+
+    private static final Field[] FIELDS = new Field[SyntheticRow.COLUMNS];
+
+    static {
+        for (int column = 0; column < SyntheticRow.COLUMNS; column++) {
+            FIELDS[column] = ReflectUtil.getField(SyntheticRow.class, String.format("c%02d", column));
+            ReflectUtil.setAccessible(FIELDS[column]);
+        }
+    }
+
+    @Override
+    public ExportCursor openCursor(String requestParams, int batchSize) {
+
+        JSONObject params = StringUtils.isBlank(requestParams) ? new JSONObject() : JSON.parseObject(requestParams);
+        long rows = params.getLongValue("rows") > 0 ? params.getLongValue("rows") : DEFAULT_ROWS;
+        int cellLength = params.getIntValue("cellLength") > 0 ? params.getIntValue("cellLength") : DEFAULT_CELL_LENGTH;
+        long batchDelayMillis = Math.max(0, params.getLongValue("batchDelayMillis"));
+
+        return new ExportCursor() {
+
+            private long offset;
+
+            @Override
+            public List<BaseResultSet> nextBatch() throws IOException {
+                if(offset >= rows) {
+                    return null;
+                }
+                if(batchDelayMillis > 0) {
+                    sleep(batchDelayMillis);
+                }
+                long end = Math.min(rows, offset + batchSize);
+                List<BaseResultSet> batch = new ArrayList<>((int) (end - offset));
+                for (; offset < end; offset++) {
+                    batch.add(row(offset, cellLength));
+                }
+                return batch;
+            }
+        };
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("模拟查询等待被中断");
+        }
+    }
+
+    private static SyntheticRow row(long index, int cellLength) {
+        SyntheticRow row = new SyntheticRow();
+        for (int column = 0; column < FIELDS.length; column++) {
+            try {
+                FIELDS[column].set(row, cell(index, column, cellLength));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return row;
+    }
+
+    /***
+     * 单元格内容: 行号与列号的36进制表示, 以字母循环填充至cellLength
+     */
+    private static String cell(long index, int column, int cellLength) {
+        String seed = Long.toString(index * SyntheticRow.COLUMNS + column, 36);
+        if(seed.length() >= cellLength) {
+            return seed.substring(seed.length() - cellLength);
+        }
+        StringBuilder cell = new StringBuilder(cellLength).append(seed);
+        for (int i = seed.length(); i < cellLength; i++) {
+            cell.append((char) ('a' + (i + column) % 26));
+        }
+        return cell.toString();
+    }
+}
@@ -0,0 +1,119 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.handler.loadtest;
+
+import com.icefrog.async.export.integration.annotation.DictionaryScan;
+import com.icefrog.async.export.integration.export.BaseResultSet;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/***
+ * 压测结果集. 共{@link #COLUMNS}个字符串列c00~c39, 导出宽度由sys_export_conf中的column配置决定.
+ * c04为字典列, 经默认字典实现原样输出
+ *
+ * @author icefrog
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class SyntheticRow extends BaseResultSet {
+
+    /***
+     * 列数量
+     */
+    public static final int COLUMNS = 40;
+
+    private String c00;
+
+    private String c01;
+
+    private String c02;
+
+    private String c03;
+
+    @DictionaryScan(code = "LOADTEST")
+    private String c04;
+
+    private String c05;
+
+    private String c06;
+
+    private String c07;
+
+    private String c08;
+
+    private String c09;
+
+    private String c10;
+
+    private String c11;
+
+    private String c12;
+
+    private String c13;
+
+    private String c14;
+
+    private String c15;
+
+    private String c16;
+
+    private String c17;
+
+    private String c18;
+
+    private String c19;
+
+    private String c20;
+
+    private String c21;
+
+    private String c22;
+
+    private String c23;
+
+    private String c24;
+
+    private String c25;
+
+    private String c26;
+
+    private String c27;
+
+    private String c28;
+
+    private String c29;
+
+    private String c30;
+
+    private String c31;
+
+    private String c32;
+
+    private String c33;
+
+    private String c34;
+
+    private String c35;
+
+    private String c36;
+
+    private String c37;
+
+    private String c38;
+
+    private String c39;
+}
@@ -31,6 +31,11 @@ public enum PlanStatus {
      */
     PENDING("待执行","执行状态：暂未执行"),
 
+    /***
+     * 延迟执行枚举. 提交时队列繁忙, 等待队列空闲后由补偿任务转为待执行
+     */
+    DEFERRED("延迟执行", "执行状态：等待队列空闲"),
+
     /***
      * 执行成功枚举
      */
@@ -39,7 +44,17 @@ public enum PlanStatus {
     /***
      * 执行失败枚举
      */
-    FAILED("执行失败", "执行状态：执行失败");
+    FAILED("执行失败", "执行状态：执行失败"),
+
+    /***
+     * 已取消枚举. 用户主动取消, 不再重试
+     */
+    CANCELLED("已取消", "执行状态：已取消"),
+
+    /***
+     * 执行超时枚举. 单次执行超过配置的超时时间后终止, 不再重试
+     */
+    TIMED_OUT("执行超时", "执行状态：执行超时");
 
 
 
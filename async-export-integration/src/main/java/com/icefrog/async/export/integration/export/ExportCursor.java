@@ -0,0 +1,56 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.integration.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * 导出结果集游标. 由流式导出实现按批次提供待导出数据, 消费线程逐批拉取并直接写出, 内存占用取决于批次大小而非总行数
+ *
+ * @see IStreamExport
+ * @author icefrog
+ */
+public interface ExportCursor extends Closeable {
+
+    /***
+     * 拉取下一批待导出数据. 调用方可能在拉取下一批次之后才异步解析与写出本批次:
+     * 实现可在下一次拉取时复用或清空返回的List, 但返回的行对象归调用方所有, 实现不得再修改或复用(如对象池、可变行缓冲)
+     *
+     * @return 下一批次结果集, 大小不应超过打开游标时指定的batchSize. 返回null表示已无更多数据
+     * @throws IOException 读取数据时可能发生的IO异常
+     */
+    List<BaseResultSet> nextBatch() throws IOException;
+
+    /***
+     * 取消导出. 作业被取消或执行超时时由其他线程调用, 可能与{@link #nextBatch()}并发执行, 也可能在{@link #close()}之后调用.
+     * 实现可在此中断正在执行的查询(如Statement#cancel), 使阻塞中的nextBatch尽快返回或抛出异常.
+     * 无论是否实现, 消费线程都将在下一批次之前停止拉取并关闭游标
+     */
+    default void cancel() {
+    }
+
+    /***
+     * 释放游标占用的资源(如数据库游标、连接等). 无论导出成功与否, 消费线程都将调用此方法
+     *
+     * @throws IOException IOException
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.util.List;
 
 /***
- * 导出实现规约,所有导出实现类必须实现此接口. 否则无法被handler调用.
+ * 导出实现规约,所有导出实现类必须实现此接口、{@link IStreamExport}或{@link IPartitionedExport}. 否则无法被handler调用.
  *
+ * @see IStreamExport
+ * @see IPartitionedExport
  * @author icefrog
  */
 public interface IExport {
@@ -0,0 +1,50 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.integration.export;
+
+import java.util.List;
+
+/***
+ * 分区导出实现规约. 实现方将一次导出拆分为若干互不重叠的分区(如主键区间、分页区间), 引擎在有界线程池上并行拉取各分区,
+ * 并严格按{@link #partitions(String)}返回的顺序合并写出. 适用于单次全表扫描较慢, 但可拆分为多个索引区间扫描的场景
+ *
+ * <p>分区游标可能在不同的线程上打开与读取, 但同一个分区游标始终只会被一个线程串行访问
+ *
+ * @see IStreamExport
+ * @see ExportCursor
+ * @author icefrog
+ */
+public interface IPartitionedExport {
+
+    /***
+     * 根据请求参数划分分区. 返回的每个元素为分区描述(如"0-100000"), 由实现方自行解释
+     *
+     * @param requestParams 请求参数. 一般为页面查询条件
+     * @return 有序分区描述. 返回空集合表示无数据
+     */
+    List<String> partitions(String requestParams);
+
+    /***
+     * 打开指定分区的导出游标
+     *
+     * @param requestParams 请求参数. 一般为页面查询条件
+     * @param partition 分区描述, 取值来自{@link #partitions(String)}
+     * @param batchSize 期望的单批次数据量
+     * @return 该分区的导出结果集游标
+     */
+    ExportCursor openCursor(String requestParams, String partition, int batchSize);
+}
@@ -0,0 +1,36 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.integration.export;
+
+/***
+ * 流式导出实现规约. 区别于{@link IExport}一次性返回完整结果集, 该规约以游标的形式按批次提供数据,
+ * 适用于大数据量导出. Spring bean实现IExport或IStreamExport其一即可被handler调用
+ *
+ * @see ExportCursor
+ * @author icefrog
+ */
+public interface IStreamExport {
+
+    /***
+     * 打开导出游标
+     *
+     * @param requestParams 请求参数. 一般为页面查询条件
+     * @param batchSize 期望的单批次数据量
+     * @return 导出结果集游标
+     */
+    ExportCursor openCursor(String requestParams, int batchSize);
+}
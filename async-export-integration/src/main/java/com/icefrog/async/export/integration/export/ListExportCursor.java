@@ -0,0 +1,93 @@
+/***
+ * Copyright 2019 icefrog.su
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.icefrog.async.export.integration.export;
+
+import java.util.List;
+
+/***
+ * 将{@link IExport}返回的完整结果集适配为{@link ExportCursor}, 使既有的导出实现无需修改即可按批次消费.
+ * 已被消费的批次将从原结果集中释放引用(若原结果集支持set操作), 以便尽早被GC回收
+ *
+ * @author icefrog
+ */
+public class ListExportCursor implements ExportCursor {
+
+    /***
+     * 原始结果集
+     */
+    private List<BaseResultSet> source;
+
+    /***
+     * 单批次数据量
+     */
+    private final int batchSize;
+
+    /***
+     * 下一批次的起始下标
+     */
+    private int position;
+
+    /***
+     * 原始结果集是否支持set操作. 不支持时不再尝试释放已消费批次的引用
+     */
+    private boolean releasable = true;
+
+    public ListExportCursor(List<BaseResultSet> source, int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+        this.source = source;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public List<BaseResultSet> nextBatch() {
+
+        if(source == null) {
+            return null;
+        }
+
+        // 释放上一批次的引用. 调用方拉取下一批次时, 上一批次已处理完成
+        releasePrevious();
+
+        if(position >= source.size()) {
+            return null;
+        }
+
+        int from = position;
+        position = Math.min(source.size(), position + batchSize);
+        return source.subList(from, position);
+    }
+
+    @Override
+    public void close() {
+        this.source = null;
+    }
+
+    private void releasePrevious() {
+        if(!releasable || position == 0) {
+            return;
+        }
+        try {
+            for (int i = Math.max(0, position - batchSize); i < position; i++) {
+                source.set(i, null);
+            }
+        } catch (UnsupportedOperationException ex) {
+            releasable = false;
+        }
+    }
+}
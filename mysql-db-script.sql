@@ -11,7 +11,9 @@ create table sys_export_conf
     update_id        bigint        null comment '更新人',
     tm_update        datetime      null comment '更新时间',
     remark           varchar(512)  null comment 'remark',
-    is_del           int default 0 null comment '逻辑删除标识'
+    is_del           int default 0 null comment '逻辑删除标识',
+    file_format      varchar(16)   null comment '导出文件格式：excel、csv、csv.gz，为空时取默认格式',
+    timeout_seconds  int           null comment '单次执行超时时间(秒)，为空时取默认超时时间，小于等于0表示不限制'
 );
 
 create table wms.sys_export_plan
@@ -23,13 +25,17 @@ create table wms.sys_export_plan
     request_params varchar(1024) null comment '导出表格表头信息配置json',
     line_count     bigint        null comment '数据行数',
     url            varchar(1024) null comment 'http下载地址',
-    plan_status    varchar(10)   null comment '计划状态：待执行、执行成功、执行失败',
+    plan_status    varchar(10)   null comment '计划状态：待执行、延迟执行、执行成功、执行失败、已取消、执行超时',
     retry_qty      int default 0 null comment '异常重试次数',
     i18n           varchar(16)   null comment '国际化标记符',
     failed_msg     varchar(1024) null comment '错误消息',
     tm_create      datetime      null comment '创建时间',
     tm_success     datetime      null comment '完成时间',
     is_del         int default 0 null comment '删除标识，0=未删除，1=删除',
+    owner_node     varchar(64)   null comment '持有计划租约的节点ID',
+    lease_expire   datetime      null comment '租约过期时间',
+    file_format    varchar(16)   null comment '导出文件格式，为空时取导出配置中的格式',
+    priority       varchar(16)   null comment '调度优先级类别：interactive、normal、batch，为空时由调度器判定',
     constraint sys_export_plan_id_uindex
         unique (id)
 )
@@ -38,6 +44,23 @@ create table wms.sys_export_plan
 alter table wms.sys_export_plan
     add primary key (id);
 
+create index sys_export_plan_status_index
+    on wms.sys_export_plan (plan_status, tm_create);
+
+-- 已有库升级: 多节点计划认领所需字段
+-- alter table wms.sys_export_plan add owner_node varchar(64) null comment '持有计划租约的节点ID';
+-- alter table wms.sys_export_plan add lease_expire datetime null comment '租约过期时间';
+
+-- 已有库升级: 导出文件格式
+-- alter table sys_export_conf add file_format varchar(16) null comment '导出文件格式：excel、csv、csv.gz，为空时取默认格式';
+-- alter table wms.sys_export_plan add file_format varchar(16) null comment '导出文件格式，为空时取导出配置中的格式';
+
+-- 已有库升级: 调度优先级类别
+-- alter table wms.sys_export_plan add priority varchar(16) null comment '调度优先级类别：interactive、normal、batch，为空时由调度器判定';
+
+-- 已有库升级: 单次执行超时时间
+-- alter table sys_export_conf add timeout_seconds int null comment '单次执行超时时间(秒)，为空时取默认超时时间，小于等于0表示不限制';
+
 
 
 -- 执行此SQL可直接运行基本Demo